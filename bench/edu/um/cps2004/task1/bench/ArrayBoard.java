@@ -0,0 +1,50 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * The original <code>Mark[]</code> board representation (with its list of
+ * empty positions), kept here only as a baseline for the measurements.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+final class ArrayBoard {
+
+    private final Mark[] board = new Mark[9];
+
+    private final List<Integer> emptyPositions = new ArrayList<Integer>(9);
+
+    ArrayBoard() {
+        for (int i = 0; i < 9; i++) {
+            emptyPositions.add(i);
+        }
+    }
+
+    void play(final int position, final Mark mark) {
+        if ((position < 0) || (position >= 9) || (board[position] != null)) {
+            throw new IllegalArgumentException("Bad position " + position);
+        }
+        board[position] = mark;
+        emptyPositions.remove(Integer.valueOf(position));
+    }
+
+    boolean isWinningPosition() {
+        return line(0, 1, 2) || line(3, 4, 5) || line(6, 7, 8) || line(0, 3, 6) || line(1, 4, 7)
+                || line(2, 5, 8) || line(0, 4, 8) || line(2, 4, 6);
+    }
+
+    private boolean line(final int a, final int b, final int c) {
+        return (board[a] != null) && (board[b] != null) && (board[c] != null) && (board[a].equals(board[b]))
+                && (board[b].equals(board[c]));
+    }
+
+}
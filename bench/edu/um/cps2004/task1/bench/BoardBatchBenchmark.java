@@ -0,0 +1,121 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.BoardBatch;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.engine.MatchResult;
+import edu.um.cps2004.task1.engine.RandomBatchPolicy;
+import edu.um.cps2004.task1.engine.SimulationEngine;
+
+/**
+ * JMH benchmarks of <code>BoardBatch</code>: the win check of a whole batch
+ * of random positions, and random games in the <code>SimulationEngine</code>
+ * (compare with <code>EngineBenchmark</code>). Scores are per board, or per
+ * game.
+ *
+ * Run with <code>-jvmArgs -XX:-UseSuperWord</code> to see what the vector
+ * instructions are worth.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBatchBenchmark {
+
+    /**
+     * The number of boards in the batch.
+     */
+    private static final int BOARDS = 1024;
+
+    /**
+     * The games played per invocation of <code>simulate</code>.
+     */
+    private static final int GAMES = 4096;
+
+    /**
+     * The board to play on, as <i>side</i>/<i>winLength</i>.
+     */
+    @Param({ "3/3", "15/5" })
+    public String shape;
+
+    /**
+     * Random positions (of random lengths), as a batch.
+     */
+    private BoardBatch batch;
+
+    /**
+     * Where <code>findWins</code> puts its results.
+     */
+    private boolean[] won;
+
+    private SimulationEngine engine;
+
+    /**
+     * Sets up the positions (the same every run).
+     */
+    @Setup
+    public void setUp() {
+        final int slash = shape.indexOf('/');
+        final int side = Integer.parseInt(shape.substring(0, slash));
+        final int winLength = Integer.parseInt(shape.substring(slash + 1));
+        final Random random = new Random(1);
+        batch = new BoardBatch(BOARDS, side, winLength);
+        won = new boolean[BOARDS];
+        final int[] empty = new int[side * side];
+        for (int board = 0; board < BOARDS; board++) {
+            final GameBoard game = new GameBoard(side, winLength);
+            final int moves = random.nextInt(game.getBoardSize());
+            Mark mark = Mark.X;
+            for (int i = 0; (i < moves) && !game.isWinningPosition(); i++) {
+                final int count = game.getEmptyPositions(empty);
+                try {
+                    game.playAtPosition(empty[random.nextInt(count)], mark);
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                mark = (mark == Mark.X) ? Mark.O : Mark.X;
+            }
+            batch.load(board, game);
+        }
+        engine = new SimulationEngine(BOARDS, side, winLength, new RandomBatchPolicy(1), new RandomBatchPolicy(2));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOARDS)
+    public int batchFindWins() {
+        return batch.findWins(Mark.X, won) + batch.findWins(Mark.O, won);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public MatchResult simulate() {
+        return engine.simulate(GAMES);
+    }
+
+}
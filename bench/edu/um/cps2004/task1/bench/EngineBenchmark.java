@@ -0,0 +1,87 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.BatchWarEngine;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.engine.TimeControl;
+import edu.um.cps2004.task1.player.TTTPlayer;
+import edu.um.cps2004.task1.robot.TTTRobot;
+
+/**
+ * JMH benchmark of the engine's game loop: a whole game between two trivial
+ * robots (each plays the first empty position), so that what is measured is
+ * the engine and the board, not the robots. With and without a time control,
+ * since timed moves take a different path.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    /**
+     * Whether the robots play under a (generous) per move time limit.
+     */
+    @Param({ "false", "true" })
+    public boolean timed;
+
+    private BatchWarEngine engine;
+
+    /**
+     * Sets up the engine.
+     */
+    @Setup
+    public void setUp() {
+        engine = new BatchWarEngine(new FirstEmptyRobot(), new FirstEmptyRobot());
+        if (timed) {
+            engine.setTimeControl(TimeControl.perMove(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Benchmark
+    public TTTPlayer fullGame() {
+        engine.play();
+        return engine.getWinner();
+    }
+
+    /**
+     * Plays the first empty position.
+     */
+    private static final class FirstEmptyRobot implements TTTRobot {
+
+        @Override
+        public String getRobotMasterName() {
+            return "First Empty";
+        }
+
+        @Override
+        public int play(final GameBoard board, final Mark turn) {
+            return board.nextEmptyPosition(0);
+        }
+    }
+
+}
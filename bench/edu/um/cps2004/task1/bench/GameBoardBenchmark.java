@@ -0,0 +1,256 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.catalog.MoveStatus;
+import edu.um.cps2004.task1.engine.BoardSnapshot;
+import edu.um.cps2004.task1.engine.GameBoard;
+
+/**
+ * JMH benchmarks of the <code>GameBoard</code> hot paths, with the original
+ * <code>Mark[]</code> representation (<code>ArrayBoard</code>) as a baseline
+ * where it makes sense.
+ *
+ * Each benchmark runs on the classic 3x3 board and on a 15x15, five in a row
+ * board (see <code>shape</code>), except the <code>array</code> ones, which
+ * always play 3x3 (compare them with the 3/3 results). The read-only benchmarks work on a board in
+ * the middle of a game, with no line complete. <code>playAtPosition</code>
+ * cannot be measured on its own (a position may only be played once), so it
+ * plays one move on a new board: subtract <code>newBoard</code> for the cost
+ * of the move itself. The <code>Occupied</code> benchmarks check a bad move,
+ * with and without an exception.
+ *
+ * Run with the GC profiler for allocation rates (B/op), either through maven
+ * (see the pom) or with <code>main</code>.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBoardBenchmark {
+
+    /**
+     * The board to play on, as <i>side</i>/<i>winLength</i>.
+     */
+    @Param({ "3/3", "15/5" })
+    public String shape;
+
+    private int side;
+
+    private int winLength;
+
+    /**
+     * The moves of a game which X wins on the last move (on the main
+     * diagonal, O plays along the top row).
+     */
+    private int[] game;
+
+    /**
+     * A board in the middle of <code>game</code> (all but the last two moves).
+     */
+    private GameBoard board;
+
+    /**
+     * The classic game (the 3/3 <code>game</code>), for the old
+     * representation.
+     */
+    private static final int[] CLASSIC_GAME = { 0, 1, 4, 2, 8 };
+
+    /**
+     * The same position as the 3/3 <code>board</code>, on the old
+     * representation.
+     */
+    private ArrayBoard arrayBoard;
+
+    /**
+     * Scratch space for <code>getEmptyPositions(int[])</code>.
+     */
+    private int[] positions;
+
+    /**
+     * An empty position on <code>board</code>.
+     */
+    private int emptyPosition;
+
+    /**
+     * Sets up the boards.
+     *
+     * @throws Exception
+     *             if a move is rejected (it never is)
+     */
+    @Setup
+    public void setUp() throws Exception {
+        final int slash = shape.indexOf('/');
+        side = Integer.parseInt(shape.substring(0, slash));
+        winLength = Integer.parseInt(shape.substring(slash + 1));
+
+        game = new int[2 * winLength - 1];
+        for (int i = 0; i < winLength; i++) {
+            game[2 * i] = i * (side + 1);
+            if (i < winLength - 1) {
+                game[2 * i + 1] = i + 1;
+            }
+        }
+
+        board = new GameBoard(side, winLength);
+        arrayBoard = new ArrayBoard();
+        Mark mark = Mark.X;
+        for (int i = 0; i < game.length - 2; i++) {
+            board.playAtPosition(game[i], mark);
+            mark = (mark == Mark.X) ? Mark.O : Mark.X;
+        }
+        mark = Mark.X;
+        for (int i = 0; i < CLASSIC_GAME.length - 2; i++) {
+            arrayBoard.play(CLASSIC_GAME[i], mark);
+            mark = (mark == Mark.X) ? Mark.O : Mark.X;
+        }
+        positions = new int[board.getBoardSize()];
+        emptyPosition = board.getBoardSize() - 1;
+    }
+
+    @Benchmark
+    public boolean isWinningPosition() {
+        return board.isWinningPosition();
+    }
+
+    @Benchmark
+    public boolean arrayIsWinningPosition() {
+        return arrayBoard.isWinningPosition();
+    }
+
+    @Benchmark
+    public GameBoard newBoard() {
+        return new GameBoard(side, winLength);
+    }
+
+    @Benchmark
+    public GameBoard playAtPosition() throws Exception {
+        final GameBoard fresh = new GameBoard(side, winLength);
+        fresh.playAtPosition(game[0], Mark.X);
+        return fresh;
+    }
+
+    @Benchmark
+    public List<Integer> getEmptyPositionsList() {
+        return board.getEmptyPositions();
+    }
+
+    @Benchmark
+    public int getEmptyPositionsArray() {
+        return board.getEmptyPositions(positions);
+    }
+
+    @Benchmark
+    public Mark[] getBoardState() {
+        return board.getBoardState();
+    }
+
+    @Benchmark
+    public BoardSnapshot getSnapshot() {
+        return board.getSnapshot();
+    }
+
+    @Benchmark
+    public List<Integer> getSnapshotEmptyPositions() {
+        return board.getSnapshot().getEmptyPositions();
+    }
+
+    @Benchmark
+    public void validatePlayTentative() throws Exception {
+        board.validatePlayTentative(emptyPosition);
+    }
+
+    @Benchmark
+    public Exception validatePlayTentativeOccupied() {
+        try {
+            board.validatePlayTentative(game[0]);
+            return null;
+        } catch (final Exception e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public MoveStatus checkPlayTentativeOccupied() {
+        return board.checkPlayTentative(game[0]);
+    }
+
+    @Benchmark
+    public boolean isValidPlayOccupied() {
+        return board.isValidPlay(game[0]);
+    }
+
+    @Benchmark
+    public int fullGame() throws Exception {
+        final GameBoard fresh = new GameBoard(side, winLength);
+        int wins = 0;
+        Mark mark = Mark.X;
+        for (final int position : game) {
+            fresh.playAtPosition(position, mark);
+            if (fresh.isWinningPosition()) {
+                wins++;
+            }
+            mark = (mark == Mark.X) ? Mark.O : Mark.X;
+        }
+        return wins;
+    }
+
+    @Benchmark
+    public int arrayFullGame() {
+        final ArrayBoard fresh = new ArrayBoard();
+        int wins = 0;
+        Mark mark = Mark.X;
+        for (final int position : CLASSIC_GAME) {
+            fresh.play(position, mark);
+            if (fresh.isWinningPosition()) {
+                wins++;
+            }
+            mark = (mark == Mark.X) ? Mark.O : Mark.X;
+        }
+        return wins;
+    }
+
+    /**
+     * Runs the board, batch and engine benchmarks with the GC profiler, e.g.
+     * from the IDE.
+     *
+     * @param args
+     *            ignored
+     * @throws RunnerException
+     *             if JMH fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GameBoardBenchmark.class.getSimpleName())
+                .include(EngineBenchmark.class.getSimpleName())
+                .include(BoardBatchBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.analytics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.oracle.PerfectPlayOracle;
+import edu.um.cps2004.task1.record.GameRecord;
+import edu.um.cps2004.task1.record.GameRecordReader;
+
+/**
+ * Analyses archives of game records (files written by a
+ * <code>GameRecordWriter</code>): per robot results by mark, openings, game
+ * lengths and blunders (see <code>ArchiveReport</code>).
+ *
+ * The files are cut into chunks of about <code>CHUNK_SIZE</code> bytes, at
+ * block boundaries, and the chunks are memory mapped and scanned in parallel
+ * on a fork/join pool. Each chunk is decoded into a single reused
+ * <code>GameRecord</code> and counted straight into the primitive arrays of
+ * a report (classic positions by their base 3 code, maintained move by move),
+ * so nothing is allocated per game; the reports of the chunks are merged as
+ * the tasks finish. Blunders are judged by the
+ * <code>PerfectPlayOracle</code>.
+ *
+ * May be run from the command line, with the files to analyse as arguments:
+ *
+ * <pre>
+ * java edu.um.cps2004.task1.analytics.ArchiveAnalyzer games-*.rec
+ * </pre>
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class ArchiveAnalyzer {
+
+    /**
+     * The size of the chunks scanned by a single task, in bytes.
+     */
+    static final long CHUNK_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * Judges the moves.
+     */
+    private final PerfectPlayOracle oracle;
+
+    /**
+     * Creates an analyzer using the shared oracle.
+     */
+    public ArchiveAnalyzer() {
+        this(PerfectPlayOracle.getInstance());
+    }
+
+    /**
+     * Creates an analyzer using the given oracle (e.g. one loaded from a
+     * file).
+     *
+     * @param oracle
+     *            The oracle, may not be null
+     */
+    public ArchiveAnalyzer(final PerfectPlayOracle oracle) {
+        if (oracle == null) {
+            throw new IllegalArgumentException("oracle cannot be null");
+        }
+        this.oracle = oracle;
+    }
+
+    /**
+     * Analyses files on a new pool with one thread per core.
+     *
+     * @param files
+     *            The game record files, may not be null
+     * @return The report, never null
+     * @throws IOException
+     *             If a file cannot be read, or is not a game record file
+     */
+    public ArchiveReport analyze(final List<Path> files) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return analyze(files, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Analyses files on the given pool, waiting for it to finish.
+     *
+     * @param files
+     *            The game record files, may not be null
+     * @param pool
+     *            The pool to scan the files on, may not be null
+     * @return The report, never null
+     * @throws IOException
+     *             If a file cannot be read, or is not a game record file
+     */
+    public ArchiveReport analyze(final List<Path> files, final ForkJoinPool pool) throws IOException {
+        if ((files == null) || (pool == null)) {
+            throw new IllegalArgumentException("files and pool may not be null");
+        }
+        final List<FileChannel> channels = new ArrayList<FileChannel>();
+        try {
+            final List<Chunk> chunks = new ArrayList<Chunk>();
+            long ignoredBytes = 0;
+            for (final Path file : files) {
+                final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                channels.add(channel);
+                ignoredBytes += split(channel, chunks);
+            }
+            final ArchiveReport report;
+            if (chunks.isEmpty()) {
+                report = new ArchiveReport();
+            } else {
+                try {
+                    report = pool.invoke(new Scan(chunks, 0, chunks.size()));
+                } catch (final UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            report.addIgnoredBytes(ignoredBytes);
+            return report;
+        } finally {
+            for (final FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Cuts a file into chunks, at block boundaries.
+     *
+     * @return The number of bytes at the end of the file which are not part
+     *         of a complete block
+     */
+    private static long split(final FileChannel channel, final List<Chunk> chunks) throws IOException {
+        long start = 0;
+        long offset = 0;
+        long next;
+        while ((next = GameRecordReader.skipBlock(channel, offset)) >= 0) {
+            offset = next;
+            if (offset - start >= CHUNK_SIZE) {
+                chunks.add(new Chunk(channel, start, offset));
+                start = offset;
+            }
+        }
+        if (offset > start) {
+            chunks.add(new Chunk(channel, start, offset));
+        }
+        return channel.size() - offset;
+    }
+
+    /**
+     * Scans a chunk into a report.
+     */
+    private ArchiveReport scan(final Chunk chunk) throws IOException {
+        final MappedByteBuffer mapped = chunk.channel.map(FileChannel.MapMode.READ_ONLY, chunk.start,
+                chunk.end - chunk.start);
+        final ArchiveReport report = new ArchiveReport();
+        final GameRecord record = new GameRecord();
+        final GameRecordReader reader = new GameRecordReader(mapped);
+        while (reader.next(record)) {
+            count(record, report);
+        }
+        return report;
+    }
+
+    /**
+     * Counts a game into a report.
+     */
+    private void count(final GameRecord record, final ArchiveReport report) {
+        final int moveCount = record.getMoveCount();
+        final int x = report.robotIndex(record.getPlayerX());
+        final int o = report.robotIndex(record.getPlayerO());
+        report.addGame(moveCount, record.getDisqualification());
+        report.addStat(x, ArchiveReport.GAMES_X, 1);
+        report.addStat(o, ArchiveReport.GAMES_O, 1);
+        if (record.getWinner() == null) {
+            report.addStat(x, ArchiveReport.DRAWS_X, 1);
+            report.addStat(o, ArchiveReport.DRAWS_O, 1);
+        } else if (record.getWinner() == Mark.X) {
+            report.addStat(x, ArchiveReport.WINS_X, 1);
+        } else {
+            report.addStat(o, ArchiveReport.WINS_O, 1);
+        }
+
+        if ((record.getSide() != 3) || (record.getWinLength() != 3) || (moveCount == 0)) {
+            return;
+        }
+        report.addOpening(record.getMove(0));
+        int xBits = 0;
+        int oBits = 0;
+        for (int i = 0; i < moveCount; i++) {
+            final int position = record.getMove(i);
+            final Mark turn = record.getMark(i);
+            final int code = PerfectPlayOracle.codeOf(xBits, oBits);
+            final boolean blunder = oracle.isBlunder(code, turn, position);
+            report.addVisit((code << 1) | ((turn == Mark.X) ? 0 : 1), blunder);
+            final int mover = (turn == Mark.X) ? x : o;
+            report.addStat(mover, ArchiveReport.MOVES, 1);
+            if (blunder) {
+                report.addStat(mover, ArchiveReport.BLUNDERS, 1);
+            }
+            if (turn == Mark.X) {
+                xBits |= 1 << position;
+            } else {
+                oBits |= 1 << position;
+            }
+        }
+    }
+
+    /**
+     * A part of a file, made up of whole blocks.
+     */
+    private static final class Chunk {
+
+        private final FileChannel channel;
+
+        private final long start, end;
+
+        private Chunk(final FileChannel channel, final long start, final long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Scans a range of chunks, splitting it in two until a single chunk is
+     * left, and merges the reports.
+     */
+    private final class Scan extends RecursiveTask<ArchiveReport> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+
+        private final int from, to;
+
+        private Scan(final List<Chunk> chunks, final int from, final int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArchiveReport compute() {
+            if (to - from == 1) {
+                try {
+                    return scan(chunks.get(from));
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            final int middle = (from + to) >>> 1;
+            final Scan left = new Scan(chunks, from, middle);
+            left.fork();
+            final ArchiveReport right = new Scan(chunks, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Analyses the files given as arguments, and prints the report.
+     *
+     * @param args
+     *            The game record files
+     * @throws IOException
+     *             If a file cannot be read, or is not a game record file
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ArchiveAnalyzer <game record file>...");
+            return;
+        }
+        final List<Path> files = new ArrayList<Path>();
+        for (final String arg : args) {
+            files.add(Paths.get(arg));
+        }
+        final long start = System.nanoTime();
+        final ArchiveReport report = new ArchiveAnalyzer().analyze(files);
+        final long elapsed = System.nanoTime() - start;
+        System.out.print(report);
+        System.out.printf("analysed %d games in %.2f s%n", report.getGames(), elapsed / 1e9);
+    }
+
+}
@@ -0,0 +1,507 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.um.cps2004.task1.catalog.Disqualification;
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.oracle.PerfectPlayOracle;
+
+/**
+ * The figures gathered by an <code>ArchiveAnalyzer</code> over a set of game
+ * record files.
+ *
+ * Everything is kept in primitive arrays: per robot (indexed by the order in
+ * which robots were first seen), and for the classic 3x3 board per position,
+ * indexed like the <code>PerfectPlayOracle</code> table, i.e. by
+ * <code>code * 2 + (X to move ? 0 : 1)</code> where <i>code</i> is the base 3
+ * encoding of the board. Reports may be merged, e.g. to add up parts of an
+ * archive analysed on different threads. Not thread safe.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class ArchiveReport {
+
+    /* Per robot figures, STATS longs per robot */
+    static final int GAMES_X = 0, WINS_X = 1, DRAWS_X = 2, GAMES_O = 3, WINS_O = 4, DRAWS_O = 5,
+            BLUNDERS = 6, MOVES = 7;
+    private static final int STATS = 8;
+
+    /**
+     * The number of positions (with the mark to move) on the classic board.
+     */
+    static final int POSITIONS = PerfectPlayOracle.CODES * 2;
+
+    /**
+     * The robots, in the order first seen.
+     */
+    private final List<String> robots = new ArrayList<String>();
+
+    /**
+     * The index of each robot in <code>robots</code> (and <code>stats</code>).
+     */
+    private final Map<String, Integer> robotIndex = new HashMap<String, Integer>();
+
+    /**
+     * The figures of each robot, <code>STATS</code> per robot.
+     */
+    private long[] stats = new long[16 * STATS];
+
+    /**
+     * The number of games, of moves in them, and of games on the classic
+     * board.
+     */
+    private long games, moves, classicGames;
+
+    /**
+     * The number of games lost by disqualification, for each reason.
+     */
+    private final long[] disqualifications = new long[Disqualification.values().length];
+
+    /**
+     * The number of classic games opened at each position.
+     */
+    private final long[] openings = new long[9];
+
+    /**
+     * How many times each classic position was reached (with a move played
+     * from it), and how many of those moves were blunders. Only allocated
+     * once a classic game is seen.
+     */
+    private long[] visits, blunders;
+
+    /**
+     * Bytes at the end of files which were not complete blocks, so ignored.
+     */
+    private long ignoredBytes;
+
+    /**
+     * Gets the index of a robot, adding it if it was not seen yet.
+     */
+    int robotIndex(final String robot) {
+        final Integer index = robotIndex.get(robot);
+        if (index != null) {
+            return index;
+        }
+        final int newIndex = robots.size();
+        robots.add(robot);
+        robotIndex.put(robot, newIndex);
+        if ((newIndex + 1) * STATS > stats.length) {
+            stats = Arrays.copyOf(stats, stats.length * 2);
+        }
+        return newIndex;
+    }
+
+    /**
+     * Adds to a figure of a robot.
+     */
+    void addStat(final int robot, final int stat, final long amount) {
+        stats[robot * STATS + stat] += amount;
+    }
+
+    /**
+     * Counts one game (the per robot and per position figures are added
+     * separately).
+     */
+    void addGame(final int moveCount, final Disqualification disqualification) {
+        games++;
+        moves += moveCount;
+        if (disqualification != null) {
+            disqualifications[disqualification.ordinal()]++;
+        }
+    }
+
+    /**
+     * Counts the opening of a classic game.
+     */
+    void addOpening(final int position) {
+        classicGames++;
+        openings[position]++;
+    }
+
+    /**
+     * Counts a move played from a classic position.
+     */
+    void addVisit(final int index, final boolean blunder) {
+        if (visits == null) {
+            visits = new long[POSITIONS];
+            blunders = new long[POSITIONS];
+        }
+        visits[index]++;
+        if (blunder) {
+            blunders[index]++;
+        }
+    }
+
+    /**
+     * Counts bytes which were not analysed.
+     */
+    void addIgnoredBytes(final long bytes) {
+        ignoredBytes += bytes;
+    }
+
+    /**
+     * Adds the figures of another report to this one.
+     *
+     * @param other
+     *            The report to add, may not be null
+     * @return This report
+     */
+    ArchiveReport merge(final ArchiveReport other) {
+        for (int i = 0; i < other.robots.size(); i++) {
+            final int index = robotIndex(other.robots.get(i));
+            for (int stat = 0; stat < STATS; stat++) {
+                stats[index * STATS + stat] += other.stats[i * STATS + stat];
+            }
+        }
+        games += other.games;
+        moves += other.moves;
+        classicGames += other.classicGames;
+        add(disqualifications, other.disqualifications);
+        add(openings, other.openings);
+        if (other.visits != null) {
+            if (visits == null) {
+                visits = new long[POSITIONS];
+                blunders = new long[POSITIONS];
+            }
+            add(visits, other.visits);
+            add(blunders, other.blunders);
+        }
+        ignoredBytes += other.ignoredBytes;
+        return this;
+    }
+
+    /**
+     * Adds an array to another, element by element.
+     */
+    private static void add(final long[] to, final long[] from) {
+        for (int i = 0; i < to.length; i++) {
+            to[i] += from[i];
+        }
+    }
+
+    /**
+     * Gets the number of games analysed.
+     *
+     * @return The number of games, never negative
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Gets the number of moves in all the games analysed.
+     *
+     * @return The number of moves, never negative
+     */
+    public long getMoves() {
+        return moves;
+    }
+
+    /**
+     * Gets the average number of moves per game.
+     *
+     * @return The average game length, 0 if there are no games
+     */
+    public double getAverageLength() {
+        return (games == 0) ? 0 : (double) moves / games;
+    }
+
+    /**
+     * Gets the number of games played on the classic 3x3 board (only these
+     * have opening and blunder figures).
+     *
+     * @return The number of classic games, never negative
+     */
+    public long getClassicGames() {
+        return classicGames;
+    }
+
+    /**
+     * Gets the number of games lost by disqualification, for a reason.
+     *
+     * @param reason
+     *            The reason, may not be null
+     * @return The number of games, never negative
+     */
+    public long getDisqualifications(final Disqualification reason) {
+        return disqualifications[reason.ordinal()];
+    }
+
+    /**
+     * Gets the names of the robot masters seen, in the order first seen.
+     *
+     * @return An unmodifiable list of names, never null
+     */
+    public List<String> getRobots() {
+        return Collections.unmodifiableList(robots);
+    }
+
+    /**
+     * Gets a figure of a robot.
+     */
+    private long stat(final String robot, final int stat) {
+        final Integer index = robotIndex.get(robot);
+        return (index == null) ? 0 : stats[index * STATS + stat];
+    }
+
+    /**
+     * Gets the number of games a robot played with a mark.
+     *
+     * @param robot
+     *            The name of the robot master
+     * @param mark
+     *            The mark, may not be null
+     * @return The number of games, 0 for a robot not seen
+     */
+    public long getGames(final String robot, final Mark mark) {
+        return stat(robot, (mark == Mark.X) ? GAMES_X : GAMES_O);
+    }
+
+    /**
+     * Gets the number of games a robot won with a mark (including those won
+     * by the disqualification of the opponent).
+     *
+     * @param robot
+     *            The name of the robot master
+     * @param mark
+     *            The mark, may not be null
+     * @return The number of games, 0 for a robot not seen
+     */
+    public long getWins(final String robot, final Mark mark) {
+        return stat(robot, (mark == Mark.X) ? WINS_X : WINS_O);
+    }
+
+    /**
+     * Gets the number of games a robot drew with a mark.
+     *
+     * @param robot
+     *            The name of the robot master
+     * @param mark
+     *            The mark, may not be null
+     * @return The number of games, 0 for a robot not seen
+     */
+    public long getDraws(final String robot, final Mark mark) {
+        return stat(robot, (mark == Mark.X) ? DRAWS_X : DRAWS_O);
+    }
+
+    /**
+     * Gets the number of games a robot lost with a mark.
+     *
+     * @param robot
+     *            The name of the robot master
+     * @param mark
+     *            The mark, may not be null
+     * @return The number of games, 0 for a robot not seen
+     */
+    public long getLosses(final String robot, final Mark mark) {
+        return getGames(robot, mark) - getWins(robot, mark) - getDraws(robot, mark);
+    }
+
+    /**
+     * Gets the fraction of the games with a mark which a robot won.
+     *
+     * @param robot
+     *            The name of the robot master
+     * @param mark
+     *            The mark, may not be null
+     * @return The win rate, 0..1 (0 if it played no such games)
+     */
+    public double getWinRate(final String robot, final Mark mark) {
+        final long played = getGames(robot, mark);
+        return (played == 0) ? 0 : (double) getWins(robot, mark) / played;
+    }
+
+    /**
+     * Gets the number of moves a robot played on the classic board.
+     *
+     * @param robot
+     *            The name of the robot master
+     * @return The number of moves, 0 for a robot not seen
+     */
+    public long getClassicMoves(final String robot) {
+        return stat(robot, MOVES);
+    }
+
+    /**
+     * Gets the number of blunders (moves turning a win into a draw or loss,
+     * or a draw into a loss) a robot played on the classic board.
+     *
+     * @param robot
+     *            The name of the robot master
+     * @return The number of blunders, 0 for a robot not seen
+     */
+    public long getBlunders(final String robot) {
+        return stat(robot, BLUNDERS);
+    }
+
+    /**
+     * Gets the number of classic games opened at a position.
+     *
+     * @param position
+     *            The position, 0..8
+     * @return The number of games, never negative
+     */
+    public long getOpenings(final int position) {
+        return openings[position];
+    }
+
+    /**
+     * Gets the number of times a move was played from a classic position.
+     *
+     * @param code
+     *            The base 3 code of the position (see
+     *            <code>PerfectPlayOracle.codeOf</code>)
+     * @param turn
+     *            The mark to move, may not be null
+     * @return The number of moves, never negative
+     */
+    public long getVisits(final int code, final Mark turn) {
+        return (visits == null) ? 0 : visits[indexOf(code, turn)];
+    }
+
+    /**
+     * Gets the number of blunders played from a classic position.
+     *
+     * @param code
+     *            The base 3 code of the position
+     * @param turn
+     *            The mark to move, may not be null
+     * @return The number of blunders, never negative
+     */
+    public long getBlunders(final int code, final Mark turn) {
+        return (blunders == null) ? 0 : blunders[indexOf(code, turn)];
+    }
+
+    /**
+     * Gets the classic positions where most blunders were played.
+     *
+     * @param n
+     *            The most positions wanted
+     * @return Up to <i>n</i> positions, most blundered first, each as
+     *         <code>code * 2 + (X to move ? 0 : 1)</code>; only positions with
+     *         blunders are included
+     */
+    public int[] getMostBlundered(final int n) {
+        if (blunders == null) {
+            return new int[0];
+        }
+        // an insertion sort of the best n so far, n is small
+        final int[] top = new int[Math.max(0, n)];
+        int count = 0;
+        for (int index = 0; index < POSITIONS; index++) {
+            if ((blunders[index] == 0) || (top.length == 0)
+                    || ((count == top.length) && (blunders[top[count - 1]] >= blunders[index]))) {
+                continue;
+            }
+            int at = Math.min(count, top.length - 1);
+            while ((at > 0) && (blunders[top[at - 1]] < blunders[index])) {
+                top[at] = top[at - 1];
+                at--;
+            }
+            top[at] = index;
+            if (count < top.length) {
+                count++;
+            }
+        }
+        return Arrays.copyOf(top, count);
+    }
+
+    /**
+     * Gets the number of bytes which were not analysed because they were not
+     * complete blocks (e.g. the end of a file being written when it was
+     * analysed, or cut short by a crash).
+     *
+     * @return The number of bytes, never negative
+     */
+    public long getIgnoredBytes() {
+        return ignoredBytes;
+    }
+
+    /**
+     * Gets the index of a classic position in the per position arrays.
+     */
+    private static int indexOf(final int code, final Mark turn) {
+        if ((code < 0) || (code >= PerfectPlayOracle.CODES)) {
+            throw new IllegalArgumentException("Not a position code: " + code);
+        }
+        return (code << 1) | ((turn == Mark.X) ? 0 : 1);
+    }
+
+    /**
+     * Draws a classic position, a row at a time, '.' for empty.
+     */
+    private static String drawPosition(final int code) {
+        final StringBuilder sb = new StringBuilder(11);
+        int rest = code;
+        for (int position = 0; position < 9; position++) {
+            if ((position > 0) && (position % 3 == 0)) {
+                sb.append('/');
+            }
+            sb.append(".XO".charAt(rest % 3));
+            rest /= 3;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Displays the report: totals, each robot's results by mark, the
+     * openings and the positions most blundered in.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("games: %d, average length: %.2f moves, classic games: %d%n", games,
+                getAverageLength(), classicGames));
+        sb.append("disqualifications:");
+        for (final Disqualification reason : Disqualification.values()) {
+            sb.append(' ').append(reason).append('=').append(disqualifications[reason.ordinal()]);
+        }
+        sb.append(String.format("%n%-24s %10s %7s %7s %10s %7s %7s %9s%n", "Robot", "as X", "W%", "L%",
+                "as O", "W%", "L%", "blunder%"));
+        for (final String robot : robots) {
+            final long moved = getClassicMoves(robot);
+            sb.append(String.format("%-24s %10d %7.2f %7.2f %10d %7.2f %7.2f %9.3f%n", robot,
+                    getGames(robot, Mark.X), percent(getWins(robot, Mark.X), getGames(robot, Mark.X)),
+                    percent(getLosses(robot, Mark.X), getGames(robot, Mark.X)), getGames(robot, Mark.O),
+                    percent(getWins(robot, Mark.O), getGames(robot, Mark.O)),
+                    percent(getLosses(robot, Mark.O), getGames(robot, Mark.O)), percent(getBlunders(robot), moved)));
+        }
+        if (classicGames > 0) {
+            sb.append("openings (% of classic games):").append(String.format("%n"));
+            for (int row = 0; row < 3; row++) {
+                for (int column = 0; column < 3; column++) {
+                    sb.append(String.format(" %6.2f", percent(openings[row * 3 + column], classicGames)));
+                }
+                sb.append(String.format("%n"));
+            }
+            sb.append("most blundered positions:").append(String.format("%n"));
+            for (final int index : getMostBlundered(10)) {
+                sb.append(String.format(" %s %s to move: %d blunders in %d moves%n", drawPosition(index >> 1),
+                        ((index & 1) == 0) ? Mark.X : Mark.O, blunders[index], visits[index]));
+            }
+        }
+        if (ignoredBytes > 0) {
+            sb.append("ignored (incomplete) bytes: ").append(ignoredBytes).append(String.format("%n"));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets a part as a percentage of a whole, 0 if the whole is 0.
+     */
+    private static double percent(final long part, final long whole) {
+        return (whole == 0) ? 0 : 100.0 * part / whole;
+    }
+
+}
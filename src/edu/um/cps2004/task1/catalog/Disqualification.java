@@ -0,0 +1,32 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.catalog;
+
+
+/**
+ * The reasons for which the engine disqualifies a robot (which then loses the
+ * game).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ */
+public enum Disqualification {
+	
+	/** The robot returned a position which is not on the board. */
+	OUT_OF_RANGE,
+	
+	/** The robot returned a position which is already occupied. */
+	OCCUPIED,
+	
+	/** The robot threw an exception instead of returning a position. */
+	ROBOT_ERROR,
+	
+	/** The robot changed the game board itself (instead of just returning a position). */
+	TAMPERING,
+	
+	/** The robot took longer than its time budget (per move or per game). */
+	TIMEOUT;
+
+}
@@ -0,0 +1,26 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.catalog;
+
+
+/**
+ * The outcome of checking a tentative move, without throwing (see
+ * <code>GameBoard.checkPlayTentative</code>).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ */
+public enum MoveStatus {
+	
+	/** The position is on the board and empty, the move may be played. */
+	VALID,
+	
+	/** The position is not on the board. */
+	OUT_OF_RANGE,
+	
+	/** The position is already occupied. */
+	OCCUPIED;
+
+}
@@ -0,0 +1,35 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * Picks the moves of one side for a whole <code>BoardBatch</code> at once, in
+ * a <code>SimulationEngine</code>. The batch counterpart of a robot.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public interface BatchPolicy {
+
+    /**
+     * Picks a move on every board still being played.
+     *
+     * @param batch
+     *            The boards, not to be changed. <b>Never null</b>
+     * @param turn
+     *            The mark to play. <b>Never null</b>
+     * @param playing
+     *            Which boards are still being played (the rest are over and
+     *            are to be left alone)
+     * @param positions
+     *            Set, for each board still being played, to the (empty)
+     *            position to play
+     */
+    void choose(BoardBatch batch, Mark turn, boolean[] playing, int[] positions);
+
+}
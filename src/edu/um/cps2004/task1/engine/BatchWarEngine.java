@@ -0,0 +1,566 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import edu.um.cps2004.task1.catalog.Disqualification;
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.exception.PositionAlreadyOccupiedException;
+import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
+import edu.um.cps2004.task1.metrics.Metrics;
+import edu.um.cps2004.task1.metrics.RobotMetrics;
+import edu.um.cps2004.task1.player.TTTPlayer;
+import edu.um.cps2004.task1.record.GameRecord;
+import edu.um.cps2004.task1.record.GameRecordSink;
+import edu.um.cps2004.task1.robot.SeedableRobot;
+import edu.um.cps2004.task1.robot.TTTRobot;
+import edu.um.cps2004.task1.robot.TimedRobot;
+
+/**
+ * A war engine which plays many games between the same two robots.
+ *
+ * <code>play()</code> plays a single game, <code>playBatch(n)</code> plays
+ * <i>n</i> of them, alternating which mark starts, and returns the aggregated
+ * results. The same board (and players) are reused from one game to the
+ * next, so a game costs no more than the robots' own moves.
+ *
+ * The rules of engagement are those of <code>TTTRobot.play</code>: a robot
+ * returning a position which is out of range, or already occupied, loses the
+ * game. So does a robot which throws an exception (or an error, short of
+ * the virtual machine failing, see <code>rethrowIfFatal</code>), or which
+ * plays on the game board itself (instead of returning its position), or
+ * which runs out of time under the engine's <code>TimeControl</code>
+ * (unlimited by default).
+ *
+ * If a <code>GameRecordSink</code> is set, every game is recorded (moves,
+ * the time each took, and the result) and handed to it as it ends. Games,
+ * moves, robot latencies and disqualifications are counted in the
+ * <code>Metrics</code> when they are enabled.
+ *
+ * Once a seed is set (<code>setSeed</code>), every game gets a seed of its
+ * own, derived from it and the number of games played since, and robots
+ * implementing <code>SeedableRobot</code> are seeded from it before the game
+ * starts. The game's seed is kept in its record, so that (with the moves) a
+ * <code>GameReplay</code> can play it again. Seeding a game costs a few
+ * multiplications, so it may be left on.
+ *
+ * Not thread safe, an engine (and its board) belongs to a single thread.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public class BatchWarEngine extends TTTWarEngine {
+
+    /**
+     * The mark which plays first in the next game.
+     */
+    private Mark startingMark = Mark.X;
+
+    /**
+     * The winner of the last game, null if drawn (or no game played yet).
+     */
+    private TTTPlayer winner;
+
+    /**
+     * Why the loser of the last game was disqualified, null if it was not.
+     */
+    private Disqualification disqualification;
+
+    /**
+     * The time limits of the robots.
+     */
+    private TimeControl timeControl = TimeControl.UNLIMITED;
+
+    /**
+     * The time used in the current game by X and by O, in nanoseconds (only
+     * kept under a time control).
+     */
+    private long usedX, usedO;
+
+    /**
+     * The position returned by the robot in the last timed move.
+     */
+    private int timedPosition;
+
+    /**
+     * Receives the record of each game, null if games are not recorded.
+     */
+    private GameRecordSink recordSink;
+
+    /**
+     * The record of the current game (only kept if there is a sink).
+     */
+    private GameRecord gameRecord;
+
+    /**
+     * Whether the games are seeded.
+     */
+    private boolean seeded;
+
+    /**
+     * The seed set, from which the seeds of the games are derived.
+     */
+    private long seed;
+
+    /**
+     * The number of games played since the seed was set.
+     */
+    private long seededGames;
+
+    /**
+     * The seed of the last game (if seeded).
+     */
+    private long gameSeed;
+
+    /**
+     * The metrics of the robots, null unless metrics are enabled.
+     */
+    private RobotMetrics metricsX, metricsO;
+
+    /**
+     * The time taken by the robot in the last move, in nanoseconds (only
+     * kept under a time control, or when recording or collecting metrics).
+     */
+    private long moveNanos;
+
+    /**
+     * When recording (or collecting metrics) without a time control, the time the last move ended
+     * (and so the next one started). One clock read per move, instead of
+     * two: the engine's own bookkeeping between moves, a few nanoseconds, is
+     * counted in the next move.
+     */
+    private long lastMoveEnd;
+
+    /**
+     * Creates an engine for the classic 3x3 board.
+     *
+     * @param robotX
+     *            The robot playing X, may not be null
+     * @param robotO
+     *            The robot playing O, may not be null
+     */
+    public BatchWarEngine(final TTTRobot robotX, final TTTRobot robotO) {
+        super(robotX, robotO);
+        robotsChanged();
+    }
+
+    /**
+     * Creates an engine for a larger board.
+     *
+     * @param robotX
+     *            The robot playing X, may not be null
+     * @param robotO
+     *            The robot playing O, may not be null
+     * @param side
+     *            The number of rows (and columns) of the board
+     * @param winLength
+     *            The number of marks in a row needed to win
+     */
+    public BatchWarEngine(final TTTRobot robotX, final TTTRobot robotO, final int side, final int winLength) {
+        super(robotX, robotO, side, winLength);
+        robotsChanged();
+    }
+
+    /**
+     * Plays one game, on a cleared board, starting with
+     * <code>getStartingMark()</code>. The outcome is available from
+     * <code>getWinner()</code> and <code>getDisqualification()</code>.
+     */
+    @Override
+    public void play() {
+        board.clear();
+        winner = null;
+        disqualification = null;
+        usedX = 0;
+        usedO = 0;
+        if (seeded) {
+            gameSeed = deriveSeed(seed, seededGames++);
+            seedRobots(gameSeed, playerX.getRobot(), playerO.getRobot());
+        }
+        if ((recordSink == null) && !Metrics.ENABLED) {
+            playGame();
+            return;
+        }
+        if (recordSink != null) {
+            gameRecord.clear();
+            gameRecord.setShape(board.getSide(), board.getWinLength());
+            gameRecord.setStartingMark(startingMark);
+            gameRecord.setTimestamp(System.currentTimeMillis());
+            if (seeded) {
+                gameRecord.setSeed(gameSeed);
+            }
+        }
+        lastMoveEnd = System.nanoTime();
+        playGame();
+        if (recordSink != null) {
+            gameRecord.setResult((winner == null) ? null : winner.getMark(), disqualification);
+            recordSink.record(gameRecord);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.gamePlayed(disqualification);
+        }
+    }
+
+    /**
+     * Plays the game itself, on the cleared board.
+     */
+    private void playGame() {
+        TTTPlayer current = (startingMark == Mark.X) ? playerX : playerO;
+        while (!board.isFull()) {
+            disqualification = playTurn(current);
+            if (disqualification != null) {
+                winner = opponentOf(current);
+                return;
+            }
+            if (board.isWinningPosition()) {
+                winner = current;
+                return;
+            }
+            current = opponentOf(current);
+        }
+    }
+
+    /**
+     * Plays a number of games, alternating the starting mark from one game
+     * to the next (beginning with <code>getStartingMark()</code>).
+     *
+     * @param games
+     *            The number of games to play, not negative
+     * @return The aggregated results of the games, never null
+     */
+    public MatchResult playBatch(final int games) {
+        if (games < 0) {
+            throw new IllegalArgumentException("games may not be negative: " + games);
+        }
+        final MatchResult result = new MatchResult();
+        for (int game = 0; game < games; game++) {
+            play();
+            result.record((winner == null) ? null : winner.getMark(), disqualification != null);
+            startingMark = (startingMark == Mark.X) ? Mark.O : Mark.X;
+        }
+        return result;
+    }
+
+    /**
+     * Asks a player's robot for its move and plays it.
+     *
+     * @param player
+     *            The player whose turn it is
+     * @return null if the move was played, otherwise the reason the player
+     *         is disqualified
+     */
+    private Disqualification playTurn(final TTTPlayer player) {
+        final int movesBefore = board.getMovesPlayed();
+        final int position;
+        if (timeControl.isLimited()) {
+            final Disqualification late = playTimed(player);
+            if (late != null) {
+                return late;
+            }
+            position = timedPosition;
+        } else {
+            try {
+                position = player.getRobot().play(board, player.getMark());
+            } catch (final Throwable e) {
+                rethrowIfFatal(e);
+                if (Metrics.ENABLED) {
+                    Metrics.robotError(e);
+                }
+                return Disqualification.ROBOT_ERROR;
+            }
+            if ((recordSink != null) || Metrics.ENABLED) {
+                final long end = System.nanoTime();
+                moveNanos = end - lastMoveEnd;
+                lastMoveEnd = end;
+            }
+        }
+        if (board.getMovesPlayed() != movesBefore) {
+            return Disqualification.TAMPERING;
+        }
+        // checked first, so that a bad move costs no exception
+        switch (board.checkPlayTentative(position)) {
+        case OUT_OF_RANGE:
+            return Disqualification.OUT_OF_RANGE;
+        case OCCUPIED:
+            return Disqualification.OCCUPIED;
+        default:
+            break;
+        }
+        try {
+            board.playAtPosition(position, player.getMark());
+        } catch (final PositionOutOfRangeException e) {
+            return Disqualification.OUT_OF_RANGE;
+        } catch (final PositionAlreadyOccupiedException e) {
+            return Disqualification.OCCUPIED;
+        }
+        if (recordSink != null) {
+            gameRecord.addMove(position, moveNanos / 1000);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.movePlayed();
+            ((player == playerX) ? metricsX : metricsO).record(moveNanos);
+        }
+        return null;
+    }
+
+    /**
+     * Asks a player's robot for its move, under the time control. The
+     * position returned by the robot is left in <code>timedPosition</code>.
+     *
+     * @param player
+     *            The player whose turn it is
+     * @return null if the robot returned a position in time, otherwise the
+     *         reason it is disqualified
+     */
+    private Disqualification playTimed(final TTTPlayer player) {
+        final boolean isX = (player == playerX);
+        final long budget = timeControl.budgetFor(isX ? usedX : usedO);
+        if (budget <= 0) {
+            return Disqualification.TIMEOUT;
+        }
+        final TTTRobot robot = player.getRobot();
+        final Watchdog.Clock clock = Watchdog.clock();
+        final long start = System.nanoTime();
+        boolean failed = false;
+        clock.start(start + budget);
+        try {
+            if (robot instanceof TimedRobot) {
+                timedPosition = ((TimedRobot) robot).play(board, player.getMark(), budget);
+            } else {
+                timedPosition = robot.play(board, player.getMark());
+            }
+        } catch (final Throwable e) {
+            rethrowIfFatal(e);
+            if (Metrics.ENABLED) {
+                Metrics.robotError(e);
+            }
+            failed = true;
+        } finally {
+            clock.stop();
+        }
+        final long elapsed = System.nanoTime() - start;
+        moveNanos = elapsed;
+        if (isX) {
+            usedX += elapsed;
+        } else {
+            usedO += elapsed;
+        }
+        if (elapsed > budget) {
+            return Disqualification.TIMEOUT; // even if it failed, it was late first
+        }
+        return failed ? Disqualification.ROBOT_ERROR : null;
+    }
+
+    /**
+     * Rethrows what a robot threw if it is a failure of the virtual machine
+     * (e.g. <code>OutOfMemoryError</code>), which the robot cannot be blamed
+     * for and which must not be carried on from. Anything else, a
+     * <code>StackOverflowError</code> from runaway recursion included, only
+     * disqualifies the robot.
+     *
+     * @param thrown
+     *            What the robot threw
+     */
+    public static void rethrowIfFatal(final Throwable thrown) {
+        if ((thrown instanceof VirtualMachineError) && !(thrown instanceof StackOverflowError)) {
+            throw (VirtualMachineError) thrown;
+        }
+    }
+
+    /**
+     * Gets the other player.
+     */
+    private TTTPlayer opponentOf(final TTTPlayer player) {
+        return (player == playerX) ? playerO : playerX;
+    }
+
+    /**
+     * Gets the mark which plays first in the next game.
+     *
+     * @return X or O, never null
+     */
+    public Mark getStartingMark() {
+        return startingMark;
+    }
+
+    /**
+     * Sets the mark which plays first in the next game (X by default).
+     *
+     * @param startingMark
+     *            X or O, may not be null
+     */
+    public void setStartingMark(final Mark startingMark) {
+        if (startingMark == null) {
+            throw new IllegalArgumentException("startingMark cannot be null");
+        }
+        this.startingMark = startingMark;
+    }
+
+    /**
+     * Gets the time limits of the robots.
+     *
+     * @return The time control, never null
+     */
+    public TimeControl getTimeControl() {
+        return timeControl;
+    }
+
+    /**
+     * Sets the time limits of the robots (<code>TimeControl.UNLIMITED</code>
+     * by default).
+     *
+     * @param timeControl
+     *            The time control, may not be null
+     */
+    public void setTimeControl(final TimeControl timeControl) {
+        if (timeControl == null) {
+            throw new IllegalArgumentException("timeControl cannot be null");
+        }
+        this.timeControl = timeControl;
+    }
+
+    /**
+     * Seeds the following games: the <i>n</i>th game played from now on is
+     * played with the seed <code>deriveSeed(seed, n)</code> (counting from
+     * 0), from which the robots implementing <code>SeedableRobot</code> are
+     * seeded. Games are not seeded by default.
+     *
+     * Games can only be reproduced if the robots draw all their random
+     * numbers from their seeds, and belong to this engine while it plays
+     * (a robot shared with other engines playing at the same time is seeded
+     * by all of them). Under a time control, robots which search for as long
+     * as their budget lets them may not play the same moves again.
+     *
+     * @param seed
+     *            The seed
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+        this.seeded = true;
+        this.seededGames = 0;
+    }
+
+    /**
+     * Checks if the games are seeded.
+     *
+     * @return true once <code>setSeed</code> was called
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Gets the seed of the last game played (e.g. to replay it when it is
+     * not recorded).
+     *
+     * @return The seed, 0 if the games are not seeded (or none was played)
+     */
+    public long getGameSeed() {
+        return seeded ? gameSeed : 0;
+    }
+
+    /**
+     * Derives a seed from another seed and an index, such that the seeds
+     * derived from nearby indices (or seeds) are unrelated. This is how the
+     * engine seeds its games, and how a <code>Tournament</code> seeds its
+     * engines.
+     *
+     * @param seed
+     *            The seed to derive from
+     * @param index
+     *            The index of the seed derived
+     * @return The derived seed
+     */
+    public static long deriveSeed(final long seed, final long index) {
+        // the finaliser of SplitMix64, over the index'th step of its sequence
+        long z = seed + ((index + 1) * 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Seeds the robots for a game: X with <code>deriveSeed(gameSeed, 0)</code>
+     * and O with <code>deriveSeed(gameSeed, 1)</code>, or only with X's seed
+     * if the same robot plays both marks.
+     *
+     * @param gameSeed
+     *            The seed of the game
+     * @param robotX
+     *            The robot playing X
+     * @param robotO
+     *            The robot playing O
+     */
+    static void seedRobots(final long gameSeed, final TTTRobot robotX, final TTTRobot robotO) {
+        if (robotX instanceof SeedableRobot) {
+            ((SeedableRobot) robotX).setSeed(deriveSeed(gameSeed, 0));
+        }
+        if ((robotO != robotX) && (robotO instanceof SeedableRobot)) {
+            ((SeedableRobot) robotO).setSeed(deriveSeed(gameSeed, 1));
+        }
+    }
+
+    /**
+     * Gets where the games played are recorded.
+     *
+     * @return The sink, or null if games are not recorded
+     */
+    public GameRecordSink getRecordSink() {
+        return recordSink;
+    }
+
+    /**
+     * Sets where the games played are recorded (not recorded by default).
+     * Each game's record is handed to the sink as the game ends.
+     *
+     * @param recordSink
+     *            The sink, or null to stop recording
+     */
+    public void setRecordSink(final GameRecordSink recordSink) {
+        this.recordSink = recordSink;
+        if ((recordSink != null) && (gameRecord == null)) {
+            gameRecord = new GameRecord();
+            robotsChanged();
+        }
+    }
+
+    /**
+     * Looks up what is kept per robot (by robot master name), i.e. the names
+     * in the game record and the robots' metrics. Subclasses which change
+     * the robots playing (or their names) between games must call this.
+     */
+    protected final void robotsChanged() {
+        final String nameX = playerX.getRobot().getRobotMasterName();
+        final String nameO = playerO.getRobot().getRobotMasterName();
+        if (gameRecord != null) {
+            gameRecord.setPlayers(nameX, nameO);
+        }
+        if (Metrics.ENABLED) {
+            metricsX = Metrics.robot(nameX);
+            metricsO = Metrics.robot(nameO);
+        }
+    }
+
+    /**
+     * Gets the winner of the last game played.
+     *
+     * @return The winning player, or null if the game was drawn (or none was
+     *         played yet)
+     */
+    public TTTPlayer getWinner() {
+        return winner;
+    }
+
+    /**
+     * Gets the reason the loser of the last game was disqualified.
+     *
+     * @return The reason, or null if the game was not won by
+     *         disqualification
+     */
+    public Disqualification getDisqualification() {
+        return disqualification;
+    }
+
+}
@@ -0,0 +1,518 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import java.util.Arrays;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * A batch of many boards of the same shape, for workloads which evaluate
+ * huge numbers of positions at once (training, self-play, simulation, see
+ * <code>SimulationEngine</code>).
+ *
+ * The boards are held as a structure of arrays: for each word of a bitboard,
+ * one <code>long[]</code> of X bits and one of O bits with that word of every
+ * board, so word <i>w</i> of board <i>b</i> is at <code>[w][b]</code>. The batch
+ * operations (<code>findWins</code>, <code>countEmpty</code>,
+ * <code>clear</code>) are then plain loops over consecutive
+ * <code>long</code>s, with no objects, branches or calls in the inner loop,
+ * which the JIT unrolls and, on hardware which has them, turns into vector
+ * instructions. For a single board, <code>GameBoard</code> remains the better
+ * choice.
+ *
+ * Boards are addressed by index, 0..(capacity - 1). Moves are checked (a
+ * move out of range or on an occupied position is an unchecked exception)
+ * but, unlike a <code>GameBoard</code>, a board keeps no win state: use
+ * <code>findWins</code> or <code>completesLine</code>.
+ *
+ * Not thread safe.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class BoardBatch {
+
+    /**
+     * The shape of the boards.
+     */
+    private final BoardGeometry geometry;
+
+    /**
+     * The number of boards.
+     */
+    private final int capacity;
+
+    /**
+     * The number of <code>long</code> words per board.
+     */
+    private final int words;
+
+    /**
+     * The X bits of all boards, by word and board.
+     */
+    private final long[][] xBits;
+
+    /**
+     * The O bits of all boards, by word and board.
+     */
+    private final long[][] oBits;
+
+    /**
+     * The number of moves on each board.
+     */
+    private final int[] movesPlayed;
+
+    /**
+     * All winning lines, <code>words</code> masks each (see
+     * <code>BoardGeometry.allLines()</code>).
+     */
+    private final long[] lines;
+
+    /**
+     * For each line, the one word it lies in, or -1 if it straddles two.
+     */
+    private final int[] lineWord;
+
+    /**
+     * Scratch space: the line found (1) or not (0) on each board.
+     */
+    private final long[] found;
+
+    /**
+     * Scratch space: the bits of a line missing on each board.
+     */
+    private final long[] missing;
+
+    /**
+     * Scratch space: one board's bits, for <code>completesLine</code>.
+     */
+    private final long[] single;
+
+    /**
+     * Creates a batch of empty classic (3x3) boards.
+     *
+     * @param capacity
+     *            The number of boards, at least 1
+     */
+    public BoardBatch(final int capacity) {
+        this(capacity, 3, 3);
+    }
+
+    /**
+     * Creates a batch of empty boards.
+     *
+     * @param capacity
+     *            The number of boards, at least 1
+     * @param side
+     *            The number of rows (and columns) of each board
+     * @param winLength
+     *            The number of marks in a row to win, 1..side
+     */
+    public BoardBatch(final int capacity, final int side, final int winLength) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.geometry = BoardGeometry.of(side, winLength);
+        this.capacity = capacity;
+        this.words = geometry.words;
+        this.xBits = new long[words][capacity];
+        this.oBits = new long[words][capacity];
+        this.movesPlayed = new int[capacity];
+        this.lines = geometry.allLines();
+        this.lineWord = new int[lines.length / words];
+        for (int line = 0; line < lineWord.length; line++) {
+            lineWord[line] = -1;
+            int used = 0;
+            for (int word = 0; word < words; word++) {
+                if (lines[line * words + word] != 0) {
+                    lineWord[line] = word;
+                    used++;
+                }
+            }
+            if (used > 1) {
+                lineWord[line] = -1;
+            }
+        }
+        this.found = new long[capacity];
+        this.missing = new long[capacity];
+        this.single = new long[words];
+    }
+
+    /**
+     * Gets the number of boards.
+     *
+     * @return The capacity of the batch
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the size of each board.
+     *
+     * @return The number of positions on a board
+     */
+    public int getBoardSize() {
+        return geometry.size;
+    }
+
+    /**
+     * Gets the number of rows (and columns) of each board.
+     *
+     * @return The side of the boards
+     */
+    public int getSide() {
+        return geometry.side;
+    }
+
+    /**
+     * Gets the number of marks in a row needed to win.
+     *
+     * @return The win length
+     */
+    public int getWinLength() {
+        return geometry.winLength;
+    }
+
+    /**
+     * Gets the number of winning lines on a board.
+     *
+     * @return The number of lines checked by <code>findWins</code>
+     */
+    int getLineCount() {
+        return lineWord.length;
+    }
+
+    /**
+     * Empties all boards.
+     */
+    public void clear() {
+        for (int word = 0; word < words; word++) {
+            Arrays.fill(xBits[word], 0L);
+            Arrays.fill(oBits[word], 0L);
+        }
+        Arrays.fill(movesPlayed, 0);
+    }
+
+    /**
+     * Empties one board.
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     */
+    public void clear(final int board) {
+        for (int word = 0; word < words; word++) {
+            xBits[word][board] = 0L;
+            oBits[word][board] = 0L;
+        }
+        movesPlayed[board] = 0;
+    }
+
+    /**
+     * Copies a game board's position into one board of the batch.
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     * @param game
+     *            The board to copy, may not be null, of the same shape
+     */
+    public void load(final int board, final GameBoard game) {
+        if ((game.getSide() != geometry.side) || (game.getWinLength() != geometry.winLength)) {
+            throw new IllegalArgumentException("game board has a different shape");
+        }
+        for (int word = 0; word < words; word++) {
+            xBits[word][board] = game.getWord(Mark.X, word);
+            oBits[word][board] = game.getWord(Mark.O, word);
+        }
+        movesPlayed[board] = game.getMovesPlayed();
+    }
+
+    /**
+     * Plays a mark on one board.
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     * @param position
+     *            The position, which must be empty
+     * @param mark
+     *            The mark to play, may not be null
+     * @throws IllegalArgumentException
+     *             If the position is out of range or occupied
+     */
+    public void play(final int board, final int position, final Mark mark) {
+        if (mark == null) {
+            throw new IllegalArgumentException("mark cannot be null");
+        }
+        if (isOccupied(board, position)) {
+            throw new IllegalArgumentException("Cannot play at position " + position + " on board " + board);
+        }
+        final long[][] bits = (mark == Mark.X) ? xBits : oBits;
+        bits[position >>> 6][board] |= 1L << position;
+        movesPlayed[board]++;
+    }
+
+    /**
+     * Plays the same mark on every board, at a position per board.
+     *
+     * @param positions
+     *            The position to play on each board (at least
+     *            <code>capacity</code> long), or a negative number to leave
+     *            a board as it is
+     * @param mark
+     *            The mark to play, may not be null
+     * @throws IllegalArgumentException
+     *             If a position is out of range or occupied (boards before it
+     *             are played on, the rest are not)
+     */
+    public void play(final int[] positions, final Mark mark) {
+        if (mark == null) {
+            throw new IllegalArgumentException("mark cannot be null");
+        }
+        final long[][] bits = (mark == Mark.X) ? xBits : oBits;
+        for (int board = 0; board < capacity; board++) {
+            final int position = positions[board];
+            if (position < 0) {
+                continue;
+            }
+            if (isOccupied(board, position)) {
+                throw new IllegalArgumentException("Cannot play at position " + position + " on board " + board);
+            }
+            bits[position >>> 6][board] |= 1L << position;
+            movesPlayed[board]++;
+        }
+    }
+
+    /**
+     * Finds the boards on which a mark has a complete line, checking every
+     * line of every board.
+     *
+     * @param mark
+     *            The mark, may not be null
+     * @param won
+     *            Set for each board (at least <code>capacity</code> long) to
+     *            whether the mark has a line there
+     * @return The number of boards on which the mark has a line
+     */
+    public int findWins(final Mark mark, final boolean[] won) {
+        if (mark == null) {
+            throw new IllegalArgumentException("mark cannot be null");
+        }
+        final long[][] bits = (mark == Mark.X) ? xBits : oBits;
+        Arrays.fill(found, 0L);
+        for (int line = 0; line < lineWord.length; line++) {
+            final int word = lineWord[line];
+            if (word >= 0) {
+                // the common case, a line within one word
+                matchLine(bits[word], lines[line * words + word], found, capacity);
+            } else {
+                Arrays.fill(missing, 0L);
+                for (int w = 0; w < words; w++) {
+                    final long mask = lines[line * words + w];
+                    if (mask != 0) {
+                        missingBits(bits[w], mask, missing, capacity);
+                    }
+                }
+                matchMissing(missing, found, capacity);
+            }
+        }
+        int count = 0;
+        for (int board = 0; board < capacity; board++) {
+            final long line = found[board];
+            won[board] = line != 0;
+            count += (int) line;
+        }
+        return count;
+    }
+
+    /**
+     * Flags the boards which have all the bits of a mask, the inner loop of
+     * <code>findWins</code>. Kept apart, and branch free, so that it is
+     * compiled on its own into vector instructions.
+     *
+     * @param bits
+     *            One word of the bits of every board
+     * @param mask
+     *            The bits of the line in that word
+     * @param found
+     *            Set to 1 for the boards which have the line
+     * @param count
+     *            The number of boards
+     */
+    private static void matchLine(final long[] bits, final long mask, final long[] found, final int count) {
+        for (int board = 0; board < count; board++) {
+            final long gap = (bits[board] & mask) ^ mask;
+            found[board] |= ((gap - 1) & ~gap) >>> 63; // 1 if gap is 0
+        }
+    }
+
+    /**
+     * Accumulates the bits of a mask which are missing on each board, for
+     * lines straddling two words.
+     *
+     * @param bits
+     *            One word of the bits of every board
+     * @param mask
+     *            The bits of the line in that word
+     * @param missing
+     *            The bits missing so far, by board
+     * @param count
+     *            The number of boards
+     */
+    private static void missingBits(final long[] bits, final long mask, final long[] missing, final int count) {
+        for (int board = 0; board < count; board++) {
+            missing[board] |= (bits[board] & mask) ^ mask;
+        }
+    }
+
+    /**
+     * Flags the boards with no bits missing from a straddling line.
+     *
+     * @param missing
+     *            The bits missing, by board
+     * @param found
+     *            Set to 1 for the boards which have the line
+     * @param count
+     *            The number of boards
+     */
+    private static void matchMissing(final long[] missing, final long[] found, final int count) {
+        for (int board = 0; board < count; board++) {
+            final long gap = missing[board];
+            found[board] |= ((gap - 1) & ~gap) >>> 63; // 1 if gap is 0
+        }
+    }
+
+    /**
+     * Checks if the mark at a position of one board is part of a complete
+     * line, looking only at the lines through it (cheaper than
+     * <code>findWins</code> on large boards, when the last move is known).
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     * @param position
+     *            The position, which must hold <code>mark</code>
+     * @param mark
+     *            The mark, may not be null
+     * @return true if there are <code>winLength</code> marks in a row
+     *         through the position
+     */
+    public boolean completesLine(final int board, final int position, final Mark mark) {
+        final long[][] bits = (mark == Mark.X) ? xBits : oBits;
+        for (int word = 0; word < words; word++) {
+            single[word] = bits[word][board];
+        }
+        return geometry.completesLine(single, position);
+    }
+
+    /**
+     * Counts the empty positions of every board.
+     *
+     * @param counts
+     *            Set to the number of empty positions on each board (at
+     *            least <code>capacity</code> long)
+     */
+    public void countEmpty(final int[] counts) {
+        final int size = geometry.size;
+        for (int board = 0; board < capacity; board++) {
+            counts[board] = size - movesPlayed[board];
+        }
+    }
+
+    /**
+     * Gets the number of moves on one board.
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     * @return The number of moves, 0..getBoardSize()
+     */
+    public int getMovesPlayed(final int board) {
+        return movesPlayed[board];
+    }
+
+    /**
+     * Checks if one board is full.
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     * @return true if there are no empty positions left
+     */
+    public boolean isFull(final int board) {
+        return movesPlayed[board] == geometry.size;
+    }
+
+    /**
+     * Gets the mark at a position of one board.
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     * @param position
+     *            The position, 0..(getBoardSize() - 1)
+     * @return The mark, or null if the position is empty
+     */
+    public Mark getMark(final int board, final int position) {
+        final int word = position >>> 6;
+        final long bit = 1L << position;
+        if ((xBits[word][board] & bit) != 0) {
+            return Mark.X;
+        }
+        if ((oBits[word][board] & bit) != 0) {
+            return Mark.O;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a position of one board is occupied.
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     * @param position
+     *            The position
+     * @return true if occupied, false otherwise
+     * @throws IllegalArgumentException
+     *             If the position is out of range
+     */
+    public boolean isOccupied(final int board, final int position) {
+        if (!geometry.inRange(position)) {
+            throw new IllegalArgumentException("Position out of range: " + position);
+        }
+        final int word = position >>> 6;
+        return ((xBits[word][board] | oBits[word][board]) & (1L << position)) != 0;
+    }
+
+    /**
+     * Gets an empty position of one board by its rank, e.g. to pick a random
+     * move with <code>getEmptyPosition(b, random.nextInt(emptyCount))</code>.
+     *
+     * @param board
+     *            The board, 0..(capacity - 1)
+     * @param index
+     *            The rank of the empty position, 0..(empty count - 1), in
+     *            ascending order of position
+     * @return The position, or -1 if there are not that many empty
+     *         positions
+     */
+    public int getEmptyPosition(final int board, final int index) {
+        int remaining = index;
+        for (int word = 0; word < words; word++) {
+            long free = ~(xBits[word][board] | oBits[word][board]);
+            if (word == words - 1) {
+                free &= geometry.lastWordMask;
+            }
+            final int count = Long.bitCount(free);
+            if (remaining >= count) {
+                remaining -= count;
+                continue;
+            }
+            for (int i = 0; i < remaining; i++) {
+                free &= free - 1; // clear lowest set bit
+            }
+            return (word << 6) + Long.numberOfTrailingZeros(free);
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,457 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The shape of a board: an N x N grid on which K marks in a row (across,
+ * down or diagonally) win. Classic Tic Tac Toe is 3 x 3 with 3 in a row.
+ *
+ * Positions are numbered row by row, i.e. <code>row * side + column</code>,
+ * and a board keeps one bit per position (per mark) in an array of
+ * <code>long</code> words. This class holds everything which depends only on
+ * the shape (so it is immutable and shared between boards), together with the
+ * bit fiddling common to the <code>GameBoard</code> and the
+ * <code>SearchBoard</code>.
+ *
+ * Win detection only ever looks at the lines through the position just
+ * played. On boards of up to 64 positions these lines are precomputed as bit
+ * masks; on larger boards we walk outwards from the position in each of the
+ * four directions (at most K-1 steps each way). Either way the cost does not
+ * grow with the area of the board.
+ *
+ * Boards also keep Zobrist keys of their position, updated incrementally as
+ * marks are played. There are eight of them, one for each symmetry of the
+ * square (rotations and reflections); the smallest is the canonical key,
+ * which is the same for all positions equivalent under symmetry. The random
+ * numbers are seeded from the shape, so keys are the same from one run (or
+ * JVM) to the next.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+final class BoardGeometry {
+
+    /**
+     * The largest supported side.
+     */
+    static final int MAX_SIDE = 64;
+
+    /**
+     * The four directions (row step, column step) a line may run in: across,
+     * down, diagonally down-right and diagonally down-left.
+     */
+    private static final int[][] DIRECTIONS = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+
+    /**
+     * Classic Tic Tac Toe (declared after the directions, which it needs).
+     */
+    static final BoardGeometry CLASSIC = new BoardGeometry(3, 3);
+
+    /**
+     * Shapes already built, keyed by <code>side &lt;&lt; 16 | winLength</code>.
+     */
+    private static final ConcurrentHashMap<Integer, BoardGeometry> SHAPES = new ConcurrentHashMap<Integer, BoardGeometry>();
+
+    /**
+     * The number of symmetries of a square board.
+     */
+    static final int SYMMETRIES = 8;
+
+    /**
+     * The inverse of each symmetry (see <code>symmetry</code>): rotating by
+     * 90 and by 270 degrees undo each other, the rest undo themselves.
+     */
+    private static final int[] INVERSE = { 0, 3, 2, 1, 4, 5, 6, 7 };
+
+    /**
+     * The number of rows (and columns).
+     */
+    final int side;
+
+    /**
+     * The number of marks in a row needed to win.
+     */
+    final int winLength;
+
+    /**
+     * The number of positions, side * side.
+     */
+    final int size;
+
+    /**
+     * The number of <code>long</code> words needed to hold one bit per
+     * position.
+     */
+    final int words;
+
+    /**
+     * The valid bits of the last word (all ones, unless size is not a
+     * multiple of 64).
+     */
+    final long lastWordMask;
+
+    /**
+     * For each position, the winning lines (as masks over the first word)
+     * through it. Null if the board is larger than 64 positions.
+     */
+    final long[][] linesThrough;
+
+    /**
+     * Where each position goes under each symmetry: identity, rotation by 90,
+     * 180 and 270 degrees, mirror left-right, mirror top-bottom, and the two
+     * diagonal reflections.
+     */
+    final int[][] symmetry;
+
+    /**
+     * The Zobrist random numbers of X and of O at each position.
+     */
+    private final long[] zobristX, zobristO;
+
+    /**
+     * Builds a shape. Use <code>of</code> rather than calling this directly,
+     * so shapes are shared.
+     *
+     * @param side
+     *            The number of rows (and columns), 1..MAX_SIDE
+     * @param winLength
+     *            The number of marks in a row to win, 1..side
+     */
+    private BoardGeometry(final int side, final int winLength) {
+        if ((side < 1) || (side > MAX_SIDE)) {
+            throw new IllegalArgumentException("side must be between 1 and " + MAX_SIDE + ": " + side);
+        }
+        if ((winLength < 1) || (winLength > side)) {
+            throw new IllegalArgumentException("winLength must be between 1 and " + side + ": " + winLength);
+        }
+        this.side = side;
+        this.winLength = winLength;
+        this.size = side * side;
+        this.words = (size + 63) >>> 6;
+        this.lastWordMask = ((size & 63) == 0) ? -1L : (1L << (size & 63)) - 1;
+        this.linesThrough = (size <= 64) ? buildLines() : null;
+        this.symmetry = buildSymmetries();
+        this.zobristX = new long[size];
+        this.zobristO = new long[size];
+        final SplittableRandom random = new SplittableRandom(((long) side << 32) | winLength);
+        for (int position = 0; position < size; position++) {
+            zobristX[position] = random.nextLong();
+            zobristO[position] = random.nextLong();
+        }
+    }
+
+    /**
+     * Gets the shape for a given side and win length.
+     *
+     * @param side
+     *            The number of rows (and columns), 1..MAX_SIDE
+     * @param winLength
+     *            The number of marks in a row to win, 1..side
+     * @return The (shared) shape, never null
+     */
+    static BoardGeometry of(final int side, final int winLength) {
+        if ((side == 3) && (winLength == 3)) {
+            return CLASSIC;
+        }
+        final Integer key = (side << 16) | (winLength & 0xFFFF);
+        BoardGeometry shape = SHAPES.get(key);
+        if (shape == null) {
+            final BoardGeometry built = new BoardGeometry(side, winLength);
+            shape = SHAPES.putIfAbsent(key, built);
+            if (shape == null) {
+                shape = built;
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * Works out the winning lines through each position, for boards which
+     * fit in one word.
+     *
+     * @return The lines through each position
+     */
+    private long[][] buildLines() {
+        final long[][] lines = new long[size][];
+        final int[] counts = new int[size];
+        // two passes, count and then fill (so that arrays are exactly sized)
+        for (int pass = 0; pass < 2; pass++) {
+            for (final int[] direction : DIRECTIONS) {
+                for (int row = 0; row < side; row++) {
+                    for (int column = 0; column < side; column++) {
+                        final int lastRow = row + direction[0] * (winLength - 1);
+                        final int lastColumn = column + direction[1] * (winLength - 1);
+                        if ((lastRow >= side) || (lastColumn < 0) || (lastColumn >= side)) {
+                            continue; // does not fit
+                        }
+                        long line = 0;
+                        for (int i = 0; i < winLength; i++) {
+                            line |= 1L << ((row + direction[0] * i) * side + column + direction[1] * i);
+                        }
+                        for (int i = 0; i < winLength; i++) {
+                            final int position = (row + direction[0] * i) * side + column + direction[1] * i;
+                            if (pass == 0) {
+                                counts[position]++;
+                            } else {
+                                lines[position][--counts[position]] = line;
+                            }
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int position = 0; position < size; position++) {
+                    lines[position] = new long[counts[position]];
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Works out every winning line on the board, as <code>words</code> masks
+     * each (one per word of a bitboard, most of them 0 on large boards).
+     *
+     * @return The masks, line by line
+     */
+    long[] allLines() {
+        int lines = 0;
+        for (final int[] direction : DIRECTIONS) {
+            final int rows = side - direction[0] * (winLength - 1);
+            final int columns = side - Math.abs(direction[1]) * (winLength - 1);
+            lines += rows * columns;
+        }
+        final long[] masks = new long[lines * words];
+        int line = 0;
+        for (final int[] direction : DIRECTIONS) {
+            for (int row = 0; row < side; row++) {
+                for (int column = 0; column < side; column++) {
+                    final int lastRow = row + direction[0] * (winLength - 1);
+                    final int lastColumn = column + direction[1] * (winLength - 1);
+                    if ((lastRow >= side) || (lastColumn < 0) || (lastColumn >= side)) {
+                        continue; // does not fit
+                    }
+                    for (int i = 0; i < winLength; i++) {
+                        final int position = (row + direction[0] * i) * side + column + direction[1] * i;
+                        masks[line * words + (position >>> 6)] |= 1L << position;
+                    }
+                    line++;
+                }
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Works out where each position goes under each of the symmetries.
+     *
+     * @return The positions, indexed by symmetry then position
+     */
+    private int[][] buildSymmetries() {
+        final int[][] symmetries = new int[SYMMETRIES][size];
+        final int last = side - 1;
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                final int position = row * side + column;
+                symmetries[0][position] = position;
+                symmetries[1][position] = column * side + (last - row);
+                symmetries[2][position] = (last - row) * side + (last - column);
+                symmetries[3][position] = (last - column) * side + row;
+                symmetries[4][position] = row * side + (last - column);
+                symmetries[5][position] = (last - row) * side + column;
+                symmetries[6][position] = column * side + row;
+                symmetries[7][position] = (last - column) * side + (last - row);
+            }
+        }
+        return symmetries;
+    }
+
+    /**
+     * Updates the Zobrist keys of a board for a mark played (or, as it is an
+     * exclusive or, taken back) at a position.
+     *
+     * @param keys
+     *            The keys of the board, one per symmetry
+     * @param position
+     *            The position played
+     * @param isX
+     *            true if the mark is X, false for O
+     */
+    void updateKeys(final long[] keys, final int position, final boolean isX) {
+        final long[] zobrist = isX ? zobristX : zobristO;
+        for (int s = 0; s < SYMMETRIES; s++) {
+            keys[s] ^= zobrist[symmetry[s][position]];
+        }
+    }
+
+    /**
+     * Gets the symmetry giving the canonical (smallest) key.
+     *
+     * @param keys
+     *            The keys of the board, one per symmetry
+     * @return The index of the canonical symmetry
+     */
+    static int canonicalSymmetry(final long[] keys) {
+        int best = 0;
+        for (int s = 1; s < SYMMETRIES; s++) {
+            if (keys[s] < keys[best]) {
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Maps a position back from the frame of a symmetry to the board.
+     *
+     * @param s
+     *            The symmetry
+     * @param position
+     *            The position, as seen after applying the symmetry
+     * @return The position on the board
+     */
+    int inverse(final int s, final int position) {
+        return symmetry[INVERSE[s]][position];
+    }
+
+    /**
+     * Checks if the mark just placed at a position completes a line.
+     *
+     * @param bits
+     *            The positions occupied by the mark (including the new one)
+     * @param position
+     *            The position just played
+     * @return true if there are <code>winLength</code> marks in a row through
+     *         the position
+     */
+    boolean completesLine(final long[] bits, final int position) {
+        if (linesThrough != null) {
+            final long word = bits[0];
+            for (final long line : linesThrough[position]) {
+                if ((word & line) == line) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final int row = position / side;
+        final int column = position % side;
+        for (final int[] direction : DIRECTIONS) {
+            final int inRow = 1 + run(bits, row, column, direction[0], direction[1])
+                    + run(bits, row, column, -direction[0], -direction[1]);
+            if (inRow >= winLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the marks in a row starting next to (row, column) and going in
+     * one direction. Stops after <code>winLength - 1</code>, as there is no
+     * point going further.
+     */
+    private int run(final long[] bits, final int row, final int column, final int rowStep, final int columnStep) {
+        int count = 0;
+        int r = row + rowStep;
+        int c = column + columnStep;
+        while ((count < winLength - 1) && (r >= 0) && (r < side) && (c >= 0) && (c < side)) {
+            final int position = r * side + c;
+            if ((bits[position >>> 6] & (1L << position)) == 0) {
+                break;
+            }
+            count++;
+            r += rowStep;
+            c += columnStep;
+        }
+        return count;
+    }
+
+    /**
+     * Checks if a position is within the board.
+     *
+     * @param position
+     *            The position to check
+     * @return true if 0 &lt;= position &lt; size
+     */
+    boolean inRange(final int position) {
+        return (position >= 0) && (position < size);
+    }
+
+    /**
+     * Checks if a bit is set.
+     *
+     * @param bits
+     *            The bitboard
+     * @param position
+     *            The position, must be in range
+     * @return true if the bit for the position is set
+     */
+    static boolean isSet(final long[] bits, final int position) {
+        return (bits[position >>> 6] & (1L << position)) != 0;
+    }
+
+    /**
+     * Gets the empty bits of one word (neither X nor O, and on the board).
+     */
+    private long empty(final long[] xBits, final long[] oBits, final int word) {
+        final long free = ~(xBits[word] | oBits[word]);
+        return (word == words - 1) ? free & lastWordMask : free;
+    }
+
+    /**
+     * Gets the first empty position greater than or equal to a position.
+     *
+     * @param xBits
+     *            The X bitboard
+     * @param oBits
+     *            The O bitboard
+     * @param fromPosition
+     *            The position to start from (inclusive), not negative
+     * @return The next empty position, or -1 if there is none
+     */
+    int nextEmpty(final long[] xBits, final long[] oBits, final int fromPosition) {
+        if (fromPosition >= size) {
+            return -1;
+        }
+        int word = fromPosition >>> 6;
+        long free = empty(xBits, oBits, word) & (-1L << fromPosition);
+        while (free == 0) {
+            if (++word == words) {
+                return -1;
+            }
+            free = empty(xBits, oBits, word);
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(free);
+    }
+
+    /**
+     * Fills an array with all empty positions, in ascending order.
+     *
+     * @param xBits
+     *            The X bitboard
+     * @param oBits
+     *            The O bitboard
+     * @param positions
+     *            The array to fill, large enough for all empty positions
+     * @return The number of positions written
+     */
+    int fillEmpty(final long[] xBits, final long[] oBits, final int[] positions) {
+        int count = 0;
+        for (int word = 0; word < words; word++) {
+            long free = empty(xBits, oBits, word);
+            while (free != 0) {
+                positions[count++] = (word << 6) + Long.numberOfTrailingZeros(free);
+                free &= free - 1; // clear lowest set bit
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,377 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
+
+/**
+ * An immutable snapshot of a <code>GameBoard</code>: its marks at one point
+ * of the game, which never change afterwards.
+ *
+ * Snapshots are what robots should read the board from, rather than
+ * <code>getBoardState()</code> and <code>getEmptyPositions()</code>, which
+ * copy the board on every call. A snapshot has no reference to the live
+ * board (it holds its own copy of the bitboards, which it never lets out),
+ * so it cannot be used to change it, and being immutable it need not be
+ * copied to be shared: the board hands out the same snapshot until the next
+ * move is played (see <code>GameBoard.getSnapshot()</code>), so reading it
+ * many times in a turn costs a single copy of the bitboards (one
+ * <code>long</code> per 64 positions). Snapshots may be kept (e.g. as the
+ * history of a game) and shared between threads freely.
+ *
+ * Two snapshots are equal if they have the same marks, on boards of the same
+ * shape.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class BoardSnapshot {
+
+    /**
+     * The shape of the board.
+     */
+    private final BoardGeometry geometry;
+
+    /**
+     * The positions occupied by X, one bit per position.
+     */
+    private final long[] xBits;
+
+    /**
+     * The positions occupied by O, one bit per position.
+     */
+    private final long[] oBits;
+
+    /**
+     * The number of moves played.
+     */
+    private final int movesPlayed;
+
+    /**
+     * Whether a line was completed.
+     */
+    private final boolean winning;
+
+    /**
+     * The canonical key of the position.
+     */
+    private final long positionKey;
+
+    /**
+     * The empty positions, created the first time they are asked for (racy,
+     * but any thread builds the same list).
+     */
+    private List<Integer> emptyPositions;
+
+    /**
+     * Creates a snapshot (only the board does).
+     *
+     * @param geometry
+     *            The shape of the board
+     * @param xBits
+     *            The X bitboard, copied
+     * @param oBits
+     *            The O bitboard, copied
+     * @param movesPlayed
+     *            The number of moves played
+     * @param winning
+     *            Whether a line was completed
+     * @param positionKey
+     *            The canonical key of the position
+     */
+    BoardSnapshot(final BoardGeometry geometry, final long[] xBits, final long[] oBits, final int movesPlayed,
+            final boolean winning, final long positionKey) {
+        this.geometry = geometry;
+        this.xBits = xBits.clone();
+        this.oBits = oBits.clone();
+        this.movesPlayed = movesPlayed;
+        this.winning = winning;
+        this.positionKey = positionKey;
+    }
+
+    /**
+     * Gets the mark at a position.
+     *
+     * @param position
+     *            The position, 0..(getBoardSize() - 1)
+     * @return The mark at the position, null if it is empty
+     * @throws PositionOutOfRangeException
+     *             If the position is out of range
+     */
+    public Mark getMark(final int position) throws PositionOutOfRangeException {
+        checkRange(position);
+        return BoardGeometry.isSet(xBits, position) ? Mark.X : BoardGeometry.isSet(oBits, position) ? Mark.O : null;
+    }
+
+    /**
+     * Checks if a position is taken.
+     *
+     * @param position
+     *            The position, 0..(getBoardSize() - 1)
+     * @return true if occupied, false otherwise
+     * @throws PositionOutOfRangeException
+     *             If the position is out of range
+     */
+    public boolean isOccupied(final int position) throws PositionOutOfRangeException {
+        checkRange(position);
+        return BoardGeometry.isSet(xBits, position) || BoardGeometry.isSet(oBits, position);
+    }
+
+    /**
+     * Checks if a move could be played, i.e. the position is in range and
+     * empty. Never throws an exception.
+     *
+     * @param position
+     *            The position
+     * @return true if the move is valid, false otherwise
+     */
+    public boolean isValidPlay(final int position) {
+        return (position >= 0) && (position < geometry.size) && !BoardGeometry.isSet(xBits, position)
+                && !BoardGeometry.isSet(oBits, position);
+    }
+
+    /**
+     * Checks that a position is on the board.
+     */
+    private void checkRange(final int position) throws PositionOutOfRangeException {
+        if ((position < 0) || (position >= geometry.size)) {
+            throw new PositionOutOfRangeException(position, geometry.size);
+        }
+    }
+
+    /**
+     * Gets the empty positions, in ascending order. The list is read only
+     * (and built once per snapshot), so it is not copied either.
+     *
+     * @return The empty positions, never null
+     */
+    public List<Integer> getEmptyPositions() {
+        List<Integer> positions = emptyPositions;
+        if (positions == null) {
+            final int[] empty = new int[getEmptyCount()];
+            geometry.fillEmpty(xBits, oBits, empty);
+            positions = new EmptyPositions(empty);
+            emptyPositions = positions;
+        }
+        return positions;
+    }
+
+    /**
+     * Fills an array with the empty positions, in ascending order, as
+     * <code>GameBoard.getEmptyPositions(int[])</code>.
+     *
+     * @param positions
+     *            The array to fill, at least <code>getEmptyCount()</code> long
+     * @return The number of empty positions written to the array
+     */
+    public int getEmptyPositions(final int[] positions) {
+        if (positions == null) {
+            throw new IllegalArgumentException("positions may not be null");
+        }
+        if (positions.length < getEmptyCount()) {
+            throw new IllegalArgumentException(
+                    "positions array too small: " + positions.length + " < " + getEmptyCount());
+        }
+        return geometry.fillEmpty(xBits, oBits, positions);
+    }
+
+    /**
+     * Gets the first empty position greater than or equal to
+     * <code>fromPosition</code>, as <code>GameBoard.nextEmptyPosition</code>.
+     *
+     * @param fromPosition
+     *            The position to start looking from (inclusive), not negative
+     * @return The next empty position, or -1 if there is none
+     */
+    public int nextEmptyPosition(final int fromPosition) {
+        if (fromPosition < 0) {
+            throw new IllegalArgumentException("fromPosition may not be negative: " + fromPosition);
+        }
+        return geometry.nextEmpty(xBits, oBits, fromPosition);
+    }
+
+    /**
+     * Gets the positions occupied by a mark as a bit mask, as
+     * <code>GameBoard.getBits</code>. Only available on boards of up to 64
+     * positions.
+     *
+     * @param mark
+     *            The mark, may not be null
+     * @return The bit mask of positions taken by the mark
+     * @throws IllegalStateException
+     *             If the board has more than 64 positions
+     */
+    public long getBits(final Mark mark) {
+        if (mark == null) {
+            throw new IllegalArgumentException("mark cannot be null");
+        }
+        if (geometry.words != 1) {
+            throw new IllegalStateException("Board too large for a single mask: " + geometry.size);
+        }
+        return Mark.X.equals(mark) ? xBits[0] : oBits[0];
+    }
+
+    /**
+     * Gets the marks as an array, as <code>GameBoard.getBoardState()</code>.
+     * The array is new (and so may be changed) on every call.
+     *
+     * @return The marks, null for empty positions, never null
+     */
+    public Mark[] toArray() {
+        final Mark[] state = new Mark[geometry.size];
+        for (int position = 0; position < state.length; position++) {
+            state[position] = BoardGeometry.isSet(xBits, position) ? Mark.X
+                    : BoardGeometry.isSet(oBits, position) ? Mark.O : null;
+        }
+        return state;
+    }
+
+    /**
+     * Gets the canonical key of the position, as
+     * <code>GameBoard.getPositionKey()</code>.
+     *
+     * @return The key
+     */
+    public long getPositionKey() {
+        return positionKey;
+    }
+
+    /**
+     * Checks if a line was completed.
+     *
+     * @return true if the board is in a winning position
+     */
+    public boolean isWinningPosition() {
+        return winning;
+    }
+
+    /**
+     * Checks if the board is full.
+     *
+     * @return true if there are no empty positions
+     */
+    public boolean isFull() {
+        return movesPlayed == geometry.size;
+    }
+
+    /**
+     * Checks if the board is empty.
+     *
+     * @return true if no move was played
+     */
+    public boolean isEmpty() {
+        return movesPlayed == 0;
+    }
+
+    /**
+     * Gets the number of moves played.
+     *
+     * @return The number of moves, 0..getBoardSize()
+     */
+    public int getMovesPlayed() {
+        return movesPlayed;
+    }
+
+    /**
+     * Gets the number of empty positions.
+     *
+     * @return <code>getBoardSize()</code> less the moves played
+     */
+    public int getEmptyCount() {
+        return geometry.size - movesPlayed;
+    }
+
+    /**
+     * Gets the number of positions on the board.
+     *
+     * @return The board size, 9 for classic Tic Tac Toe
+     */
+    public int getBoardSize() {
+        return geometry.size;
+    }
+
+    /**
+     * Gets the number of rows (and columns) of the board.
+     *
+     * @return The side, 3 for classic Tic Tac Toe
+     */
+    public int getSide() {
+        return geometry.side;
+    }
+
+    /**
+     * Gets the number of marks in a row needed to win.
+     *
+     * @return The win length, 3 for classic Tic Tac Toe
+     */
+    public int getWinLength() {
+        return geometry.winLength;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof BoardSnapshot)) {
+            return false;
+        }
+        final BoardSnapshot snapshot = (BoardSnapshot) other;
+        return (geometry == snapshot.geometry) && Arrays.equals(xBits, snapshot.xBits)
+                && Arrays.equals(oBits, snapshot.oBits);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(xBits) + Arrays.hashCode(oBits);
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(geometry.size + geometry.side);
+        for (int position = 0; position < geometry.size; position++) {
+            if ((position > 0) && (position % geometry.side == 0)) {
+                sb.append('/');
+            }
+            sb.append(BoardGeometry.isSet(xBits, position) ? 'X' : BoardGeometry.isSet(oBits, position) ? 'O' : '.');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A read only list over an array of positions, without boxing them all
+     * up front.
+     */
+    private static final class EmptyPositions extends AbstractList<Integer> implements RandomAccess {
+
+        private final int[] positions;
+
+        private EmptyPositions(final int[] positions) {
+            this.positions = positions;
+        }
+
+        @Override
+        public Integer get(final int index) {
+            return positions[index];
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+
+    }
+
+}
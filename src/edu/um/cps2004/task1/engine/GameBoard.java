@@ -6,19 +6,24 @@
 package edu.um.cps2004.task1.engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.catalog.MoveStatus;
 import edu.um.cps2004.task1.exception.PositionAlreadyOccupiedException;
 import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
+import edu.um.cps2004.task1.metrics.BoardOperation;
+import edu.um.cps2004.task1.metrics.Metrics;
 
 /**
  * The actual Tic-Tac-Toe Gameboard.
  * 
  * This class represents the current game state. Moreover it does so by keeping
- * a one dimensional array as follows (kiss, principle - Keep It Stupid Simple).
+ * two bitboards, one for X and one for O, where bit <i>n</i> is set if the
+ * mark occupies position <i>n</i>.
  * 
- * The board is a 3x3 matrix with positions defined as
+ * By default the board is a 3x3 matrix with positions defined as
  * 
  * <pre>
  *   0 | 1 | 2
@@ -30,6 +35,11 @@ import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
  * 
  * Each position is initially empty and may be filled with an X or O.
  * 
+ * Larger boards may be created with <code>GameBoard(side, winLength)</code>,
+ * e.g. a 15x15 board with 5 in a row. Positions are still numbered row by row
+ * (0 to side * side - 1), so robots which only use <code>getBoardSize()</code>
+ * and the position methods work unchanged on any size.
+ * 
  * We now keep the number of moves played - as a cache for easier calculation of
  * <code>isFull</code>, <code>isEmpty</code> methods.
  * 
@@ -38,16 +48,43 @@ import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
  */
 public final class GameBoard {
 
+    /**
+     * The shape of the board (side, win length and all that depends on
+     * them).
+     */
+    private final BoardGeometry geometry;
+
     /**
      * The board size (max number of X and Os which we can fit on the board)
      */
-    private final int BOARD_SIZE = 9;
+    private final int BOARD_SIZE;
+
+    /**
+     * The positions occupied by X, one bit per position. We will populate
+     * this as the game goes by.
+     */
+    private final long[] xBits;
+
+    /**
+     * The positions occupied by O, one bit per position. Never overlaps with
+     * <code>xBits</code>. The empty positions are simply the bits not taken
+     * by X or O, so we do not need to keep (and update) a separate list of
+     * them.
+     */
+    private final long[] oBits;
 
     /**
-     * The array holding the actual board state. We will populate this as the
-     * game goes by.
+     * The Zobrist keys of the position, one per symmetry of the board (see
+     * <code>getPositionKey()</code>). Updated as marks are played.
      */
-    private final Mark[] board = new Mark[BOARD_SIZE];
+    private final long[] keys = new long[BoardGeometry.SYMMETRIES];
+
+    /**
+     * Cached win state, set when a played mark completes a line. Saves us
+     * from rescanning the board every time <code>isWinningPosition</code> is
+     * called.
+     */
+    private boolean winning = false;
 
     /**
      * The number of moves played on this board. Never negative, =< BOARD_SIZE
@@ -55,23 +92,56 @@ public final class GameBoard {
     private int movesPlayed = 0;
 
     /**
-     * A list which contains all empty positions on the board. Updated upon
-     * playing at a particular position. We keep an attribute so we do not have
-     * to iterate (linear time) over the board each time to check for empty
-     * positions. Max size is BOARD SIZE
+     * The snapshot of the current position, null until asked for (and again
+     * as soon as a move is played).
      */
-    private final List<Integer> emptyPositions = new ArrayList<Integer>(BOARD_SIZE); // size is max of 9...
+    private BoardSnapshot snapshot;
 
     /**
-     * Constructor which initialises the empty positions list to all positions
-     * on the board
+     * Constructor which creates an empty, classic, 3x3 board (all positions
+     * are available)
      */
     public GameBoard() {
-        // fill empty positions with ALL positions available
-        // as all of them are empty (at the beginning)
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            emptyPositions.add(i);
-        }
+        this(BoardGeometry.CLASSIC);
+    }
+
+    /**
+     * Constructor which creates an empty N x N board, where K marks in a row
+     * (across, down or diagonally) win.
+     * 
+     * @param side
+     *            The number of rows (and columns) of the board, 1..64
+     * @param winLength
+     *            The number of marks in a row needed to win, 1..side
+     */
+    public GameBoard(final int side, final int winLength) {
+        this(BoardGeometry.of(side, winLength));
+    }
+
+    /**
+     * Constructor which creates an empty board of the given shape.
+     * 
+     * @param geometry
+     *            The shape of the board
+     */
+    private GameBoard(final BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.BOARD_SIZE = geometry.size;
+        this.xBits = new long[geometry.words];
+        this.oBits = new long[geometry.words];
+    }
+
+    /**
+     * Empties the board, so that it may be reused for another game (rather
+     * than creating a new one). Only the engine may do this.
+     */
+    void clear() {
+        Arrays.fill(xBits, 0L);
+        Arrays.fill(oBits, 0L);
+        Arrays.fill(keys, 0L);
+        movesPlayed = 0;
+        winning = false;
+        snapshot = null;
     }
 
     /**
@@ -79,15 +149,63 @@ public final class GameBoard {
      * method actually returns a copy of the actual array so none of the players
      * have a live reference to the actual board array (which they can change,
      * hack and cheat with). Hence this method is a bit heavy and should be
-     * called sparingly.
+     * called sparingly: <code>getSnapshot()</code> is just as safe, and only
+     * copies the board once per move.
      * 
      * @return The single dimensional array representing the board state. Never
      *         null.
      */
     public Mark[] getBoardState() {
-        // return a copy of the board! as some "clever" student may try
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.GET_BOARD_STATE);
+        }
+        // build a fresh array every time! as some "clever" student may try
         // to change the original board ...
-        return board.clone();
+        final Mark[] state = new Mark[BOARD_SIZE];
+        for (int i = 0; i < BOARD_SIZE; i++) {
+            state[i] = getMarkAt(i);
+        }
+        return state;
+    }
+
+    /**
+     * Gets an immutable snapshot of the board as it is now.
+     * 
+     * The snapshot is taken the first time it is asked for after a move, and
+     * the same one is returned until the next move is played, so robots may
+     * call this as often as they like. Snapshots hold their own copy of the
+     * marks, so (like <code>getBoardState()</code>) they give no way of
+     * changing this board.
+     * 
+     * @return The snapshot of the current position, never null
+     */
+    public BoardSnapshot getSnapshot() {
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.GET_SNAPSHOT);
+        }
+        BoardSnapshot current = snapshot;
+        if (current == null) {
+            current = new BoardSnapshot(geometry, xBits, oBits, movesPlayed, winning, getPositionKey());
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * Gets the mark at a position, without any range checking.
+     * 
+     * @param position
+     *            The position on the board, 0..(BOARD_SIZE-1)
+     * @return The mark at the position, or null if the position is empty
+     */
+    private Mark getMarkAt(final int position) {
+        if (BoardGeometry.isSet(xBits, position)) {
+            return Mark.X;
+        }
+        if (BoardGeometry.isSet(oBits, position)) {
+            return Mark.O;
+        }
+        return null;
     }
 
     /**
@@ -109,6 +227,79 @@ public final class GameBoard {
         return (movesPlayed == 0);
     }
 
+    /**
+     * Gets the number of moves played on this board so far.
+     * 
+     * @return The number of moves played, 0..getBoardSize()
+     */
+    public int getMovesPlayed() {
+        return movesPlayed;
+    }
+
+    /**
+     * Gets the positions occupied by a mark as a bit mask (bit <i>n</i> set if
+     * the mark is at position <i>n</i>). Being a primitive copy, it gives no
+     * access to the board itself. Only available on boards of up to 64
+     * positions (the classic board always qualifies).
+     * 
+     * @param mark
+     *            The mark, may not be null
+     * @return The bit mask of positions taken by the mark
+     * @throws IllegalStateException
+     *             If the board has more than 64 positions
+     */
+    public long getBits(final Mark mark) {
+        if (mark == null) {
+            throw new IllegalArgumentException("mark cannot be null");
+        }
+        if (geometry.words != 1) {
+            throw new IllegalStateException("Board too large for a single mask: " + BOARD_SIZE);
+        }
+        return Mark.X.equals(mark) ? xBits[0] : oBits[0];
+    }
+
+    /**
+     * Gets a 64 bit key (Zobrist hash) of the position on the board, for use
+     * in transposition tables and other caches.
+     * 
+     * The key is canonical: positions which are the same up to rotation or
+     * reflection of the board have the same key. It is kept up to date as
+     * marks are played, so this call is cheap. Keys are stable from one run
+     * to the next (for boards of the same shape). Note that the key does not
+     * say whose turn it is.
+     * 
+     * @return The canonical key of the position
+     */
+    public long getPositionKey() {
+        return keys[BoardGeometry.canonicalSymmetry(keys)];
+    }
+
+    /**
+     * Maps a position on this board to where it is on the canonical board
+     * (the rotation/reflection whose key is <code>getPositionKey()</code>),
+     * as <code>SearchBoard.toCanonical</code>. Moves stored against a
+     * canonical key (e.g. in an opening book) should be stored in this form.
+     * 
+     * @param position
+     *            The position on this board
+     * @return The position on the canonical board
+     */
+    public int toCanonical(final int position) {
+        return geometry.symmetry[BoardGeometry.canonicalSymmetry(keys)][position];
+    }
+
+    /**
+     * Maps a position on the canonical board back to this board (the inverse
+     * of <code>toCanonical</code>).
+     * 
+     * @param canonicalPosition
+     *            The position on the canonical board
+     * @return The position on this board
+     */
+    public int fromCanonical(final int canonicalPosition) {
+        return geometry.inverse(BoardGeometry.canonicalSymmetry(keys), canonicalPosition);
+    }
+
     /**
      * Gets the board size (this may actually be determined by calling <code>length</code> on
      * the board array, but for convenience we offer this method).
@@ -120,11 +311,30 @@ public final class GameBoard {
         return BOARD_SIZE;
     }
 
+    /**
+     * Gets the number of rows (and columns) of this square board.
+     * 
+     * @return The side of the board, 3 for classic Tic Tac Toe
+     */
+    public int getSide() {
+        return geometry.side;
+    }
+
+    /**
+     * Gets the number of marks in a row (across, down or diagonally) needed
+     * to win on this board.
+     * 
+     * @return The win length, 3 for classic Tic Tac Toe
+     */
+    public int getWinLength() {
+        return geometry.winLength;
+    }
+
     /**
      * Checks if a position is available.
      * 
      * Note that this method will throw an exception if the position is out
-     * of range. That is < 0 and >= BOARD_SIZE (currently at 9).
+     * of range. That is < 0 and >= BOARD_SIZE (9 on the classic board).
      * 
      * @param position
      *            The position to check for vacancy
@@ -132,12 +342,15 @@ public final class GameBoard {
      * @throws PositionOutOfRangeException
      */
     public boolean isOccupied(final int position) throws PositionOutOfRangeException {
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.IS_OCCUPIED);
+        }
         // check range... avoids IndexOutOfBounds exception later on
         if ((position < 0) || (position >= BOARD_SIZE)) {
             throw new PositionOutOfRangeException(position, BOARD_SIZE);
         }
         // check vacancy
-        return (board[position] != null);
+        return BoardGeometry.isSet(xBits, position) || BoardGeometry.isSet(oBits, position);
     }
 
     /**
@@ -156,24 +369,78 @@ public final class GameBoard {
      *            the tentative position where to play
      * @throws PositionOutOfRangeException
      *             If the tentative exception is out of range < 0 and >=
-     *             BOARD_SIZE (9)
+     *             BOARD_SIZE (9 on the classic board)
      * @throws PositionAlreadyOccupiedException
      *             If the tentative position is already occupied.
      */
     public void validatePlayTentative(final int tentativePosition)
             throws PositionOutOfRangeException, PositionAlreadyOccupiedException {
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.VALIDATE_PLAY_TENTATIVE);
+        }
+        validate(tentativePosition);
+    }
+
+    /**
+     * Validates a move (the body of <code>validatePlayTentative</code>, not
+     * counted in the metrics).
+     */
+    private void validate(final int tentativePosition)
+            throws PositionOutOfRangeException, PositionAlreadyOccupiedException {
         // check range
         if ((tentativePosition < 0) || (tentativePosition >= BOARD_SIZE)) {
             throw new PositionOutOfRangeException(tentativePosition, BOARD_SIZE);
         }
         // check position vacancy
-        if (isOccupied(tentativePosition)) {
-            throw new PositionAlreadyOccupiedException(
-                    "Position " + tentativePosition + " is already occupied by " + board[tentativePosition]);
+        if (BoardGeometry.isSet(xBits, tentativePosition) || BoardGeometry.isSet(oBits, tentativePosition)) {
+            throw new PositionAlreadyOccupiedException(tentativePosition, getMarkAt(tentativePosition));
         }
 
     }
 
+    /**
+     * Checks the validity of a move, like <code>validatePlayTentative</code>,
+     * but reports the outcome instead of throwing an exception.
+     * 
+     * Robots which try out many candidate moves should use this (or
+     * <code>isValidPlay</code>), since it costs no more than a bit test
+     * whatever the outcome.
+     * 
+     * @param tentativePosition
+     *            the tentative position where to play
+     * @return <code>VALID</code> if the move may be played,
+     *         <code>OUT_OF_RANGE</code> or <code>OCCUPIED</code> otherwise;
+     *         never null
+     */
+    public MoveStatus checkPlayTentative(final int tentativePosition) {
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.CHECK_PLAY_TENTATIVE);
+        }
+        if ((tentativePosition < 0) || (tentativePosition >= BOARD_SIZE)) {
+            return MoveStatus.OUT_OF_RANGE;
+        }
+        if (BoardGeometry.isSet(xBits, tentativePosition) || BoardGeometry.isSet(oBits, tentativePosition)) {
+            return MoveStatus.OCCUPIED;
+        }
+        return MoveStatus.VALID;
+    }
+
+    /**
+     * Checks if a move may be played, i.e. the position is in range and
+     * empty. Never throws an exception.
+     * 
+     * @param tentativePosition
+     *            the tentative position where to play
+     * @return true if the move is valid, false otherwise
+     */
+    public boolean isValidPlay(final int tentativePosition) {
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.CHECK_PLAY_TENTATIVE);
+        }
+        return (tentativePosition >= 0) && (tentativePosition < BOARD_SIZE)
+                && !BoardGeometry.isSet(xBits, tentativePosition) && !BoardGeometry.isSet(oBits, tentativePosition);
+    }
+
     /**
      * Displays the game board, with some funky characters. Writes to
      * console (using <code>System.out</code>).
@@ -188,40 +455,50 @@ public final class GameBoard {
      */
     @Override
     public String toString() {
-        // not the smartest way how to do this, but we want something fast...
-        // TODO make dynamic according to size
-        final StringBuilder buffer = new StringBuilder();
-        buffer.append('\n'); // new line
-        buffer.append(' '); // use char, faster than creating a String etc.
-        buffer.append(board[0] == null ? ' ' : board[0].name());
-        buffer.append(" \u00B3 ");
-        buffer.append(board[1] == null ? ' ' : board[1].name());
-        buffer.append(" \u00B3 ");
-        buffer.append(board[2] == null ? ' ' : board[2].name());
-        buffer.append('\n'); // new line
-        buffer.append("\u00C4\u00C4\u00C4\u00C5\u00C4\u00C4\u00C4\u00C5\u00C4\u00C4\u00C4\n");
-        buffer.append(' '); // use char, faster than creating a String etc.
-        buffer.append(board[3] == null ? ' ' : board[3].name());
-        buffer.append(" \u00B3 ");
-        buffer.append(board[4] == null ? ' ' : board[4].name());
-        buffer.append(" \u00B3 ");
-        buffer.append(board[5] == null ? ' ' : board[5].name());
-        buffer.append('\n'); // new line
-        buffer.append("\u00C4\u00C4\u00C4\u00C5\u00C4\u00C4\u00C4\u00C5\u00C4\u00C4\u00C4\n");
-        buffer.append(' '); // use char, faster than creating a String etc.
-        buffer.append(board[6] == null ? ' ' : board[6].name());
-        buffer.append(" \u00B3 ");
-        buffer.append(board[7] == null ? ' ' : board[7].name());
-        buffer.append(" \u00B3 ");
-        buffer.append(board[8] == null ? ' ' : board[8].name());
+        final int side = geometry.side;
+        // the separator between rows, three dashes per column with a cross between
+        final StringBuilder separator = new StringBuilder(4 * side);
+        for (int column = 0; column < side; column++) {
+            if (column > 0) {
+                separator.append('\u00C5');
+            }
+            separator.append("\u00C4\u00C4\u00C4");
+        }
+        separator.append('\n');
+
+        final StringBuilder buffer = new StringBuilder((side + 1) * separator.length() * 2);
         buffer.append('\n'); // new line
+        for (int row = 0; row < side; row++) {
+            if (row > 0) {
+                buffer.append(separator);
+            }
+            buffer.append(' '); // use char, faster than creating a String etc.
+            for (int column = 0; column < side; column++) {
+                if (column > 0) {
+                    buffer.append(" \u00B3 ");
+                }
+                buffer.append(markChar(row * side + column));
+            }
+            buffer.append('\n'); // new line
+        }
         return buffer.toString();
     }
 
+    /**
+     * Gets the display character for a position.
+     * 
+     * @param position
+     *            The position on the board
+     * @return 'X', 'O' or a space if the position is empty
+     */
+    private char markChar(final int position) {
+        return BoardGeometry.isSet(xBits, position) ? 'X' : BoardGeometry.isSet(oBits, position) ? 'O' : ' ';
+    }
+
     /**
      * Checks if this board is in a winning position.
      * 
-     * There are 8 winning positions in Tic Tac Toe wars.
+     * There are 8 winning positions in (classic, 3x3) Tic Tac Toe wars.
      * 
      * <pre>
      *   A |   |         | A |         |   | A      A |   |   
@@ -238,44 +515,20 @@ public final class GameBoard {
      *     |   |         |   |       A | A | A      A |   |
      * </pre>
      * 
-     * TODO should be dynamically sized according to BOARD_SIZE.
+     * On larger boards any <code>getWinLength()</code> marks in a row, across,
+     * down or diagonally, win.
+     * 
+     * The result is worked out as the marks are played (only the lines
+     * through the played position are tested), so this call costs nothing
+     * more than a field read, whatever the size of the board.
      * 
      * @return true if the board is in a winning position - false otherwise
      */
     public boolean isWinningPosition() {
-        if ((board[0] != null) && (board[1] != null) && (board[2] != null) && (board[0].equals(board[1]))
-                && (board[1].equals(board[2]))) {
-            return true;
-        }
-        if ((board[3] != null) && (board[4] != null) && (board[5] != null) && (board[3].equals(board[4]))
-                && (board[4].equals(board[5]))) {
-            return true;
-        }
-        if ((board[6] != null) && (board[7] != null) && (board[8] != null) && (board[6].equals(board[7]))
-                && (board[7].equals(board[8]))) {
-            return true;
-        }
-        if ((board[0] != null) && (board[3] != null) && (board[6] != null) && (board[0].equals(board[3]))
-                && (board[3].equals(board[6]))) {
-            return true;
-        }
-        if ((board[1] != null) && (board[4] != null) && (board[7] != null) && (board[1].equals(board[4]))
-                && (board[4].equals(board[7]))) {
-            return true;
-        }
-        if ((board[2] != null) && (board[5] != null) && (board[8] != null) && (board[2].equals(board[5]))
-                && (board[5].equals(board[8]))) {
-            return true;
-        }
-        if ((board[0] != null) && (board[4] != null) && (board[8] != null) && (board[0].equals(board[4]))
-                && (board[4].equals(board[8]))) {
-            return true;
-        }
-        if ((board[2] != null) && (board[4] != null) && (board[6] != null) && (board[2].equals(board[4]))
-                && (board[4].equals(board[6]))) {
-            return true;
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.IS_WINNING_POSITION);
         }
-        return false;
+        return winning;
     }
 
     /**
@@ -293,32 +546,159 @@ public final class GameBoard {
      */
     public void playAtPosition(final int positionToPlay, final Mark mark)
             throws PositionOutOfRangeException, PositionAlreadyOccupiedException {
+        if (mark == null) {
+            throw new IllegalArgumentException("mark cannot be null");
+        }
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.PLAY_AT_POSITION);
+        }
         // check
-        validatePlayTentative(positionToPlay);
+        validate(positionToPlay);
         // actually play the move on the board
-        board[positionToPlay] = mark;
-        // increment moves played
+        final boolean isX = Mark.X.equals(mark);
+        final long[] bits = isX ? xBits : oBits;
+        bits[positionToPlay >>> 6] |= 1L << positionToPlay;
+        geometry.updateKeys(keys, positionToPlay, isX);
+        // only the lines through this position can have been completed
+        if (!winning && geometry.completesLine(bits, positionToPlay)) {
+            winning = true;
+        }
+        // increment moves played (the position is no longer
+        // empty, as its bit is now set)
         movesPlayed++;
-        // remove from empty positions list
-        // autoboxing will not work here - since
-        // there is a remove which takes an int as param
-        emptyPositions.remove(new Integer(positionToPlay));
+        snapshot = null;
     }
 
     /**
      * Gets an integer list of all empty positions on the board.
      * 
      * When board is full this should return a list of size 0. Notice that we
-     * give a copy of the original emptyPositions so no one will have a live
-     * reference to it.
+     * give a brand new list each time so no one will have a live reference to
+     * the board.
      * 
-     * This method is much more performant than iterating through the collection
-     * and adding to a new arraylist
+     * This method allocates a list (and boxes its contents) on every call.
+     * Robots which search through many positions should rather use
+     * <code>getEmptyPositions(int[])</code> or <code>nextEmptyPosition</code>,
+     * which allocate nothing, or the read only list of
+     * <code>getSnapshot()</code>, which is built once per move.
      * 
      * @return The list of empty positions on the board.
      */
     public List<Integer> getEmptyPositions() {
-        return new ArrayList<Integer>(emptyPositions);
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.GET_EMPTY_POSITIONS);
+        }
+        final List<Integer> positions = new ArrayList<Integer>(getEmptyCount());
+        for (int position = nextEmptyPosition(0); position >= 0; position = nextEmptyPosition(position + 1)) {
+            positions.add(position);
+        }
+        return positions;
+    }
+
+    /**
+     * Fills the given array with the empty positions on the board, in
+     * ascending order, starting at index 0. Nothing is allocated, so the same
+     * array may be reused across calls.
+     * 
+     * @param positions
+     *            The array to fill, may not be null. Its length must be at
+     *            least <code>getEmptyCount()</code> (an array of
+     *            <code>getBoardSize()</code> is always large enough).
+     * @return The number of empty positions written to the array.
+     */
+    public int getEmptyPositions(final int[] positions) {
+        if (Metrics.ENABLED) {
+            Metrics.count(BoardOperation.GET_EMPTY_POSITIONS);
+        }
+        if (positions == null) {
+            throw new IllegalArgumentException("positions may not be null");
+        }
+        if (positions.length < getEmptyCount()) {
+            throw new IllegalArgumentException(
+                    "positions array too small: " + positions.length + " < " + getEmptyCount());
+        }
+        return geometry.fillEmpty(xBits, oBits, positions);
+    }
+
+    /**
+     * Gets the first empty position on the board which is greater than or
+     * equal to <code>fromPosition</code>. Allows iteration over the empty
+     * positions without any allocation (or boxing), as follows:
+     * 
+     * <pre>
+     * for (int p = board.nextEmptyPosition(0); p >= 0; p = board.nextEmptyPosition(p + 1)) {
+     *     // p is empty
+     * }
+     * </pre>
+     * 
+     * @param fromPosition
+     *            The position to start looking from (inclusive), may not be
+     *            negative
+     * @return The next empty position, or -1 if there is none.
+     */
+    public int nextEmptyPosition(final int fromPosition) {
+        if (fromPosition < 0) {
+            throw new IllegalArgumentException("fromPosition may not be negative: " + fromPosition);
+        }
+        return geometry.nextEmpty(xBits, oBits, fromPosition);
+    }
+
+    /**
+     * Gets the number of empty positions on the board.
+     * 
+     * @return <code>getBoardSize()</code> less the number of moves played.
+     *         Never negative.
+     */
+    public int getEmptyCount() {
+        return BOARD_SIZE - movesPlayed;
+    }
+
+    /**
+     * Gets one word of the bitboard of a mark (see <code>BoardBatch.load</code>).
+     * 
+     * @param mark
+     *            The mark, X or O
+     * @param word
+     *            The word, 0..(words - 1)
+     * @return The bits of the positions taken by the mark in that word
+     */
+    long getWord(final Mark mark, final int word) {
+        return (mark == Mark.X) ? xBits[word] : oBits[word];
+    }
+
+    /**
+     * Creates a <code>SearchBoard</code> holding a copy of this board's
+     * current position (and of the same shape). The search board may then be played on (and undone)
+     * freely without affecting this board, which is what robots doing a game
+     * tree search should use instead of rebuilding boards from
+     * <code>getBoardState()</code>.
+     * 
+     * @return A new search board, with the same position as this board
+     */
+    public SearchBoard newSearchBoard() {
+        final SearchBoard search = new SearchBoard(geometry);
+        copyInto(search);
+        return search;
+    }
+
+    /**
+     * Copies this board's current position into an existing
+     * <code>SearchBoard</code> (so it may be reused from one turn to the next
+     * without allocation). Any moves played on the search board are
+     * forgotten.
+     * 
+     * @param search
+     *            The search board to overwrite, may not be null. Must be of
+     *            the same shape as this board.
+     */
+    public void copyInto(final SearchBoard search) {
+        if (search == null) {
+            throw new IllegalArgumentException("search may not be null");
+        }
+        if (search.getGeometry() != geometry) {
+            throw new IllegalArgumentException("search board has a different shape");
+        }
+        search.load(xBits, oBits, keys, movesPlayed, winning);
     }
 
 }
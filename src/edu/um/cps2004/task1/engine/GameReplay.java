@@ -0,0 +1,271 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.exception.PositionAlreadyOccupiedException;
+import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
+import edu.um.cps2004.task1.record.GameRecord;
+import edu.um.cps2004.task1.record.GameRecordReader;
+import edu.um.cps2004.task1.robot.TTTRobot;
+
+/**
+ * Plays a recorded game again: rebuilds the board at any ply from the moves
+ * of the record, and asks robots for their moves on it, e.g. to reproduce
+ * the move which got a robot disqualified, under a debugger.
+ *
+ * If the game was seeded (see <code>BatchWarEngine.setSeed</code>), the
+ * robots are seeded just as the engine seeded them, and are asked for every
+ * move of the game up to the one replayed, in the order the engine asked
+ * them (with the recorded moves played in between), so that robots which
+ * draw random numbers (or keep any other state) from one move to the next
+ * are in the same state as when they played it. Robots are asked without a
+ * time budget (<code>TTTRobot.play</code>), even if they played under a
+ * time control.
+ *
+ * May be run from the command line, with a game record file and the index of
+ * a game in it (counting from 0), to print the game ply by ply; given the
+ * classes of the robots which played it (with no argument constructors), it
+ * also checks that they play it again, and replays the move of a robot which
+ * was disqualified:
+ *
+ * <pre>
+ * java edu.um.cps2004.task1.engine.GameReplay games.rec 1234 com.acme.RobotX com.acme.RobotO
+ * </pre>
+ *
+ * Not thread safe (nor are the robots it drives, usually).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class GameReplay {
+
+    /**
+     * The game (a copy of the record given).
+     */
+    private final GameRecord record = new GameRecord();
+
+    /**
+     * Creates a replay of a game.
+     *
+     * @param record
+     *            The record of the game, may not be null. It is copied, so it
+     *            may be reused afterwards.
+     */
+    public GameReplay(final GameRecord record) {
+        if (record == null) {
+            throw new IllegalArgumentException("record cannot be null");
+        }
+        this.record.copyFrom(record);
+    }
+
+    /**
+     * Gets the game replayed.
+     *
+     * @return The record of the game, never null (do not change it)
+     */
+    public GameRecord getRecord() {
+        return record;
+    }
+
+    /**
+     * Gets the mark to play at a ply.
+     *
+     * @param ply
+     *            The ply, counting from 0
+     * @return X or O, never null
+     */
+    public Mark turnAt(final int ply) {
+        if (ply < 0) {
+            throw new IllegalArgumentException("ply may not be negative: " + ply);
+        }
+        return ((ply & 1) == 0) ? record.getStartingMark() : opponentOf(record.getStartingMark());
+    }
+
+    /**
+     * Gets the board as it was before a ply was played.
+     *
+     * @param ply
+     *            The ply, 0..<code>getRecord().getMoveCount()</code> (the
+     *            last being the board at the end of the game)
+     * @return A new board, with the first <code>ply</code> moves played
+     */
+    public GameBoard boardAt(final int ply) {
+        checkPly(ply);
+        final GameBoard board = new GameBoard(record.getSide(), record.getWinLength());
+        for (int i = 0; i < ply; i++) {
+            playRecorded(board, i);
+        }
+        return board;
+    }
+
+    /**
+     * Asks a robot for its move at a ply again, on the board as it was then.
+     * The robots are seeded (if the game was), and asked for every move
+     * before it, as explained above; what they return for those (or throw)
+     * is ignored, the recorded moves are played instead.
+     *
+     * Replaying the ply after the last move of a game won by
+     * disqualification asks the loser for the move it was disqualified
+     * for: it returns that move again (or throws its exception again).
+     *
+     * @param robotX
+     *            A robot like the one which played X, may not be null
+     * @param robotO
+     *            A robot like the one which played O, may not be null (and
+     *            may be <code>robotX</code> if the same robot played both)
+     * @param ply
+     *            The ply, 0..<code>getRecord().getMoveCount()</code>
+     * @return The position returned by the robot whose turn it is
+     */
+    public int replay(final TTTRobot robotX, final TTTRobot robotO, final int ply) {
+        checkPly(ply);
+        final GameBoard board = start(robotX, robotO);
+        for (int i = 0; i < ply; i++) {
+            try {
+                ask(board, robotX, robotO, i);
+            } catch (final RuntimeException e) {
+                // what was played is the recorded move, whatever the robot does now
+            }
+            playRecorded(board, i);
+        }
+        return ask(board, robotX, robotO, ply);
+    }
+
+    /**
+     * Checks that robots play the recorded moves again, asking them for
+     * every move of the game in turn (on a board of the recorded moves).
+     *
+     * @param robotX
+     *            A robot like the one which played X, may not be null
+     * @param robotO
+     *            A robot like the one which played O, may not be null (and
+     *            may be <code>robotX</code> if the same robot played both)
+     * @return The first ply at which a robot played another move (or threw
+     *         an exception), or -1 if they played all the recorded moves
+     */
+    public int verify(final TTTRobot robotX, final TTTRobot robotO) {
+        final GameBoard board = start(robotX, robotO);
+        for (int ply = 0; ply < record.getMoveCount(); ply++) {
+            final int move;
+            try {
+                move = ask(board, robotX, robotO, ply);
+            } catch (final RuntimeException e) {
+                return ply;
+            }
+            if (move != record.getMove(ply)) {
+                return ply;
+            }
+            playRecorded(board, ply);
+        }
+        return -1;
+    }
+
+    /**
+     * Checks the robots and seeds them (if the game was seeded).
+     *
+     * @return A new, empty board
+     */
+    private GameBoard start(final TTTRobot robotX, final TTTRobot robotO) {
+        if ((robotX == null) || (robotO == null)) {
+            throw new IllegalArgumentException("robots cannot be null");
+        }
+        if (record.isSeeded()) {
+            BatchWarEngine.seedRobots(record.getSeed(), robotX, robotO);
+        }
+        return new GameBoard(record.getSide(), record.getWinLength());
+    }
+
+    /**
+     * Asks the robot whose turn it is at a ply for its move.
+     */
+    private int ask(final GameBoard board, final TTTRobot robotX, final TTTRobot robotO, final int ply) {
+        final Mark turn = turnAt(ply);
+        return ((turn == Mark.X) ? robotX : robotO).play(board, turn);
+    }
+
+    /**
+     * Plays the recorded move of a ply.
+     */
+    private void playRecorded(final GameBoard board, final int ply) {
+        try {
+            board.playAtPosition(record.getMove(ply), turnAt(ply));
+        } catch (final PositionOutOfRangeException | PositionAlreadyOccupiedException e) {
+            throw new IllegalStateException("Cannot replay move " + ply + " (was the board changed?)", e);
+        }
+    }
+
+    /**
+     * Checks a ply is in the game.
+     */
+    private void checkPly(final int ply) {
+        if ((ply < 0) || (ply > record.getMoveCount())) {
+            throw new IllegalArgumentException("ply must be in 0.." + record.getMoveCount() + ": " + ply);
+        }
+    }
+
+    /**
+     * Gets the other mark.
+     */
+    private static Mark opponentOf(final Mark mark) {
+        return (mark == Mark.X) ? Mark.O : Mark.X;
+    }
+
+    /**
+     * Replays a game from a game record file.
+     *
+     * @param args
+     *            The file, the index of the game in it, and optionally the
+     *            classes of the robots which played X and O
+     * @throws IOException
+     *             If the file cannot be read
+     * @throws ReflectiveOperationException
+     *             If a robot cannot be created
+     */
+    public static void main(final String[] args) throws IOException, ReflectiveOperationException {
+        if ((args.length != 2) && (args.length != 4)) {
+            System.err.println("Usage: GameReplay <game record file> <game> [<robot X class> <robot O class>]");
+            return;
+        }
+        final long game = Long.parseLong(args[1]);
+        final GameRecord record = new GameRecord();
+        try (GameRecordReader reader = new GameRecordReader(Paths.get(args[0]))) {
+            for (long i = 0; i <= game; i++) {
+                if (!reader.next(record)) {
+                    System.err.println("No game " + game + " in " + args[0] + " (" + i + " games)");
+                    return;
+                }
+            }
+        }
+        final GameReplay replay = new GameReplay(record);
+        System.out.println(record);
+        for (int ply = 1; ply <= record.getMoveCount(); ply++) {
+            System.out.println("ply " + (ply - 1) + ": " + replay.turnAt(ply - 1) + " plays "
+                    + record.getMove(ply - 1) + replay.boardAt(ply));
+        }
+        if (args.length == 2) {
+            return;
+        }
+
+        final TTTRobot robotX = Class.forName(args[2]).asSubclass(TTTRobot.class).getConstructor().newInstance();
+        final TTTRobot robotO = Class.forName(args[3]).asSubclass(TTTRobot.class).getConstructor().newInstance();
+        final int diverged = replay.verify(robotX, robotO);
+        if (diverged >= 0) {
+            System.out.println("diverged at ply " + diverged);
+        } else {
+            System.out.println("replayed all " + record.getMoveCount() + " moves");
+        }
+        if (record.getDisqualification() != null) {
+            final int ply = record.getMoveCount();
+            System.out.println("replaying the move at ply " + ply + " (" + record.getDisqualification() + ")");
+            System.out.println(replay.turnAt(ply) + " plays " + replay.replay(robotX, robotO, ply));
+        }
+    }
+
+}
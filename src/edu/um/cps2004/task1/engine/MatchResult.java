@@ -0,0 +1,153 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * The aggregated results of a number of games between two robots, one playing
+ * X and the other playing O.
+ *
+ * Simply counts wins (for each mark), draws and disqualifications. Results
+ * may be merged, e.g. to add up batches played on different threads. Not
+ * thread safe.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class MatchResult {
+
+    /**
+     * Games won by X (including those where O was disqualified).
+     */
+    private long winsX;
+
+    /**
+     * Games won by O (including those where X was disqualified).
+     */
+    private long winsO;
+
+    /**
+     * Games drawn (board full, no winner).
+     */
+    private long draws;
+
+    /**
+     * Games lost by X because it was disqualified.
+     */
+    private long disqualificationsX;
+
+    /**
+     * Games lost by O because it was disqualified.
+     */
+    private long disqualificationsO;
+
+    /**
+     * Counts one game.
+     *
+     * @param winner
+     *            The mark which won, or null for a draw
+     * @param disqualified
+     *            true if the game was won because the loser was
+     *            disqualified
+     */
+    void record(final Mark winner, final boolean disqualified) {
+        if (winner == null) {
+            draws++;
+        } else if (winner == Mark.X) {
+            winsX++;
+            if (disqualified) {
+                disqualificationsO++;
+            }
+        } else {
+            winsO++;
+            if (disqualified) {
+                disqualificationsX++;
+            }
+        }
+    }
+
+    /**
+     * Adds another result to this one.
+     *
+     * @param other
+     *            The result to add, may not be null
+     * @return This result (for chaining)
+     */
+    public MatchResult merge(final MatchResult other) {
+        if (other == null) {
+            throw new IllegalArgumentException("other may not be null");
+        }
+        winsX += other.winsX;
+        winsO += other.winsO;
+        draws += other.draws;
+        disqualificationsX += other.disqualificationsX;
+        disqualificationsO += other.disqualificationsO;
+        return this;
+    }
+
+    /**
+     * Gets the number of games played.
+     *
+     * @return The number of games, never negative
+     */
+    public long getGames() {
+        return winsX + winsO + draws;
+    }
+
+    /**
+     * Gets the number of games won by a mark.
+     *
+     * @param mark
+     *            The mark, may not be null
+     * @return The number of wins, never negative
+     */
+    public long getWins(final Mark mark) {
+        return (mark == Mark.X) ? winsX : winsO;
+    }
+
+    /**
+     * Gets the number of games lost by a mark (disqualifications included).
+     *
+     * @param mark
+     *            The mark, may not be null
+     * @return The number of losses, never negative
+     */
+    public long getLosses(final Mark mark) {
+        return (mark == Mark.X) ? winsO : winsX;
+    }
+
+    /**
+     * Gets the number of drawn games.
+     *
+     * @return The number of draws, never negative
+     */
+    public long getDraws() {
+        return draws;
+    }
+
+    /**
+     * Gets the number of games lost by a mark because its robot was
+     * disqualified.
+     *
+     * @param mark
+     *            The mark, may not be null
+     * @return The number of disqualifications, never negative
+     */
+    public long getDisqualifications(final Mark mark) {
+        return (mark == Mark.X) ? disqualificationsX : disqualificationsO;
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        return "games: " + getGames() + ", X wins: " + winsX + " (" + disqualificationsO + " by disqualification)"
+                + ", O wins: " + winsO + " (" + disqualificationsX + " by disqualification), draws: " + draws;
+    }
+
+}
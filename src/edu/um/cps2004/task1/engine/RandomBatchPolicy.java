@@ -0,0 +1,56 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import java.util.SplittableRandom;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * Plays uniformly at random among the empty positions of each board, the
+ * usual policy for Monte Carlo playouts.
+ *
+ * Not thread safe.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class RandomBatchPolicy implements BatchPolicy {
+
+    /**
+     * The source of random moves.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Creates a policy with a random seed.
+     */
+    public RandomBatchPolicy() {
+        this.random = new SplittableRandom();
+    }
+
+    /**
+     * Creates a policy which always plays the same moves for the same seed.
+     *
+     * @param seed
+     *            The seed
+     */
+    public RandomBatchPolicy(final long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public void choose(final BoardBatch batch, final Mark turn, final boolean[] playing, final int[] positions) {
+        final int size = batch.getBoardSize();
+        for (int board = 0; board < batch.getCapacity(); board++) {
+            if (playing[board]) {
+                final int empty = size - batch.getMovesPlayed(board);
+                positions[board] = batch.getEmptyPosition(board, random.nextInt(empty));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,397 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * A scratch board for robots which search the game tree (minimax, alpha-beta
+ * and friends).
+ *
+ * A search board is a private copy of a <code>GameBoard</code>, taken with
+ * <code>GameBoard.newSearchBoard()</code> (or refreshed with
+ * <code>GameBoard.copyInto</code>). Moves are played with <code>play</code> and
+ * taken back with <code>undo</code>, in place, so a whole search may be done
+ * on one instance without any copying or allocation. The number of moves
+ * played, the empty positions and the win state are kept consistent on both.
+ *
+ * Since it is a copy, nothing done to a search board has any effect on the
+ * game board of the engine (so no cheating here either).
+ *
+ * Moves are checked much as on the <code>GameBoard</code>: <code>play</code>
+ * rejects a position out of range or already occupied, and a null mark,
+ * but with an (unchecked) <code>IllegalArgumentException</code> rather than
+ * the checked exceptions of the game board, so a search need not catch
+ * anything. Undoing more moves than were played throws an
+ * <code>IllegalStateException</code>.
+ *
+ * Not thread safe, each searching thread should have its own copy.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class SearchBoard {
+
+    /**
+     * The shape of the board.
+     */
+    private final BoardGeometry geometry;
+
+    /**
+     * The board size (max number of X and Os which we can fit on the board)
+     */
+    private final int BOARD_SIZE;
+
+    /**
+     * The positions occupied by X, one bit per position.
+     */
+    private final long[] xBits;
+
+    /**
+     * The positions occupied by O, one bit per position.
+     */
+    private final long[] oBits;
+
+    /**
+     * The Zobrist keys of the position, one per symmetry of the board.
+     */
+    private final long[] keys = new long[BoardGeometry.SYMMETRIES];
+
+    /**
+     * The number of moves on this board (including those which were already
+     * there when it was copied). Never negative, =< BOARD_SIZE
+     */
+    private int movesPlayed;
+
+    /**
+     * The value of <code>movesPlayed</code> when the board first became a
+     * winning position, or 0 if it is not. Undoing that move clears it.
+     */
+    private int winningAt;
+
+    /**
+     * The positions played on this board since it was copied, in order, so
+     * they may be undone. Only the first <code>undoable</code> are valid.
+     */
+    private final int[] history;
+
+    /**
+     * The number of moves which may be undone.
+     */
+    private int undoable;
+
+    /**
+     * Only the game board creates these (see
+     * <code>GameBoard.newSearchBoard()</code>).
+     *
+     * @param geometry
+     *            The shape of the board
+     */
+    SearchBoard(final BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.BOARD_SIZE = geometry.size;
+        this.xBits = new long[geometry.words];
+        this.oBits = new long[geometry.words];
+        this.history = new int[geometry.size];
+    }
+
+    /**
+     * Gets the shape of this board.
+     *
+     * @return The shape, never null
+     */
+    BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Loads a position into this board, forgetting any previous history.
+     * Called by the <code>GameBoard</code> being copied.
+     *
+     * @param xBits
+     *            The positions occupied by X
+     * @param oBits
+     *            The positions occupied by O
+     * @param keys
+     *            The Zobrist keys of the position
+     * @param movesPlayed
+     *            The number of moves played
+     * @param winning
+     *            Whether the position is already won
+     */
+    void load(final long[] xBits, final long[] oBits, final long[] keys, final int movesPlayed,
+            final boolean winning) {
+        System.arraycopy(xBits, 0, this.xBits, 0, this.xBits.length);
+        System.arraycopy(oBits, 0, this.oBits, 0, this.oBits.length);
+        System.arraycopy(keys, 0, this.keys, 0, this.keys.length);
+        this.movesPlayed = movesPlayed;
+        this.winningAt = winning ? movesPlayed : 0;
+        this.undoable = 0;
+    }
+
+    /**
+     * Plays a mark at a position.
+     *
+     * @param position
+     *            The position to play, which must be empty
+     * @param mark
+     *            The mark to place at the position, may not be null
+     * @throws IllegalArgumentException
+     *             If the position is occupied or out of range
+     */
+    public void play(final int position, final Mark mark) {
+        if (!geometry.inRange(position) || BoardGeometry.isSet(xBits, position)
+                || BoardGeometry.isSet(oBits, position)) {
+            throw new IllegalArgumentException("Cannot play at position " + position);
+        }
+        final long[] bits;
+        if (mark == Mark.X) {
+            bits = xBits;
+        } else if (mark == Mark.O) {
+            bits = oBits;
+        } else {
+            throw new IllegalArgumentException("mark cannot be null");
+        }
+        bits[position >>> 6] |= 1L << position;
+        geometry.updateKeys(keys, position, bits == xBits);
+        history[undoable++] = position;
+        movesPlayed++;
+        if ((winningAt == 0) && geometry.completesLine(bits, position)) {
+            winningAt = movesPlayed;
+        }
+    }
+
+    /**
+     * Takes back the last move played with <code>play</code>.
+     *
+     * @return The position which was undone (now empty again)
+     * @throws IllegalStateException
+     *             If there are no moves to undo (moves on the board when it
+     *             was copied may not be undone)
+     */
+    public int undo() {
+        if (undoable == 0) {
+            throw new IllegalStateException("No moves to undo");
+        }
+        final int position = history[--undoable];
+        geometry.updateKeys(keys, position, BoardGeometry.isSet(xBits, position));
+        final long clear = ~(1L << position);
+        xBits[position >>> 6] &= clear;
+        oBits[position >>> 6] &= clear;
+        if (winningAt == movesPlayed) {
+            winningAt = 0;
+        }
+        movesPlayed--;
+        return position;
+    }
+
+    /**
+     * Checks if this board is in a winning position (some line is complete).
+     *
+     * @return true if the board is in a winning position - false otherwise
+     */
+    public boolean isWinningPosition() {
+        return winningAt != 0;
+    }
+
+    /**
+     * Checks if the board is full.
+     *
+     * @return true if the board is full, false otherwise
+     */
+    public boolean isFull() {
+        return (movesPlayed == BOARD_SIZE);
+    }
+
+    /**
+     * Checks if the board is empty.
+     *
+     * @return true if the board is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return (movesPlayed == 0);
+    }
+
+    /**
+     * Gets the board size.
+     *
+     * @return The number of positions on the board, always greater than 0.
+     */
+    public int getBoardSize() {
+        return BOARD_SIZE;
+    }
+
+    /**
+     * Gets the number of rows (and columns) of this square board.
+     *
+     * @return The side of the board
+     */
+    public int getSide() {
+        return geometry.side;
+    }
+
+    /**
+     * Gets the number of marks in a row needed to win.
+     *
+     * @return The win length
+     */
+    public int getWinLength() {
+        return geometry.winLength;
+    }
+
+    /**
+     * Gets the number of moves on the board (including those there when it
+     * was copied).
+     *
+     * @return The number of moves played, 0..getBoardSize()
+     */
+    public int getMovesPlayed() {
+        return movesPlayed;
+    }
+
+    /**
+     * Gets the number of moves which may be undone, i.e. the depth of the
+     * search below the copied position.
+     *
+     * @return The number of moves played on this copy, never negative
+     */
+    public int getDepth() {
+        return undoable;
+    }
+
+    /**
+     * Gets the mark at a position.
+     *
+     * @param position
+     *            The position, 0..(getBoardSize()-1)
+     * @return The mark at the position, or null if it is empty
+     */
+    public Mark getMark(final int position) {
+        if (BoardGeometry.isSet(xBits, position)) {
+            return Mark.X;
+        }
+        if (BoardGeometry.isSet(oBits, position)) {
+            return Mark.O;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a position is occupied.
+     *
+     * @param position
+     *            The position, 0..(getBoardSize()-1)
+     * @return true if occupied, false otherwise
+     */
+    public boolean isOccupied(final int position) {
+        return BoardGeometry.isSet(xBits, position) || BoardGeometry.isSet(oBits, position);
+    }
+
+    /**
+     * Checks if a move may be played, i.e. the position is in range and
+     * empty. Never throws an exception.
+     *
+     * @param position
+     *            The position
+     * @return true if the move is valid, false otherwise
+     */
+    public boolean isValidPlay(final int position) {
+        return geometry.inRange(position) && !BoardGeometry.isSet(xBits, position)
+                && !BoardGeometry.isSet(oBits, position);
+    }
+
+    /**
+     * Gets the positions occupied by a mark as a bit mask (bit <i>n</i> set if
+     * the mark is at position <i>n</i>). Handy for evaluation functions.
+     * Only available on boards of up to 64 positions.
+     *
+     * @param mark
+     *            The mark, may not be null
+     * @return The bit mask of positions taken by the mark
+     * @throws IllegalStateException
+     *             If the board has more than 64 positions
+     */
+    public long getBits(final Mark mark) {
+        if (mark == null) {
+            throw new IllegalArgumentException("mark cannot be null");
+        }
+        if (geometry.words != 1) {
+            throw new IllegalStateException("Board too large for a single mask: " + BOARD_SIZE);
+        }
+        return (mark == Mark.X) ? xBits[0] : oBits[0];
+    }
+
+    /**
+     * Gets the canonical key (Zobrist hash) of the position, the same for all
+     * positions equivalent under rotation or reflection (see
+     * <code>GameBoard.getPositionKey()</code>). Kept up to date by
+     * <code>play</code> and <code>undo</code>.
+     *
+     * @return The canonical key of the position
+     */
+    public long getPositionKey() {
+        return keys[BoardGeometry.canonicalSymmetry(keys)];
+    }
+
+    /**
+     * Maps a position on this board to where it is on the canonical board
+     * (the rotation/reflection whose key is <code>getPositionKey()</code>).
+     * Moves stored against a canonical key (e.g. a best move in a
+     * transposition table) should be stored in this form.
+     *
+     * @param position
+     *            The position on this board
+     * @return The position on the canonical board
+     */
+    public int toCanonical(final int position) {
+        return geometry.symmetry[BoardGeometry.canonicalSymmetry(keys)][position];
+    }
+
+    /**
+     * Maps a position on the canonical board back to this board (the inverse
+     * of <code>toCanonical</code>).
+     *
+     * @param canonicalPosition
+     *            The position on the canonical board
+     * @return The position on this board
+     */
+    public int fromCanonical(final int canonicalPosition) {
+        return geometry.inverse(BoardGeometry.canonicalSymmetry(keys), canonicalPosition);
+    }
+
+    /**
+     * Gets the number of empty positions on the board.
+     *
+     * @return The number of empty positions, never negative
+     */
+    public int getEmptyCount() {
+        return BOARD_SIZE - movesPlayed;
+    }
+
+    /**
+     * Fills the given array with the empty positions, in ascending order.
+     *
+     * @param positions
+     *            The array to fill, at least <code>getEmptyCount()</code> long
+     * @return The number of empty positions written to the array
+     */
+    public int getEmptyPositions(final int[] positions) {
+        return geometry.fillEmpty(xBits, oBits, positions);
+    }
+
+    /**
+     * Gets the first empty position greater than or equal to
+     * <code>fromPosition</code>.
+     *
+     * @param fromPosition
+     *            The position to start looking from (inclusive), not negative
+     * @return The next empty position, or -1 if there is none.
+     */
+    public int nextEmptyPosition(final int fromPosition) {
+        return geometry.nextEmpty(xBits, oBits, fromPosition);
+    }
+
+}
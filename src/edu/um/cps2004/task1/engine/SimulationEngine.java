@@ -0,0 +1,260 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * An engine for simulation workloads: plays a whole <code>BoardBatch</code>
+ * of games at once, in lock step, between two <code>BatchPolicy</code>s
+ * (uniformly random by default).
+ *
+ * At each step the policy of the side to move picks a move on every board
+ * still being played, the moves are played together, and the boards are
+ * checked for a win (with the batch win check on boards with few lines,
+ * and only around the moves played on others, where that is cheaper).
+ * Finished boards sit out the rest of the batch. All boards of a batch start
+ * with the same mark; successive batches alternate it, as
+ * <code>BatchWarEngine</code> does game by game.
+ *
+ * There are no robots, so no disqualifications: a policy picking an occupied
+ * or out of range position is a bug, and ends the simulation with an
+ * exception. Use <code>BatchWarEngine</code> to play robots.
+ *
+ * Not thread safe, an engine (and its batch) belongs to a single thread; run
+ * one engine per thread for more.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class SimulationEngine {
+
+    /**
+     * The default number of boards in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * The most winning lines on a board for which wins are checked with
+     * <code>BoardBatch.findWins</code>, over all boards at once, rather than
+     * one board at a time around the move just played. The batch check does
+     * work for every line, so it only pays on small boards (the classic one
+     * has 8 lines, 4x4 has 10, but 4x4 with 3 in a row has 24).
+     */
+    private static final int BATCH_WIN_CHECK_LINES = 16;
+
+    /**
+     * The boards.
+     */
+    private final BoardBatch batch;
+
+    /**
+     * The policy playing X.
+     */
+    private final BatchPolicy policyX;
+
+    /**
+     * The policy playing O.
+     */
+    private final BatchPolicy policyO;
+
+    /**
+     * Whether to check wins with <code>BoardBatch.findWins</code> (rather
+     * than around each move).
+     */
+    private final boolean batchWinCheck;
+
+    /**
+     * Which boards are still being played.
+     */
+    private final boolean[] playing;
+
+    /**
+     * The boards on which the side which just moved has a line.
+     */
+    private final boolean[] won;
+
+    /**
+     * The moves of the current step.
+     */
+    private final int[] positions;
+
+    /**
+     * The mark which plays first in the next batch.
+     */
+    private Mark startingMark = Mark.X;
+
+    /**
+     * The number of games played since this engine was created.
+     */
+    private long gamesPlayed;
+
+    /**
+     * The time spent playing since this engine was created, in nanoseconds.
+     */
+    private long nanos;
+
+    /**
+     * Creates an engine playing random games on the classic 3x3 board, with
+     * the default batch size.
+     */
+    public SimulationEngine() {
+        this(DEFAULT_BATCH_SIZE, 3, 3, new RandomBatchPolicy(), new RandomBatchPolicy());
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param batchSize
+     *            The number of games played at once, at least 1
+     * @param side
+     *            The number of rows (and columns) of the board
+     * @param winLength
+     *            The number of marks in a row needed to win
+     * @param policyX
+     *            The policy playing X, may not be null
+     * @param policyO
+     *            The policy playing O, may not be null (and may be the same
+     *            as <code>policyX</code>)
+     */
+    public SimulationEngine(final int batchSize, final int side, final int winLength, final BatchPolicy policyX,
+            final BatchPolicy policyO) {
+        if ((policyX == null) || (policyO == null)) {
+            throw new IllegalArgumentException("policies cannot be null");
+        }
+        this.batch = new BoardBatch(batchSize, side, winLength);
+        this.policyX = policyX;
+        this.policyO = policyO;
+        this.batchWinCheck = batch.getLineCount() <= BATCH_WIN_CHECK_LINES;
+        this.playing = new boolean[batchSize];
+        this.won = new boolean[batchSize];
+        this.positions = new int[batchSize];
+    }
+
+    /**
+     * Plays a number of games, in batches.
+     *
+     * @param games
+     *            The number of games to play, not negative (the last batch is
+     *            only partly used if it is not a multiple of the batch size)
+     * @return The results, X and O being the policies
+     */
+    public MatchResult simulate(final long games) {
+        if (games < 0) {
+            throw new IllegalArgumentException("games cannot be negative");
+        }
+        final long start = System.nanoTime();
+        final MatchResult result = new MatchResult();
+        long remaining = games;
+        while (remaining > 0) {
+            final int size = (int) Math.min(remaining, batch.getCapacity());
+            playBatch(size, result);
+            remaining -= size;
+            startingMark = (startingMark == Mark.X) ? Mark.O : Mark.X;
+        }
+        gamesPlayed += games;
+        nanos += System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Plays one batch of games.
+     *
+     * @param size
+     *            The number of boards to play on
+     * @param result
+     *            The results to add to
+     */
+    private void playBatch(final int size, final MatchResult result) {
+        final int capacity = batch.getCapacity();
+        batch.clear();
+        for (int board = 0; board < capacity; board++) {
+            playing[board] = board < size;
+            positions[board] = -1;
+        }
+        int left = size;
+        Mark mark = startingMark;
+        while (left > 0) {
+            ((mark == Mark.X) ? policyX : policyO).choose(batch, mark, playing, positions);
+            for (int board = 0; board < capacity; board++) {
+                if (!playing[board]) {
+                    positions[board] = -1;
+                }
+            }
+            batch.play(positions, mark);
+            if (batchWinCheck) {
+                batch.findWins(mark, won);
+            }
+            for (int board = 0; board < capacity; board++) {
+                if (!playing[board]) {
+                    continue;
+                }
+                final boolean line = batchWinCheck ? won[board] : batch.completesLine(board, positions[board], mark);
+                if (line) {
+                    result.record(mark, false);
+                } else if (batch.isFull(board)) {
+                    result.record(null, false);
+                } else {
+                    continue;
+                }
+                playing[board] = false;
+                left--;
+            }
+            mark = (mark == Mark.X) ? Mark.O : Mark.X;
+        }
+    }
+
+    /**
+     * Gets the boards played on (e.g. to look at the final positions of the
+     * last batch).
+     *
+     * @return The batch, never null
+     */
+    public BoardBatch getBatch() {
+        return batch;
+    }
+
+    /**
+     * Gets the mark which plays first in the next batch.
+     *
+     * @return The starting mark, never null
+     */
+    public Mark getStartingMark() {
+        return startingMark;
+    }
+
+    /**
+     * Sets the mark which plays first in the next batch.
+     *
+     * @param startingMark
+     *            The starting mark, may not be null
+     */
+    public void setStartingMark(final Mark startingMark) {
+        if (startingMark == null) {
+            throw new IllegalArgumentException("startingMark cannot be null");
+        }
+        this.startingMark = startingMark;
+    }
+
+    /**
+     * Gets the number of games played since this engine was created.
+     *
+     * @return The number of games
+     */
+    public long getGamesPlayed() {
+        return gamesPlayed;
+    }
+
+    /**
+     * Gets the overall speed of this engine.
+     *
+     * @return The games played per second, 0 if none were played yet
+     */
+    public double getGamesPerSecond() {
+        return (nanos == 0) ? 0.0 : gamesPlayed * 1e9 / nanos;
+    }
+
+}
@@ -23,15 +23,15 @@ public abstract class TTTWarEngine {
     /**
      * The two players, one will be playing X and the other will be playing O.
      * 
-     * Eventually it might be a good idea to have a list of players, instead of
-     * hardcoding two (this way we can pair teams up etc.)
+     * There are always two: a list of teams is seated here in turn by the
+     * <code>TeamWarEngine</code>, the robots of a team sharing its mark.
      */
     protected final TTTPlayer playerX, playerO;
 
     /**
      * The board we are going to play upon
      */
-    protected final GameBoard board = new GameBoard();
+    protected final GameBoard board;
 
     /**
      * The constructor of the robots war engine.
@@ -44,6 +44,31 @@ public abstract class TTTWarEngine {
      *            will play with O.
      */
     public TTTWarEngine(final TTTRobot robotX, final TTTRobot robotO) {
+        this(robotX, robotO, new GameBoard());
+    }
+
+    /**
+     * The constructor of the robots war engine, for a larger board.
+     * 
+     * @param robotX
+     *            An instance of the first robot, may not be null. This robot
+     *            will play with X.
+     * @param robotO
+     *            An instance of the second robot, may not be null This robot
+     *            will play with O.
+     * @param side
+     *            The number of rows (and columns) of the board
+     * @param winLength
+     *            The number of marks in a row needed to win
+     */
+    public TTTWarEngine(final TTTRobot robotX, final TTTRobot robotO, final int side, final int winLength) {
+        this(robotX, robotO, new GameBoard(side, winLength));
+    }
+
+    /**
+     * Common constructor, validates the robots and keeps the board.
+     */
+    private TTTWarEngine(final TTTRobot robotX, final TTTRobot robotO, final GameBoard board) {
         super(); // implied
         // do some validation
         if (robotX == null) {
@@ -62,6 +87,7 @@ public abstract class TTTWarEngine {
             throw new IllegalArgumentException(robotO + " master name may not be null");
         }
 
+        this.board = board;
         // create a player out of the first robot
         this.playerX = new TTTPlayer(Mark.X, robotX);
         // create a player out of the second robot
@@ -0,0 +1,216 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.player.Team;
+import edu.um.cps2004.task1.robot.SeedableRobot;
+import edu.um.cps2004.task1.robot.TTTRobot;
+import edu.um.cps2004.task1.robot.TimedRobot;
+
+/**
+ * A war engine for any number of teams (or plain robots), which plays a
+ * series between every two of them.
+ *
+ * Rather than one two-player engine per pairing, this engine seats each
+ * pairing in turn on its X and O seats, and plays all of the series on the
+ * same board, with the same players. The teams themselves are usually
+ * <code>Team</code>s, whose members take turns to play their moves (the
+ * seats tell them when each game starts); any <code>TTTRobot</code> may take
+ * part though.
+ *
+ * Everything else (rules, time control, recording, metrics) is as for the
+ * <code>BatchWarEngine</code>; games are recorded and counted under the name
+ * of the team.
+ *
+ * Not thread safe, an engine (and its teams) belongs to a single thread.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public class TeamWarEngine extends BatchWarEngine {
+
+    /**
+     * The teams, in the order given.
+     */
+    private final List<TTTRobot> teams;
+
+    /**
+     * Creates an engine for the classic 3x3 board.
+     *
+     * @param teams
+     *            The teams, at least two, may not be null (nor contain
+     *            nulls)
+     */
+    public TeamWarEngine(final List<? extends TTTRobot> teams) {
+        this(teams, 3, 3);
+    }
+
+    /**
+     * Creates an engine for a larger board.
+     *
+     * @param teams
+     *            The teams, at least two, may not be null (nor contain
+     *            nulls)
+     * @param side
+     *            The number of rows (and columns) of the board
+     * @param winLength
+     *            The number of marks in a row needed to win
+     */
+    public TeamWarEngine(final List<? extends TTTRobot> teams, final int side, final int winLength) {
+        super(new Seat(teamAt(teams, 0)), new Seat(teamAt(teams, 1)), side, winLength);
+        for (final TTTRobot team : teams) {
+            if ((team == null) || (team.getRobotMasterName() == null)) {
+                throw new IllegalArgumentException("Teams (and their names) may not be null: " + team);
+            }
+        }
+        this.teams = Collections.unmodifiableList(new ArrayList<TTTRobot>(teams));
+    }
+
+    /**
+     * Gets a team, checking there are at least two.
+     */
+    private static TTTRobot teamAt(final List<? extends TTTRobot> teams, final int index) {
+        if ((teams == null) || (teams.size() < 2)) {
+            throw new IllegalArgumentException("At least two teams are needed");
+        }
+        return teams.get(index);
+    }
+
+    /**
+     * Plays a series between every two teams: each team plays each other
+     * team <code>gamesPerPairing</code> games as X, and as many as O
+     * (alternating which mark starts, as <code>playBatch</code> does).
+     *
+     * @param gamesPerPairing
+     *            The number of games per pairing and mark, not negative
+     * @return The results, <code>[x][o]</code> being those of team <i>x</i>
+     *         (by index in <code>getTeams()</code>) playing X against team
+     *         <i>o</i> playing O; null where <i>x</i> = <i>o</i>
+     */
+    public MatchResult[][] playSeries(final int gamesPerPairing) {
+        if (gamesPerPairing < 0) {
+            throw new IllegalArgumentException("gamesPerPairing may not be negative: " + gamesPerPairing);
+        }
+        final MatchResult[][] results = new MatchResult[teams.size()][teams.size()];
+        for (int x = 0; x < teams.size(); x++) {
+            for (int o = 0; o < teams.size(); o++) {
+                if (x != o) {
+                    seat(x, o);
+                    results[x][o] = playBatch(gamesPerPairing);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Seats two teams, for the following games.
+     *
+     * @param x
+     *            The index of the team playing X
+     * @param o
+     *            The index of the team playing O
+     */
+    public void seat(final int x, final int o) {
+        if (x == o) {
+            throw new IllegalArgumentException("A team cannot play itself: " + x);
+        }
+        ((Seat) playerX.getRobot()).team = teams.get(x);
+        ((Seat) playerO.getRobot()).team = teams.get(o);
+        robotsChanged();
+    }
+
+    /**
+     * Plays one game between the teams seated, telling them it starts
+     * first.
+     */
+    @Override
+    public void play() {
+        ((Seat) playerX.getRobot()).newGame();
+        ((Seat) playerO.getRobot()).newGame();
+        super.play();
+    }
+
+    /**
+     * Gets the teams.
+     *
+     * @return The teams, in the order given, unmodifiable
+     */
+    public List<TTTRobot> getTeams() {
+        return teams;
+    }
+
+    /**
+     * Gets the team playing a mark.
+     *
+     * @param mark
+     *            X or O, may not be null
+     * @return The team, never null
+     */
+    public TTTRobot getSeated(final Mark mark) {
+        return ((Seat) ((mark == Mark.X) ? playerX : playerO).getRobot()).team;
+    }
+
+    /**
+     * A seat at the board, standing in for the team seated there.
+     */
+    private static final class Seat implements TimedRobot, SeedableRobot {
+
+        /**
+         * The team seated here.
+         */
+        private TTTRobot team;
+
+        private Seat(final TTTRobot team) {
+            this.team = team;
+        }
+
+        @Override
+        public String getRobotMasterName() {
+            return team.getRobotMasterName();
+        }
+
+        @Override
+        public int play(final GameBoard board, final Mark turn) {
+            return team.play(board, turn);
+        }
+
+        @Override
+        public int play(final GameBoard board, final Mark turn, final long budgetNanos) {
+            if (team instanceof TimedRobot) {
+                return ((TimedRobot) team).play(board, turn, budgetNanos);
+            }
+            return team.play(board, turn);
+        }
+
+        /**
+         * Tells the team seated here that a game starts.
+         */
+        private void newGame() {
+            if (team instanceof Team) {
+                ((Team) team).newGame();
+            }
+        }
+
+        @Override
+        public void setSeed(final long seed) {
+            if (team instanceof SeedableRobot) {
+                ((SeedableRobot) team).setSeed(seed);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(team);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time limits of a game: a budget for each move, and one for all the
+ * moves of a player in a game. A robot exceeding either is disqualified
+ * (<code>Disqualification.TIMEOUT</code>).
+ *
+ * Time is measured around the robot's <code>play</code> call on the engine
+ * thread, so enforcement costs a couple of <code>System.nanoTime()</code>
+ * calls per move. A single, shared watchdog thread also interrupts robots
+ * which are still thinking when their time is up, so that long searches can
+ * stop (see <code>TimedRobot</code>). Note that Java cannot safely kill a
+ * thread, so a robot which ignores interrupts and never returns cannot be
+ * stopped; it will however lose as soon as it does return.
+ *
+ * Immutable.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class TimeControl {
+
+    /**
+     * No time limits at all (the default). Robots are not even timed.
+     */
+    public static final TimeControl UNLIMITED = new TimeControl(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * The most time a single move may take, in nanoseconds.
+     */
+    private final long perMoveNanos;
+
+    /**
+     * The most time all the moves of a player in one game may take, in
+     * nanoseconds.
+     */
+    private final long perGameNanos;
+
+    /**
+     * Creates a time control.
+     */
+    private TimeControl(final long perMoveNanos, final long perGameNanos) {
+        this.perMoveNanos = perMoveNanos;
+        this.perGameNanos = perGameNanos;
+    }
+
+    /**
+     * Creates a time control with both a per move and a per game budget.
+     *
+     * @param perMove
+     *            The most time a move may take, positive
+     * @param perGame
+     *            The most time a player's moves may take in a game, positive
+     * @param unit
+     *            The unit of the above, may not be null
+     * @return The time control, never null
+     */
+    public static TimeControl of(final long perMove, final long perGame, final TimeUnit unit) {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit may not be null");
+        }
+        if ((perMove <= 0) || (perGame <= 0)) {
+            throw new IllegalArgumentException("budgets must be positive: " + perMove + ", " + perGame);
+        }
+        return new TimeControl(unit.toNanos(perMove), unit.toNanos(perGame));
+    }
+
+    /**
+     * Creates a time control with a per move budget only.
+     *
+     * @param perMove
+     *            The most time a move may take, positive
+     * @param unit
+     *            The unit of the above, may not be null
+     * @return The time control, never null
+     */
+    public static TimeControl perMove(final long perMove, final TimeUnit unit) {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit may not be null");
+        }
+        if (perMove <= 0) {
+            throw new IllegalArgumentException("budget must be positive: " + perMove);
+        }
+        return new TimeControl(unit.toNanos(perMove), Long.MAX_VALUE);
+    }
+
+    /**
+     * Checks whether there are any limits.
+     *
+     * @return false for <code>UNLIMITED</code>, true otherwise
+     */
+    public boolean isLimited() {
+        return (perMoveNanos != Long.MAX_VALUE) || (perGameNanos != Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the budget of a single move.
+     *
+     * @return The budget in nanoseconds (Long.MAX_VALUE if unlimited)
+     */
+    public long getPerMoveNanos() {
+        return perMoveNanos;
+    }
+
+    /**
+     * Gets the budget of all a player's moves in a game.
+     *
+     * @return The budget in nanoseconds (Long.MAX_VALUE if unlimited)
+     */
+    public long getPerGameNanos() {
+        return perGameNanos;
+    }
+
+    /**
+     * Gets the budget of the next move, given the time a player has used so
+     * far in the game.
+     *
+     * @param usedNanos
+     *            The time used by the player in this game so far
+     * @return The budget for the move, in nanoseconds (0 or less if the game
+     *         budget is already exhausted)
+     */
+    long budgetFor(final long usedNanos) {
+        return Math.min(perMoveNanos, perGameNanos - usedNanos);
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        if (!isLimited()) {
+            return "unlimited";
+        }
+        return "per move: " + (perMoveNanos == Long.MAX_VALUE ? "unlimited" : perMoveNanos + "ns") + ", per game: "
+                + (perGameNanos == Long.MAX_VALUE ? "unlimited" : perGameNanos + "ns");
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.engine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single daemon thread which interrupts robots still thinking after their
+ * time is up.
+ *
+ * Every thread playing timed games gets one <code>Clock</code> (registered
+ * the first time it is needed, and dropped once the thread dies). Starting and
+ * stopping a clock for a move only sets a couple of fields (no locks), the
+ * watchdog checks all clocks once per tick. So there is no thread, task or timer
+ * created per move. While no move is being timed, the watchdog does not tick
+ * at all: it sleeps until a clock starts.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+final class Watchdog implements Runnable {
+
+    /**
+     * How often the clocks are checked. Robots are interrupted up to this
+     * late (the time limit itself is measured exactly by the engine).
+     */
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The clocks of all threads playing timed games.
+     */
+    private static final List<Clock> CLOCKS = new CopyOnWriteArrayList<Clock>();
+
+    /**
+     * The number of clocks timing a move (whose state is odd).
+     */
+    private static final AtomicInteger TIMING = new AtomicInteger();
+
+    /**
+     * The clock of the current thread.
+     */
+    private static final ThreadLocal<Clock> CLOCK = new ThreadLocal<Clock>() {
+        @Override
+        protected Clock initialValue() {
+            final Clock clock = new Clock(Thread.currentThread());
+            CLOCKS.add(clock);
+            Holder.ensureStarted();
+            return clock;
+        }
+    };
+
+    /**
+     * Utility (and runnable), only instantiated for the watchdog thread.
+     */
+    private Watchdog() {
+        super(); // implied
+    }
+
+    /**
+     * Gets the clock of the calling thread.
+     *
+     * @return The clock, never null
+     */
+    static Clock clock() {
+        return CLOCK.get();
+    }
+
+    /**
+     * Checks all clocks, once per tick while any is timing a move, forever.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            if (TIMING.get() == 0) {
+                LockSupport.park(); // until a clock starts (which unparks us)
+                continue;
+            }
+            LockSupport.parkNanos(TICK_NANOS);
+            final long now = System.nanoTime();
+            for (final Clock clock : CLOCKS) {
+                if (!clock.owner.isAlive()) {
+                    CLOCKS.remove(clock);
+                    clock.abandon();
+                } else {
+                    clock.check(now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the watchdog thread (once) when the first clock is created.
+     */
+    private static final class Holder {
+
+        private static final Thread THREAD;
+
+        static {
+            THREAD = new Thread(new Watchdog(), "tttwar-watchdog");
+            THREAD.setDaemon(true);
+            THREAD.start();
+        }
+
+        private static void ensureStarted() {
+            // loading this class is enough
+        }
+    }
+
+    /**
+     * The move clock of one thread.
+     *
+     * Lock free: the state counter is even while idle and odd while a move is
+     * being timed. Whoever moves it from odd to even first (the owner
+     * stopping the move, or the watchdog timing it out) wins, so the owner
+     * always knows whether an interrupt is on its way for the move.
+     */
+    static final class Clock {
+
+        /**
+         * The thread being timed.
+         */
+        private final Thread owner;
+
+        /**
+         * Even while idle, odd while a move is being timed.
+         */
+        private final AtomicLong state = new AtomicLong();
+
+        /**
+         * When the move being timed runs out of time (System.nanoTime()).
+         */
+        private volatile long deadline;
+
+        /**
+         * Set by the watchdog once it has interrupted the owner.
+         */
+        private volatile boolean delivered;
+
+        /**
+         * Whether the owner was already interrupted (by someone else) when
+         * the watchdog interrupted it. Written before <code>delivered</code>.
+         */
+        private volatile boolean interruptedBefore;
+
+        private Clock(final Thread owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Starts timing a move. Only called by the owner.
+         *
+         * @param deadline
+         *            When the move runs out of time (System.nanoTime())
+         */
+        void start(final long deadline) {
+            this.deadline = deadline;
+            this.delivered = false;
+            this.interruptedBefore = false;
+            state.set(state.get() + 1); // only the owner moves even to odd
+            if (TIMING.getAndIncrement() == 0) {
+                LockSupport.unpark(Holder.THREAD);
+            }
+        }
+
+        /**
+         * Stops timing the move. Only called by the owner. If the watchdog
+         * timed the move out, waits for its interrupt and clears it, so it
+         * does not leak into the engine; an interrupt from elsewhere which
+         * was already pending then (e.g. a pool shutting down) is kept.
+         */
+        void stop() {
+            final long current = state.get();
+            // already even if the watchdog got there first
+            if (((current & 1) != 0) && state.compareAndSet(current, current + 1)) {
+                TIMING.decrementAndGet();
+                return;
+            }
+            while (!delivered) {
+                Thread.yield();
+            }
+            Thread.interrupted();
+            if (interruptedBefore) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Stops timing the move of an owner which died, if it was timing
+         * one, so that the watchdog can go back to sleep.
+         */
+        private void abandon() {
+            final long current = state.get();
+            if (((current & 1) != 0) && state.compareAndSet(current, current + 1)) {
+                TIMING.decrementAndGet();
+            }
+        }
+
+        /**
+         * Interrupts the owner if its move is out of time.
+         */
+        private void check(final long now) {
+            final long current = state.get();
+            if (((current & 1) != 0) && (now - deadline > 0) && state.compareAndSet(current, current + 1)) {
+                TIMING.decrementAndGet();
+                interruptedBefore = owner.isInterrupted();
+                owner.interrupt();
+                delivered = true;
+            }
+        }
+    }
+
+}
@@ -5,9 +5,15 @@
  */
 package edu.um.cps2004.task1.exception;
 
+import edu.um.cps2004.task1.catalog.Mark;
+
 /**
  * Exception thrown when trying to play in a position which is already occupied.
  *
+ * When thrown by the board (through the position and occupant constructor)
+ * this exception is lightweight: it does not fill in a stack trace, and its
+ * message is only built if asked for.
+ *
  * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
  * @version 1.0
  */
@@ -16,12 +22,60 @@ public class PositionAlreadyOccupiedException extends Exception {
 	/* Serial version UID */
 	private static final long serialVersionUID = -650219220004771191L;
 
+	/* The occupied position, -1 if not known */
+	private final int position;
+
+	/* The mark at the position, null if not known */
+	private final Mark occupant;
+
 	/**
 	 * Constructor - we always want to pas a meaningful message 
 	 * @param message The message
 	 */
 	public PositionAlreadyOccupiedException(final String message) {
 		super(message);
+		this.position = -1;
+		this.occupant = null;
+	}
+
+	/**
+	 * Lightweight constructor - no stack trace, and the message is made up of
+	 * the position and its occupant
+	 * @param position The occupied position
+	 * @param occupant The mark at the position
+	 */
+	public PositionAlreadyOccupiedException(final int position, final Mark occupant) {
+		super(null, null, false, false);
+		this.position = position;
+		this.occupant = occupant;
+	}
+
+	/**
+	 * Gets the occupied position
+	 * @return The position, or -1 if not known
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Gets the mark at the occupied position
+	 * @return The mark, or null if not known
+	 */
+	public Mark getOccupant() {
+		return occupant;
+	}
+
+	/**
+	 * Gets the message (built only when asked for, if not given)
+	 */
+	@Override
+	public String getMessage() {
+		final String message = super.getMessage();
+		if (message != null) {
+			return message;
+		}
+		return "Position " + position + " is already occupied by " + occupant;
 	}
 
 	/**
@@ -8,6 +8,10 @@ package edu.um.cps2004.task1.exception;
 /**
  * The exception which shows that a playing position is out of range.
  *
+ * This exception is lightweight: it does not fill in a stack trace (where it
+ * was thrown from is always the board's validation), and its message is only
+ * built if asked for.
+ *
  * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
  * @version 1.0
  */
@@ -16,12 +20,45 @@ public class PositionOutOfRangeException extends Exception {
 	/* The serial version UID */
 	private static final long serialVersionUID = -2124668628305192129L;
 
+	/* The position which is out of range */
+	private final int position;
+
+	/* The size of the board */
+	private final int boardSize;
+
 	/**
-	 * The constructor - we always want to pass a meaningful message
-	 * @param message The message
+	 * The constructor - the message is made up of the position and board size
+	 * @param pos The position which is out of range
+	 * @param boardSize The number of positions on the board
 	 */
 	public PositionOutOfRangeException(int pos, int boardSize) {
-		super("Position: " + pos + " does not exist on board.  Board size: " + boardSize);
+		super(null, null, false, false);
+		this.position = pos;
+		this.boardSize = boardSize;
+	}
+
+	/**
+	 * Gets the position which is out of range
+	 * @return The position
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Gets the size of the board the position was played on
+	 * @return The number of positions on the board
+	 */
+	public int getBoardSize() {
+		return boardSize;
+	}
+
+	/**
+	 * Builds the message (only when asked for)
+	 */
+	@Override
+	public String getMessage() {
+		return "Position: " + position + " does not exist on board.  Board size: " + boardSize;
 	}
 
 	/**
@@ -0,0 +1,40 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.metrics;
+
+/**
+ * The <code>GameBoard</code> operations counted by <code>Metrics</code>.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public enum BoardOperation {
+
+    /** <code>playAtPosition</code> */
+    PLAY_AT_POSITION,
+
+    /** <code>validatePlayTentative</code> */
+    VALIDATE_PLAY_TENTATIVE,
+
+    /** <code>checkPlayTentative</code> and <code>isValidPlay</code> */
+    CHECK_PLAY_TENTATIVE,
+
+    /** <code>isOccupied</code> */
+    IS_OCCUPIED,
+
+    /** <code>isWinningPosition</code> */
+    IS_WINNING_POSITION,
+
+    /** <code>getEmptyPositions</code>, either form */
+    GET_EMPTY_POSITIONS,
+
+    /** <code>getBoardState</code> */
+    GET_BOARD_STATE,
+
+    /** <code>getSnapshot</code> */
+    GET_SNAPSHOT;
+
+}
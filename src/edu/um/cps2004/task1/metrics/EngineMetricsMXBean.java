@@ -0,0 +1,59 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.metrics;
+
+import java.util.Map;
+
+/**
+ * The engine wide metrics, as seen through JMX (see
+ * <code>Metrics.registerMBeans</code>).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public interface EngineMetricsMXBean {
+
+    /**
+     * @return true if metrics are collected (see <code>Metrics.ENABLED</code>)
+     */
+    boolean isEnabled();
+
+    /**
+     * @return The number of games played
+     */
+    long getGames();
+
+    /**
+     * @return The number of moves played
+     */
+    long getMoves();
+
+    /**
+     * @return The games played per second, since the metrics started
+     */
+    double getGamesPerSecond();
+
+    /**
+     * @return The moves played per second, since the metrics started
+     */
+    double getMovesPerSecond();
+
+    /**
+     * @return The number of disqualifications, by reason
+     */
+    Map<String, Long> getDisqualifications();
+
+    /**
+     * @return The number of robot errors, by exception class
+     */
+    Map<String, Long> getRobotErrors();
+
+    /**
+     * @return The number of game board operations, by operation
+     */
+    Map<String, Long> getBoardOperations();
+
+}
@@ -0,0 +1,168 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies (in nanoseconds), in the style of HdrHistogram:
+ * values are counted in buckets whose width grows with the value (16 buckets
+ * per power of two), so any value from 1ns to centuries is kept with a
+ * precision of 1/16 (6.25%) in a fixed 960 counters. Recording is a couple of
+ * shifts and an atomic increment.
+ *
+ * Thread safe. Percentiles are computed from a snapshot of the counters, so
+ * they are approximate while values are being recorded.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+
+    /**
+     * log2 of the number of buckets per power of two.
+     */
+    private static final int SUB_BITS = 4;
+
+    /**
+     * The number of buckets per power of two.
+     */
+    private static final int SUB = 1 << SUB_BITS;
+
+    /**
+     * The number of buckets, enough for any positive long.
+     */
+    static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    /**
+     * The number of values in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The sum of the values, for the mean.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The largest value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param nanos
+     *            The value, negative values count as 0
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+        long current;
+        while ((value > (current = max.get())) && !max.compareAndSet(current, value)) {
+            // retry, someone else raised it
+        }
+    }
+
+    /**
+     * Gets the bucket of a value.
+     */
+    static int indexOf(final long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /**
+     * Gets the smallest value counted in a bucket.
+     */
+    static long lowestOf(final int index) {
+        if (index < SUB) {
+            return index;
+        }
+        final int exponent = index / SUB + SUB_BITS - 1;
+        return (long) (SUB + (index % SUB)) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * Gets the largest value counted in a bucket.
+     */
+    static long highestOf(final int index) {
+        return (index == BUCKETS - 1) ? Long.MAX_VALUE : lowestOf(index + 1) - 1;
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return The count, never negative
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     *
+     * @return The mean, in nanoseconds, 0 if none were recorded
+     */
+    public double getMean() {
+        final long count = getCount();
+        return (count == 0) ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return The maximum, in nanoseconds, 0 if none were recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets a percentile of the values recorded: the highest value which is
+     * equivalent (within the precision of the histogram) to the value below
+     * which the given percentage of values lie.
+     *
+     * @param percentile
+     *            The percentile, 0..100 (e.g. 99.9)
+     * @return The value, in nanoseconds, 0 if none were recorded
+     */
+    public long getPercentile(final double percentile) {
+        if ((percentile < 0) || (percentile > 100)) {
+            throw new IllegalArgumentException("percentile out of range: " + percentile);
+        }
+        final long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+}
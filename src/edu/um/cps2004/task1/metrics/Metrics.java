@@ -0,0 +1,437 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.metrics;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import edu.um.cps2004.task1.catalog.Disqualification;
+
+/**
+ * The engine's built-in metrics: games and moves played (and their rates),
+ * disqualifications by reason, robot errors by exception class, game board
+ * operation counts, and the latency of every robot's <code>play</code> calls.
+ *
+ * Metrics are off unless the JVM is started with
+ * <code>-Dtttwar.metrics=true</code>. The switch is read once, into the
+ * <code>static final</code> field <code>ENABLED</code>, and all the
+ * instrumentation sits behind <code>if (Metrics.ENABLED)</code>, so when it
+ * is off the JIT compiles it away. When on, counters are
+ * <code>LongAdder</code>s (cheap, even when many threads play at once) and
+ * latencies go into <code>LatencyHistogram</code>s.
+ *
+ * The figures may be read here, through JMX (see <code>registerMBeans</code>)
+ * or in a periodic text dump (see <code>startDump</code>).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class Metrics {
+
+    /**
+     * Whether metrics are collected, from the <code>tttwar.metrics</code>
+     * system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("tttwar.metrics");
+
+    /**
+     * The JMX domain of the MBeans.
+     */
+    public static final String DOMAIN = "edu.um.cps2004.task1";
+
+    /**
+     * The number of games and moves played.
+     */
+    private static final LongAdder GAMES = new LongAdder(), MOVES = new LongAdder();
+
+    /**
+     * The number of disqualifications, by reason (ordinal).
+     */
+    private static final LongAdder[] DISQUALIFICATIONS = adders(Disqualification.values().length);
+
+    /**
+     * The number of game board operations, by operation (ordinal).
+     */
+    private static final LongAdder[] BOARD_OPERATIONS = adders(BoardOperation.values().length);
+
+    /**
+     * Robot errors, by the class name of the exception thrown.
+     */
+    private static final ConcurrentMap<String, LongAdder> ROBOT_ERRORS = new ConcurrentHashMap<String, LongAdder>();
+
+    /**
+     * The metrics of each robot, by the name of its master.
+     */
+    private static final ConcurrentMap<String, RobotMetrics> ROBOTS = new ConcurrentHashMap<String, RobotMetrics>();
+
+    /**
+     * When the metrics started, for the rates.
+     */
+    private static final long START = System.nanoTime();
+
+    /**
+     * The MBean server the MBeans are registered with, null if they are not.
+     */
+    private static volatile MBeanServer server;
+
+    /**
+     * Utility class, no instances.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Creates an array of counters.
+     */
+    private static LongAdder[] adders(final int n) {
+        final LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Counts a game played (called by the engine).
+     *
+     * @param disqualification
+     *            Why the loser was disqualified, null if it was not
+     */
+    public static void gamePlayed(final Disqualification disqualification) {
+        GAMES.increment();
+        if (disqualification != null) {
+            DISQUALIFICATIONS[disqualification.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Counts a move played (called by the engine).
+     */
+    public static void movePlayed() {
+        MOVES.increment();
+    }
+
+    /**
+     * Counts an exception thrown by a robot (called by the engine).
+     *
+     * @param error
+     *            The exception
+     */
+    public static void robotError(final Throwable error) {
+        final String type = error.getClass().getName();
+        LongAdder count = ROBOT_ERRORS.get(type);
+        if (count == null) {
+            final LongAdder created = new LongAdder();
+            count = ROBOT_ERRORS.putIfAbsent(type, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.increment();
+    }
+
+    /**
+     * Counts a game board operation (called by the board).
+     *
+     * @param operation
+     *            The operation
+     */
+    public static void count(final BoardOperation operation) {
+        BOARD_OPERATIONS[operation.ordinal()].increment();
+    }
+
+    /**
+     * Gets the metrics of a robot, creating them the first time (engines
+     * look these up once, not on every move).
+     *
+     * @param name
+     *            The name of the robot master, may not be null
+     * @return The robot's metrics, never null
+     */
+    public static RobotMetrics robot(final String name) {
+        RobotMetrics metrics = ROBOTS.get(name);
+        if (metrics == null) {
+            final RobotMetrics created = new RobotMetrics(name);
+            metrics = ROBOTS.putIfAbsent(name, created);
+            if (metrics == null) {
+                metrics = created;
+                register(created);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Gets the number of games played.
+     *
+     * @return The number of games, never negative
+     */
+    public static long getGames() {
+        return GAMES.sum();
+    }
+
+    /**
+     * Gets the number of moves played.
+     *
+     * @return The number of moves, never negative
+     */
+    public static long getMoves() {
+        return MOVES.sum();
+    }
+
+    /**
+     * Gets the number of robots disqualified for a reason.
+     *
+     * @param reason
+     *            The reason, may not be null
+     * @return The number of disqualifications, never negative
+     */
+    public static long getDisqualifications(final Disqualification reason) {
+        return DISQUALIFICATIONS[reason.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of exceptions thrown by robots, by exception class.
+     *
+     * @return A new map of class names to counts, never null
+     */
+    public static Map<String, Long> getRobotErrors() {
+        final Map<String, Long> errors = new LinkedHashMap<String, Long>();
+        for (final Map.Entry<String, LongAdder> entry : ROBOT_ERRORS.entrySet()) {
+            errors.put(entry.getKey(), entry.getValue().sum());
+        }
+        return errors;
+    }
+
+    /**
+     * Gets the number of times a game board operation was called.
+     *
+     * @param operation
+     *            The operation, may not be null
+     * @return The number of calls, never negative
+     */
+    public static long getBoardOperations(final BoardOperation operation) {
+        return BOARD_OPERATIONS[operation.ordinal()].sum();
+    }
+
+    /**
+     * Gets the metrics of all the robots seen.
+     *
+     * @return An unmodifiable collection, never null
+     */
+    public static Collection<RobotMetrics> getRobots() {
+        return Collections.unmodifiableCollection(ROBOTS.values());
+    }
+
+    /**
+     * Gets the time since the metrics started.
+     *
+     * @return The time in nanoseconds
+     */
+    static long getUptimeNanos() {
+        return System.nanoTime() - START;
+    }
+
+    /**
+     * Registers the metrics as MBeans with the platform MBean server: one for
+     * the engine (<code>DOMAIN:type=Engine</code>) and one per robot
+     * (<code>DOMAIN:type=Robot,name=...</code>), including robots seen later
+     * on. Registering twice has no effect.
+     *
+     * @throws IllegalStateException
+     *             If the MBeans cannot be registered
+     */
+    public static synchronized void registerMBeans() {
+        if (server != null) {
+            return;
+        }
+        final MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+        try {
+            platform.registerMBean(new EngineMetrics(), new ObjectName(DOMAIN + ":type=Engine"));
+        } catch (final JMException e) {
+            throw new IllegalStateException("Cannot register the metrics MBean", e);
+        }
+        server = platform;
+        for (final RobotMetrics robot : ROBOTS.values()) {
+            register(robot);
+        }
+    }
+
+    /**
+     * Registers the MBean of a robot, if MBeans are registered.
+     */
+    private static void register(final RobotMetrics robot) {
+        final MBeanServer platform = server;
+        if (platform == null) {
+            return;
+        }
+        try {
+            final ObjectName name = new ObjectName(DOMAIN + ":type=Robot,name=" + ObjectName.quote(robot.getName()));
+            if (!platform.isRegistered(name)) {
+                platform.registerMBean(robot, name);
+            }
+        } catch (final JMException e) {
+            // lost a race with another thread registering it, or a name JMX
+            // cannot take; the figures are still available here
+        }
+    }
+
+    /**
+     * Gets a text snapshot of all the metrics.
+     *
+     * @return The snapshot, a few lines, never null
+     */
+    public static String dump() {
+        return dump(getGames(), getMoves(), getUptimeNanos());
+    }
+
+    /**
+     * Gets a text snapshot of all the metrics, with rates over an interval.
+     */
+    private static String dump(final long games, final long moves, final long intervalNanos) {
+        final String newLine = String.format("%n");
+        final StringBuilder sb = new StringBuilder();
+        final double seconds = Math.max(intervalNanos, 1) / 1e9;
+        sb.append(String.format("games: %d (%.0f/s), moves: %d (%.0f/s)%n", getGames(), games / seconds,
+                getMoves(), moves / seconds));
+        sb.append("disqualifications:");
+        for (final Disqualification reason : Disqualification.values()) {
+            sb.append(' ').append(reason).append('=').append(getDisqualifications(reason));
+        }
+        final Map<String, Long> errors = getRobotErrors();
+        if (!errors.isEmpty()) {
+            sb.append(newLine).append("robot errors: ").append(errors);
+        }
+        sb.append(newLine).append("board:");
+        for (final BoardOperation operation : BoardOperation.values()) {
+            sb.append(' ').append(operation).append('=').append(getBoardOperations(operation));
+        }
+        sb.append(newLine);
+        for (final RobotMetrics robot : ROBOTS.values()) {
+            sb.append("  ").append(robot).append(newLine);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Starts printing the metrics periodically, with the rates over each
+     * period, on a daemon thread.
+     *
+     * @param period
+     *            The time between dumps, greater than 0
+     * @param unit
+     *            The unit of the period, may not be null
+     * @param out
+     *            Where to print, may not be null
+     * @return A handle which stops the dumps when closed
+     */
+    public static Closeable startDump(final long period, final TimeUnit unit, final PrintStream out) {
+        if ((period <= 0) || (unit == null) || (out == null)) {
+            throw new IllegalArgumentException("Bad dump period or stream");
+        }
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "tttwar-metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final ScheduledFuture<?> dumps = timer.scheduleAtFixedRate(new Runnable() {
+            private long lastGames = getGames(), lastMoves = getMoves(), lastTime = System.nanoTime();
+
+            @Override
+            public void run() {
+                final long games = getGames();
+                final long moves = getMoves();
+                final long now = System.nanoTime();
+                out.print(dump(games - lastGames, moves - lastMoves, now - lastTime));
+                lastGames = games;
+                lastMoves = moves;
+                lastTime = now;
+            }
+        }, period, period, unit);
+        return new Closeable() {
+            @Override
+            public void close() {
+                dumps.cancel(false);
+                timer.shutdown();
+            }
+        };
+    }
+
+    /**
+     * The engine MBean, reading the static figures.
+     */
+    private static final class EngineMetrics implements EngineMetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return ENABLED;
+        }
+
+        @Override
+        public long getGames() {
+            return Metrics.getGames();
+        }
+
+        @Override
+        public long getMoves() {
+            return Metrics.getMoves();
+        }
+
+        @Override
+        public double getGamesPerSecond() {
+            return Metrics.getGames() / (getUptimeNanos() / 1e9);
+        }
+
+        @Override
+        public double getMovesPerSecond() {
+            return Metrics.getMoves() / (getUptimeNanos() / 1e9);
+        }
+
+        @Override
+        public Map<String, Long> getDisqualifications() {
+            final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+            for (final Disqualification reason : Disqualification.values()) {
+                counts.put(reason.name(), Metrics.getDisqualifications(reason));
+            }
+            return counts;
+        }
+
+        @Override
+        public Map<String, Long> getRobotErrors() {
+            return Metrics.getRobotErrors();
+        }
+
+        @Override
+        public Map<String, Long> getBoardOperations() {
+            final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+            for (final BoardOperation operation : BoardOperation.values()) {
+                counts.put(operation.name(), Metrics.getBoardOperations(operation));
+            }
+            return counts;
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.metrics;
+
+/**
+ * The metrics of one robot (by the name of its master): the latency of its
+ * <code>play</code> calls. Obtained from <code>Metrics.robot</code>, and
+ * shared by all the engines the robot plays in.
+ *
+ * Thread safe.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class RobotMetrics implements RobotMetricsMXBean {
+
+    /**
+     * The name of the robot master.
+     */
+    private final String name;
+
+    /**
+     * The time taken by each move.
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Only <code>Metrics</code> creates these.
+     */
+    RobotMetrics(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a move played by the robot.
+     *
+     * @param nanos
+     *            The time its <code>play</code> call took
+     */
+    public void record(final long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * Gets the latency histogram of the robot's moves.
+     *
+     * @return The histogram, never null
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getMoves() {
+        return latency.getCount();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean() / 1000;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.getPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.getMax() / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d moves, mean %.2fus, p50 %.2fus, p99 %.2fus, p99.9 %.2fus, max %.2fus", name,
+                getMoves(), getMeanMicros(), getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+
+}
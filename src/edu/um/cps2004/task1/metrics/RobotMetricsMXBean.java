@@ -0,0 +1,54 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.metrics;
+
+/**
+ * The metrics of one robot, as seen through JMX (see
+ * <code>Metrics.registerMBeans</code>).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public interface RobotMetricsMXBean {
+
+    /**
+     * @return The name of the robot master
+     */
+    String getName();
+
+    /**
+     * @return The number of moves played by the robot
+     */
+    long getMoves();
+
+    /**
+     * @return The mean time taken by <code>play</code>, in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * @return The median time taken by <code>play</code>, in microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * @return The 99th percentile of the time taken by <code>play</code>, in
+     *         microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * @return The 99.9th percentile of the time taken by <code>play</code>,
+     *         in microseconds
+     */
+    double getP999Micros();
+
+    /**
+     * @return The longest time taken by <code>play</code>, in microseconds
+     */
+    double getMaxMicros();
+
+}
@@ -0,0 +1,62 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.oracle;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.robot.TTTRobot;
+
+/**
+ * A robot which plays perfectly, by asking the <code>PerfectPlayOracle</code>.
+ *
+ * It never loses, and wins as quickly as possible whenever the opponent
+ * slips. Handy as a reference (a robot which draws against it is playing
+ * perfectly too). Only plays on the classic 3x3 board; on any other board it
+ * is disqualified.
+ *
+ * Thread safe (the oracle is immutable, and this robot keeps no state).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class OracleRobot implements TTTRobot {
+
+    /**
+     * The oracle asked for moves.
+     */
+    private final PerfectPlayOracle oracle;
+
+    /**
+     * Creates a robot using the shared oracle.
+     */
+    public OracleRobot() {
+        this(PerfectPlayOracle.getInstance());
+    }
+
+    /**
+     * Creates a robot using the given oracle (e.g. one loaded from a file).
+     *
+     * @param oracle
+     *            The oracle, may not be null
+     */
+    public OracleRobot(final PerfectPlayOracle oracle) {
+        if (oracle == null) {
+            throw new IllegalArgumentException("oracle cannot be null");
+        }
+        this.oracle = oracle;
+    }
+
+    @Override
+    public String getRobotMasterName() {
+        return "Perfect Play Oracle";
+    }
+
+    @Override
+    public int play(final GameBoard board, final Mark turn) {
+        return oracle.getBestMove(board, turn);
+    }
+
+}
@@ -0,0 +1,432 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.oracle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.GameBoard;
+
+/**
+ * The solved game of (classic, 3x3) Tic Tac Toe.
+ *
+ * Every position, with either mark to move, is solved once (by exhaustive
+ * search, in a few milliseconds) and kept in a table of 2 x 3^9 shorts (under
+ * 80KB). The table is indexed by the base 3 code of the position (digit
+ * <i>n</i> is 0 if position <i>n</i> is empty, 1 for X and 2 for O) and the
+ * mark to move, so any question afterwards is a single array lookup.
+ *
+ * Each entry holds the game theoretic outcome for the mark to move (win, draw
+ * or loss with perfect play from both sides), how many moves it takes to get
+ * there, and the set of best moves: the quickest win, or the slowest loss.
+ *
+ * The table may also be saved to a file and memory mapped back (see
+ * <code>save</code> and <code>load</code>), so that it need not be solved at
+ * all at startup. Either way the oracle is immutable and thread safe.
+ *
+ * Positions which cannot occur in a game (e.g. three more X than O) are not
+ * solved; asking about them results in an <code>IllegalArgumentException</code>.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class PerfectPlayOracle {
+
+    /**
+     * The mark to move wins.
+     */
+    public static final int WIN = 1;
+
+    /**
+     * The game is drawn.
+     */
+    public static final int DRAW = 0;
+
+    /**
+     * The mark to move loses.
+     */
+    public static final int LOSS = -1;
+
+    /**
+     * The number of positions on the board.
+     */
+    private static final int BOARD_SIZE = 9;
+
+    /**
+     * The number of base 3 codes (3^9).
+     */
+    public static final int CODES = 19683;
+
+    /**
+     * The eight winning lines as bit masks (in octal each digit is a row).
+     */
+    private static final int[] LINES = { 0007, 0070, 0700, 0111, 0222, 0444, 0421, 0124 };
+
+    /**
+     * 3^n, for n = 0..8.
+     */
+    private static final int[] POWERS = { 1, 3, 9, 27, 81, 243, 729, 2187, 6561 };
+
+    /**
+     * The base 3 code of each 9 bit mask (the sum of 3^n for each bit n set).
+     */
+    private static final int[] BASE3 = new int[1 << BOARD_SIZE];
+
+    static {
+        for (int bits = 1; bits < BASE3.length; bits++) {
+            BASE3[bits] = BASE3[bits & (bits - 1)] + POWERS[Integer.numberOfTrailingZeros(bits)];
+        }
+    }
+
+    /* Layout of an entry: plies to the end (4) | outcome (2) | best moves (9) */
+    private static final int MOVES_MASK = 0x1FF;
+    private static final int OUTCOME_SHIFT = 9;
+    private static final int PLIES_SHIFT = 11;
+    private static final int OUTCOME_WIN = 1, OUTCOME_LOSS = 2, OUTCOME_DRAW = 3;
+
+    /**
+     * The solved table, indexed by <code>code * 2 + (X to move ? 0 : 1)</code>.
+     * Entries are 0 for positions which cannot occur.
+     */
+    private final ShortBuffer table;
+
+    /**
+     * The time it took to solve (or load) the table, in nanoseconds.
+     */
+    private final long startupNanos;
+
+    /**
+     * The shared instance, solved the first time it is asked for.
+     */
+    private static final class Holder {
+        private static final PerfectPlayOracle INSTANCE = solve();
+    }
+
+    /**
+     * Creates an oracle over a table.
+     */
+    private PerfectPlayOracle(final ShortBuffer table, final long startupNanos) {
+        this.table = table;
+        this.startupNanos = startupNanos;
+    }
+
+    /**
+     * Gets the shared oracle, solving the game the first time this is
+     * called.
+     *
+     * @return The oracle, never null
+     */
+    public static PerfectPlayOracle getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Solves the game, building a new table.
+     *
+     * @return A new oracle, never null
+     */
+    public static PerfectPlayOracle solve() {
+        final long start = System.nanoTime();
+        final short[] entries = new short[CODES * 2];
+        solve(entries, 0, 0, true);
+        solve(entries, 0, 0, false);
+        return new PerfectPlayOracle(ShortBuffer.wrap(entries).asReadOnlyBuffer(), System.nanoTime() - start);
+    }
+
+    /**
+     * Solves a position (and all those after it), filling in the table.
+     *
+     * @param entries
+     *            The table
+     * @param x
+     *            The positions of X
+     * @param o
+     *            The positions of O
+     * @param xToMove
+     *            Whether X is to move
+     * @return The entry of the position
+     */
+    private static short solve(final short[] entries, final int x, final int o, final boolean xToMove) {
+        final int index = indexOf(x, o, xToMove);
+        if (entries[index] != 0) {
+            return entries[index];
+        }
+        final short entry;
+        if (hasLine(xToMove ? o : x)) {
+            entry = pack(0, OUTCOME_LOSS, 0); // the previous move won
+        } else if ((x | o) == MOVES_MASK) {
+            entry = pack(0, OUTCOME_DRAW, 0);
+        } else {
+            // rank each move from our point of view: quick wins best, slow
+            // losses better than quick ones
+            int bestRank = Integer.MIN_VALUE;
+            int bestMoves = 0;
+            int bestOutcome = 0;
+            int bestPlies = 0;
+            for (int empty = ~(x | o) & MOVES_MASK; empty != 0; empty &= empty - 1) {
+                final int bit = empty & -empty;
+                final short child = xToMove ? solve(entries, x | bit, o, false) : solve(entries, x, o | bit, true);
+                final int childOutcome = (child >>> OUTCOME_SHIFT) & 0x3;
+                final int plies = ((child >>> PLIES_SHIFT) & 0xF) + 1;
+                final int outcome = (childOutcome == OUTCOME_LOSS) ? OUTCOME_WIN
+                        : (childOutcome == OUTCOME_WIN) ? OUTCOME_LOSS : OUTCOME_DRAW;
+                final int rank = (outcome == OUTCOME_WIN) ? 100 - plies : (outcome == OUTCOME_DRAW) ? 0 : plies - 100;
+                if (rank > bestRank) {
+                    bestRank = rank;
+                    bestMoves = bit;
+                    bestOutcome = outcome;
+                    bestPlies = plies;
+                } else if (rank == bestRank) {
+                    bestMoves |= bit;
+                }
+            }
+            entry = pack(bestMoves, bestOutcome, bestPlies);
+        }
+        entries[index] = entry;
+        return entry;
+    }
+
+    /**
+     * Packs an entry.
+     */
+    private static short pack(final int moves, final int outcome, final int plies) {
+        return (short) (moves | (outcome << OUTCOME_SHIFT) | (plies << PLIES_SHIFT));
+    }
+
+    /**
+     * Checks if some line is complete.
+     */
+    private static boolean hasLine(final int bits) {
+        for (final int line : LINES) {
+            if ((bits & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the table index of a position.
+     */
+    private static int indexOf(final int x, final int o, final boolean xToMove) {
+        return ((BASE3[x] + 2 * BASE3[o]) << 1) | (xToMove ? 0 : 1);
+    }
+
+    /**
+     * Gets the base 3 code of a classic board (digit <i>n</i> is 0 if
+     * position <i>n</i> is empty, 1 for X and 2 for O).
+     *
+     * @param board
+     *            A 3x3 board, may not be null
+     * @return The code, 0..CODES-1
+     */
+    public static int codeOf(final GameBoard board) {
+        checkClassic(board);
+        return BASE3[(int) board.getBits(Mark.X)] + 2 * BASE3[(int) board.getBits(Mark.O)];
+    }
+
+    /**
+     * Gets the base 3 code of a position given as bit masks.
+     *
+     * @param xBits
+     *            The positions of X (9 bits)
+     * @param oBits
+     *            The positions of O (9 bits)
+     * @return The code, 0..CODES-1
+     */
+    public static int codeOf(final int xBits, final int oBits) {
+        return BASE3[xBits & MOVES_MASK] + 2 * BASE3[oBits & MOVES_MASK];
+    }
+
+    /**
+     * Gets the entry of a position, checking that it can occur.
+     */
+    private int entryOf(final int code, final Mark turn) {
+        if ((code < 0) || (code >= CODES)) {
+            throw new IllegalArgumentException("code out of range: " + code);
+        }
+        if (turn == null) {
+            throw new IllegalArgumentException("turn cannot be null");
+        }
+        final int entry = table.get((code << 1) | (turn == Mark.X ? 0 : 1));
+        if (entry == 0) {
+            throw new IllegalArgumentException("Position " + code + " with " + turn + " to move cannot occur");
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the outcome of a position with perfect play.
+     *
+     * @param code
+     *            The base 3 code of the position
+     * @param turn
+     *            The mark to move, may not be null
+     * @return <code>WIN</code>, <code>DRAW</code> or <code>LOSS</code>, from
+     *         the point of view of the mark to move
+     */
+    public int getOutcome(final int code, final Mark turn) {
+        final int outcome = (entryOf(code, turn) >>> OUTCOME_SHIFT) & 0x3;
+        return (outcome == OUTCOME_WIN) ? WIN : (outcome == OUTCOME_LOSS) ? LOSS : DRAW;
+    }
+
+    /**
+     * Gets the outcome of a position with perfect play.
+     *
+     * @param board
+     *            A 3x3 board, may not be null
+     * @param turn
+     *            The mark to move, may not be null
+     * @return <code>WIN</code>, <code>DRAW</code> or <code>LOSS</code>, from
+     *         the point of view of the mark to move
+     */
+    public int getOutcome(final GameBoard board, final Mark turn) {
+        return getOutcome(codeOf(board), turn);
+    }
+
+    /**
+     * Gets the number of moves (of both sides) until the game is over, with
+     * perfect play.
+     *
+     * @param code
+     *            The base 3 code of the position
+     * @param turn
+     *            The mark to move, may not be null
+     * @return The number of moves left, 0..9
+     */
+    public int getPliesToEnd(final int code, final Mark turn) {
+        return (entryOf(code, turn) >>> PLIES_SHIFT) & 0xF;
+    }
+
+    /**
+     * Gets all the best moves of a position.
+     *
+     * @param code
+     *            The base 3 code of the position
+     * @param turn
+     *            The mark to move, may not be null
+     * @return The best moves as a bit mask (bit <i>n</i> set if position
+     *         <i>n</i> is a best move), 0 if the game is over
+     */
+    public int getBestMoves(final int code, final Mark turn) {
+        return entryOf(code, turn) & MOVES_MASK;
+    }
+
+    /**
+     * Gets a best move (the lowest numbered one, if there are many).
+     *
+     * @param board
+     *            A 3x3 board, may not be null
+     * @param turn
+     *            The mark to move, may not be null
+     * @return The position to play, or -1 if the game is over
+     */
+    public int getBestMove(final GameBoard board, final Mark turn) {
+        final int moves = getBestMoves(codeOf(board), turn);
+        return (moves == 0) ? -1 : Integer.numberOfTrailingZeros(moves);
+    }
+
+    /**
+     * Checks if a move is a blunder, i.e. makes the outcome worse for the
+     * mark playing it (a win into a draw or loss, or a draw into a loss).
+     * Handy for annotating games.
+     *
+     * @param code
+     *            The base 3 code of the position before the move
+     * @param turn
+     *            The mark playing the move, may not be null
+     * @param position
+     *            The position played, which must be empty
+     * @return true if the move is a blunder
+     */
+    public boolean isBlunder(final int code, final Mark turn, final int position) {
+        final int before = getOutcome(code, turn);
+        if ((position < 0) || (position >= BOARD_SIZE) || ((code / POWERS[position]) % 3 != 0)) {
+            throw new IllegalArgumentException("Position " + position + " cannot be played in " + code);
+        }
+        final int after = code + POWERS[position] * (turn == Mark.X ? 1 : 2);
+        final Mark other = (turn == Mark.X) ? Mark.O : Mark.X;
+        return -getOutcome(after, other) < before;
+    }
+
+    /**
+     * Gets the time it took to solve (or load) this oracle.
+     *
+     * @return The startup time in nanoseconds
+     */
+    public long getStartupNanos() {
+        return startupNanos;
+    }
+
+    /**
+     * Gets the memory taken by the table.
+     *
+     * @return The size of the table in bytes
+     */
+    public int getFootprintBytes() {
+        return table.capacity() * 2;
+    }
+
+    /**
+     * Saves the table to a file, to be loaded later with <code>load</code>.
+     *
+     * @param file
+     *            The file to write (overwritten), may not be null
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    public void save(final Path file) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.allocate(getFootprintBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(table.duplicate());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Loads an oracle saved with <code>save</code>, by memory mapping the
+     * file (so nothing is solved, nor copied onto the heap).
+     *
+     * @param file
+     *            The file to read, may not be null
+     * @return The oracle, never null
+     * @throws IOException
+     *             If the file cannot be read, or is not an oracle table
+     */
+    public static PerfectPlayOracle load(final Path file) throws IOException {
+        final long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != CODES * 2 * 2) {
+                throw new IOException("Not an oracle table (wrong size): " + file);
+            }
+            final ShortBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            return new PerfectPlayOracle(mapped, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Checks that a board is the classic 3x3 one.
+     */
+    private static void checkClassic(final GameBoard board) {
+        if (board == null) {
+            throw new IllegalArgumentException("board cannot be null");
+        }
+        if ((board.getSide() != 3) || (board.getWinLength() != 3)) {
+            throw new IllegalArgumentException("Only the classic 3x3 board is solved");
+        }
+    }
+
+}
@@ -70,7 +70,7 @@ public final class TTTPlayer {
 	}
 
 	/**
-	 * Gets the playing mark of your opponent.  Assumes a two-player game (breaks otherwise).
+	 * Gets the playing mark of your opponent.  There are always two marks (teams share one, see <code>Team</code>).
 	 * @return The mark of the player's opponent (either X or O), never null.
 	 */
 	public Mark getMarkOfOpponent() {
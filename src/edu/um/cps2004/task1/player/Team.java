@@ -0,0 +1,231 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.BatchWarEngine;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.robot.SeedableRobot;
+import edu.um.cps2004.task1.robot.TTTRobot;
+import edu.um.cps2004.task1.robot.TimedRobot;
+
+/**
+ * A team of robots sharing a mark.
+ * 
+ * A team plays like a single robot (so it may be given to any engine): each
+ * move is played by one of its members, the members taking turns either
+ * move by move or game by game (see <code>Rotation</code>). The team wins or
+ * loses as one, so a member playing an illegal move (or running out of time)
+ * loses the game for the whole team. Members which implement
+ * <code>TimedRobot</code> are told their budget.
+ * 
+ * A team cannot tell a new game from the board alone (a game in which it
+ * only moved first, say, looks just like the start of the next one), so
+ * whoever plays its games calls <code>newGame()</code> before each, as the
+ * <code>TeamWarEngine</code> does. Without it, a team rotating
+ * <code>PER_GAME</code> keeps its first member.
+ * 
+ * A team is seeded like any <code>SeedableRobot</code> (the engine seeds it
+ * before each seeded game): each seedable member gets a seed of its own,
+ * derived from the team's, and the rotation starts over, so that a seeded
+ * game can be played again by <code>GameReplay</code>. A team rotating
+ * <code>PER_MOVE</code> then starts the game with its first member; one
+ * rotating <code>PER_GAME</code> has the game played by a member picked
+ * from the seed (each member playing about as many games as the others).
+ * 
+ * Not thread safe (the rotation is kept in the team), a team should play in
+ * one engine at a time.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class Team implements TimedRobot, SeedableRobot {
+	
+	/**
+	 * How the members of a team take turns.
+	 */
+	public enum Rotation {
+		
+		/** The next member plays the next move (even within a game). */
+		PER_MOVE,
+		
+		/** One member plays a whole game, the next member the next game. */
+		PER_GAME;
+		
+	}
+	
+	/**
+	 * The name of the team, used as its robot master name
+	 */
+	private final String name;
+	
+	/**
+	 * The members of the team, in playing order
+	 */
+	private final List<TTTRobot> members;
+	
+	/**
+	 * How the members take turns
+	 */
+	private final Rotation rotation;
+	
+	/**
+	 * The index of the member playing next
+	 */
+	private int current;
+	
+	/**
+	 * Whether the team has played a move yet
+	 */
+	private boolean moved;
+	
+	/**
+	 * Whether the team has played a move since the last game started
+	 */
+	private boolean movedInGame;
+	
+	/**
+	 * Creates a team.
+	 * 
+	 * @param name The name of the team, may not be null
+	 * @param members The robots in the team, in playing order, may not be null or empty (nor contain nulls)
+	 * @param rotation How the members take turns, may not be null
+	 */
+	public Team(final String name, final List<? extends TTTRobot> members, final Rotation rotation) {
+		if (name == null) {
+			throw new IllegalArgumentException("name cannot be null");
+		}
+		if ((members == null) || members.isEmpty()) {
+			throw new IllegalArgumentException("A team needs members");
+		}
+		if (rotation == null) {
+			throw new IllegalArgumentException("rotation cannot be null");
+		}
+		for (final TTTRobot member : members) {
+			if ((member == null) || (member.getRobotMasterName() == null)) {
+				throw new IllegalArgumentException("Members (and their master names) may not be null: " + member);
+			}
+		}
+		this.name = name;
+		this.members = Collections.unmodifiableList(new ArrayList<TTTRobot>(members));
+		this.rotation = rotation;
+	}
+	
+	/**
+	 * Gets the name of the team
+	 * @return The name, never null
+	 */
+	@Override
+	public String getRobotMasterName() {
+		return name;
+	}
+	
+	/**
+	 * Asks the member whose turn it is for its move
+	 */
+	@Override
+	public int play(final GameBoard board, final Mark turn) {
+		return nextMember().play(board, turn);
+	}
+	
+	/**
+	 * Asks the member whose turn it is for its move, within the budget
+	 */
+	@Override
+	public int play(final GameBoard board, final Mark turn, final long budgetNanos) {
+		final TTTRobot member = nextMember();
+		if (member instanceof TimedRobot) {
+			return ((TimedRobot) member).play(board, turn, budgetNanos);
+		}
+		return member.play(board, turn);
+	}
+	
+	/**
+	 * Tells the team a new game is starting, so that the next member plays
+	 * it (when rotating <code>PER_GAME</code>). To be called before each game.
+	 * A member whose game ended before it got to move plays the next one.
+	 */
+	public void newGame() {
+		if (movedInGame && (rotation == Rotation.PER_GAME)) {
+			current = (current + 1) % members.size();
+		}
+		movedInGame = false;
+	}
+	
+	/**
+	 * Seeds the seedable members (member <i>i</i> with
+	 * <code>BatchWarEngine.deriveSeed(seed, i)</code>) and starts the
+	 * rotation over, before a game.
+	 * 
+	 * @param seed The seed of the team for the game
+	 */
+	@Override
+	public void setSeed(final long seed) {
+		for (int i = 0; i < members.size(); i++) {
+			if (members.get(i) instanceof SeedableRobot) {
+				((SeedableRobot) members.get(i)).setSeed(BatchWarEngine.deriveSeed(seed, i));
+			}
+		}
+		if (rotation == Rotation.PER_GAME) {
+			current = (int) Math.floorMod(BatchWarEngine.deriveSeed(seed, members.size()), (long) members.size());
+		} else {
+			current = 0;
+		}
+		moved = false;
+		movedInGame = false;
+	}
+	
+	/**
+	 * Gets the member to play this move, moving the rotation along
+	 */
+	private TTTRobot nextMember() {
+		if ((rotation == Rotation.PER_MOVE) && moved) {
+			current = (current + 1) % members.size();
+		}
+		moved = true;
+		movedInGame = true;
+		return members.get(current);
+	}
+	
+	/**
+	 * Gets the members of the team
+	 * @return The members, in playing order, unmodifiable
+	 */
+	public List<TTTRobot> getMembers() {
+		return members;
+	}
+	
+	/**
+	 * Gets how the members take turns
+	 * @return The rotation, never null
+	 */
+	public Rotation getRotation() {
+		return rotation;
+	}
+	
+	/**
+	 * Gets the member which played the team's last move (or, rotating
+	 * <code>PER_GAME</code>, is to play the game started)
+	 * @return The member, never null (the first member before any move)
+	 */
+	public TTTRobot getCurrentMember() {
+		return members.get(current);
+	}
+	
+	/**
+	 * Converts this to a String, used
+	 * for informational purposes 
+	 */
+	@Override
+	public String toString() {
+		return name + " " + members.size() + " robots, " + rotation;
+	}
+	
+}
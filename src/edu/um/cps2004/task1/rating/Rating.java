@@ -0,0 +1,195 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.rating;
+
+/**
+ * The ratings of one robot (by the name of its master) at some point, as
+ * kept by a <code>RatingEngine</code>: its Elo rating, updated after every
+ * game, and its Glicko-2 rating, deviation and volatility, updated at the
+ * end of every rating period, along with the games they were worked out
+ * from.
+ *
+ * Immutable.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class Rating {
+
+    /**
+     * The name of the robot master.
+     */
+    private final String name;
+
+    /**
+     * The Elo rating.
+     */
+    private final double elo;
+
+    /**
+     * The Glicko-2 rating and rating deviation (on the Glicko scale, like
+     * Elo), and volatility.
+     */
+    private final double glicko, deviation, volatility;
+
+    /**
+     * The games rated, won, drawn and lost.
+     */
+    private final long games, wins, draws, losses;
+
+    /**
+     * The games in which the robot moved first.
+     */
+    private final long gamesFirst;
+
+    /**
+     * The points scored in the games in which the robot moved first (1 for
+     * a win, a half for a draw).
+     */
+    private final double pointsFirst;
+
+    /**
+     * Creates a rating (only the engine does).
+     */
+    Rating(final String name, final double elo, final double glicko, final double deviation,
+            final double volatility, final long wins, final long draws, final long losses, final long gamesFirst,
+            final double pointsFirst) {
+        this.name = name;
+        this.elo = elo;
+        this.glicko = glicko;
+        this.deviation = deviation;
+        this.volatility = volatility;
+        this.games = wins + draws + losses;
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+        this.gamesFirst = gamesFirst;
+        this.pointsFirst = pointsFirst;
+    }
+
+    /**
+     * Gets the name of the robot master.
+     *
+     * @return The name, never null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the Elo rating.
+     *
+     * @return The rating, 1500 before any game
+     */
+    public double getElo() {
+        return elo;
+    }
+
+    /**
+     * Gets the Glicko-2 rating (on the Glicko scale), as of the end of the
+     * last rating period.
+     *
+     * @return The rating, 1500 before any period
+     */
+    public double getGlicko() {
+        return glicko;
+    }
+
+    /**
+     * Gets the Glicko-2 rating deviation (on the Glicko scale), as of the
+     * end of the last rating period. The rating is within about twice the
+     * deviation of the true strength, 95% of the time.
+     *
+     * @return The deviation, 350 before any period
+     */
+    public double getDeviation() {
+        return deviation;
+    }
+
+    /**
+     * Gets the Glicko-2 volatility, i.e. how erratic the robot's results
+     * are.
+     *
+     * @return The volatility, 0.06 before any period
+     */
+    public double getVolatility() {
+        return volatility;
+    }
+
+    /**
+     * Gets the number of games rated.
+     *
+     * @return The number of games
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Gets the number of games won (including by disqualification of the
+     * opponent).
+     *
+     * @return The number of wins
+     */
+    public long getWins() {
+        return wins;
+    }
+
+    /**
+     * Gets the number of games drawn.
+     *
+     * @return The number of draws
+     */
+    public long getDraws() {
+        return draws;
+    }
+
+    /**
+     * Gets the number of games lost (including by disqualification).
+     *
+     * @return The number of losses
+     */
+    public long getLosses() {
+        return losses;
+    }
+
+    /**
+     * Gets the number of games in which the robot moved first.
+     *
+     * @return The number of games
+     */
+    public long getGamesFirst() {
+        return gamesFirst;
+    }
+
+    /**
+     * Gets the points scored in the games in which the robot moved first.
+     *
+     * @return The points, 1 per win and a half per draw
+     */
+    public double getPointsFirst() {
+        return pointsFirst;
+    }
+
+    /**
+     * Gets the points scored in the games in which the robot moved second.
+     *
+     * @return The points, 1 per win and a half per draw
+     */
+    public double getPointsSecond() {
+        return wins + draws / 2.0 - pointsFirst;
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: Elo %.0f, Glicko %.0f (RD %.0f, volatility %.4f), %d games (+%d =%d -%d)", name,
+                elo, glicko, deviation, volatility, games, wins, draws, losses);
+    }
+
+}
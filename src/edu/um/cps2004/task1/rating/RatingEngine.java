@@ -0,0 +1,738 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.rating;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.player.TTTPlayer;
+import edu.um.cps2004.task1.record.GameRecord;
+import edu.um.cps2004.task1.record.GameRecordReader;
+import edu.um.cps2004.task1.record.GameRecordSink;
+import edu.um.cps2004.task1.robot.TTTRobot;
+
+/**
+ * Rates robots (by the name of their master, see
+ * <code>TTTRobot.getRobotMasterName()</code>) from the results of their
+ * games, as they are played or from game record files.
+ *
+ * Two ratings are kept for each robot:
+ * <ul>
+ * <li>an Elo rating, updated after every game (by <code>K</code> times the
+ * difference between the score and the expected score);</li>
+ * <li>a Glicko-2 rating, rating deviation and volatility, updated at the end
+ * of every rating period from the games of the period. The games are summed
+ * up as they come (two sums per robot, against the ratings of its opponents
+ * as of the start of the period), so closing a period costs a single step
+ * per robot, however many games were played in it.</li>
+ * </ul>
+ *
+ * Moving first is worth something (at Tic Tac Toe, a lot between imperfect
+ * players), so the mark which started each game (X under the classic rules,
+ * either in a <code>BatchWarEngine</code> batch) is taken into account: the
+ * robot which moved first is expected to score as if it were rated
+ * <code>getFirstMoveAdvantage()</code> points higher. The advantage is
+ * estimated from the score of the first movers over all the games rated so
+ * far (starting from a few drawn games, so that the first games do not throw
+ * it about).
+ *
+ * The engine is a <code>GameRecordSink</code>, so it may rate the games of
+ * an engine, or of a whole <code>Tournament</code>, as they end. It is thread
+ * safe, and made to keep up with many threads playing: the state of the
+ * robots is guarded by a fixed set of striped locks (a game only takes the
+ * locks of its two robots, always in the same order), the first move
+ * advantage is counted in <code>LongAdder</code>s, and only closing a
+ * period takes all the locks. Elo ratings depend on the order in which
+ * games are rated, which is the order their threads got to the locks;
+ * Glicko-2 ratings only depend on which period each game falls in.
+ *
+ * Rating periods are either closed by hand (<code>closePeriod()</code>), or
+ * last a fixed time, by the timestamps of the games: the first game of a new
+ * period closes the last one (and the empty ones in between, which only
+ * widen the deviations). A game arriving late, once its period is closed,
+ * counts in the current one.
+ *
+ * An archive, or a window of it, may be rated (or rated again, with other
+ * settings) with <code>rate</code>; robots playing themselves are not rated.
+ * May also be run from the command line:
+ *
+ * <pre>
+ * java edu.um.cps2004.task1.rating.RatingEngine -from 2017-01-01T00:00:00Z -period 60 games-*.rec
+ * </pre>
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class RatingEngine implements GameRecordSink {
+
+    /**
+     * The default Elo K factor.
+     */
+    public static final double DEFAULT_K = 16;
+
+    /**
+     * The rating of a new robot, Elo and Glicko.
+     */
+    public static final double INITIAL_RATING = 1500;
+
+    /**
+     * The Glicko-2 rating deviation of a new robot (on the Glicko scale),
+     * also the largest it grows to.
+     */
+    public static final double INITIAL_DEVIATION = 350;
+
+    /**
+     * The Glicko-2 volatility of a new robot.
+     */
+    public static final double INITIAL_VOLATILITY = 0.06;
+
+    /**
+     * The Glicko-2 system constant, constraining the change in volatility.
+     */
+    private static final double TAU = 0.5;
+
+    /**
+     * The convergence tolerance of the volatility iteration.
+     */
+    private static final double EPSILON = 0.000001;
+
+    /**
+     * From the Glicko scale to the Glicko-2 one (also 400 / ln 10, so that
+     * Elo expected scores are <code>1 / (1 + e^-(difference / scale))</code>).
+     */
+    private static final double GLICKO2_SCALE = 173.7178;
+
+    /**
+     * The number of drawn games the first move advantage starts from.
+     */
+    private static final int PRIOR_GAMES = 20;
+
+    /**
+     * The number of locks guarding the robots (a power of 2).
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * The period before the first game.
+     */
+    private static final long NO_PERIOD = Long.MIN_VALUE;
+
+    /**
+     * Orders ratings by Elo, highest first.
+     */
+    private static final Comparator<Rating> ORDER = new Comparator<Rating>() {
+        @Override
+        public int compare(final Rating a, final Rating b) {
+            return Double.compare(b.getElo(), a.getElo());
+        }
+    };
+
+    /**
+     * The Elo K factor.
+     */
+    private final double k;
+
+    /**
+     * The length of a rating period in milliseconds, 0 if periods are closed
+     * by hand.
+     */
+    private final long periodMillis;
+
+    /**
+     * The robots, by the name of their master.
+     */
+    private final ConcurrentMap<String, RobotState> robots = new ConcurrentHashMap<String, RobotState>();
+
+    /**
+     * The locks guarding the robots, by <code>RobotState.stripe</code>.
+     */
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    /**
+     * The index of the current period (its start time over its length),
+     * <code>NO_PERIOD</code> before the first game.
+     */
+    private volatile long period = NO_PERIOD;
+
+    /**
+     * The number of periods closed (guarded by all the stripes).
+     */
+    private long periodsClosed;
+
+    /**
+     * The games rated, and the half points scored in them by the robot which
+     * moved first.
+     */
+    private final LongAdder games = new LongAdder(), firstHalfPoints = new LongAdder();
+
+    /**
+     * The games left out, because a robot played itself.
+     */
+    private final LongAdder selfGames = new LongAdder();
+
+    /**
+     * Creates an engine with the default K factor, whose rating periods are
+     * closed by hand.
+     */
+    public RatingEngine() {
+        this(DEFAULT_K, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param k
+     *            The Elo K factor (the most a rating changes after a game),
+     *            positive
+     * @param period
+     *            The length of a Glicko-2 rating period, by the timestamps of
+     *            the games, not negative. 0 for periods closed by hand only.
+     * @param unit
+     *            The unit of <code>period</code>, may not be null
+     */
+    public RatingEngine(final double k, final long period, final TimeUnit unit) {
+        if (!(k > 0)) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (period < 0) {
+            throw new IllegalArgumentException("period may not be negative: " + period);
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.k = k;
+        this.periodMillis = unit.toMillis(period);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Rates a game.
+     *
+     * @param record
+     *            The record of the game, never null
+     */
+    @Override
+    public void record(final GameRecord record) {
+        record(record.getPlayerX(), record.getPlayerO(), record.getStartingMark(), record.getWinner(),
+                record.getTimestamp());
+    }
+
+    /**
+     * Rates a game.
+     *
+     * @param nameX
+     *            The name of the robot master which played X, may not be null
+     * @param nameO
+     *            The name of the robot master which played O, may not be null
+     * @param startingMark
+     *            The mark which moved first, may not be null
+     * @param winner
+     *            The winning mark (also when the loser was disqualified),
+     *            null for a draw
+     * @param timestamp
+     *            When the game was played, in milliseconds since the epoch
+     *            (only used to find its rating period)
+     */
+    public void record(final String nameX, final String nameO, final Mark startingMark, final Mark winner,
+            final long timestamp) {
+        if ((nameX == null) || (nameO == null)) {
+            throw new IllegalArgumentException("names cannot be null");
+        }
+        if (startingMark == null) {
+            throw new IllegalArgumentException("startingMark cannot be null");
+        }
+        if (nameX.equals(nameO)) {
+            selfGames.increment();
+            return;
+        }
+        if (periodMillis > 0) {
+            final long gamePeriod = Math.floorDiv(timestamp, periodMillis);
+            if (gamePeriod > period) {
+                startPeriod(gamePeriod);
+            }
+        }
+        final RobotState x = state(nameX);
+        final RobotState o = state(nameO);
+        final double scoreX = (winner == null) ? 0.5 : (winner == Mark.X) ? 1.0 : 0.0;
+        final boolean xFirst = (startingMark == Mark.X);
+        // in Glicko-2 units, for X
+        final double firstAdvantage = getFirstMoveAdvantage() / GLICKO2_SCALE;
+        final double advantage = xFirst ? firstAdvantage : -firstAdvantage;
+        games.increment();
+        firstHalfPoints.add((long) (2 * (xFirst ? scoreX : 1.0 - scoreX)));
+
+        final ReentrantLock first = stripes[Math.min(x.stripe, o.stripe)];
+        final ReentrantLock second = stripes[Math.max(x.stripe, o.stripe)];
+        first.lock();
+        second.lock(); // the same lock again if they share a stripe
+        try {
+            final double expectedX = 1.0 / (1.0 + Math.exp((o.elo - x.elo) / GLICKO2_SCALE - advantage));
+            final double change = k * (scoreX - expectedX);
+            x.elo += change;
+            o.elo -= change;
+            x.add(o, advantage, scoreX, xFirst);
+            o.add(x, -advantage, 1.0 - scoreX, !xFirst);
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    /**
+     * Rates the games in game record files, in the order they were
+     * recorded, leaving out those played outside a window of time (e.g. to
+     * rate a part of an archive again, on a new engine).
+     *
+     * @param files
+     *            The game record files, may not be null
+     * @param from
+     *            The earliest timestamp of the games rated (inclusive), in
+     *            milliseconds since the epoch
+     * @param to
+     *            The latest timestamp of the games rated (exclusive)
+     * @return The number of games rated
+     * @throws IOException
+     *             If a file cannot be read
+     */
+    public long rate(final List<Path> files, final long from, final long to) throws IOException {
+        if (files == null) {
+            throw new IllegalArgumentException("files cannot be null");
+        }
+        final GameRecord record = new GameRecord();
+        long rated = 0;
+        for (final Path file : files) {
+            try (GameRecordReader reader = new GameRecordReader(file)) {
+                while (reader.next(record)) {
+                    if ((record.getTimestamp() >= from) && (record.getTimestamp() < to)) {
+                        record(record);
+                        rated++;
+                    }
+                }
+            }
+        }
+        return rated;
+    }
+
+    /**
+     * Closes the current rating period now, updating the Glicko-2 ratings of
+     * all the robots from the games played in it (e.g. at the end of a
+     * tournament, or of an archive).
+     */
+    public void closePeriod() {
+        lockAll();
+        try {
+            close();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Moves on to a later period, closing the current one (and any empty
+     * ones in between).
+     *
+     * @param next
+     *            The index of the new period
+     */
+    private void startPeriod(final long next) {
+        lockAll();
+        try {
+            if (next <= period) {
+                return; // another thread got here first
+            }
+            if (period != NO_PERIOD) {
+                close();
+                final long empty = next - period - 1;
+                if (empty > 0) {
+                    for (final RobotState state : robots.values()) {
+                        state.widen(empty);
+                    }
+                    periodsClosed += empty;
+                }
+            }
+            period = next;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Closes the current period (all the stripes being locked).
+     */
+    private void close() {
+        for (final RobotState state : robots.values()) {
+            state.closePeriod();
+        }
+        periodsClosed++;
+    }
+
+    private void lockAll() {
+        for (final ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    /**
+     * Gets the state of a robot, creating it for its first game.
+     */
+    private RobotState state(final String name) {
+        RobotState state = robots.get(name);
+        if (state == null) {
+            final RobotState created = new RobotState(name);
+            state = robots.putIfAbsent(name, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Gets the rating of a robot.
+     *
+     * @param name
+     *            The name of the robot master
+     * @return The rating, or null if the robot was not rated
+     */
+    public Rating getRating(final String name) {
+        final RobotState state = robots.get(name);
+        if (state == null) {
+            return null;
+        }
+        final ReentrantLock lock = stripes[state.stripe];
+        lock.lock();
+        try {
+            return state.toRating();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the rating of a robot.
+     *
+     * @param robot
+     *            The robot, may not be null
+     * @return The rating, or null if the robot was not rated
+     */
+    public Rating getRating(final TTTRobot robot) {
+        return getRating(robot.getRobotMasterName());
+    }
+
+    /**
+     * Gets the rating of a player's robot.
+     *
+     * @param player
+     *            The player, may not be null
+     * @return The rating, or null if the robot was not rated
+     */
+    public Rating getRating(final TTTPlayer player) {
+        return getRating(player.getRobot());
+    }
+
+    /**
+     * Gets the ratings of all the robots.
+     *
+     * @return A new list of ratings, highest Elo first
+     */
+    public List<Rating> getRatings() {
+        final List<Rating> ratings = new ArrayList<Rating>(robots.size());
+        for (final String name : robots.keySet()) {
+            ratings.add(getRating(name));
+        }
+        Collections.sort(ratings, ORDER);
+        return ratings;
+    }
+
+    /**
+     * Gets how much moving first is worth, from the score of the robots
+     * which moved first in the games rated so far.
+     *
+     * @return The advantage in rating points, 0 if moving first is worth
+     *         nothing (negative if it is a disadvantage)
+     */
+    public double getFirstMoveAdvantage() {
+        final double score = (firstHalfPoints.sum() + PRIOR_GAMES) / (2.0 * (games.sum() + PRIOR_GAMES));
+        final double clamped = Math.max(0.001, Math.min(0.999, score));
+        return GLICKO2_SCALE * Math.log(clamped / (1 - clamped));
+    }
+
+    /**
+     * Gets the number of games rated.
+     *
+     * @return The number of games
+     */
+    public long getGames() {
+        return games.sum();
+    }
+
+    /**
+     * Gets the number of games left out because a robot played itself.
+     *
+     * @return The number of games
+     */
+    public long getSelfGames() {
+        return selfGames.sum();
+    }
+
+    /**
+     * Gets the number of rating periods closed.
+     *
+     * @return The number of periods
+     */
+    public long getPeriodsClosed() {
+        lockAll();
+        try {
+            return periodsClosed;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Displays the ratings, one robot per line.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append(String.format("%-4s %-30s %8s %8s %6s %8s %10s %10s %10s %10s%n", "#", "Robot", "Elo",
+                "Glicko", "RD", "Vol", "Games", "Won", "Drawn", "Lost"));
+        int position = 1;
+        for (final Rating rating : getRatings()) {
+            buffer.append(String.format("%-4d %-30s %8.0f %8.0f %6.0f %8.4f %10d %10d %10d %10d%n", position++,
+                    rating.getName(), rating.getElo(), rating.getGlicko(), rating.getDeviation(),
+                    rating.getVolatility(), rating.getGames(), rating.getWins(), rating.getDraws(),
+                    rating.getLosses()));
+        }
+        buffer.append(String.format("first move advantage %.0f points over %d games%n", getFirstMoveAdvantage(),
+                getGames()));
+        return buffer.toString();
+    }
+
+    /**
+     * The ratings of a robot, and the sums of its games in the current
+     * period. Guarded by the stripe of the robot; the Glicko-2 rating only
+     * changes when a period closes (all the stripes being locked), so it may
+     * be read under the stripe of either robot of a game.
+     */
+    private static final class RobotState {
+
+        private final String name;
+
+        /**
+         * The lock guarding the robot.
+         */
+        private final int stripe;
+
+        private double elo = INITIAL_RATING;
+
+        /**
+         * The Glicko-2 rating, deviation and volatility, on the Glicko-2
+         * scale, as of the start of the current period.
+         */
+        private double mu, phi = INITIAL_DEVIATION / GLICKO2_SCALE, sigma = INITIAL_VOLATILITY;
+
+        /**
+         * The weight of games against this robot, <code>g(phi)</code>.
+         */
+        private double weight = g(phi);
+
+        /**
+         * The sums of the period: of g(phi_j)^2 E (1 - E), the inverse of
+         * the estimated variance v, and of g(phi_j) (s - E), delta over v.
+         */
+        private double varianceInverse, improvement;
+
+        private long wins, draws, losses, gamesFirst, halfPointsFirst;
+
+        private RobotState(final String name) {
+            this.name = name;
+            int h = name.hashCode();
+            h ^= (h >>> 16);
+            this.stripe = h & (STRIPES - 1);
+        }
+
+        /**
+         * Adds a game to the robot's results and period sums.
+         *
+         * @param opponent
+         *            The other robot
+         * @param advantage
+         *            The advantage of this robot for moving first (negative
+         *            if it moved second), on the Glicko-2 scale
+         * @param score
+         *            The score of this robot
+         * @param first
+         *            Whether this robot moved first
+         */
+        private void add(final RobotState opponent, final double advantage, final double score,
+                final boolean first) {
+            final double g = opponent.weight;
+            final double expected = 1.0 / (1.0 + Math.exp(-g * (mu + advantage - opponent.mu)));
+            varianceInverse += g * g * expected * (1.0 - expected);
+            improvement += g * (score - expected);
+            if (score == 1.0) {
+                wins++;
+            } else if (score == 0.0) {
+                losses++;
+            } else {
+                draws++;
+            }
+            if (first) {
+                gamesFirst++;
+                halfPointsFirst += (long) (2 * score);
+            }
+        }
+
+        /**
+         * Updates the Glicko-2 rating from the games of the period (step 3
+         * to 8 of Glickman's example), and clears the sums.
+         */
+        private void closePeriod() {
+            if (varianceInverse == 0) {
+                widen(1);
+                return;
+            }
+            final double v = 1.0 / varianceInverse;
+            final double delta = v * improvement;
+            final double phi2 = phi * phi;
+
+            // the new volatility, by the Illinois algorithm (A and B bracket the root)
+            final double a = Math.log(sigma * sigma);
+            double rootA = a;
+            double rootB;
+            if (delta * delta > phi2 + v) {
+                rootB = Math.log(delta * delta - phi2 - v);
+            } else {
+                int step = 1;
+                while (f(a - step * TAU, a, delta, phi2, v) < 0) {
+                    step++;
+                }
+                rootB = a - step * TAU;
+            }
+            double fA = f(rootA, a, delta, phi2, v);
+            double fB = f(rootB, a, delta, phi2, v);
+            while (Math.abs(rootB - rootA) > EPSILON) {
+                final double rootC = rootA + (rootA - rootB) * fA / (fB - fA);
+                final double fC = f(rootC, a, delta, phi2, v);
+                if (fC * fB <= 0) {
+                    rootA = rootB;
+                    fA = fB;
+                } else {
+                    fA /= 2;
+                }
+                rootB = rootC;
+                fB = fC;
+            }
+            sigma = Math.exp(rootA / 2);
+
+            final double phiStar2 = phi2 + sigma * sigma;
+            phi = 1.0 / Math.sqrt(1.0 / phiStar2 + varianceInverse);
+            mu += phi * phi * improvement;
+            weight = g(phi);
+            varianceInverse = 0;
+            improvement = 0;
+        }
+
+        /**
+         * Widens the deviation over periods without games.
+         */
+        private void widen(final long periods) {
+            phi = Math.min(INITIAL_DEVIATION / GLICKO2_SCALE, Math.sqrt(phi * phi + periods * sigma * sigma));
+            weight = g(phi);
+        }
+
+        private Rating toRating() {
+            return new Rating(name, elo, INITIAL_RATING + GLICKO2_SCALE * mu, GLICKO2_SCALE * phi, sigma, wins,
+                    draws, losses, gamesFirst, halfPointsFirst / 2.0);
+        }
+
+        /**
+         * The Glicko-2 weight of a game against an opponent of deviation
+         * <code>phi</code>.
+         */
+        private static double g(final double phi) {
+            return 1.0 / Math.sqrt(1.0 + 3.0 * phi * phi / (Math.PI * Math.PI));
+        }
+
+        /**
+         * The function whose root is the log of the new volatility.
+         */
+        private static double f(final double x, final double a, final double delta, final double phi2,
+                final double v) {
+            final double ex = Math.exp(x);
+            final double d = phi2 + v + ex;
+            return ex * (delta * delta - phi2 - v - ex) / (2 * d * d) - (x - a) / (TAU * TAU);
+        }
+    }
+
+    /**
+     * Rates the games of game record files.
+     *
+     * @param args
+     *            Optionally <code>-from</code> and <code>-to</code> instants
+     *            (e.g. 2017-01-01T00:00:00Z) bounding the games rated, and
+     *            the length of the rating periods (<code>-period</code>, in
+     *            minutes), then the files
+     * @throws IOException
+     *             If a file cannot be read
+     */
+    public static void main(final String[] args) throws IOException {
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        long minutes = 0;
+        int i = 0;
+        while ((i + 1 < args.length) && args[i].startsWith("-")) {
+            if (args[i].equals("-from")) {
+                from = Instant.parse(args[i + 1]).toEpochMilli();
+            } else if (args[i].equals("-to")) {
+                to = Instant.parse(args[i + 1]).toEpochMilli();
+            } else if (args[i].equals("-period")) {
+                minutes = Long.parseLong(args[i + 1]);
+            } else {
+                break;
+            }
+            i += 2;
+        }
+        if (i == args.length) {
+            System.err.println(
+                    "Usage: RatingEngine [-from <instant>] [-to <instant>] [-period <minutes>] <game record file>...");
+            return;
+        }
+        final List<Path> files = new ArrayList<Path>();
+        for (; i < args.length; i++) {
+            files.add(Paths.get(args[i]));
+        }
+        final RatingEngine engine = new RatingEngine(DEFAULT_K, minutes, TimeUnit.MINUTES);
+        final long start = System.nanoTime();
+        final long rated = engine.rate(files, from, to);
+        engine.closePeriod();
+        final long elapsed = System.nanoTime() - start;
+        System.out.print(engine);
+        System.out.printf("rated %d games in %.2f s (%d periods)%n", rated, elapsed / 1e9, engine.getPeriodsClosed());
+    }
+
+}
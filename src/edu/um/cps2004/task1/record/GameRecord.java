@@ -0,0 +1,446 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.record;
+
+import java.util.Arrays;
+
+import edu.um.cps2004.task1.catalog.Disqualification;
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * The record of one game: who played, on which board, the moves (and how
+ * long each took), and how it ended.
+ *
+ * Records are mutable so that a single instance can be filled game after
+ * game (by the engine) or record after record (by a
+ * <code>GameRecordReader</code>) without allocating. Copy what you need to
+ * keep.
+ *
+ * Not thread safe.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class GameRecord {
+
+    /**
+     * The names of the robot masters playing X and O.
+     */
+    private String playerX, playerO;
+
+    /**
+     * The mark which played first.
+     */
+    private Mark startingMark = Mark.X;
+
+    /**
+     * The shape of the board.
+     */
+    private int side = 3, winLength = 3;
+
+    /**
+     * When the game was played, in milliseconds since the epoch.
+     */
+    private long timestamp;
+
+    /**
+     * The seed the game was played with, if <code>seeded</code>.
+     */
+    private long seed;
+
+    /**
+     * Whether the game was played with a seed.
+     */
+    private boolean seeded;
+
+    /**
+     * The positions played, in order. Only the first <code>moveCount</code>
+     * are valid.
+     */
+    private int[] moves = new int[16];
+
+    /**
+     * The time taken by each move, in microseconds (0 if not timed).
+     */
+    private int[] micros = new int[16];
+
+    /**
+     * The number of moves played.
+     */
+    private int moveCount;
+
+    /**
+     * Whether any move was added with its time.
+     */
+    private boolean timed;
+
+    /**
+     * The winning mark, null for a draw.
+     */
+    private Mark winner;
+
+    /**
+     * Why the loser was disqualified, null if it was not.
+     */
+    private Disqualification disqualification;
+
+    /**
+     * Clears the record, ready for a new game: no moves, no result, no seed,
+     * X to start, on the classic board. The players and the timestamp are
+     * kept.
+     */
+    public void clear() {
+        seeded = false;
+        startingMark = Mark.X;
+        side = 3;
+        winLength = 3;
+        moveCount = 0;
+        timed = false;
+        winner = null;
+        disqualification = null;
+    }
+
+    /**
+     * Sets the players.
+     *
+     * @param playerX
+     *            The name of the robot master playing X, may not be null
+     * @param playerO
+     *            The name of the robot master playing O, may not be null
+     */
+    public void setPlayers(final String playerX, final String playerO) {
+        if ((playerX == null) || (playerO == null)) {
+            throw new IllegalArgumentException("player names cannot be null");
+        }
+        this.playerX = playerX;
+        this.playerO = playerO;
+    }
+
+    /**
+     * Sets the shape of the board.
+     *
+     * @param side
+     *            The number of rows (and columns), 1..255
+     * @param winLength
+     *            The number of marks in a row needed to win, 1..side
+     */
+    public void setShape(final int side, final int winLength) {
+        if ((side < 1) || (side > 255) || (winLength < 1) || (winLength > side)) {
+            throw new IllegalArgumentException("Bad board shape: " + side + "x" + side + ", " + winLength);
+        }
+        this.side = side;
+        this.winLength = winLength;
+    }
+
+    /**
+     * Sets the mark which played first.
+     *
+     * @param startingMark
+     *            X or O, may not be null
+     */
+    public void setStartingMark(final Mark startingMark) {
+        if (startingMark == null) {
+            throw new IllegalArgumentException("startingMark cannot be null");
+        }
+        this.startingMark = startingMark;
+    }
+
+    /**
+     * Sets when the game was played.
+     *
+     * @param timestamp
+     *            Milliseconds since the epoch
+     */
+    public void setTimestamp(final long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Sets the seed the game was played with (see
+     * <code>BatchWarEngine.setSeed</code>), from which it can be replayed.
+     *
+     * @param seed
+     *            The seed of the game
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+        this.seeded = true;
+    }
+
+    /**
+     * Adds a move, without its time.
+     *
+     * @param position
+     *            The position played
+     */
+    public void addMove(final int position) {
+        addMove(position, 0, false);
+    }
+
+    /**
+     * Adds a move, with the time it took.
+     *
+     * @param position
+     *            The position played
+     * @param moveMicros
+     *            The time the robot took to choose the move, in microseconds
+     *            (saturates at <code>Integer.MAX_VALUE</code>)
+     */
+    public void addMove(final int position, final long moveMicros) {
+        addMove(position, moveMicros, true);
+    }
+
+    /**
+     * Adds a move, growing the arrays if needed.
+     */
+    private void addMove(final int position, final long moveMicros, final boolean withTime) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moveCount * 2);
+            micros = Arrays.copyOf(micros, moveCount * 2);
+        }
+        moves[moveCount] = position;
+        micros[moveCount] = (int) Math.max(0, Math.min(moveMicros, Integer.MAX_VALUE));
+        moveCount++;
+        timed |= withTime;
+    }
+
+    /**
+     * Sets the time a move took (used when reading records back).
+     *
+     * @param index
+     *            The index of the move, 0..(getMoveCount()-1)
+     * @param moveMicros
+     *            The time in microseconds
+     */
+    void setMoveMicros(final int index, final long moveMicros) {
+        checkIndex(index);
+        micros[index] = (int) Math.min(moveMicros, Integer.MAX_VALUE);
+        timed = true;
+    }
+
+    /**
+     * Sets how the game ended.
+     *
+     * @param winner
+     *            The winning mark, null for a draw
+     * @param disqualification
+     *            Why the loser was disqualified, null if it was not (must be
+     *            null for a draw)
+     */
+    public void setResult(final Mark winner, final Disqualification disqualification) {
+        if ((winner == null) && (disqualification != null)) {
+            throw new IllegalArgumentException("A drawn game has no disqualification");
+        }
+        this.winner = winner;
+        this.disqualification = disqualification;
+    }
+
+    /**
+     * Makes this record a copy of another one (e.g. to keep a record which
+     * an engine is about to reuse), growing its arrays if needed.
+     *
+     * @param other
+     *            The record to copy, may not be null
+     */
+    public void copyFrom(final GameRecord other) {
+        playerX = other.playerX;
+        playerO = other.playerO;
+        startingMark = other.startingMark;
+        side = other.side;
+        winLength = other.winLength;
+        timestamp = other.timestamp;
+        seed = other.seed;
+        seeded = other.seeded;
+        if (moves.length < other.moveCount) {
+            moves = new int[other.moves.length];
+            micros = new int[other.moves.length];
+        }
+        System.arraycopy(other.moves, 0, moves, 0, other.moveCount);
+        System.arraycopy(other.micros, 0, micros, 0, other.moveCount);
+        moveCount = other.moveCount;
+        timed = other.timed;
+        winner = other.winner;
+        disqualification = other.disqualification;
+    }
+
+    /**
+     * Gets the name of the robot master playing X.
+     *
+     * @return The name, null if not set yet
+     */
+    public String getPlayerX() {
+        return playerX;
+    }
+
+    /**
+     * Gets the name of the robot master playing O.
+     *
+     * @return The name, null if not set yet
+     */
+    public String getPlayerO() {
+        return playerO;
+    }
+
+    /**
+     * Gets the mark which played first.
+     *
+     * @return X or O, never null
+     */
+    public Mark getStartingMark() {
+        return startingMark;
+    }
+
+    /**
+     * Gets the number of rows (and columns) of the board.
+     *
+     * @return The side of the board
+     */
+    public int getSide() {
+        return side;
+    }
+
+    /**
+     * Gets the number of marks in a row needed to win.
+     *
+     * @return The win length
+     */
+    public int getWinLength() {
+        return winLength;
+    }
+
+    /**
+     * Gets when the game was played.
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Checks if the game was played with a seed.
+     *
+     * @return true if <code>getSeed()</code> is the seed of the game
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Gets the seed the game was played with.
+     *
+     * @return The seed, 0 if the game was not seeded
+     */
+    public long getSeed() {
+        return seeded ? seed : 0;
+    }
+
+    /**
+     * Gets the number of moves played.
+     *
+     * @return The number of moves, never negative
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Gets a move.
+     *
+     * @param index
+     *            The index of the move, 0..(getMoveCount()-1)
+     * @return The position played
+     */
+    public int getMove(final int index) {
+        checkIndex(index);
+        return moves[index];
+    }
+
+    /**
+     * Gets the mark which played a move (the marks alternate from the
+     * starting mark).
+     *
+     * @param index
+     *            The index of the move, 0..(getMoveCount()-1)
+     * @return The mark, never null
+     */
+    public Mark getMark(final int index) {
+        checkIndex(index);
+        return ((index & 1) == 0) ? startingMark : (startingMark == Mark.X) ? Mark.O : Mark.X;
+    }
+
+    /**
+     * Gets the time a move took.
+     *
+     * @param index
+     *            The index of the move, 0..(getMoveCount()-1)
+     * @return The time in microseconds, 0 if the moves were not timed
+     */
+    public int getMoveMicros(final int index) {
+        checkIndex(index);
+        return micros[index];
+    }
+
+    /**
+     * Checks if the moves were timed.
+     *
+     * @return true if the moves were timed
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * Gets the winner.
+     *
+     * @return The winning mark, or null if the game was drawn
+     */
+    public Mark getWinner() {
+        return winner;
+    }
+
+    /**
+     * Gets the reason the loser was disqualified.
+     *
+     * @return Why the loser was disqualified, or null if it was not
+     */
+    public Disqualification getDisqualification() {
+        return disqualification;
+    }
+
+    /**
+     * Checks the index of a move.
+     */
+    private void checkIndex(final int index) {
+        if ((index < 0) || (index >= moveCount)) {
+            throw new IndexOutOfBoundsException("Move " + index + " of " + moveCount);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(playerX).append(" (X) vs ").append(playerO).append(" (O), ").append(side).append('x')
+                .append(side).append('/').append(winLength).append(", ").append(startingMark).append(" starts:");
+        for (int i = 0; i < moveCount; i++) {
+            sb.append(' ').append(moves[i]);
+        }
+        sb.append(" -> ");
+        if (winner == null) {
+            sb.append("draw");
+        } else {
+            sb.append(winner).append(" wins");
+            if (disqualification != null) {
+                sb.append(" (").append(disqualification).append(')');
+            }
+        }
+        if (seeded) {
+            sb.append(", seed ").append(seed);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.record;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of game record files, shared by the writer and the reader.
+ *
+ * A file is a sequence of self contained blocks, each starting with a fixed
+ * header:
+ *
+ * <pre>
+ * int  MAGIC
+ * byte VERSION
+ * int  length of the entries which follow (bytes)
+ * int  number of games in the block
+ * long base timestamp (ms since the epoch)
+ * </pre>
+ *
+ * followed by the entries, each starting with a tag byte:
+ *
+ * <pre>
+ * NAME: varint length, UTF-8 bytes       (the next player id of the block)
+ * SEED: long seed                        (of the next game, if it was seeded)
+ * GAME: zigzag varint timestamp - base
+ *       varint id of X, varint id of O
+ *       byte flags (see the F_ constants)
+ *       [byte side, byte winLength]      (only if F_SHAPE)
+ *       varint number of moves
+ *       moves: two per byte (low nibble first) on boards of up to 16
+ *              positions, otherwise a varint each
+ *       [varint microseconds per move]   (only if F_TIMED)
+ * </pre>
+ *
+ * Player ids are numbered from 0 in the order their names appear in the
+ * block, so every block may be decoded on its own (and a file split at any
+ * block boundary). All numbers are big endian.
+ *
+ * Version 2 added the SEED entry; version 1 blocks (which have none) are
+ * still read.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+final class GameRecordFormat {
+
+    /**
+     * Starts every block ("TTTR").
+     */
+    static final int MAGIC = 0x54545452;
+
+    /**
+     * The version of the format written.
+     */
+    static final byte VERSION = 2;
+
+    /**
+     * The size of a block header, in bytes.
+     */
+    static final int HEADER_SIZE = 4 + 1 + 4 + 4 + 8;
+
+    /* Offsets in the header */
+    static final int LENGTH_OFFSET = 5;
+    static final int COUNT_OFFSET = 9;
+    static final int BASE_OFFSET = 13;
+
+    /* Entry tags */
+    static final byte NAME = 0;
+    static final byte GAME = 1;
+    static final byte SEED = 2;
+
+    /* Game flags */
+    static final int F_O_STARTS = 0x01;
+    static final int WINNER_SHIFT = 1; // 2 bits: 0 draw, 1 X, 2 O
+    static final int DISQUALIFICATION_SHIFT = 3; // 3 bits: 0 none, else ordinal + 1
+    static final int F_SHAPE = 0x40;
+    static final int F_TIMED = 0x80;
+
+    /**
+     * The largest board whose moves are packed into nibbles.
+     */
+    static final int NIBBLE_BOARD_SIZE = 16;
+
+    /**
+     * Utility class, no instances.
+     */
+    private GameRecordFormat() {
+    }
+
+    /**
+     * Writes an unsigned varint (7 bits per byte, low first).
+     */
+    static void putVarint(final ByteBuffer buffer, final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     */
+    static long getVarint(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * Maps a signed value to an unsigned one, small magnitudes first.
+     */
+    static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * The inverse of <code>zigzag</code>.
+     */
+    static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.record;
+
+import static edu.um.cps2004.task1.record.GameRecordFormat.*;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.um.cps2004.task1.catalog.Disqualification;
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * Reads back the game records written by a <code>GameRecordWriter</code>,
+ * one at a time.
+ *
+ * Only one block of the file is held in memory at any time, and each record
+ * is decoded into a <code>GameRecord</code> given by the caller (usually the
+ * same one over and over), so files of any size may be streamed through:
+ *
+ * <pre>
+ * try (GameRecordReader reader = new GameRecordReader(path)) {
+ *     final GameRecord record = new GameRecord();
+ *     while (reader.next(record)) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * A reader may also be given a buffer holding whole blocks (e.g. a slice of
+ * a memory mapped file), in which case it decodes straight from it.
+ *
+ * Not thread safe.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class GameRecordReader implements Closeable {
+
+    /**
+     * The file read, null if reading from a buffer.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The whole input when reading from a buffer, otherwise the current
+     * block.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The header of the next block (only used when reading from a file).
+     */
+    private final ByteBuffer header;
+
+    /**
+     * Where the entries of the current block end in <code>buffer</code>.
+     */
+    private int blockEnd;
+
+    /**
+     * The length of the entries of the block whose header was last read.
+     */
+    private int length;
+
+    /**
+     * The number of games left in the current block.
+     */
+    private int gamesLeft;
+
+    /**
+     * The base timestamp of the current block.
+     */
+    private long base;
+
+    /**
+     * The names of the players of the current block, indexed by id.
+     */
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * The total number of records read.
+     */
+    private long read;
+
+    /**
+     * Opens a file for reading.
+     *
+     * @param path
+     *            The file, may not be null
+     * @throws IOException
+     *             If the file cannot be opened
+     */
+    public GameRecordReader(final Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("path cannot be null");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.header = ByteBuffer.allocate(HEADER_SIZE);
+        this.buffer = ByteBuffer.allocate(GameRecordWriter.DEFAULT_BLOCK_SIZE);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Reads the blocks in a buffer, from its position to its limit (which
+     * must be block boundaries). The buffer's position is moved along as
+     * blocks are read.
+     *
+     * @param blocks
+     *            The buffer, may not be null
+     */
+    public GameRecordReader(final ByteBuffer blocks) {
+        if (blocks == null) {
+            throw new IllegalArgumentException("blocks cannot be null");
+        }
+        this.channel = null;
+        this.header = null;
+        this.buffer = blocks;
+        this.blockEnd = blocks.position();
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @param record
+     *            The record to fill in, may not be null
+     * @return true if a record was read, false at the end of the input
+     * @throws IOException
+     *             If the input cannot be read, or is not a (complete) game
+     *             record file
+     */
+    public boolean next(final GameRecord record) throws IOException {
+        while (gamesLeft == 0) {
+            if (!nextBlock()) {
+                return false;
+            }
+        }
+        try {
+            boolean seeded = false;
+            long seed = 0;
+            byte tag;
+            while ((tag = buffer.get()) != GAME) {
+                if (tag == NAME) {
+                    final byte[] bytes = new byte[(int) getVarint(buffer)];
+                    buffer.get(bytes);
+                    names.add(new String(bytes, StandardCharsets.UTF_8));
+                } else if (tag == SEED) {
+                    seed = buffer.getLong();
+                    seeded = true;
+                } else {
+                    throw new IllegalStateException("Unknown entry tag: " + tag);
+                }
+            }
+            decodeGame(record);
+            if (seeded) {
+                record.setSeed(seed);
+            }
+        } catch (final RuntimeException e) {
+            throw new IOException("Corrupt game record block", e);
+        }
+        if (buffer.position() > blockEnd) {
+            throw new IOException("Corrupt game record block (overrun)");
+        }
+        gamesLeft--;
+        read++;
+        return true;
+    }
+
+    /**
+     * Decodes a game entry (its tag already read).
+     */
+    private void decodeGame(final GameRecord record) {
+        record.clear();
+        record.setTimestamp(base + unzigzag(getVarint(buffer)));
+        record.setPlayers(names.get((int) getVarint(buffer)), names.get((int) getVarint(buffer)));
+        final int flags = buffer.get() & 0xFF;
+        if ((flags & F_SHAPE) != 0) {
+            final int side = buffer.get() & 0xFF;
+            record.setShape(side, buffer.get() & 0xFF);
+        }
+        record.setStartingMark(((flags & F_O_STARTS) != 0) ? Mark.O : Mark.X);
+
+        final int moveCount = (int) getVarint(buffer);
+        if (record.getSide() * record.getSide() <= NIBBLE_BOARD_SIZE) {
+            for (int i = 0; i < moveCount; i += 2) {
+                final int packed = buffer.get();
+                record.addMove(packed & 0xF);
+                if (i + 1 < moveCount) {
+                    record.addMove((packed >>> 4) & 0xF);
+                }
+            }
+        } else {
+            for (int i = 0; i < moveCount; i++) {
+                record.addMove((int) getVarint(buffer));
+            }
+        }
+        if ((flags & F_TIMED) != 0) {
+            for (int i = 0; i < moveCount; i++) {
+                record.setMoveMicros(i, getVarint(buffer));
+            }
+        }
+
+        final int winner = (flags >>> WINNER_SHIFT) & 0x3;
+        final int disqualification = (flags >>> DISQUALIFICATION_SHIFT) & 0x7;
+        record.setResult((winner == 0) ? null : (winner == 1) ? Mark.X : Mark.O,
+                (disqualification == 0) ? null : Disqualification.values()[disqualification - 1]);
+    }
+
+    /**
+     * Moves on to the next block.
+     *
+     * @return false at the end of the input
+     */
+    private boolean nextBlock() throws IOException {
+        names.clear();
+        if (channel == null) {
+            buffer.position(blockEnd);
+            if (!buffer.hasRemaining()) {
+                return false;
+            }
+            if (buffer.remaining() < HEADER_SIZE) {
+                throw new EOFException("Truncated game record block");
+            }
+            final int start = buffer.position();
+            readHeader(buffer, start);
+            buffer.position(start + HEADER_SIZE);
+            blockEnd = start + HEADER_SIZE + length;
+            if (blockEnd > buffer.limit()) {
+                throw new EOFException("Truncated game record block");
+            }
+            return true;
+        }
+
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                if (header.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated game record block");
+            }
+        }
+        readHeader(header, 0);
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(length);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Truncated game record block");
+            }
+        }
+        buffer.flip();
+        blockEnd = length;
+        return true;
+    }
+
+    /**
+     * Reads and checks a block header.
+     */
+    private void readHeader(final ByteBuffer source, final int at) throws IOException {
+        if (source.getInt(at) != MAGIC) {
+            throw new IOException("Not a game record block");
+        }
+        final byte version = source.get(at + 4);
+        if ((version < 1) || (version > VERSION)) {
+            throw new IOException("Unsupported game record version: " + version);
+        }
+        length = source.getInt(at + LENGTH_OFFSET);
+        gamesLeft = source.getInt(at + COUNT_OFFSET);
+        base = source.getLong(at + BASE_OFFSET);
+        if ((length < 0) || (gamesLeft < 0)) {
+            throw new IOException("Corrupt game record block header");
+        }
+    }
+
+    /**
+     * Finds where the block starting at an offset of a file ends, without
+     * reading it. Handy for splitting a file at block boundaries (e.g. to
+     * read its parts in parallel).
+     *
+     * @param channel
+     *            The file, may not be null
+     * @param offset
+     *            The offset of a block in the file
+     * @return The offset just after the block (where the next one starts),
+     *         or -1 if there is no complete block at the offset (the end of
+     *         the file, or a block cut short by a crash)
+     * @throws IOException
+     *             If the file cannot be read, or there is no block header at
+     *             the offset
+     */
+    public static long skipBlock(final FileChannel channel, final long offset) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, offset + header.position()) < 0) {
+                return -1;
+            }
+        }
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a game record block at offset " + offset);
+        }
+        final long end = offset + HEADER_SIZE + header.getInt(LENGTH_OFFSET);
+        return (end <= channel.size()) ? end : -1;
+    }
+
+    /**
+     * Gets the number of records read so far.
+     *
+     * @return The number of records, never negative
+     */
+    public long getRecordsRead() {
+        return read;
+    }
+
+    /**
+     * Closes the file (if reading from one).
+     *
+     * @throws IOException
+     *             If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.record;
+
+/**
+ * Receives the record of each game played by an engine (see
+ * <code>BatchWarEngine.setRecordSink</code>).
+ *
+ * The record passed is reused by the engine for its next game, so a sink
+ * must take what it needs before returning. A sink shared by several engines
+ * (e.g. in a <code>Tournament</code>) must be thread safe.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public interface GameRecordSink {
+
+    /**
+     * Takes the record of a game which just ended.
+     *
+     * @param record
+     *            The record, never null
+     */
+    void record(GameRecord record);
+
+}
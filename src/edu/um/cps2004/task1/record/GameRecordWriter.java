@@ -0,0 +1,315 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.record;
+
+import static edu.um.cps2004.task1.record.GameRecordFormat.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * Appends game records to a file, in the compact binary format described in
+ * <code>GameRecordFormat</code>.
+ *
+ * Records are encoded into a block in memory, and the block is appended to
+ * the file (in a single write) when it is full, or on <code>flush</code> and
+ * <code>close</code>. A classic game takes some 10 bytes (20 with timings),
+ * so a block holds thousands of games and writing costs next to nothing per
+ * game. The file is only ever appended to, and several runs may append to
+ * the same file.
+ *
+ * Thread safe (records from several engines may be written to one writer),
+ * and a <code>GameRecordSink</code>, so it can be plugged straight into an
+ * engine or a tournament. Since a sink may not throw checked exceptions, I/O
+ * errors while recording are rethrown as <code>UncheckedIOException</code>.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class GameRecordWriter implements GameRecordSink, Closeable {
+
+    /**
+     * The default size of a block, in bytes.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The file appended to.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The block being filled, header included. Entries start at
+     * <code>HEADER_SIZE</code>.
+     */
+    private ByteBuffer block;
+
+    /**
+     * The ids of the players named in the current block.
+     */
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    /**
+     * The number of games in the current block.
+     */
+    private int games;
+
+    /**
+     * The base timestamp of the current block (that of its first game).
+     */
+    private long base;
+
+    /**
+     * The total number of games written.
+     */
+    private long written;
+
+    /**
+     * Opens a file for appending (creating it if needed), with the default
+     * block size.
+     *
+     * @param path
+     *            The file, may not be null
+     * @throws IOException
+     *             If the file cannot be opened
+     */
+    public GameRecordWriter(final Path path) throws IOException {
+        this(path, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Opens a file for appending (creating it if needed).
+     *
+     * @param path
+     *            The file, may not be null
+     * @param blockSize
+     *            The size of a block, in bytes (a larger block means fewer
+     *            writes, but more games lost in a crash). At least 1KB.
+     * @throws IOException
+     *             If the file cannot be opened
+     */
+    public GameRecordWriter(final Path path, final int blockSize) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("path cannot be null");
+        }
+        if (blockSize < 1024) {
+            throw new IllegalArgumentException("blockSize too small: " + blockSize);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.block = ByteBuffer.allocateDirect(blockSize);
+        this.block.position(HEADER_SIZE);
+    }
+
+    /**
+     * Records a game (see <code>write</code>).
+     *
+     * @param record
+     *            The record, never null
+     * @throws UncheckedIOException
+     *             If a block cannot be written
+     */
+    @Override
+    public void record(final GameRecord record) {
+        try {
+            write(record);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a game record (to the current block, which is appended to the
+     * file first if the record does not fit).
+     *
+     * @param record
+     *            The record, may not be null (nor without players)
+     * @throws IOException
+     *             If a block cannot be written
+     */
+    public synchronized void write(final GameRecord record) throws IOException {
+        if ((record == null) || (record.getPlayerX() == null)) {
+            throw new IllegalArgumentException("record (and its players) cannot be null");
+        }
+        ensureOpen();
+        if (block.remaining() < maxSize(record)) {
+            flushBlock();
+            if (block.remaining() < maxSize(record)) {
+                // one huge game, give it a block of its own
+                block = ByteBuffer.allocateDirect(HEADER_SIZE + maxSize(record));
+                block.position(HEADER_SIZE);
+            }
+        }
+        if (games == 0) {
+            base = record.getTimestamp();
+        }
+        final int idX = idOf(record.getPlayerX());
+        final int idO = idOf(record.getPlayerO());
+
+        final int boardSize = record.getSide() * record.getSide();
+        final int moveCount = record.getMoveCount();
+        int flags = 0;
+        if (record.getStartingMark() == Mark.O) {
+            flags |= F_O_STARTS;
+        }
+        if (record.getWinner() != null) {
+            flags |= ((record.getWinner() == Mark.X) ? 1 : 2) << WINNER_SHIFT;
+        }
+        if (record.getDisqualification() != null) {
+            flags |= (record.getDisqualification().ordinal() + 1) << DISQUALIFICATION_SHIFT;
+        }
+        final boolean classic = (record.getSide() == 3) && (record.getWinLength() == 3);
+        if (!classic) {
+            flags |= F_SHAPE;
+        }
+        if (record.isTimed()) {
+            flags |= F_TIMED;
+        }
+
+        if (record.isSeeded()) {
+            block.put(SEED);
+            block.putLong(record.getSeed());
+        }
+        block.put(GAME);
+        putVarint(block, zigzag(record.getTimestamp() - base));
+        putVarint(block, idX);
+        putVarint(block, idO);
+        block.put((byte) flags);
+        if (!classic) {
+            block.put((byte) record.getSide());
+            block.put((byte) record.getWinLength());
+        }
+        putVarint(block, moveCount);
+        if (boardSize <= NIBBLE_BOARD_SIZE) {
+            for (int i = 0; i < moveCount; i += 2) {
+                final int low = record.getMove(i);
+                final int high = (i + 1 < moveCount) ? record.getMove(i + 1) : 0;
+                block.put((byte) (low | (high << 4)));
+            }
+        } else {
+            for (int i = 0; i < moveCount; i++) {
+                putVarint(block, record.getMove(i));
+            }
+        }
+        if (record.isTimed()) {
+            for (int i = 0; i < moveCount; i++) {
+                putVarint(block, record.getMoveMicros(i));
+            }
+        }
+        games++;
+        written++;
+    }
+
+    /**
+     * Gets the id of a player in the current block, naming it in the block
+     * if it is not there yet.
+     */
+    private int idOf(final String name) {
+        final Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        block.put(NAME);
+        putVarint(block, bytes.length);
+        block.put(bytes);
+        final int newId = ids.size();
+        ids.put(name, newId);
+        return newId;
+    }
+
+    /**
+     * The most bytes a record may take in a block (names included, in case
+     * they are new).
+     */
+    private static int maxSize(final GameRecord record) {
+        // UTF-8 takes at most 3 bytes per char; varints at most 5 (ints) or
+        // 10 (longs)
+        final int names = 2 * (1 + 5 + 3 * Math.max(record.getPlayerX().length(), record.getPlayerO().length()));
+        return names + 1 + 8 + 1 + 10 + 5 + 5 + 1 + 2 + 5 + (record.getMoveCount() * (5 + 5));
+    }
+
+    /**
+     * Appends the current block (if it holds any games) to the file, and
+     * starts a new one.
+     */
+    private void flushBlock() throws IOException {
+        if (games > 0) {
+            block.putInt(0, MAGIC);
+            block.put(4, VERSION);
+            block.putInt(LENGTH_OFFSET, block.position() - HEADER_SIZE);
+            block.putInt(COUNT_OFFSET, games);
+            block.putLong(BASE_OFFSET, base);
+            block.flip();
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+        }
+        block.clear();
+        block.position(HEADER_SIZE);
+        ids.clear();
+        games = 0;
+    }
+
+    /**
+     * Appends the games written so far to the file (they may still be in the
+     * operating system's buffers).
+     *
+     * @throws IOException
+     *             If the block cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        flushBlock();
+    }
+
+    /**
+     * Flushes and closes the file. Closing a closed writer has no effect.
+     *
+     * @throws IOException
+     *             If the last block cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flushBlock();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Gets the number of games written (including those not flushed yet).
+     *
+     * @return The number of games, never negative
+     */
+    public synchronized long getGamesWritten() {
+        return written;
+    }
+
+    /**
+     * Fails if the writer was closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Writer closed");
+        }
+    }
+
+}
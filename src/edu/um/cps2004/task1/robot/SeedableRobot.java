@@ -0,0 +1,32 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.robot;
+
+/**
+ * A robot which makes random choices, but can be told where to start its
+ * random numbers from, so that its games can be played again move for move.
+ *
+ * When the engine plays seeded games (see <code>BatchWarEngine.setSeed</code>),
+ * robots implementing this interface are given a seed of their own before
+ * every game, which is kept in the game record; <code>GameReplay</code> gives
+ * them the same seed again to reproduce the game.  Given the same seed, a
+ * robot must play the same moves on the same positions: all its randomness
+ * must come from the seed (never from the clock, or from the scheduling of
+ * its threads).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public interface SeedableRobot extends TTTRobot {
+
+	/**
+	 * Restarts the random numbers of the Robot, before a game.
+	 *
+	 * @param seed The seed to draw the random numbers of the following moves from.
+	 */
+	void setSeed(long seed);
+
+}
@@ -0,0 +1,40 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.robot;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.GameBoard;
+
+/**
+ * A robot which wants to know how much time it has to play its move.
+ * 
+ * When the engine plays with a time control, robots implementing this
+ * interface are called with their budget (robots which only implement
+ * <code>TTTRobot</code> are still timed, they are simply not told). A robot
+ * which goes over its budget loses, just like one playing an illegal move.
+ * 
+ * A robot running out of time is also interrupted (see
+ * <code>Thread.interrupted()</code>), so robots which search for long
+ * (e.g. with iterative deepening) should check the budget and/or the
+ * interrupted flag regularly, and return their best move so far.
+ * 
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public interface TimedRobot extends TTTRobot {
+	
+	/**
+	 * Defines the actual playing logic for the Robot, within a time budget.
+	 * 
+	 * @param board The current game board state - empty at first.  <b>Never Null</b>
+	 * @param turn The players turn, either X or O should play on the given board. <b>Never Null</b>
+	 * @param budgetNanos The time (in nanoseconds, as measured by <code>System.nanoTime()</code>)
+	 * this move may take.  Returning later than this loses the game.  Always positive.
+	 * @return The position at which to play the <i>turn</i> mark (as for <code>TTTRobot.play</code>).
+	 */
+	int play(GameBoard board, Mark turn, long budgetNanos);
+
+}
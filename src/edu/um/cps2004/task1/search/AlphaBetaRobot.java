@@ -0,0 +1,737 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.search;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.engine.SearchBoard;
+import edu.um.cps2004.task1.robot.TimedRobot;
+
+/**
+ * A robot searching the game tree with alpha-beta (negamax), the reference
+ * minimax for any board shape.
+ *
+ * The search deepens iteratively, one ply at a time, until the depth limit,
+ * the time limit, or the end of the game is reached. Moves are tried in the
+ * order: best move from the <code>TranspositionTable</code>, the two killer
+ * moves of the ply (the last to cause a cut-off there), then by history
+ * score (how often, and how deep, the move caused cut-offs anywhere). Results
+ * are kept in the transposition table, which is keyed on the canonical
+ * position, so rotations and reflections of a position are searched once.
+ * Positions in the <code>OpeningBook</code>, if one is set, are not searched
+ * at all.
+ *
+ * Positions beyond the depth limit are scored by counting the lines of
+ * <code>winLength</code> still open to one mark only, weighted by how many of
+ * its marks they hold. The counts are kept up to date as moves are played and
+ * undone, so scoring a position takes no work. Wins are scored higher the
+ * sooner they come.
+ *
+ * All searching is done on a <code>SearchBoard</code>, with arrays allocated
+ * when the board shape changes, so nothing is allocated per node.
+ *
+ * Plays one game at a time (<code>play</code> is synchronized), so give each
+ * engine playing concurrently its own instance (e.g. through a
+ * <code>RobotFactory</code>); they may share a transposition table.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class AlphaBetaRobot implements TimedRobot {
+
+    /**
+     * The default depth limit.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 64;
+
+    /**
+     * The default time per move when played without a time budget, in
+     * nanoseconds.
+     */
+    public static final long DEFAULT_MOVE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The default number of transposition table entries.
+     */
+    public static final int DEFAULT_TABLE_ENTRIES = 1 << 20;
+
+    /**
+     * The value of a win on the next move (a win <i>n</i> moves later is
+     * worth <i>n</i> less).
+     */
+    private static final int WIN = 1 << 24;
+
+    /**
+     * Values beyond this are wins (or losses if negative).
+     */
+    private static final int WIN_BOUND = WIN - (1 << 16);
+
+    /**
+     * Beyond any value.
+     */
+    private static final int INFINITY = WIN + 1;
+
+    /**
+     * The largest heuristic value.
+     */
+    private static final int MAX_SCORE = WIN_BOUND / 2;
+
+    /**
+     * How many nodes are searched between checks of the clock.
+     */
+    private static final int CLOCK_MASK = 0x3FF;
+
+    /**
+     * The ordering score of the transposition table move.
+     */
+    private static final int TABLE_MOVE_ORDER = Integer.MAX_VALUE;
+
+    /**
+     * The ordering score of the first killer move (the second is one less).
+     */
+    private static final int KILLER_ORDER = Integer.MAX_VALUE - 2;
+
+    /**
+     * The depth limit.
+     */
+    private final int maxDepth;
+
+    /**
+     * The time per move when played without a time budget, in nanoseconds.
+     */
+    private final long moveNanos;
+
+    /**
+     * The search results.
+     */
+    private final TranspositionTable table;
+
+    /**
+     * The board searched on.
+     */
+    private SearchBoard board;
+
+    /**
+     * The lines of <code>winLength</code> positions each position is in (by
+     * line index).
+     */
+    private int[][] linesAt;
+
+    /**
+     * The number of Xs in each line.
+     */
+    private int[] xInLine;
+
+    /**
+     * The number of Os in each line.
+     */
+    private int[] oInLine;
+
+    /**
+     * The value of a line held by one mark only, by number of marks.
+     */
+    private int[] lineValue;
+
+    /**
+     * The heuristic value of the position for X.
+     */
+    private int score;
+
+    /**
+     * The moves at each ply, reused by every node at that ply.
+     */
+    private int[][] moves;
+
+    /**
+     * The ordering scores of <code>moves</code>.
+     */
+    private int[][] order;
+
+    /**
+     * The two killer moves of each ply.
+     */
+    private int[][] killers;
+
+    /**
+     * The history scores, by mark (X first) and position.
+     */
+    private int[][] history;
+
+    /**
+     * When the search started, as <code>System.nanoTime()</code>.
+     */
+    private long searchStart;
+
+    /**
+     * The time the search may take, in nanoseconds (compared with the time
+     * elapsed rather than kept as a deadline, which would overflow for a
+     * budget such as <code>Long.MAX_VALUE</code>).
+     */
+    private long searchNanos;
+
+    /**
+     * Set when the time runs out, unwinding the search.
+     */
+    private boolean aborted;
+
+    /**
+     * The number of nodes searched for the current move.
+     */
+    private long nodes;
+
+    /**
+     * The best move at the root in the current iteration, or -1.
+     */
+    private int rootMove;
+
+    /**
+     * The best move at the root in the last iteration (searched first in the
+     * next), or -1.
+     */
+    private int previousMove;
+
+    /**
+     * The book of opening moves, null if none.
+     */
+    private volatile OpeningBook openingBook;
+
+    /**
+     * The depth of the last completed iteration of the last move.
+     */
+    private volatile int lastDepth;
+
+    /**
+     * The value of the last move, for the robot playing it.
+     */
+    private volatile int lastValue;
+
+    /**
+     * The number of nodes searched for the last move.
+     */
+    private volatile long lastNodes;
+
+    /**
+     * The time taken by the last move, in nanoseconds.
+     */
+    private volatile long lastNanos;
+
+    /**
+     * Creates a robot with the default depth limit, time per move and table
+     * size.
+     */
+    public AlphaBetaRobot() {
+        this(DEFAULT_MAX_DEPTH, DEFAULT_MOVE_NANOS, new TranspositionTable(DEFAULT_TABLE_ENTRIES));
+    }
+
+    /**
+     * Creates a robot.
+     *
+     * @param maxDepth
+     *            The depth limit, 1..255
+     * @param moveNanos
+     *            The time per move when not given a time budget, in
+     *            nanoseconds (a time budget is honoured as well, if tighter),
+     *            positive
+     * @param table
+     *            The transposition table, may not be null. It may be shared
+     *            with other robots, but only for the same board shape.
+     */
+    public AlphaBetaRobot(final int maxDepth, final long moveNanos, final TranspositionTable table) {
+        if ((maxDepth < 1) || (maxDepth > 255)) {
+            throw new IllegalArgumentException("maxDepth must be between 1 and 255: " + maxDepth);
+        }
+        if (moveNanos <= 0) {
+            throw new IllegalArgumentException("moveNanos must be positive");
+        }
+        if (table == null) {
+            throw new IllegalArgumentException("table cannot be null");
+        }
+        this.maxDepth = maxDepth;
+        this.moveNanos = moveNanos;
+        this.table = table;
+    }
+
+    @Override
+    public String getRobotMasterName() {
+        return "Alpha-Beta Search";
+    }
+
+    @Override
+    public int play(final GameBoard board, final Mark turn) {
+        return search(board, turn, moveNanos);
+    }
+
+    @Override
+    public int play(final GameBoard board, final Mark turn, final long budgetNanos) {
+        return search(board, turn, Math.min(moveNanos, budgetNanos - budgetNanos / 4));
+    }
+
+    /**
+     * Picks a move by iterative deepening.
+     *
+     * @param game
+     *            The board
+     * @param turn
+     *            The mark to play
+     * @param searchNanos
+     *            The time the search may take
+     * @return The position to play
+     */
+    private synchronized int search(final GameBoard game, final Mark turn, final long searchNanos) {
+        final long start = System.nanoTime();
+        final OpeningBook book = openingBook;
+        if (book != null) {
+            final int move = book.getMove(game, turn);
+            if ((move != OpeningBook.NO_MOVE) && game.isValidPlay(move)) {
+                lastDepth = 0;
+                lastValue = 0;
+                lastNodes = 0;
+                lastNanos = System.nanoTime() - start;
+                return move;
+            }
+        }
+        this.searchStart = start;
+        this.searchNanos = searchNanos;
+        aborted = false;
+        nodes = 0;
+        prepare(game);
+        table.newSearch();
+        for (final int[] killer : killers) {
+            killer[0] = -1;
+            killer[1] = -1;
+        }
+        for (final int[] scores : history) {
+            Arrays.fill(scores, 0);
+        }
+
+        final int empty = board.getEmptyCount();
+        int best = board.nextEmptyPosition(0);
+        int value = 0;
+        int depth = 0;
+        previousMove = -1;
+        for (int d = 1; (d <= maxDepth) && (d <= empty); d++) {
+            rootMove = -1;
+            final int v = negamax(d, -INFINITY, INFINITY, 0, turn);
+            if (rootMove >= 0) {
+                // a partial iteration searched the previous best move first
+                best = rootMove;
+                value = v;
+                previousMove = rootMove;
+            }
+            if (aborted) {
+                break;
+            }
+            depth = d;
+            if ((v > WIN_BOUND) || (v < -WIN_BOUND)) {
+                break; // the outcome is known
+            }
+        }
+
+        lastDepth = depth;
+        lastValue = value;
+        lastNodes = nodes;
+        lastNanos = System.nanoTime() - start;
+        return best;
+    }
+
+    /**
+     * Sets the book of opening moves, played without searching.
+     *
+     * @param openingBook
+     *            The book, or null for none (the default). Books of other
+     *            board shapes are simply never used.
+     */
+    public void setOpeningBook(final OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Loads the position onto the search board, (re)building the line tables
+     * and scratch arrays if the board shape changed.
+     *
+     * @param game
+     *            The board
+     */
+    private void prepare(final GameBoard game) {
+        final int side = game.getSide();
+        final int length = game.getWinLength();
+        if ((board != null) && (board.getSide() == side) && (board.getWinLength() == length)) {
+            game.copyInto(board);
+        } else {
+            board = game.newSearchBoard();
+            buildLines(side, length);
+            final int size = game.getBoardSize();
+            moves = new int[size + 1][size];
+            order = new int[size + 1][size];
+            killers = new int[size + 1][2];
+            history = new int[2][size];
+        }
+        Arrays.fill(xInLine, 0);
+        Arrays.fill(oInLine, 0);
+        score = 0;
+        for (int position = 0; position < board.getBoardSize(); position++) {
+            final Mark mark = board.getMark(position);
+            if (mark != null) {
+                count(position, mark, 1);
+            }
+        }
+    }
+
+    /**
+     * Builds the table of lines (rows, columns and both diagonals of
+     * <code>length</code> positions) through each position.
+     *
+     * @param side
+     *            The side of the board
+     * @param length
+     *            The win length
+     */
+    private void buildLines(final int side, final int length) {
+        final int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+        final int size = side * side;
+        final int[] perPosition = new int[size];
+        int lines = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            if (pass == 1) {
+                linesAt = new int[size][];
+                for (int position = 0; position < size; position++) {
+                    linesAt[position] = new int[perPosition[position]];
+                    perPosition[position] = 0;
+                }
+                lines = 0;
+            }
+            for (final int[] direction : directions) {
+                for (int row = 0; row < side; row++) {
+                    for (int column = 0; column < side; column++) {
+                        final int lastRow = row + direction[0] * (length - 1);
+                        final int lastColumn = column + direction[1] * (length - 1);
+                        if ((lastRow >= side) || (lastColumn < 0) || (lastColumn >= side)) {
+                            continue;
+                        }
+                        for (int i = 0; i < length; i++) {
+                            final int position = (row + direction[0] * i) * side + column + direction[1] * i;
+                            if (pass == 1) {
+                                linesAt[position][perPosition[position]] = lines;
+                            }
+                            perPosition[position]++;
+                        }
+                        lines++;
+                    }
+                }
+            }
+        }
+        xInLine = new int[lines];
+        oInLine = new int[lines];
+        lineValue = new int[length + 1];
+        for (int marks = 1; marks <= length; marks++) {
+            lineValue[marks] = 1 << (3 * Math.min(marks - 1, 5));
+        }
+    }
+
+    /**
+     * Adds or removes a mark from the line counts, updating the score.
+     *
+     * @param position
+     *            The position of the mark
+     * @param mark
+     *            The mark
+     * @param delta
+     *            1 to add, -1 to remove
+     */
+    private void count(final int position, final Mark mark, final int delta) {
+        final int[] own = (mark == Mark.X) ? xInLine : oInLine;
+        final int[] other = (mark == Mark.X) ? oInLine : xInLine;
+        final int sign = (mark == Mark.X) ? 1 : -1;
+        int change = 0;
+        for (final int line : linesAt[position]) {
+            final int before = own[line];
+            final int after = before + delta;
+            own[line] = after;
+            final int opponents = other[line];
+            if (opponents == 0) {
+                change += lineValue[after] - lineValue[before];
+            } else if ((delta > 0) ? (before == 0) : (after == 0)) {
+                // the line was, or is again, the opponent's alone
+                change += (delta > 0) ? lineValue[opponents] : -lineValue[opponents];
+            }
+        }
+        score += sign * change;
+    }
+
+    /**
+     * Plays a move on the search board, keeping the score up to date.
+     *
+     * @param position
+     *            The position
+     * @param mark
+     *            The mark
+     */
+    private void play(final int position, final Mark mark) {
+        board.play(position, mark);
+        count(position, mark, 1);
+    }
+
+    /**
+     * Takes back a move played with <code>play</code>.
+     *
+     * @param mark
+     *            The mark which was played
+     */
+    private void undo(final Mark mark) {
+        count(board.undo(), mark, -1);
+    }
+
+    /**
+     * Searches a position.
+     *
+     * @param depth
+     *            The remaining depth, at least 1 except at the horizon
+     * @param alpha
+     *            The lower bound of the window
+     * @param beta
+     *            The upper bound of the window
+     * @param ply
+     *            The distance from the root
+     * @param mark
+     *            The mark to play
+     * @return The value of the position for <code>mark</code>, or 0 if the
+     *         search was aborted
+     */
+    private int negamax(final int depth, int alpha, final int beta, final int ply, final Mark mark) {
+        if ((((++nodes) & CLOCK_MASK) == 0) && (System.nanoTime() - searchStart > searchNanos)) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (depth == 0) {
+            final int value = Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+            return (mark == Mark.X) ? value : -value;
+        }
+
+        final int alphaAtStart = alpha;
+        final long key = TranspositionTable.keyFor(board.getPositionKey(), mark);
+        final long entry = table.probe(key);
+        int tableMove = -1;
+        if (entry != TranspositionTable.MISS) {
+            final int move = TranspositionTable.move(entry);
+            if (move != TranspositionTable.NO_MOVE) {
+                tableMove = board.fromCanonical(move);
+            }
+            if ((ply > 0) && (TranspositionTable.depth(entry) >= depth)) {
+                final int value = fromTable(TranspositionTable.value(entry), ply);
+                final int bound = TranspositionTable.bound(entry);
+                if ((bound == TranspositionTable.EXACT)
+                        || ((bound == TranspositionTable.LOWER_BOUND) && (value >= beta))
+                        || ((bound == TranspositionTable.UPPER_BOUND) && (value <= alpha))) {
+                    return value;
+                }
+            }
+        }
+
+        if ((ply == 0) && (previousMove >= 0)) {
+            tableMove = previousMove;
+        }
+
+        final int[] moves = this.moves[ply];
+        final int[] order = this.order[ply];
+        final int[] killer = killers[ply];
+        final int[] history = this.history[(mark == Mark.X) ? 0 : 1];
+        final int count = board.getEmptyPositions(moves);
+        for (int i = 0; i < count; i++) {
+            final int move = moves[i];
+            if (move == tableMove) {
+                order[i] = TABLE_MOVE_ORDER;
+            } else if (move == killer[0]) {
+                order[i] = KILLER_ORDER;
+            } else if (move == killer[1]) {
+                order[i] = KILLER_ORDER - 1;
+            } else {
+                order[i] = history[move];
+            }
+        }
+
+        final Mark opponent = (mark == Mark.X) ? Mark.O : Mark.X;
+        int best = -INFINITY;
+        int bestMove = -1;
+        for (int i = 0; i < count; i++) {
+            // selection sort, as a cut-off usually comes early
+            int pick = i;
+            for (int j = i + 1; j < count; j++) {
+                if (order[j] > order[pick]) {
+                    pick = j;
+                }
+            }
+            final int move = moves[pick];
+            moves[pick] = moves[i];
+            moves[i] = move;
+            order[pick] = order[i];
+
+            play(move, mark);
+            final int value;
+            if (board.isWinningPosition()) {
+                value = WIN - ply;
+            } else if (board.isFull()) {
+                value = 0;
+            } else {
+                value = -negamax(depth - 1, -beta, -alpha, ply + 1, opponent);
+            }
+            undo(mark);
+            if (aborted) {
+                return best;
+            }
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (ply == 0) {
+                    rootMove = move;
+                }
+            }
+            if (value > alpha) {
+                alpha = value;
+            }
+            if (alpha >= beta) {
+                if (move != killer[0]) {
+                    killer[1] = killer[0];
+                    killer[0] = move;
+                }
+                history[move] += depth * depth;
+                break;
+            }
+        }
+
+        final int bound;
+        if (best <= alphaAtStart) {
+            bound = TranspositionTable.UPPER_BOUND;
+        } else if (best >= beta) {
+            bound = TranspositionTable.LOWER_BOUND;
+        } else {
+            bound = TranspositionTable.EXACT;
+        }
+        table.store(key, toTable(best, ply), depth, bound, board.toCanonical(bestMove));
+        return best;
+    }
+
+    /**
+     * Converts a value to its form in the table: wins are stored as a
+     * distance from the position, not from the root.
+     *
+     * @param value
+     *            The value
+     * @param ply
+     *            The distance of the position from the root
+     * @return The value to store
+     */
+    private static int toTable(final int value, final int ply) {
+        if (value > WIN_BOUND) {
+            return value + ply;
+        }
+        if (value < -WIN_BOUND) {
+            return value - ply;
+        }
+        return value;
+    }
+
+    /**
+     * Converts a value from the table (the inverse of <code>toTable</code>).
+     *
+     * @param value
+     *            The stored value
+     * @param ply
+     *            The distance of the position from the root
+     * @return The value
+     */
+    private static int fromTable(final int value, final int ply) {
+        if (value > WIN_BOUND) {
+            return value - ply;
+        }
+        if (value < -WIN_BOUND) {
+            return value + ply;
+        }
+        return value;
+    }
+
+    /**
+     * Gets the depth limit.
+     *
+     * @return The depth limit
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Gets the depth of the last complete iteration for the last move.
+     *
+     * @return The depth, 0 if no move was played yet
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * Gets the value of the last move, for this robot. Wins are worth more
+     * than any heuristic value, see <code>isWin</code>.
+     *
+     * @return The value, positive if this robot is ahead
+     */
+    public int getLastValue() {
+        return lastValue;
+    }
+
+    /**
+     * Checks if a value returned by <code>getLastValue()</code> is a forced
+     * win.
+     *
+     * @param value
+     *            The value
+     * @return true if a win was found, false otherwise
+     */
+    public static boolean isWin(final int value) {
+        return value > WIN_BOUND;
+    }
+
+    /**
+     * Checks if a value returned by <code>getLastValue()</code> is a forced
+     * loss (against perfect play).
+     *
+     * @param value
+     *            The value
+     * @return true if a loss was found, false otherwise
+     */
+    public static boolean isLoss(final int value) {
+        return value < -WIN_BOUND;
+    }
+
+    /**
+     * Gets the number of nodes searched for the last move.
+     *
+     * @return The number of nodes
+     */
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    /**
+     * Gets the search speed of the last move.
+     *
+     * @return The nodes per second, 0 if no move was played yet
+     */
+    public double getLastNodesPerSecond() {
+        final long nanos = lastNanos;
+        return (nanos == 0) ? 0.0 : lastNodes * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [depth=%d, %d nodes, %.0f nodes/s]", getRobotMasterName(), lastDepth, lastNodes,
+                getLastNodesPerSecond());
+    }
+
+}
@@ -0,0 +1,749 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.engine.SearchBoard;
+import edu.um.cps2004.task1.robot.SeedableRobot;
+import edu.um.cps2004.task1.robot.TimedRobot;
+
+/**
+ * A Monte Carlo tree search (UCT) robot, the reference opponent for boards
+ * too large to search exhaustively.
+ *
+ * The search is root parallel: each of a number of workers grows its own tree
+ * from the current position, with its own random playouts, and the visit
+ * counts of the moves at the root are summed over all trees to pick the move.
+ * The trees share nothing, so there is no locking during the search.
+ *
+ * The workers run on a single pool of daemon threads (one per processor),
+ * shared by all the robots of the JVM, so that creating robots (one per game
+ * or session, through a <code>RobotFactory</code>) creates no threads, and
+ * robots playing at the same time do not have more threads than processors
+ * between them. Idle pool threads end after a while.
+ *
+ * All simulation is done on a private <code>SearchBoard</code> per tree
+ * (play and undo, never a copy of the board), and the trees are kept in
+ * plain <code>int[]</code> arrays which are reused from one move to the next,
+ * so a search allocates nothing once the arrays have grown. A tree stops
+ * growing at <code>MAX_NODES</code> nodes, after which playouts carry on from
+ * its leaves.
+ *
+ * Each move is given a budget of playouts (shared between the trees). When
+ * played with a time budget, the search also stops once three quarters of it
+ * is used up, whichever comes first. Before searching, a move which wins at
+ * once is played, or failing that, one which blocks an immediate win of the
+ * opponent. Positions in the <code>OpeningBook</code>, if one is set, are not
+ * searched at all. A search whose thread is interrupted stops early (once
+ * all its workers have stopped) and plays the best move found so far, the
+ * interrupt being kept.
+ *
+ * The number of playouts and the time taken are kept for tuning, see
+ * <code>getPlayoutsPerSecond()</code>.
+ *
+ * Once seeded (see <code>setSeed</code>), the random numbers of each tree
+ * are drawn from the seed, and as each tree gets its own share of the
+ * playouts, the moves played only depend on the seed and the
+ * position, not on how the threads were scheduled (as long as the search is
+ * not cut short by the clock).
+ *
+ * Plays one game at a time (<code>play</code> is synchronized), so give each
+ * engine playing concurrently its own instance (e.g. through a
+ * <code>RobotFactory</code>).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class MctsRobot implements TimedRobot, SeedableRobot {
+
+    /**
+     * The default number of playouts per move.
+     */
+    public static final int DEFAULT_PLAYOUTS = 20000;
+
+    /**
+     * The most nodes in each tree.
+     */
+    public static final int MAX_NODES = 1 << 20;
+
+    /**
+     * The exploration constant of UCT (the square root of two is the
+     * textbook value for rewards in 0..1).
+     */
+    private static final double EXPLORATION = 1.4142135623730951;
+
+    /**
+     * How many playouts are run between checks of the clock.
+     */
+    private static final int CLOCK_MASK = 0x3F;
+
+    /**
+     * How long idle pool threads are kept, in seconds.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The per tree search state.
+     */
+    private final Worker[] workers;
+
+    /**
+     * The searches of the workers handed to the pool, for the move being
+     * searched.
+     */
+    private final List<Future<Void>> results;
+
+    /**
+     * The number of playouts per move.
+     */
+    private final int playouts;
+
+    /**
+     * The visits of each position at the root, summed over the workers.
+     */
+    private long[] rootVisits = new long[0];
+
+    /**
+     * Scratch board for the tactical checks before searching.
+     */
+    private SearchBoard scratch;
+
+    /**
+     * Scratch space for the empty positions of the board.
+     */
+    private int[] empties = new int[0];
+
+    /**
+     * The book of opening moves, null if none.
+     */
+    private volatile OpeningBook openingBook;
+
+    /**
+     * The number of playouts run for the last move.
+     */
+    private volatile long lastPlayouts;
+
+    /**
+     * The time taken by the search of the last move, in nanoseconds.
+     */
+    private volatile long lastNanos;
+
+    /**
+     * The number of playouts run since this robot was created.
+     */
+    private volatile long totalPlayouts;
+
+    /**
+     * The time spent searching since this robot was created, in nanoseconds.
+     */
+    private volatile long totalNanos;
+
+    /**
+     * Creates a robot searching on every processor, with the default budget
+     * of playouts.
+     */
+    public MctsRobot() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_PLAYOUTS);
+    }
+
+    /**
+     * Creates a robot.
+     *
+     * @param threads
+     *            The number of trees grown (searched in parallel, up to the
+     *            number of processors), at least 1
+     * @param playouts
+     *            The number of playouts per move, over all trees, at least 1
+     */
+    public MctsRobot(final int threads, final int playouts) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if (playouts < 1) {
+            throw new IllegalArgumentException("playouts must be at least 1");
+        }
+        this.playouts = playouts;
+        this.workers = new Worker[threads];
+        this.results = new ArrayList<Future<Void>>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    @Override
+    public String getRobotMasterName() {
+        return "Monte Carlo Tree Search";
+    }
+
+    @Override
+    public int play(final GameBoard board, final Mark turn) {
+        return search(board, turn, Long.MAX_VALUE);
+    }
+
+    @Override
+    public int play(final GameBoard board, final Mark turn, final long budgetNanos) {
+        return search(board, turn, budgetNanos - budgetNanos / 4);
+    }
+
+    /**
+     * Picks a move.
+     *
+     * @param board
+     *            The board
+     * @param turn
+     *            The mark to play
+     * @param searchNanos
+     *            The time the search may take
+     * @return The position to play
+     */
+    private synchronized int search(final GameBoard board, final Mark turn, final long searchNanos) {
+        final long start = System.nanoTime();
+        final long deadline = (searchNanos == Long.MAX_VALUE) ? Long.MAX_VALUE : start + searchNanos;
+        final OpeningBook book = openingBook;
+        if (book != null) {
+            final int move = book.getMove(board, turn);
+            if ((move != OpeningBook.NO_MOVE) && board.isValidPlay(move)) {
+                lastPlayouts = 0;
+                lastNanos = System.nanoTime() - start;
+                return move;
+            }
+        }
+
+        if ((scratch == null) || (scratch.getSide() != board.getSide())
+                || (scratch.getWinLength() != board.getWinLength())) {
+            scratch = board.newSearchBoard();
+            empties = new int[board.getBoardSize()];
+            rootVisits = new long[board.getBoardSize()];
+        } else {
+            board.copyInto(scratch);
+        }
+        final int count = scratch.getEmptyPositions(empties);
+        if (count == 1) {
+            return empties[0];
+        }
+        final Mark opponent = (turn == Mark.X) ? Mark.O : Mark.X;
+        int tactical = findWin(turn, count);
+        if (tactical < 0) {
+            tactical = findWin(opponent, count);
+        }
+        if (tactical >= 0) {
+            return tactical;
+        }
+
+        final int share = (int) ((playouts + (long) workers.length - 1) / workers.length);
+        for (final Worker worker : workers) {
+            worker.prepare(board, turn, share, deadline);
+        }
+        runWorkers();
+
+        Arrays.fill(rootVisits, 0L);
+        long done = 0;
+        for (final Worker worker : workers) {
+            worker.addRootVisits(rootVisits);
+            done += worker.playoutsDone;
+        }
+        int best = empties[0];
+        for (int i = 1; i < count; i++) {
+            if (rootVisits[empties[i]] > rootVisits[best]) {
+                best = empties[i];
+            }
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        lastPlayouts = done;
+        lastNanos = elapsed;
+        totalPlayouts += done;
+        totalNanos += elapsed;
+        return best;
+    }
+
+    /**
+     * Runs the searches of all workers on the pool, and waits for all of
+     * them to finish. If the thread is interrupted, the workers are told to
+     * stop, but still waited for (they must not be running when the next
+     * move is prepared), and the interrupt is kept.
+     */
+    private void runWorkers() {
+        results.clear();
+        for (final Worker worker : workers) {
+            results.add(Pool.THREADS.submit(worker));
+        }
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (final Future<Void> result : results) {
+            while (true) {
+                try {
+                    result.get();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                    cancelWorkers();
+                } catch (final ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    cancelWorkers();
+                    break;
+                }
+            }
+        }
+        results.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Search failed", failure);
+        }
+    }
+
+    /**
+     * Tells all workers to stop searching.
+     */
+    private void cancelWorkers() {
+        for (final Worker worker : workers) {
+            worker.cancelled = true;
+        }
+    }
+
+    /**
+     * Looks for a move which completes a line for a mark, on
+     * <code>scratch</code>.
+     *
+     * @param mark
+     *            The mark to play
+     * @param count
+     *            The number of positions in <code>empties</code>
+     * @return The winning position, or -1 if there is none
+     */
+    private int findWin(final Mark mark, final int count) {
+        for (int i = 0; i < count; i++) {
+            scratch.play(empties[i], mark);
+            final boolean won = scratch.isWinningPosition();
+            scratch.undo();
+            if (won) {
+                return empties[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the book of opening moves, played without searching.
+     *
+     * @param openingBook
+     *            The book, or null for none (the default). Books of other
+     *            board shapes are simply never used.
+     */
+    public void setOpeningBook(final OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Restarts the random numbers of the trees, each from a seed
+     * split from the one given.
+     *
+     * @param seed
+     *            The seed
+     */
+    @Override
+    public synchronized void setSeed(final long seed) {
+        final SplittableRandom random = new SplittableRandom(seed);
+        for (final Worker worker : workers) {
+            worker.random = random.split();
+        }
+    }
+
+    /**
+     * Gets the number of trees grown for each move.
+     *
+     * @return The number of trees, at least 1
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * Gets the playout budget per move.
+     *
+     * @return The number of playouts per move, over all trees
+     */
+    public int getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Gets the number of playouts run for the last move searched (moves
+     * found by the tactical check are not searched).
+     *
+     * @return The number of playouts, 0 if no move was searched yet
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * Gets the rate of the last move searched.
+     *
+     * @return The playouts per second, 0 if no move was searched yet
+     */
+    public double getLastPlayoutsPerSecond() {
+        final long nanos = lastNanos;
+        return (nanos == 0) ? 0.0 : lastPlayouts * 1e9 / nanos;
+    }
+
+    /**
+     * Gets the overall rate, over all moves searched by this robot.
+     *
+     * @return The playouts per second, 0 if no move was searched yet
+     */
+    public double getPlayoutsPerSecond() {
+        final long nanos = totalNanos;
+        return (nanos == 0) ? 0.0 : totalPlayouts * 1e9 / nanos;
+    }
+
+    /**
+     * Gets the number of playouts run since this robot was created.
+     *
+     * @return The number of playouts
+     */
+    public long getTotalPlayouts() {
+        return totalPlayouts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [threads=%d, playouts=%d, %.0f playouts/s]", getRobotMasterName(), workers.length,
+                playouts, getPlayoutsPerSecond());
+    }
+
+    /**
+     * The threads searching, shared by all robots (created when the first
+     * robot searches).
+     */
+    private static final class Pool {
+
+        private static final ExecutorService THREADS;
+
+        static {
+            final int processors = Runtime.getRuntime().availableProcessors();
+            final ThreadPoolExecutor threads = new ThreadPoolExecutor(processors, processors, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private int count;
+
+                        @Override
+                        public synchronized Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r, "tttwar-mcts-" + (count++));
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            threads.allowCoreThreadTimeOut(true);
+            THREADS = threads;
+        }
+
+    }
+
+    /**
+     * The search of one tree: its board, its tree and its random numbers.
+     *
+     * The tree is kept as parallel arrays indexed by node, node 0 being the
+     * root. The children of a node are created all at once, the second time
+     * it is reached, and take up consecutive indices.
+     */
+    private static final class Worker implements Callable<Void> {
+
+        /**
+         * The position played to reach each node.
+         */
+        private int[] move = new int[1024];
+
+        /**
+         * The index of the first child of each node, or -1 if not expanded.
+         */
+        private int[] firstChild = new int[1024];
+
+        /**
+         * The number of children of each node.
+         */
+        private int[] childCount = new int[1024];
+
+        /**
+         * The number of playouts through each node.
+         */
+        private int[] visits = new int[1024];
+
+        /**
+         * The score of the playouts through each node, in half points (2 for
+         * a win, 1 for a draw), for the mark which played the node's move.
+         */
+        private int[] score = new int[1024];
+
+        /**
+         * The number of nodes in use.
+         */
+        private int nodes;
+
+        /**
+         * The nodes on the path from the root in the current playout.
+         */
+        private int[] path = new int[0];
+
+        /**
+         * The empty positions in the current playout.
+         */
+        private int[] empties = new int[0];
+
+        /**
+         * The board the search is played on.
+         */
+        private SearchBoard board;
+
+        /**
+         * The mark to play at the root.
+         */
+        private Mark turn;
+
+        /**
+         * The number of playouts to run.
+         */
+        private int budget;
+
+        /**
+         * When to stop, as <code>System.nanoTime()</code>.
+         */
+        private long deadline;
+
+        /**
+         * Set to stop the search early (when the thread searching is
+         * interrupted).
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * The number of playouts run for the current move.
+         */
+        private int playoutsDone;
+
+        /**
+         * The source of random moves.
+         */
+        private SplittableRandom random = new SplittableRandom();
+
+        /**
+         * Sets up the search of a move (in the thread calling
+         * <code>play</code>, which hands over to the pool afterwards).
+         *
+         * @param game
+         *            The board to search from
+         * @param turn
+         *            The mark to play
+         * @param budget
+         *            The number of playouts to run
+         * @param deadline
+         *            When to stop, as <code>System.nanoTime()</code>
+         */
+        void prepare(final GameBoard game, final Mark turn, final int budget, final long deadline) {
+            if ((board == null) || (board.getSide() != game.getSide())
+                    || (board.getWinLength() != game.getWinLength())) {
+                board = game.newSearchBoard();
+                path = new int[game.getBoardSize() + 1];
+                empties = new int[game.getBoardSize()];
+            } else {
+                game.copyInto(board);
+            }
+            this.turn = turn;
+            this.budget = budget;
+            this.deadline = deadline;
+            this.cancelled = false;
+            this.playoutsDone = 0;
+            nodes = 1;
+            move[0] = -1;
+            firstChild[0] = -1;
+            visits[0] = 0;
+            score[0] = 0;
+            expand(0);
+        }
+
+        @Override
+        public Void call() {
+            final long deadline = this.deadline;
+            int done = 0;
+            while (done < budget) {
+                if (((done & CLOCK_MASK) == 0) && (cancelled || (System.nanoTime() > deadline))) {
+                    break;
+                }
+                playout();
+                done++;
+            }
+            playoutsDone = done;
+            return null;
+        }
+
+        /**
+         * Adds the visits of the moves at the root of this tree.
+         *
+         * @param total
+         *            The visits by position
+         */
+        void addRootVisits(final long[] total) {
+            final int first = firstChild[0];
+            for (int child = first; child < first + childCount[0]; child++) {
+                total[move[child]] += visits[child];
+            }
+        }
+
+        /**
+         * Runs one playout: selects a path down the tree, expands its leaf,
+         * plays randomly to the end of the game and backs up the result.
+         */
+        private void playout() {
+            final SearchBoard board = this.board;
+            final Mark opponent = (turn == Mark.X) ? Mark.O : Mark.X;
+            int node = 0;
+            int length = 0;
+            path[length++] = 0;
+            Mark mark = turn;
+
+            // selection
+            while ((firstChild[node] >= 0) && !board.isWinningPosition() && !board.isFull()) {
+                node = select(node);
+                board.play(move[node], mark);
+                path[length++] = node;
+                mark = (mark == Mark.X) ? Mark.O : Mark.X;
+            }
+
+            // expansion
+            if (!board.isWinningPosition() && !board.isFull() && (visits[node] > 0) && expand(node)) {
+                node = firstChild[node] + random.nextInt(childCount[node]);
+                board.play(move[node], mark);
+                path[length++] = node;
+                mark = (mark == Mark.X) ? Mark.O : Mark.X;
+            }
+
+            // simulation
+            int count = board.isWinningPosition() ? 0 : board.getEmptyPositions(empties);
+            while ((count > 0) && !board.isWinningPosition()) {
+                final int i = random.nextInt(count);
+                final int position = empties[i];
+                empties[i] = empties[--count];
+                board.play(position, mark);
+                mark = (mark == Mark.X) ? Mark.O : Mark.X;
+            }
+            // the last mark played is the opposite of mark
+            final Mark winner = board.isWinningPosition() ? ((mark == Mark.X) ? Mark.O : Mark.X) : null;
+
+            // back propagation, node i of the path was played by turn if i is odd
+            final int forTurn = (winner == null) ? 1 : ((winner == turn) ? 2 : 0);
+            final int forOpponent = (winner == null) ? 1 : ((winner == opponent) ? 2 : 0);
+            for (int i = 0; i < length; i++) {
+                final int n = path[i];
+                visits[n]++;
+                score[n] += ((i & 1) == 1) ? forTurn : forOpponent;
+            }
+            while (board.getDepth() > 0) {
+                board.undo();
+            }
+        }
+
+        /**
+         * Picks the child of a node with the best upper confidence bound
+         * (any child not yet visited first).
+         *
+         * @param node
+         *            The node, which must be expanded
+         * @return The child picked
+         */
+        private int select(final int node) {
+            final int first = firstChild[node];
+            final int end = first + childCount[node];
+            final double logVisits = Math.log(visits[node]);
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < end; child++) {
+                final int n = visits[child];
+                if (n == 0) {
+                    return child;
+                }
+                final double value = score[child] / (2.0 * n) + EXPLORATION * Math.sqrt(logVisits / n);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Creates the children of a node, one per empty position on the
+         * board (which must be at the node's position), in random order so
+         * that unvisited ones are tried in random order.
+         *
+         * @param node
+         *            The node to expand
+         * @return true if expanded, false if the tree is full
+         */
+        private boolean expand(final int node) {
+            final int count = board.getEmptyPositions(empties);
+            if (nodes + count > MAX_NODES) {
+                return false;
+            }
+            ensureCapacity(nodes + count);
+            for (int i = count - 1; i > 0; i--) {
+                final int j = random.nextInt(i + 1);
+                final int swap = empties[i];
+                empties[i] = empties[j];
+                empties[j] = swap;
+            }
+            final int first = nodes;
+            for (int i = 0; i < count; i++) {
+                final int child = first + i;
+                move[child] = empties[i];
+                firstChild[child] = -1;
+                childCount[child] = 0;
+                visits[child] = 0;
+                score[child] = 0;
+            }
+            firstChild[node] = first;
+            childCount[node] = count;
+            nodes += count;
+            return true;
+        }
+
+        /**
+         * Grows the node arrays to hold at least the given number of nodes.
+         *
+         * @param capacity
+         *            The number of nodes needed, at most <code>MAX_NODES</code>
+         */
+        private void ensureCapacity(final int capacity) {
+            if (capacity <= move.length) {
+                return;
+            }
+            final int length = Math.min(MAX_NODES, Math.max(capacity, 2 * move.length));
+            move = Arrays.copyOf(move, length);
+            firstChild = Arrays.copyOf(firstChild, length);
+            childCount = Arrays.copyOf(childCount, length);
+            visits = Arrays.copyOf(visits, length);
+            score = Arrays.copyOf(score, length);
+        }
+
+    }
+
+}
@@ -0,0 +1,548 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.engine.SearchBoard;
+import edu.um.cps2004.task1.exception.PositionAlreadyOccupiedException;
+import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
+import edu.um.cps2004.task1.robot.TTTRobot;
+import edu.um.cps2004.task1.tournament.RobotFactory;
+
+/**
+ * An opening book: the move to play in every position of the first few
+ * plies of a game, worked out once (by a robot searching each of them, see
+ * <code>generate</code>) so robots need not search them again, game after
+ * game.
+ *
+ * Positions are keyed as in the <code>TranspositionTable</code>, on the
+ * canonical key of the position and the mark to move, so positions which are
+ * the same up to rotation or reflection share an entry (and their move is
+ * kept on the canonical board). Both marks may start, so positions with as
+ * many X as O are in the book with either mark to move.
+ *
+ * The book is an open addressing table of <code>long</code>s, each holding
+ * the top 48 bits of a key and its move, at most half full, so a lookup is a
+ * hash and a probe or two, O(1) whatever the size of the book (and positions
+ * deeper than the book are turned away without any probe at all). The table
+ * is saved to a file as is, and memory mapped back by <code>open</code>, so
+ * opening a book reads nothing but its header: pages are only read (and
+ * shared by all robots, and all JVMs, using the file) as lookups need them.
+ *
+ * The file layout (big endian) is:
+ *
+ * <pre>
+ * int  MAGIC ("TTTB")
+ * byte VERSION
+ * byte side, byte winLength, byte plies
+ * int  number of positions
+ * int  capacity (a power of two)
+ * long[capacity] entries: key &amp; KEY_MASK | (move + 1), 0 if empty
+ * </pre>
+ *
+ * Immutable and thread safe, so one book may be shared by any number of
+ * robots.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class OpeningBook {
+
+    /**
+     * The move returned for positions which are not in the book.
+     */
+    public static final int NO_MOVE = -1;
+
+    /**
+     * Starts every book file ("TTTB").
+     */
+    private static final int MAGIC = 0x54545442;
+
+    /**
+     * The version of the format written.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * The size of the file header, in bytes.
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 3 + 4 + 4;
+
+    /**
+     * The bits of an entry holding the key (the others hold the move).
+     */
+    private static final long KEY_MASK = ~0xFFFFL;
+
+    /**
+     * The number of rows (and columns) of the board.
+     */
+    private final int side;
+
+    /**
+     * The number of marks in a row needed to win.
+     */
+    private final int winLength;
+
+    /**
+     * The number of plies covered: positions with fewer moves played are in
+     * the book.
+     */
+    private final int plies;
+
+    /**
+     * The number of positions in the book.
+     */
+    private final int size;
+
+    /**
+     * The table, either on the heap or mapped from a file.
+     */
+    private final LongBuffer entries;
+
+    /**
+     * The capacity of the table, less one.
+     */
+    private final int mask;
+
+    /**
+     * The time it took to generate (or open) the book, in nanoseconds.
+     */
+    private final long startupNanos;
+
+    /**
+     * Creates a book over a table.
+     */
+    private OpeningBook(final int side, final int winLength, final int plies, final int size,
+            final LongBuffer entries, final long startupNanos) {
+        this.side = side;
+        this.winLength = winLength;
+        this.plies = plies;
+        this.size = size;
+        this.entries = entries;
+        this.mask = entries.capacity() - 1;
+        this.startupNanos = startupNanos;
+    }
+
+    /**
+     * Generates a book, by asking a robot for its move in every position of
+     * the first plies of a game (each position, up to symmetry, once).
+     *
+     * @param side
+     *            The number of rows (and columns) of the board
+     * @param winLength
+     *            The number of marks in a row needed to win
+     * @param plies
+     *            The number of plies to cover, 1..64 (1 is just the empty
+     *            board). Mind that the number of positions grows roughly as
+     *            the board size to that power, over 8.
+     * @param robots
+     *            The robot searching the positions, may not be null. A single
+     *            robot is created, and asked for every position.
+     * @return The book, never null
+     */
+    public static OpeningBook generate(final int side, final int winLength, final int plies,
+            final RobotFactory robots) {
+        if ((plies < 1) || (plies > 64)) {
+            throw new IllegalArgumentException("plies must be between 1 and 64: " + plies);
+        }
+        if (robots == null) {
+            throw new IllegalArgumentException("robots cannot be null");
+        }
+        final long start = System.nanoTime();
+        final Generator generator = new Generator(new GameBoard(side, winLength), plies, robots.newRobot());
+        generator.expand(Mark.X);
+        generator.expand(Mark.O);
+
+        final int capacity = Integer.highestOneBit(Math.max(1, generator.count) * 2 - 1) << 1;
+        final long[] table = new long[capacity];
+        for (int i = 0; i < generator.count; i++) {
+            put(table, generator.keys[i], generator.moves[i]);
+        }
+        return new OpeningBook(side, winLength, plies, generator.count, LongBuffer.wrap(table),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Adds an entry to a table.
+     */
+    private static void put(final long[] table, final long key, final int move) {
+        final int mask = table.length - 1;
+        int index = indexOf(key, mask);
+        while ((table[index] != 0) && ((table[index] & KEY_MASK) != (key & KEY_MASK))) {
+            index = (index + 1) & mask;
+        }
+        table[index] = (key & KEY_MASK) | (move + 1);
+    }
+
+    /**
+     * Gets the first slot of a key.
+     */
+    private static int indexOf(final long key, final int mask) {
+        return (int) (key >>> 32) & mask;
+    }
+
+    /**
+     * Opens a book saved with <code>save</code>, by memory mapping the file
+     * (so only the header is read now, the entries as they are needed).
+     *
+     * @param file
+     *            The file to read, may not be null
+     * @return The book, never null
+     * @throws IOException
+     *             If the file cannot be read, or is not an opening book
+     */
+    public static OpeningBook open(final Path file) throws IOException {
+        final long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Not an opening book (truncated): " + file);
+                }
+            }
+            header.flip();
+            if ((header.getInt() != MAGIC) || (header.get() != VERSION)) {
+                throw new IOException("Not an opening book (or of another version): " + file);
+            }
+            final int side = header.get() & 0xFF;
+            final int winLength = header.get() & 0xFF;
+            final int plies = header.get() & 0xFF;
+            final int size = header.getInt();
+            final int capacity = header.getInt();
+            if ((capacity < 1) || (Integer.bitCount(capacity) != 1) || (size >= capacity)
+                    || (channel.size() != HEADER_SIZE + 8L * capacity)) {
+                throw new IOException("Not an opening book (bad table): " + file);
+            }
+            new GameBoard(side, winLength); // validates them
+            final LongBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 8L * capacity)
+                    .asLongBuffer();
+            return new OpeningBook(side, winLength, plies, size, mapped, System.nanoTime() - start);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Not an opening book (bad shape): " + file, e);
+        }
+    }
+
+    /**
+     * Saves the book to a file, to be opened later with <code>open</code>.
+     *
+     * @param file
+     *            The file to write (overwritten), may not be null
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    public void save(final Path file) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + 8 * entries.capacity());
+        bytes.putInt(MAGIC).put(VERSION).put((byte) side).put((byte) winLength).put((byte) plies).putInt(size)
+                .putInt(entries.capacity());
+        bytes.asLongBuffer().put(entries.duplicate());
+        bytes.rewind();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Gets the book move in a position.
+     *
+     * @param board
+     *            The board, may not be null
+     * @param turn
+     *            The mark to move, may not be null
+     * @return The position to play (on <code>board</code>), or
+     *         <code>NO_MOVE</code> if the position is not in the book (or the
+     *         board is of another shape)
+     */
+    public int getMove(final GameBoard board, final Mark turn) {
+        if ((board.getMovesPlayed() >= plies) || (board.getSide() != side) || (board.getWinLength() != winLength)) {
+            return NO_MOVE;
+        }
+        final int move = probe(TranspositionTable.keyFor(board.getPositionKey(), turn));
+        return (move == NO_MOVE) ? NO_MOVE : board.fromCanonical(move);
+    }
+
+    /**
+     * Gets the book move in a position, on a search board.
+     *
+     * @param board
+     *            The board, may not be null
+     * @param turn
+     *            The mark to move, may not be null
+     * @return The position to play (on <code>board</code>), or
+     *         <code>NO_MOVE</code> if the position is not in the book (or the
+     *         board is of another shape)
+     */
+    public int getMove(final SearchBoard board, final Mark turn) {
+        if ((board.getMovesPlayed() >= plies) || (board.getSide() != side) || (board.getWinLength() != winLength)) {
+            return NO_MOVE;
+        }
+        final int move = probe(TranspositionTable.keyFor(board.getPositionKey(), turn));
+        return (move == NO_MOVE) ? NO_MOVE : board.fromCanonical(move);
+    }
+
+    /**
+     * Looks a key up.
+     *
+     * @param key
+     *            The key of the position and mark to move
+     * @return The move on the canonical board, <code>NO_MOVE</code> if none
+     *         (also if a whole table of a damaged file is probed in vain)
+     */
+    private int probe(final long key) {
+        int index = indexOf(key, mask);
+        for (int probes = 0; probes <= mask; probes++) {
+            final long entry = entries.get(index);
+            if (entry == 0) {
+                return NO_MOVE;
+            }
+            if ((entry & KEY_MASK) == (key & KEY_MASK)) {
+                return (int) (entry & ~KEY_MASK) - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        return NO_MOVE;
+    }
+
+    /**
+     * Gets the number of rows (and columns) of the board of this book.
+     *
+     * @return The side
+     */
+    public int getSide() {
+        return side;
+    }
+
+    /**
+     * Gets the number of marks in a row needed to win on the board of this
+     * book.
+     *
+     * @return The win length
+     */
+    public int getWinLength() {
+        return winLength;
+    }
+
+    /**
+     * Gets the number of plies covered.
+     *
+     * @return The plies, positions with fewer moves played are in the book
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Gets the number of positions in the book (counting each mark to move).
+     *
+     * @return The number of positions
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the memory (or file space) taken by the table.
+     *
+     * @return The size of the table in bytes
+     */
+    public long getFootprintBytes() {
+        return 8L * entries.capacity();
+    }
+
+    /**
+     * Gets the time it took to generate (or open) this book.
+     *
+     * @return The startup time in nanoseconds
+     */
+    public long getStartupNanos() {
+        return startupNanos;
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        return String.format("%dx%d/%d opening book, %d plies, %d positions, %d bytes", side, side, winLength,
+                plies, size, getFootprintBytes());
+    }
+
+    /**
+     * Walks the positions of the first plies, asking the robot for each.
+     */
+    private static final class Generator {
+
+        private final GameBoard shape;
+
+        private final int plies;
+
+        private final TTTRobot robot;
+
+        /**
+         * The position being expanded.
+         */
+        private final SearchBoard board;
+
+        /**
+         * The moves leading to it, and their marks.
+         */
+        private final int[] path;
+
+        private final Mark[] marks;
+
+        /**
+         * The keys found so far, and their moves (on the canonical board).
+         */
+        private long[] keys = new long[1024];
+
+        private int[] moves = new int[1024];
+
+        private int count;
+
+        /**
+         * The keys found so far, as an open addressing set (0 is empty).
+         */
+        private long[] seen = new long[2048];
+
+        private Generator(final GameBoard shape, final int plies, final TTTRobot robot) {
+            this.shape = shape;
+            this.plies = plies;
+            this.robot = robot;
+            this.board = shape.newSearchBoard();
+            this.path = new int[plies];
+            this.marks = new Mark[plies];
+        }
+
+        /**
+         * Adds the current position, with a mark to move, and all those
+         * reached from it within the plies.
+         */
+        private void expand(final Mark turn) {
+            final long key = TranspositionTable.keyFor(board.getPositionKey(), turn);
+            if (!add(key)) {
+                return; // reached already, by another order of moves or a symmetry
+            }
+            final int move = ask(turn);
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * count);
+                moves = Arrays.copyOf(moves, 2 * count);
+            }
+            keys[count] = key;
+            moves[count] = board.toCanonical(move);
+            count++;
+
+            final int played = board.getMovesPlayed();
+            if (played + 1 >= plies) {
+                return;
+            }
+            final Mark next = (turn == Mark.X) ? Mark.O : Mark.X;
+            for (int position = board.nextEmptyPosition(0); position >= 0; position = board
+                    .nextEmptyPosition(position + 1)) {
+                board.play(position, turn);
+                if (!board.isWinningPosition() && !board.isFull()) {
+                    path[played] = position;
+                    marks[played] = turn;
+                    expand(next);
+                }
+                board.undo();
+            }
+        }
+
+        /**
+         * Adds a key to the set of keys seen.
+         *
+         * @return false if it was there already
+         */
+        private boolean add(final long key) {
+            if (2 * (count + 1) > seen.length) {
+                final long[] old = seen;
+                seen = new long[2 * old.length];
+                for (final long k : old) {
+                    if (k != 0) {
+                        insert(k);
+                    }
+                }
+            }
+            return insert(key);
+        }
+
+        private boolean insert(final long key) {
+            final long stored = (key == 0) ? 1 : key;
+            final int mask = seen.length - 1;
+            int index = indexOf(stored, mask);
+            while (seen[index] != 0) {
+                if (seen[index] == stored) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            seen[index] = stored;
+            return true;
+        }
+
+        /**
+         * Asks the robot for its move in the current position.
+         */
+        private int ask(final Mark turn) {
+            final GameBoard game = new GameBoard(shape.getSide(), shape.getWinLength());
+            try {
+                for (int i = 0; i < board.getMovesPlayed(); i++) {
+                    game.playAtPosition(path[i], marks[i]);
+                }
+            } catch (final PositionOutOfRangeException | PositionAlreadyOccupiedException e) {
+                throw new IllegalStateException("Replayed an illegal move", e);
+            }
+            final int move = robot.play(game, turn);
+            if (!game.isValidPlay(move)) {
+                throw new IllegalStateException("Robot " + robot.getRobotMasterName() + " played " + move
+                        + " on a board with " + game.getMovesPlayed() + " moves");
+            }
+            return move;
+        }
+
+    }
+
+    /**
+     * Generates a book and saves it.
+     *
+     * @param args
+     *            The side, win length, plies, file to write, and the class of
+     *            the robot to search the positions (with a public no argument
+     *            constructor)
+     * @throws Exception
+     *             If the robot cannot be created, or the file written
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 5) {
+            System.err.println("Usage: OpeningBook <side> <winLength> <plies> <file> <robot class>");
+            return;
+        }
+        final Class<? extends TTTRobot> type = Class.forName(args[4]).asSubclass(TTTRobot.class);
+        final TTTRobot robot = type.getConstructor().newInstance();
+        final OpeningBook book = generate(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), new RobotFactory() {
+                    @Override
+                    public TTTRobot newRobot() {
+                        return robot;
+                    }
+                });
+        book.save(Paths.get(args[3]));
+        System.out.printf("%s, generated in %.1fs%n", book, book.getStartupNanos() / 1e9);
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.search;
+
+import java.util.Arrays;
+
+import edu.um.cps2004.task1.catalog.Mark;
+
+/**
+ * A fixed size cache of search results, keyed by position key (see
+ * <code>GameBoard.getPositionKey()</code>, which is the same for all
+ * rotations and reflections of a position).
+ *
+ * Each entry packs a value, the depth it was searched to, the kind of bound
+ * the value is, and a best move (in canonical form, see
+ * <code>SearchBoard.toCanonical</code>) into one <code>long</code>. Entries
+ * live in a plain <code>long[]</code>, two slots each (the key exclusive-or'ed
+ * with the data, and the data), so there are no objects per entry and memory
+ * use is fixed at construction.
+ *
+ * The table may be shared by any number of threads without locking: an
+ * entry torn by two threads writing at once simply fails the key check and
+ * reads as a miss (the "lockless hashing" trick of chess programs).
+ *
+ * Entries live in buckets of two. When storing into a full bucket, the entry
+ * from an older search (see <code>newSearch()</code>), or failing that the
+ * shallower one, is evicted.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class TranspositionTable {
+
+    /**
+     * Returned by <code>probe</code> when the key is not in the table.
+     */
+    public static final long MISS = 0L;
+
+    /**
+     * The value is exact.
+     */
+    public static final int EXACT = 0;
+
+    /**
+     * The value is a lower bound (the search failed high).
+     */
+    public static final int LOWER_BOUND = 1;
+
+    /**
+     * The value is an upper bound (the search failed low).
+     */
+    public static final int UPPER_BOUND = 2;
+
+    /**
+     * No best move is known.
+     */
+    public static final int NO_MOVE = 0xFFFF;
+
+    /**
+     * Key mixed in for positions where X is to move (the position keys do
+     * not say whose turn it is).
+     */
+    private static final long X_TO_MOVE = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Key mixed in for positions where O is to move.
+     */
+    private static final long O_TO_MOVE = 0xC2B2AE3D27D4EB4FL;
+
+    /* Layout of an entry: value (32) | move (16) | depth (8) | age (5) | bound (2) | valid (1) */
+    private static final int MOVE_SHIFT = 16;
+    private static final int DEPTH_SHIFT = 8;
+    private static final int AGE_SHIFT = 3;
+    private static final int BOUND_SHIFT = 1;
+    private static final long VALID = 1L;
+
+    /**
+     * The entries, two slots (checked key, data) each.
+     */
+    private final long[] slots;
+
+    /**
+     * The number of buckets less one (the number of buckets is a power of
+     * two).
+     */
+    private final int bucketMask;
+
+    /**
+     * The age of the current search, 0..31.
+     */
+    private volatile int age;
+
+    /**
+     * Creates a table holding at least the given number of entries (rounded
+     * up to a power of two). Each entry takes 16 bytes.
+     *
+     * @param entries
+     *            The number of entries, at least 2 and at most 2^27
+     */
+    public TranspositionTable(final int entries) {
+        if ((entries < 2) || (entries > (1 << 27))) {
+            throw new IllegalArgumentException("entries must be between 2 and 2^27: " + entries);
+        }
+        final int capacity = Integer.highestOneBit(entries - 1) << 1;
+        this.slots = new long[capacity * 2];
+        this.bucketMask = (capacity / 2) - 1;
+    }
+
+    /**
+     * Mixes whose turn it is into a position key, for searches where that
+     * matters (which is most of them).
+     *
+     * @param positionKey
+     *            The position key
+     * @param turn
+     *            The mark to move, may not be null
+     * @return The key to use in the table
+     */
+    public static long keyFor(final long positionKey, final Mark turn) {
+        return positionKey ^ ((turn == Mark.X) ? X_TO_MOVE : O_TO_MOVE);
+    }
+
+    /**
+     * Looks up a key.
+     *
+     * @param key
+     *            The key
+     * @return The packed entry (decode with <code>value</code>,
+     *         <code>depth</code>, <code>bound</code> and <code>move</code>),
+     *         or <code>MISS</code>
+     */
+    public long probe(final long key) {
+        final int slot = bucketOf(key);
+        for (int i = slot; i < slot + 4; i += 2) {
+            final long data = slots[i + 1];
+            if (((slots[i] ^ data) == key) && ((data & VALID) != 0)) {
+                return data;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores an entry, evicting another if need be.
+     *
+     * @param key
+     *            The key
+     * @param value
+     *            The value of the position
+     * @param depth
+     *            The depth searched to, 0..255
+     * @param bound
+     *            <code>EXACT</code>, <code>LOWER_BOUND</code> or
+     *            <code>UPPER_BOUND</code>
+     * @param move
+     *            The best move (canonical), 0..65534, or <code>NO_MOVE</code>
+     */
+    public void store(final long key, final int value, final int depth, final int bound, final int move) {
+        final long data = ((long) value << 32) | ((long) (move & 0xFFFF) << MOVE_SHIFT)
+                | ((long) (depth & 0xFF) << DEPTH_SHIFT) | ((long) age << AGE_SHIFT)
+                | ((long) (bound & 0x3) << BOUND_SHIFT) | VALID;
+        final int slot = bucketOf(key);
+        int victim = slot;
+        long victimData = slots[slot + 1];
+        for (int i = slot; i < slot + 4; i += 2) {
+            final long current = slots[i + 1];
+            if ((slots[i] ^ current) == key || (current & VALID) == 0) {
+                victim = i; // same position, or a free slot
+                break;
+            }
+            if (worse(current, victimData)) {
+                victim = i;
+                victimData = current;
+            }
+        }
+        slots[victim] = key ^ data;
+        slots[victim + 1] = data;
+    }
+
+    /**
+     * Starts a new search. Entries from earlier searches are kept, but are
+     * the first to go when room is needed.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0x1F;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0L);
+    }
+
+    /**
+     * Gets the number of entries the table holds.
+     *
+     * @return The capacity, a power of two
+     */
+    public int getCapacity() {
+        return slots.length / 2;
+    }
+
+    /**
+     * Checks whether entry <code>a</code> is a better eviction candidate than
+     * <code>b</code>: older first, then shallower.
+     */
+    private boolean worse(final long a, final long b) {
+        final int current = age;
+        final boolean aOld = (int) ((a >>> AGE_SHIFT) & 0x1F) != current;
+        final boolean bOld = (int) ((b >>> AGE_SHIFT) & 0x1F) != current;
+        if (aOld != bOld) {
+            return aOld;
+        }
+        return depth(a) < depth(b);
+    }
+
+    /**
+     * Gets the first slot of the bucket of a key.
+     */
+    private int bucketOf(final long key) {
+        // the low bits of a Zobrist key are as random as any
+        return ((int) (key ^ (key >>> 32)) & bucketMask) << 2;
+    }
+
+    /**
+     * Gets the value of an entry.
+     *
+     * @param entry
+     *            A packed entry (not <code>MISS</code>)
+     * @return The value
+     */
+    public static int value(final long entry) {
+        return (int) (entry >> 32);
+    }
+
+    /**
+     * Gets the depth of an entry.
+     *
+     * @param entry
+     *            A packed entry (not <code>MISS</code>)
+     * @return The depth, 0..255
+     */
+    public static int depth(final long entry) {
+        return (int) ((entry >>> DEPTH_SHIFT) & 0xFF);
+    }
+
+    /**
+     * Gets the kind of bound of an entry.
+     *
+     * @param entry
+     *            A packed entry (not <code>MISS</code>)
+     * @return <code>EXACT</code>, <code>LOWER_BOUND</code> or
+     *         <code>UPPER_BOUND</code>
+     */
+    public static int bound(final long entry) {
+        return (int) ((entry >>> BOUND_SHIFT) & 0x3);
+    }
+
+    /**
+     * Gets the best move of an entry.
+     *
+     * @param entry
+     *            A packed entry (not <code>MISS</code>)
+     * @return The move (canonical), or <code>NO_MOVE</code>
+     */
+    public static int move(final long entry) {
+        return (int) ((entry >>> MOVE_SHIFT) & 0xFFFF);
+    }
+
+}
@@ -0,0 +1,705 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.selfplay;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.um.cps2004.task1.engine.BatchWarEngine;
+import edu.um.cps2004.task1.engine.MatchResult;
+import edu.um.cps2004.task1.engine.TimeControl;
+import edu.um.cps2004.task1.record.GameRecord;
+import edu.um.cps2004.task1.record.GameRecordSink;
+import edu.um.cps2004.task1.record.GameRecordWriter;
+import edu.um.cps2004.task1.robot.TTTRobot;
+import edu.um.cps2004.task1.tournament.RobotFactory;
+
+/**
+ * Generates self-play datasets: plays a number of games between two robots
+ * and writes their records to a <code>GameRecordWriter</code>.
+ *
+ * The work is done in stages. Producer threads (one per core by default) each
+ * run their own engine, with their own robots, and collect the records of
+ * their games in batches, which they hand over to a bounded queue. A single
+ * writer thread takes the batches off the queue and writes them. Records are
+ * handed over a batch at a time (when it is full, or has waited long enough)
+ * since waking the writer for every game would cost more than the game. The
+ * batches come from a fixed pool, and go back to the producers once written,
+ * so nothing is allocated per game, and a producer only ever waits if the
+ * writer falls a whole queue behind (back pressure). The writer's I/O is never
+ * done on a producer thread.
+ *
+ * Progress (games played and written, queue depth and games per second) may
+ * be reported periodically, see <code>setProgress</code>.
+ *
+ * <code>stop()</code>, or interrupting the thread calling <code>run</code>,
+ * shuts the pipeline down gracefully: producers finish the game they are
+ * playing, and every game finished is written and flushed before
+ * <code>run</code> returns.
+ *
+ * A pipeline may be run any number of times, one run at a time.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class SelfPlayPipeline {
+
+    /**
+     * The default number of records the queue holds.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    /**
+     * The number of records handed over to the writer at once.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * How long the writer waits for a batch before flushing, and checking
+     * whether the producers are done, and how long a producer keeps a batch
+     * which is not full, in milliseconds.
+     */
+    private static final long IDLE_MILLIS = 100;
+
+    /**
+     * Creates the robots playing X.
+     */
+    private final RobotFactory robotX;
+
+    /**
+     * Creates the robots playing O.
+     */
+    private final RobotFactory robotO;
+
+    /**
+     * The number of rows (and columns) of the board.
+     */
+    private final int side;
+
+    /**
+     * The number of marks in a row needed to win.
+     */
+    private final int winLength;
+
+    /**
+     * The time limits of the robots.
+     */
+    private TimeControl timeControl = TimeControl.UNLIMITED;
+
+    /**
+     * The number of producer threads.
+     */
+    private int producers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of records the queue holds.
+     */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Where progress is reported, null for nowhere.
+     */
+    private PrintStream progressOut;
+
+    /**
+     * How often progress is reported, in nanoseconds.
+     */
+    private long progressNanos;
+
+    /**
+     * Set to stop the run in progress.
+     */
+    private volatile boolean stopping;
+
+    /**
+     * The number of games played in the run in progress (or the last run).
+     */
+    private final AtomicLong gamesPlayed = new AtomicLong();
+
+    /**
+     * The number of games written in the run in progress (or the last run).
+     */
+    private final AtomicLong gamesWritten = new AtomicLong();
+
+
+    /**
+     * Creates a pipeline for the classic 3x3 board.
+     *
+     * @param robotX
+     *            Creates the robots playing X (one per producer), may not be
+     *            null
+     * @param robotO
+     *            Creates the robots playing O (one per producer), may not be
+     *            null
+     */
+    public SelfPlayPipeline(final RobotFactory robotX, final RobotFactory robotO) {
+        this(robotX, robotO, 3, 3);
+    }
+
+    /**
+     * Creates a pipeline for a larger board.
+     *
+     * @param robotX
+     *            Creates the robots playing X (one per producer), may not be
+     *            null
+     * @param robotO
+     *            Creates the robots playing O (one per producer), may not be
+     *            null
+     * @param side
+     *            The number of rows (and columns) of the board
+     * @param winLength
+     *            The number of marks in a row needed to win
+     */
+    public SelfPlayPipeline(final RobotFactory robotX, final RobotFactory robotO, final int side,
+            final int winLength) {
+        if ((robotX == null) || (robotO == null)) {
+            throw new IllegalArgumentException("robot factories cannot be null");
+        }
+        this.robotX = robotX;
+        this.robotO = robotO;
+        this.side = side;
+        this.winLength = winLength;
+    }
+
+    /**
+     * Sets the time limits of the robots (<code>TimeControl.UNLIMITED</code>
+     * by default). A robot running out of time loses the game.
+     *
+     * @param timeControl
+     *            The time control, may not be null
+     */
+    public void setTimeControl(final TimeControl timeControl) {
+        if (timeControl == null) {
+            throw new IllegalArgumentException("timeControl cannot be null");
+        }
+        this.timeControl = timeControl;
+    }
+
+    /**
+     * Sets the number of producer threads (one per core by default).
+     *
+     * @param producers
+     *            The number of threads playing games, at least 1
+     */
+    public void setProducers(final int producers) {
+        if (producers < 1) {
+            throw new IllegalArgumentException("producers must be at least 1");
+        }
+        this.producers = producers;
+    }
+
+    /**
+     * Sets the number of records which may wait to be written before the
+     * producers are held back.
+     *
+     * @param queueCapacity
+     *            The capacity of the queue, at least 1
+     */
+    public void setQueueCapacity(final int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets where, and how often, progress is reported during a run (not
+     * reported by default).
+     *
+     * @param out
+     *            Where to print progress, or null not to
+     * @param period
+     *            The time between reports, positive
+     * @param unit
+     *            The unit of <code>period</code>, may not be null
+     */
+    public void setProgress(final PrintStream out, final long period, final TimeUnit unit) {
+        if ((out != null) && ((period <= 0) || (unit == null))) {
+            throw new IllegalArgumentException("Bad progress period");
+        }
+        this.progressOut = out;
+        this.progressNanos = (out == null) ? 0 : unit.toNanos(period);
+    }
+
+    /**
+     * Plays games and writes their records, waiting for the run to finish.
+     *
+     * The writer is flushed, but not closed, at the end. If the calling thread
+     * is interrupted, the run is stopped as by <code>stop()</code>, and the
+     * thread's interrupt status is set again before returning.
+     *
+     * @param games
+     *            The number of games to play, not negative
+     * @param writer
+     *            Where to write the records, may not be null
+     * @return The results of the games played (all of them written), never
+     *         null
+     * @throws IOException
+     *             If writing fails (the run is stopped)
+     */
+    public MatchResult run(final long games, final GameRecordWriter writer) throws IOException {
+        if (games < 0) {
+            throw new IllegalArgumentException("games may not be negative: " + games);
+        }
+        if (writer == null) {
+            throw new IllegalArgumentException("writer cannot be null");
+        }
+        stopping = false;
+        gamesPlayed.set(0);
+        gamesWritten.set(0);
+        // enough batches to fill the queue, and one being filled by each producer
+        final int batches = (queueCapacity + BATCH_SIZE - 1) / BATCH_SIZE + producers;
+        final BlockingQueue<Batch> full = new ArrayBlockingQueue<Batch>(batches);
+        final BlockingQueue<Batch> free = new ArrayBlockingQueue<Batch>(batches);
+        for (int i = 0; i < batches; i++) {
+            free.add(new Batch());
+        }
+
+        final AtomicLong unclaimed = new AtomicLong(games);
+        final AtomicInteger running = new AtomicInteger(producers);
+        final ExecutorService pool = Executors.newFixedThreadPool(producers + 1, threads("tttwar-selfplay"));
+        final Progress progress = (progressOut == null) ? null : new Progress(games, progressOut);
+        final List<Future<MatchResult>> played = new ArrayList<Future<MatchResult>>(producers);
+        final Future<?> written;
+        try {
+            for (int i = 0; i < producers; i++) {
+                played.add(pool.submit(new Producer(unclaimed, running, full, free)));
+            }
+            written = pool.submit(new Writer(writer, running, full, free));
+        } finally {
+            pool.shutdown();
+        }
+
+        // every stage is waited for, whatever happens, so nothing is left writing
+        final MatchResult result = new MatchResult();
+        RuntimeException error = null;
+        IOException failure = null;
+        for (final Future<MatchResult> producer : played) {
+            try {
+                result.merge(getUninterruptibly(producer));
+            } catch (final RuntimeException e) {
+                stopping = true;
+                error = (error == null) ? e : error;
+            }
+        }
+        try {
+            getUninterruptibly(written);
+        } catch (final IOException e) {
+            failure = e;
+        } catch (final RuntimeException e) {
+            error = (error == null) ? e : error;
+        }
+        if (progress != null) {
+            progress.stop();
+        }
+        if (error != null) {
+            throw error;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Stops the run in progress, if any, gracefully (see <code>run</code>).
+     * May be called from any thread, e.g. a shutdown hook.
+     */
+    public void stop() {
+        stopping = true;
+    }
+
+    /**
+     * Gets the number of games played in the run in progress, or the last
+     * run.
+     *
+     * @return The number of games played
+     */
+    public long getGamesPlayed() {
+        return gamesPlayed.get();
+    }
+
+    /**
+     * Gets the number of games written in the run in progress, or the last
+     * run.
+     *
+     * @return The number of games written
+     */
+    public long getGamesWritten() {
+        return gamesWritten.get();
+    }
+
+    /**
+     * Gets the number of records waiting to be written (queued, or in a batch
+     * being filled).
+     *
+     * @return The number of games played but not written yet
+     */
+    public long getQueueSize() {
+        return Math.max(0, gamesPlayed.get() - gamesWritten.get());
+    }
+
+    /**
+     * Reports progress periodically, on a timer thread of its own.
+     */
+    private final class Progress implements Runnable {
+
+        private final long games;
+
+        private final PrintStream out;
+
+        private final ScheduledExecutorService timer;
+
+        private final long start = System.nanoTime();
+
+        private long lastGames, lastTime = start;
+
+        private Progress(final long games, final PrintStream out) {
+            this.games = games;
+            this.out = out;
+            this.timer = Executors.newSingleThreadScheduledExecutor(threads("tttwar-selfplay-progress"));
+            timer.scheduleAtFixedRate(this, progressNanos, progressNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public synchronized void run() {
+            final long played = gamesPlayed.get();
+            final long now = System.nanoTime();
+            final double rate = (now == lastTime) ? 0.0 : (played - lastGames) * 1e9 / (now - lastTime);
+            final double overall = (now == start) ? 0.0 : played * 1e9 / (now - start);
+            out.printf("selfplay: %d/%d games played, %d written, %d queued, %.0f games/s (%.0f overall)%n", played,
+                    games, gamesWritten.get(), getQueueSize(), rate, overall);
+            lastGames = played;
+            lastTime = now;
+        }
+
+        /**
+         * Stops the reports, after a last one.
+         */
+        private void stop() {
+            timer.shutdownNow();
+            run();
+        }
+
+    }
+
+    /**
+     * Creates the daemon threads of the pipeline.
+     *
+     * @param name
+     *            The prefix of the thread names
+     * @return The thread factory
+     */
+    private static ThreadFactory threads(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, name + "-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Waits for a stage to finish.
+     *
+     * @param future
+     *            The stage
+     * @return Its result
+     * @throws InterruptedException
+     *             If the waiting thread is interrupted
+     * @throws IOException
+     *             If the stage failed writing
+     */
+    private static <T> T get(final Future<T> future) throws InterruptedException, IOException {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Waits for a stage to finish, even if interrupted (the run is stopping,
+     * so it will not be long).
+     *
+     * @param future
+     *            The stage
+     * @return Its result
+     * @throws IOException
+     *             If the stage failed writing
+     */
+    private <T> T getUninterruptibly(final Future<T> future) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return get(future);
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                    stopping = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Records handed over from a producer to the writer together.
+     */
+    private static final class Batch {
+
+        private final GameRecord[] records = new GameRecord[BATCH_SIZE];
+
+        private int size;
+
+        /**
+         * When the first record was added, as <code>System.nanoTime()</code>.
+         */
+        private long started;
+
+        private Batch() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                records[i] = new GameRecord();
+            }
+        }
+
+    }
+
+    /**
+     * Plays games until there are none left to play (or the run stops),
+     * handing their records over to the writer.
+     */
+    private final class Producer implements Callable<MatchResult>, GameRecordSink {
+
+        private final AtomicLong unclaimed;
+
+        private final AtomicInteger running;
+
+        private final BlockingQueue<Batch> full, free;
+
+        /**
+         * The batch being filled, null if none.
+         */
+        private Batch batch;
+
+        private Producer(final AtomicLong unclaimed, final AtomicInteger running, final BlockingQueue<Batch> full,
+                final BlockingQueue<Batch> free) {
+            this.unclaimed = unclaimed;
+            this.running = running;
+            this.full = full;
+            this.free = free;
+        }
+
+        @Override
+        public MatchResult call() {
+            final MatchResult result = new MatchResult();
+            try {
+                final BatchWarEngine engine = new BatchWarEngine(robotX.newRobot(), robotO.newRobot(), side,
+                        winLength);
+                engine.setTimeControl(timeControl);
+                engine.setRecordSink(this);
+                while (!stopping && (unclaimed.getAndDecrement() > 0)) {
+                    result.merge(engine.playBatch(1));
+                }
+            } finally {
+                if (batch != null) {
+                    full.add(batch);
+                    batch = null;
+                }
+                running.decrementAndGet();
+            }
+            return result;
+        }
+
+        @Override
+        public void record(final GameRecord record) {
+            if (batch == null) {
+                try {
+                    batch = free.take(); // waits if the writer is a whole queue behind
+                } catch (final InterruptedException e) {
+                    // not expected, the pipeline never interrupts its producers
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted handing over a record", e);
+                }
+                batch.started = System.nanoTime();
+            }
+            batch.records[batch.size++].copyFrom(record);
+            gamesPlayed.incrementAndGet();
+            if ((batch.size == BATCH_SIZE)
+                    || (System.nanoTime() - batch.started > TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS))) {
+                full.add(batch); // never full, there are only as many batches
+                batch = null;
+            }
+        }
+
+    }
+
+    /**
+     * Writes the records handed over by the producers, until they are all
+     * done and the queue is empty.
+     */
+    private final class Writer implements Callable<Void> {
+
+        private final GameRecordWriter writer;
+
+        private final AtomicInteger running;
+
+        private final BlockingQueue<Batch> full, free;
+
+        private Writer(final GameRecordWriter writer, final AtomicInteger running, final BlockingQueue<Batch> full,
+                final BlockingQueue<Batch> free) {
+            this.writer = writer;
+            this.running = running;
+            this.full = full;
+            this.free = free;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            IOException failure = null;
+            while (true) {
+                final Batch batch = full.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    // idle: the producers are done, or slow
+                    if ((running.get() == 0) && full.isEmpty()) {
+                        break;
+                    }
+                    if (failure == null) {
+                        try {
+                            writer.flush();
+                        } catch (final IOException e) {
+                            failure = e;
+                            stopping = true;
+                        }
+                    }
+                    continue;
+                }
+                if (failure == null) {
+                    try {
+                        for (int i = 0; i < batch.size; i++) {
+                            writer.write(batch.records[i]);
+                        }
+                        gamesWritten.addAndGet(batch.size);
+                    } catch (final IOException e) {
+                        // keep taking batches, so no producer is left waiting
+                        failure = e;
+                        stopping = true;
+                    }
+                }
+                batch.size = 0;
+                free.add(batch);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            writer.flush();
+            return null;
+        }
+
+    }
+
+    /**
+     * Generates a dataset from the command line, between two robots (given by
+     * class name, with a public no argument constructor). Stops gracefully on
+     * Ctrl-C, keeping the games played so far.
+     *
+     * @param args
+     *            robot class X, robot class O, games, output file and,
+     *            optionally, side and win length
+     * @throws Exception
+     *             If the robots cannot be created, or writing fails
+     */
+    public static void main(final String[] args) throws Exception {
+        if ((args.length != 4) && (args.length != 6)) {
+            System.err.println("Usage: SelfPlayPipeline <robot class X> <robot class O> <games> <file> [side winLength]");
+            return;
+        }
+        final RobotFactory robotX = factory(args[0]);
+        final RobotFactory robotO = factory(args[1]);
+        final long games = Long.parseLong(args[2]);
+        final Path file = Paths.get(args[3]);
+        final SelfPlayPipeline pipeline = (args.length == 6)
+                ? new SelfPlayPipeline(robotX, robotO, Integer.parseInt(args[4]), Integer.parseInt(args[5]))
+                : new SelfPlayPipeline(robotX, robotO);
+        pipeline.setProgress(System.out, 1, TimeUnit.SECONDS);
+
+        final Thread main = Thread.currentThread();
+        final Thread hook = new Thread("tttwar-selfplay-shutdown") {
+            @Override
+            public void run() {
+                pipeline.stop();
+                try {
+                    main.join(); // until everything is written
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(hook);
+        try (GameRecordWriter writer = new GameRecordWriter(file)) {
+            final MatchResult result = pipeline.run(games, writer);
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * Creates a factory for a robot class.
+     *
+     * @param className
+     *            The class, with a public no argument constructor
+     * @return The factory
+     * @throws ReflectiveOperationException
+     *             If the class cannot be instantiated
+     */
+    private static RobotFactory factory(final String className) throws ReflectiveOperationException {
+        final Class<? extends TTTRobot> type = Class.forName(className).asSubclass(TTTRobot.class);
+        type.getConstructor().newInstance(); // fail now rather than on a producer
+        return new RobotFactory() {
+            @Override
+            public TTTRobot newRobot() {
+                try {
+                    return type.getConstructor().newInstance();
+                } catch (final ReflectiveOperationException e) {
+                    throw new IllegalStateException("Cannot create " + type.getName(), e);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,427 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.exception.PositionAlreadyOccupiedException;
+import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
+import edu.um.cps2004.task1.metrics.LatencyHistogram;
+
+/**
+ * A load generator for a <code>MatchServer</code>: opens a number of
+ * connections, each playing games against the server's robot back to back,
+ * with random moves (as X and O in turn), and measures the games played per
+ * second and the latency of each move (from sending it to getting the
+ * robot's reply, or the end of the game).
+ *
+ * All the connections are driven by a single thread and selector, so the
+ * client takes as few resources as the server. Not thread safe: run one
+ * generator at a time.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class LoadGenerator {
+
+    /**
+     * The server.
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * The number of connections.
+     */
+    private final int connections;
+
+    /**
+     * The number of rows (and columns) of the board.
+     */
+    private final int side;
+
+    /**
+     * The number of marks in a row needed to win.
+     */
+    private final int winLength;
+
+    /**
+     * The latency of the moves.
+     */
+    private LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * The games finished in the last run.
+     */
+    private long games;
+
+    /**
+     * The moves played (by the clients) in the last run.
+     */
+    private long moves;
+
+    /**
+     * The number of errors (or connections closed by the server) in the last
+     * run.
+     */
+    private long errors;
+
+    /**
+     * The length of the last run, in nanoseconds.
+     */
+    private long nanos;
+
+    /**
+     * Creates a generator playing on the classic 3x3 board.
+     *
+     * @param address
+     *            The server, may not be null
+     * @param connections
+     *            The number of connections (games played at once), at least 1
+     */
+    public LoadGenerator(final InetSocketAddress address, final int connections) {
+        this(address, connections, 3, 3);
+    }
+
+    /**
+     * Creates a generator.
+     *
+     * @param address
+     *            The server, may not be null
+     * @param connections
+     *            The number of connections (games played at once), at least 1
+     * @param side
+     *            The number of rows (and columns) of the board
+     * @param winLength
+     *            The number of marks in a row needed to win
+     */
+    public LoadGenerator(final InetSocketAddress address, final int connections, final int side,
+            final int winLength) {
+        if (address == null) {
+            throw new IllegalArgumentException("address cannot be null");
+        }
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be at least 1: " + connections);
+        }
+        new GameBoard(side, winLength); // validates them
+        this.address = address;
+        this.connections = connections;
+        this.side = side;
+        this.winLength = winLength;
+    }
+
+    /**
+     * Connects, plays for a while, and disconnects (abandoning the games in
+     * progress). The results are then available from the getters.
+     *
+     * @param duration
+     *            How long to play for, positive
+     * @param unit
+     *            The unit of <code>duration</code>
+     * @throws IOException
+     *             If a connection cannot be opened
+     */
+    public void run(final long duration, final TimeUnit unit) throws IOException {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration must be positive: " + duration);
+        }
+        latency = new LatencyHistogram();
+        games = 0;
+        moves = 0;
+        errors = 0;
+        final List<Client> clients = new ArrayList<Client>(connections);
+        try (Selector selector = Selector.open()) {
+            try {
+                for (int i = 0; i < connections; i++) {
+                    final SocketChannel channel = SocketChannel.open(address);
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    final Client client = new Client(channel, new SplittableRandom(i));
+                    clients.add(client);
+                    client.key = channel.register(selector, SelectionKey.OP_READ, client);
+                }
+                final long start = System.nanoTime();
+                final long end = start + unit.toNanos(duration);
+                for (final Client client : clients) {
+                    client.newGame();
+                }
+                long now = start;
+                while (now < end) {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - now)));
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+                        ((Client) key.attachment()).ready();
+                    }
+                    now = System.nanoTime();
+                }
+                nanos = now - start;
+            } finally {
+                for (final Client client : clients) {
+                    client.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the games finished in the last run.
+     *
+     * @return The number of games
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Gets the moves played by the clients in the last run.
+     *
+     * @return The number of moves
+     */
+    public long getMoves() {
+        return moves;
+    }
+
+    /**
+     * Gets the number of errors in the last run (each of which closes its
+     * connection).
+     *
+     * @return The number of errors
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Gets the speed of the last run.
+     *
+     * @return The games finished per second, 0 if none
+     */
+    public double getGamesPerSecond() {
+        return (nanos == 0) ? 0.0 : games * 1e9 / nanos;
+    }
+
+    /**
+     * Gets the latency of the moves of the last run.
+     *
+     * @return The histogram, in nanoseconds, never null
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "%d connections, %d games (%.0f games/s), %d moves (%.0f moves/s), %d errors, "
+                        + "move latency mean %.1fus p50 %.1fus p99 %.1fus p99.9 %.1fus max %.1fus",
+                connections, games, getGamesPerSecond(), moves, (nanos == 0) ? 0.0 : moves * 1e9 / nanos, errors,
+                latency.getMean() / 1e3, latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3,
+                latency.getPercentile(99.9) / 1e3, latency.getMax() / 1e3);
+    }
+
+    /**
+     * A connection, and the game it is playing.
+     */
+    private final class Client {
+
+        private final SocketChannel channel;
+
+        private SelectionKey key;
+
+        private final SplittableRandom random;
+
+        private final ByteBuffer input = ByteBuffer.allocate(1024);
+
+        private final ByteBuffer output = ByteBuffer.allocate(MatchServer.MAX_LINE);
+
+        /**
+         * The game, as the client sees it.
+         */
+        private GameBoard board;
+
+        /**
+         * The mark the client plays in the current game.
+         */
+        private Mark mark = Mark.O;
+
+        /**
+         * When the last move was sent, 0 if no reply is awaited.
+         */
+        private long sentAt;
+
+        private final int[] empty;
+
+        private Client(final SocketChannel channel, final SplittableRandom random) {
+            this.channel = channel;
+            this.random = random;
+            this.empty = new int[side * side];
+        }
+
+        /**
+         * Starts a game, with the other mark.
+         */
+        private void newGame() throws IOException {
+            mark = (mark == Mark.X) ? Mark.O : Mark.X;
+            board = new GameBoard(side, winLength);
+            send("NEW " + side + ' ' + winLength + ' ' + mark);
+        }
+
+        /**
+         * Plays a random move.
+         */
+        private void move() throws IOException {
+            final int count = board.getEmptyPositions(empty);
+            final int position = empty[random.nextInt(count)];
+            play(position, mark);
+            moves++;
+            sentAt = System.nanoTime();
+            send("MOVE " + position);
+        }
+
+        /**
+         * Handles the lines received.
+         */
+        private void ready() {
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read();
+                }
+            } catch (final IOException | RuntimeException e) {
+                errors++;
+                close();
+            }
+        }
+
+        private void read() throws IOException {
+            if (channel.read(input) < 0) {
+                throw new IOException("Connection closed by the server");
+            }
+            final byte[] bytes = input.array();
+            final int end = input.position();
+            int start = 0;
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    handle(new String(bytes, start, i - start, "US-ASCII"));
+                    start = i + 1;
+                }
+            }
+            if ((start == 0) && !input.hasRemaining()) {
+                throw new IOException("Line too long");
+            }
+            input.flip().position(start);
+            input.compact();
+        }
+
+        /**
+         * Handles a line from the server.
+         */
+        private void handle(final String line) throws IOException {
+            if (line.startsWith("MOVE ")) {
+                replied();
+                play(Integer.parseInt(line.substring(5)), (mark == Mark.X) ? Mark.O : Mark.X);
+                if (!board.isWinningPosition() && !board.isFull()) {
+                    move();
+                }
+            } else if (line.startsWith("END")) {
+                replied();
+                games++;
+                newGame();
+            } else if (line.equals("OK")) {
+                if (mark == Mark.X) {
+                    move();
+                }
+            } else {
+                throw new IOException("Unexpected reply: " + line);
+            }
+        }
+
+        /**
+         * Records the latency of the move just answered.
+         */
+        private void replied() {
+            if (sentAt != 0) {
+                latency.record(System.nanoTime() - sentAt);
+                sentAt = 0;
+            }
+        }
+
+        private void play(final int position, final Mark played) throws IOException {
+            try {
+                board.playAtPosition(position, played);
+            } catch (final PositionOutOfRangeException | PositionAlreadyOccupiedException e) {
+                throw new IOException("Illegal move from the server: " + position, e);
+            }
+        }
+
+        private void send(final String line) throws IOException {
+            for (int i = 0; i < line.length(); i++) {
+                output.put((byte) line.charAt(i));
+            }
+            output.put((byte) '\n');
+            flush();
+        }
+
+        private void flush() throws IOException {
+            output.flip();
+            channel.write(output);
+            output.compact();
+            key.interestOps((output.position() > 0) ? SelectionKey.OP_WRITE | SelectionKey.OP_READ
+                    : SelectionKey.OP_READ);
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                // nothing more to do with it
+            }
+        }
+
+    }
+
+    /**
+     * Runs a load test against a server.
+     *
+     * @param args
+     *            The host, port, number of connections, seconds to run for,
+     *            and optionally the side and win length of the board
+     * @throws IOException
+     *             If the server cannot be reached
+     */
+    public static void main(final String[] args) throws IOException {
+        if ((args.length != 4) && (args.length != 6)) {
+            System.err.println("Usage: LoadGenerator <host> <port> <connections> <seconds> [side winLength]");
+            return;
+        }
+        final InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        final int connections = Integer.parseInt(args[2]);
+        final LoadGenerator generator = (args.length == 6)
+                ? new LoadGenerator(address, connections, Integer.parseInt(args[4]), Integer.parseInt(args[5]))
+                : new LoadGenerator(address, connections);
+        generator.run(Long.parseLong(args[3]), TimeUnit.SECONDS);
+        System.out.println(generator);
+    }
+
+}
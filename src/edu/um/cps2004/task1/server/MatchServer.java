@@ -0,0 +1,790 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.um.cps2004.task1.catalog.Disqualification;
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.catalog.MoveStatus;
+import edu.um.cps2004.task1.engine.BatchWarEngine;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.exception.PositionAlreadyOccupiedException;
+import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
+import edu.um.cps2004.task1.record.GameRecord;
+import edu.um.cps2004.task1.record.GameRecordSink;
+import edu.um.cps2004.task1.robot.TTTRobot;
+import edu.um.cps2004.task1.tournament.RobotFactory;
+
+/**
+ * A server hosting many games at once over TCP, against (or between) the
+ * robots of a <code>RobotFactory</code>.
+ *
+ * The protocol is line based (ASCII, one command per line, ending with
+ * <code>\n</code>):
+ *
+ * <pre>
+ *   client                          server
+ *   NEW side winLength X|O          OK                  the client plays that mark, X starts
+ *                                   MOVE p              (the robot's move, when it is its turn)
+ *   MOVE p                          MOVE p              the robot's reply
+ *                                   END WIN|LOSS|DRAW [reason]   (for the client) when the game is over
+ *   AUTO side winLength             MOVES p p p ...     a whole robot against robot game
+ *                                   END X|O|DRAW [reason]
+ *   QUIT                            (closes the connection)
+ *   anything else                   ERROR message
+ * </pre>
+ *
+ * The rules of engagement are those of the engine: a client (or robot)
+ * playing out of range, or on an occupied position, loses the game, with the
+ * <code>Disqualification</code> as reason. A connection may play any number
+ * of games, one after the other.
+ *
+ * Games are not threads: each connection is a session, a small state machine
+ * around its <code>GameBoard</code>, driven by the lines it receives. The
+ * sessions are spread over a few reactor threads (one per core by default),
+ * each running an NIO <code>Selector</code> over its sessions, so thousands
+ * of games take no more than a few threads. A session only holds its board,
+ * its robot (created on its first game) and two small buffers (which grow
+ * only if a line does not fit). A session whose replies are not being read
+ * is not read either, until they are (back pressure).
+ *
+ * The robots play on the reactor threads, so they should be quick (a slow
+ * robot holds up the other sessions of its reactor): there is no time
+ * control. Each session has robots of its own, so they need not be thread
+ * safe. A robot which throws an exception (or an error, such as a
+ * <code>StackOverflowError</code>) loses its game with
+ * <code>ROBOT_ERROR</code>, as it does with the engine; anything else going
+ * wrong with a session only closes that connection, not the others of its
+ * reactor.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class MatchServer implements Closeable {
+
+    /**
+     * The longest line accepted from a client, in bytes (longer lines close
+     * the connection).
+     */
+    public static final int MAX_LINE = 64;
+
+    /**
+     * The initial size of the reply buffer of a session, in bytes.
+     */
+    private static final int REPLY_BUFFER = 64;
+
+    /**
+     * The robots played against.
+     */
+    private final RobotFactory robots;
+
+    /**
+     * The listening socket.
+     */
+    private final ServerSocketChannel server;
+
+    /**
+     * The reactors, the first one also accepts connections.
+     */
+    private final Reactor[] reactors;
+
+    /**
+     * The reactor the next connection goes to.
+     */
+    private int nextReactor;
+
+    /**
+     * The number of connections open.
+     */
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    /**
+     * The number of games finished.
+     */
+    private final LongAdder games = new LongAdder();
+
+    /**
+     * Whether the server is closing.
+     */
+    private volatile boolean closing;
+
+    /**
+     * Creates a server listening on a port of all interfaces, with one
+     * reactor per core. The server only accepts connections once started.
+     *
+     * @param port
+     *            The port, 0 for any free port
+     * @param robots
+     *            The robots to play against, may not be null
+     * @throws IOException
+     *             If the port cannot be listened on
+     */
+    public MatchServer(final int port, final RobotFactory robots) throws IOException {
+        this(new InetSocketAddress(port), robots, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a server. The server only accepts connections once started.
+     *
+     * @param address
+     *            The address to listen on, may not be null
+     * @param robots
+     *            The robots to play against, may not be null
+     * @param reactors
+     *            The number of reactor threads, at least 1
+     * @throws IOException
+     *             If the address cannot be listened on
+     */
+    public MatchServer(final InetSocketAddress address, final RobotFactory robots, final int reactors)
+            throws IOException {
+        if ((address == null) || (robots == null)) {
+            throw new IllegalArgumentException("address and robots cannot be null");
+        }
+        if (reactors < 1) {
+            throw new IllegalArgumentException("reactors must be at least 1: " + reactors);
+        }
+        this.robots = robots;
+        this.reactors = new Reactor[reactors];
+        this.server = ServerSocketChannel.open();
+        try {
+            server.bind(address, 1024);
+            server.configureBlocking(false);
+            for (int i = 0; i < reactors; i++) {
+                this.reactors[i] = new Reactor(i);
+            }
+        } catch (final IOException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the reactor threads (which are not daemons, so a server keeps
+     * the JVM alive until closed).
+     *
+     * @throws IOException
+     *             If the server cannot accept connections
+     */
+    public synchronized void start() throws IOException {
+        if (reactors[0].thread.isAlive() || closing) {
+            throw new IllegalStateException("Server already started");
+        }
+        server.register(reactors[0].selector, SelectionKey.OP_ACCEPT);
+        for (final Reactor reactor : reactors) {
+            reactor.thread.start();
+        }
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return The local port
+     * @throws IOException
+     *             If the server is closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Gets the number of connections open.
+     *
+     * @return The number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.get();
+    }
+
+    /**
+     * Gets the number of games finished since the server started.
+     *
+     * @return The number of games
+     */
+    public long getGamesPlayed() {
+        return games.sum();
+    }
+
+    /**
+     * Stops accepting connections, closes all sessions (games in progress are
+     * abandoned) and waits for the reactors to stop.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        server.close();
+        for (final Reactor reactor : reactors) {
+            reactor.selector.wakeup();
+        }
+        for (final Reactor reactor : reactors) {
+            if (reactor.thread != Thread.currentThread()) {
+                try {
+                    reactor.thread.join();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the socket and selectors, when the constructor fails.
+     */
+    private void closeQuietly() {
+        try {
+            server.close();
+        } catch (final IOException e) {
+            // failing already
+        }
+        for (final Reactor reactor : reactors) {
+            if (reactor != null) {
+                try {
+                    reactor.selector.close();
+                } catch (final IOException e) {
+                    // failing already
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts all pending connections, and deals them out to the reactors.
+     *
+     * @throws IOException
+     *             If the server socket fails
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            deal(channel);
+        }
+    }
+
+    /**
+     * Hands a connection to the next reactor still running, or closes it if
+     * none is.
+     */
+    private void deal(final SocketChannel channel) {
+        for (int i = 0; i < reactors.length; i++) {
+            final Reactor reactor = reactors[nextReactor];
+            nextReactor = (nextReactor + 1) % reactors.length;
+            if (reactor.running) {
+                reactor.accepted.add(channel);
+                reactor.selector.wakeup();
+                // a reactor which stopped meanwhile may have closed its queue already
+                if (reactor.running || !reactor.accepted.remove(channel)) {
+                    return;
+                }
+            }
+        }
+        closeChannel(channel);
+    }
+
+    /**
+     * A thread running the sessions of its selector.
+     */
+    private final class Reactor implements Runnable {
+
+        private final Selector selector;
+
+        private final Thread thread;
+
+        /**
+         * Connections accepted for this reactor, not registered yet.
+         */
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+
+        /**
+         * Whether the reactor takes connections, false once it has stopped.
+         */
+        private volatile boolean running = true;
+
+        private Reactor(final int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "tttwar-server-" + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closing) {
+                    selector.select();
+                    registerAccepted();
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        ((Session) key.attachment()).ready(key);
+                    }
+                }
+            } catch (final IOException | ClosedSelectorException e) {
+                if (!closing) {
+                    throw new IllegalStateException("Reactor failed", e);
+                }
+            } finally {
+                running = false;
+                if ((this == reactors[0]) && !closing) {
+                    try {
+                        server.close(); // refuse connections rather than leave them waiting
+                    } catch (final IOException e) {
+                        // failing already
+                    }
+                }
+                for (final SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Session) {
+                        ((Session) key.attachment()).close();
+                    }
+                }
+                for (SocketChannel channel; (channel = accepted.poll()) != null;) {
+                    closeChannel(channel);
+                }
+                try {
+                    selector.close();
+                } catch (final IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+
+        /**
+         * Starts a session for each connection accepted for this reactor.
+         */
+        private void registerAccepted() {
+            for (SocketChannel channel; (channel = accepted.poll()) != null;) {
+                try {
+                    final Session session = new Session(channel);
+                    session.key = channel.register(selector, SelectionKey.OP_READ, session);
+                    sessions.incrementAndGet();
+                } catch (final IOException e) {
+                    closeChannel(channel);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Closes a connection, ignoring failures.
+     */
+    private static void closeChannel(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            // nothing more to do with it
+        }
+    }
+
+    /**
+     * A connection, and the game it is playing. Only ever used by its
+     * reactor.
+     */
+    private final class Session implements GameRecordSink {
+
+        private final SocketChannel channel;
+
+        private SelectionKey key;
+
+        /**
+         * The bytes received, not yet handled (in write mode).
+         */
+        private final ByteBuffer input = ByteBuffer.allocate(MAX_LINE);
+
+        /**
+         * The replies, not yet sent (in write mode).
+         */
+        private ByteBuffer output = ByteBuffer.allocate(REPLY_BUFFER);
+
+        /**
+         * The game being played against the client, null if none.
+         */
+        private GameBoard board;
+
+        /**
+         * The mark the client plays.
+         */
+        private Mark clientMark;
+
+        /**
+         * The robot playing the client, created on the first game.
+         */
+        private TTTRobot robot;
+
+        /**
+         * The engine playing robot against robot games, created on the
+         * first one.
+         */
+        private BatchWarEngine engine;
+
+        /**
+         * The side and win length of the engine's board.
+         */
+        private int engineSide, engineWinLength;
+
+        private Session(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads and/or writes, as the channel is ready to.
+         */
+        private void ready(final SelectionKey key) {
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read();
+                }
+            } catch (final Throwable e) {
+                BatchWarEngine.rethrowIfFatal(e);
+                close();
+            }
+        }
+
+        /**
+         * Reads what is there, handles all the complete lines, and sends the
+         * replies.
+         */
+        private void read() throws IOException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            final byte[] bytes = input.array();
+            final int end = input.position();
+            int start = 0;
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    int length = i - start;
+                    if ((length > 0) && (bytes[i - 1] == '\r')) {
+                        length--;
+                    }
+                    if (!handle(new String(bytes, start, length, StandardCharsets.US_ASCII))) {
+                        flush();
+                        close();
+                        return;
+                    }
+                    start = i + 1;
+                }
+            }
+            if ((start == 0) && !input.hasRemaining()) {
+                reply("ERROR line too long");
+                flush();
+                close();
+                return;
+            }
+            input.flip().position(start);
+            input.compact();
+            flush();
+        }
+
+        /**
+         * Handles one line from the client.
+         *
+         * @param line
+         *            The line, without its end
+         * @return false if the connection is to be closed
+         */
+        private boolean handle(final String line) {
+            final String[] words = line.trim().split(" +");
+            try {
+                switch (words[0]) {
+                case "MOVE":
+                    if (words.length != 2) {
+                        reply("ERROR usage: MOVE position");
+                    } else {
+                        clientMove(Integer.parseInt(words[1]));
+                    }
+                    return true;
+                case "NEW":
+                    if ((words.length != 4) || !(words[3].equals("X") || words[3].equals("O"))) {
+                        reply("ERROR usage: NEW side winLength X|O");
+                    } else {
+                        newGame(Integer.parseInt(words[1]), Integer.parseInt(words[2]), Mark.valueOf(words[3]));
+                    }
+                    return true;
+                case "AUTO":
+                    if (words.length != 3) {
+                        reply("ERROR usage: AUTO side winLength");
+                    } else {
+                        autoGame(Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+                    }
+                    return true;
+                case "QUIT":
+                    return false;
+                default:
+                    reply("ERROR unknown command: " + words[0]);
+                    return true;
+                }
+            } catch (final NumberFormatException e) {
+                reply("ERROR not a number: " + line);
+                return true;
+            }
+        }
+
+        /**
+         * Starts a game against the client.
+         */
+        private void newGame(final int side, final int winLength, final Mark mark) {
+            final GameBoard fresh;
+            try {
+                fresh = new GameBoard(side, winLength);
+            } catch (final IllegalArgumentException e) {
+                reply("ERROR " + e.getMessage());
+                return;
+            }
+            if (robot == null) {
+                robot = newRobot();
+                if (robot == null) {
+                    return;
+                }
+            }
+            board = fresh;
+            clientMark = mark;
+            reply("OK");
+            if (mark == Mark.O) {
+                robotMove();
+            }
+        }
+
+        /**
+         * Plays the client's move, and the robot's reply.
+         */
+        private void clientMove(final int position) {
+            if (board == null) {
+                reply("ERROR no game in progress");
+                return;
+            }
+            final MoveStatus status = board.checkPlayTentative(position);
+            if (status != MoveStatus.VALID) {
+                end("LOSS " + ((status == MoveStatus.OCCUPIED) ? Disqualification.OCCUPIED
+                        : Disqualification.OUT_OF_RANGE));
+                return;
+            }
+            play(position, clientMark);
+            if (board.isWinningPosition()) {
+                end("WIN");
+            } else if (board.isFull()) {
+                end("DRAW");
+            } else {
+                robotMove();
+            }
+        }
+
+        /**
+         * Has the robot play its move, as the engine would.
+         */
+        private void robotMove() {
+            final Mark mark = (clientMark == Mark.X) ? Mark.O : Mark.X;
+            final int movesBefore = board.getMovesPlayed();
+            final int position;
+            try {
+                position = robot.play(board, mark);
+            } catch (final Throwable e) {
+                BatchWarEngine.rethrowIfFatal(e);
+                end("WIN " + Disqualification.ROBOT_ERROR);
+                return;
+            }
+            if (board.getMovesPlayed() != movesBefore) {
+                end("WIN " + Disqualification.TAMPERING);
+                return;
+            }
+            switch (board.checkPlayTentative(position)) {
+            case OUT_OF_RANGE:
+                end("WIN " + Disqualification.OUT_OF_RANGE);
+                return;
+            case OCCUPIED:
+                end("WIN " + Disqualification.OCCUPIED);
+                return;
+            default:
+                break;
+            }
+            play(position, mark);
+            reply("MOVE " + position);
+            if (board.isWinningPosition()) {
+                end("LOSS");
+            } else if (board.isFull()) {
+                end("DRAW");
+            }
+        }
+
+        /**
+         * Plays a move already checked.
+         */
+        private void play(final int position, final Mark mark) {
+            try {
+                board.playAtPosition(position, mark);
+            } catch (final PositionOutOfRangeException | PositionAlreadyOccupiedException e) {
+                throw new IllegalStateException("Move checked, yet rejected: " + position, e);
+            }
+        }
+
+        /**
+         * Ends the game against the client.
+         */
+        private void end(final String result) {
+            reply("END " + result);
+            board = null;
+            games.increment();
+        }
+
+        /**
+         * Creates a robot for this session.
+         *
+         * @return The robot, null (and the client told) if the factory fails
+         */
+        private TTTRobot newRobot() {
+            try {
+                final TTTRobot created = robots.newRobot();
+                if (created == null) {
+                    throw new IllegalStateException("Robot factory returned null");
+                }
+                return created;
+            } catch (final Throwable e) {
+                BatchWarEngine.rethrowIfFatal(e);
+                reply("ERROR cannot create robot: " + e);
+                return null;
+            }
+        }
+
+        /**
+         * Plays a whole robot against robot game, the record of which comes
+         * back to <code>record</code>.
+         */
+        private void autoGame(final int side, final int winLength) {
+            if ((engine == null) || (side != engineSide) || (winLength != engineWinLength)) {
+                final TTTRobot robotX = newRobot();
+                final TTTRobot robotO = (robotX == null) ? null : newRobot();
+                if (robotO == null) {
+                    return;
+                }
+                try {
+                    engine = new BatchWarEngine(robotX, robotO, side, winLength);
+                } catch (final IllegalArgumentException e) {
+                    reply("ERROR " + e.getMessage());
+                    return;
+                }
+                engine.setRecordSink(this);
+                engineSide = side;
+                engineWinLength = winLength;
+            }
+            engine.play();
+            games.increment();
+        }
+
+        @Override
+        public void record(final GameRecord record) {
+            final StringBuilder line = new StringBuilder(8 + 4 * record.getMoveCount());
+            line.append("MOVES");
+            for (int i = 0; i < record.getMoveCount(); i++) {
+                line.append(' ').append(record.getMove(i));
+            }
+            reply(line.toString());
+            final Mark winner = record.getWinner();
+            final Disqualification disqualification = record.getDisqualification();
+            reply("END " + ((winner == null) ? "DRAW" : winner.name())
+                    + ((disqualification == null) ? "" : " " + disqualification));
+        }
+
+        /**
+         * Queues a line to the client.
+         */
+        private void reply(final String line) {
+            final int length = line.length() + 1;
+            if (output.remaining() < length) {
+                final ByteBuffer larger = ByteBuffer
+                        .allocate(Math.max(2 * output.capacity(), output.position() + length));
+                output.flip();
+                larger.put(output);
+                output = larger;
+            }
+            for (int i = 0; i < line.length(); i++) {
+                final char c = line.charAt(i); // e.g. an exception message could break the line
+                output.put((byte) (((c >= ' ') && (c < 127)) ? c : '?'));
+            }
+            output.put((byte) '\n');
+        }
+
+        /**
+         * Sends as much of the replies as the socket takes. Stops reading
+         * from the client while replies are left over.
+         */
+        private void flush() throws IOException {
+            if (!key.isValid()) {
+                return;
+            }
+            if (output.position() > 0) {
+                output.flip();
+                channel.write(output);
+                output.compact();
+            }
+            key.interestOps((output.position() > 0) ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        /**
+         * Closes the connection.
+         */
+        private void close() {
+            if (channel.isOpen()) {
+                sessions.decrementAndGet();
+                closeChannel(channel);
+            }
+        }
+
+    }
+
+    /**
+     * Runs a server until the JVM is stopped.
+     *
+     * @param args
+     *            The port, and the class of the robot to play against (with a
+     *            public no argument constructor)
+     * @throws Exception
+     *             If the server cannot start
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: MatchServer <port> <robot class>");
+            return;
+        }
+        final Class<? extends TTTRobot> type = Class.forName(args[1]).asSubclass(TTTRobot.class);
+        type.getConstructor().newInstance(); // fail now rather than on a session
+        final MatchServer server = new MatchServer(Integer.parseInt(args[0]), new RobotFactory() {
+            @Override
+            public TTTRobot newRobot() {
+                try {
+                    return type.getConstructor().newInstance();
+                } catch (final ReflectiveOperationException e) {
+                    throw new IllegalStateException("Cannot create " + type.getName(), e);
+                }
+            }
+        });
+        server.start();
+        System.out.println("MatchServer listening on port " + server.getPort());
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.tournament;
+
+import edu.um.cps2004.task1.robot.TTTRobot;
+
+/**
+ * A robot taking part in a tournament.
+ *
+ * An entrant is either a single, thread safe, robot instance which is shared
+ * by all threads, or a <code>RobotFactory</code> from which each thread gets
+ * its own instance (created the first time that thread needs it, and reused
+ * afterwards).
+ *
+ * Entrants are compared by identity, two entrants with the same robot master
+ * name are still two different entrants.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class Entrant {
+
+    /**
+     * The name shown in the league table.
+     */
+    private final String name;
+
+    /**
+     * The shared robot, null if robots come from the factory.
+     */
+    private final TTTRobot sharedRobot;
+
+    /**
+     * The robot of each thread, null if the robot is shared.
+     */
+    private final ThreadLocal<TTTRobot> threadRobot;
+
+    /**
+     * Creates an entrant from a thread safe robot, which will be shared by
+     * all threads.
+     *
+     * @param robot
+     *            The robot, may not be null. Must be thread safe.
+     */
+    public Entrant(final TTTRobot robot) {
+        if (robot == null) {
+            throw new IllegalArgumentException("robot cannot be null");
+        }
+        if (robot.getRobotMasterName() == null) {
+            throw new IllegalArgumentException("Robot master name may not be null: " + robot);
+        }
+        this.name = robot.getRobotMasterName();
+        this.sharedRobot = robot;
+        this.threadRobot = null;
+    }
+
+    /**
+     * Creates an entrant whose robot need not be thread safe, each thread
+     * gets an instance of its own from the factory.
+     *
+     * @param name
+     *            The name shown in the league table, may not be null
+     * @param factory
+     *            The factory creating the robots, may not be null
+     */
+    public Entrant(final String name, final RobotFactory factory) {
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("factory cannot be null");
+        }
+        this.name = name;
+        this.sharedRobot = null;
+        this.threadRobot = new ThreadLocal<TTTRobot>() {
+            @Override
+            protected TTTRobot initialValue() {
+                final TTTRobot robot = factory.newRobot();
+                if (robot == null) {
+                    throw new IllegalStateException("Factory for " + name + " returned null");
+                }
+                return robot;
+            }
+        };
+    }
+
+    /**
+     * Gets the robot to be used by the calling thread.
+     *
+     * @return The robot, never null
+     */
+    public TTTRobot getRobot() {
+        return (sharedRobot != null) ? sharedRobot : threadRobot.get();
+    }
+
+    /**
+     * Gets the name of this entrant.
+     *
+     * @return The name, never null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.tournament;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.MatchResult;
+
+/**
+ * The league table of a tournament, one <code>Standing</code> per entrant.
+ *
+ * Not thread safe; the tournament fills it in once all games are over.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class LeagueTable {
+
+    /**
+     * Orders the table, by points, then wins, then fewest disqualifications
+     * (entrants still tied keep their entrant order, the sort being stable).
+     */
+    private static final Comparator<Standing> ORDER = new Comparator<Standing>() {
+        @Override
+        public int compare(final Standing a, final Standing b) {
+            int order = Long.compare(b.getPoints(), a.getPoints());
+            if (order == 0) {
+                order = Long.compare(b.getWon(), a.getWon());
+            }
+            if (order == 0) {
+                order = Long.compare(a.getDisqualified(), b.getDisqualified());
+            }
+            return order;
+        }
+    };
+
+    /**
+     * The rows of the table, in entrant order.
+     */
+    private final List<Standing> rows = new ArrayList<Standing>();
+
+    /**
+     * The rows of the table, by entrant.
+     */
+    private final Map<Entrant, Standing> standings = new IdentityHashMap<Entrant, Standing>();
+
+    /**
+     * Creates an empty table.
+     *
+     * @param entrants
+     *            The entrants, each gets a row (even if it plays no games)
+     */
+    LeagueTable(final List<Entrant> entrants) {
+        for (final Entrant entrant : entrants) {
+            final Standing standing = new Standing(entrant);
+            rows.add(standing);
+            standings.put(entrant, standing);
+        }
+    }
+
+    /**
+     * Adds the results of games between two entrants.
+     *
+     * @param entrantX
+     *            The entrant which played X
+     * @param entrantO
+     *            The entrant which played O
+     * @param result
+     *            The results of the games
+     */
+    void record(final Entrant entrantX, final Entrant entrantO, final MatchResult result) {
+        standings.get(entrantX).add(result.getWins(Mark.X), result.getDraws(), result.getLosses(Mark.X),
+                result.getDisqualifications(Mark.X));
+        standings.get(entrantO).add(result.getWins(Mark.O), result.getDraws(), result.getLosses(Mark.O),
+                result.getDisqualifications(Mark.O));
+    }
+
+    /**
+     * Gets the row of an entrant.
+     *
+     * @param entrant
+     *            The entrant
+     * @return The standing, or null if the entrant did not take part
+     */
+    public Standing getStanding(final Entrant entrant) {
+        return standings.get(entrant);
+    }
+
+    /**
+     * Gets the rows of the table, leader first (ties in entrant order).
+     *
+     * @return A new list of standings, sorted
+     */
+    public List<Standing> getStandings() {
+        final List<Standing> sorted = new ArrayList<Standing>(rows);
+        Collections.sort(sorted, ORDER);
+        return sorted;
+    }
+
+    /**
+     * Displays the table, one entrant per line.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append(String.format("%-4s %-30s %10s %10s %10s %10s %8s %10s%n", "#", "Entrant", "Played", "Won",
+                "Drawn", "Lost", "DQ", "Points"));
+        int position = 1;
+        for (final Standing standing : getStandings()) {
+            buffer.append(String.format("%-4d %-30s %10d %10d %10d %10d %8d %10d%n", position++,
+                    standing.getEntrant().getName(), standing.getPlayed(), standing.getWon(), standing.getDrawn(),
+                    standing.getLost(), standing.getDisqualified(), standing.getPoints()));
+        }
+        return buffer.toString();
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.tournament;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+
+import edu.um.cps2004.task1.robot.TTTRobot;
+
+/**
+ * A robot class loaded from a jar by a <code>RobotLoader</code>, in a class
+ * loader of its own.
+ *
+ * It is the factory of its robots: each <code>newRobot()</code> is a new
+ * instance of the class, through its (cached) public no argument
+ * constructor. <code>newEntrant()</code> makes a tournament entrant of it.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class LoadedRobot implements RobotFactory {
+
+    /**
+     * The jar the class was loaded from.
+     */
+    private final Path jar;
+
+    /**
+     * The constructor of the robots.
+     */
+    private final Constructor<? extends TTTRobot> constructor;
+
+    /**
+     * The robot master name of the first robot created.
+     */
+    private final String name;
+
+    /**
+     * The time taken by the warm-up, in nanoseconds.
+     */
+    private final long warmUpNanos;
+
+    /**
+     * Creates a loaded robot.
+     *
+     * @param jar
+     *            The jar the class was loaded from
+     * @param constructor
+     *            The public no argument constructor of the class
+     * @param name
+     *            The robot master name
+     * @param warmUpNanos
+     *            The time taken by the warm-up, in nanoseconds
+     */
+    LoadedRobot(final Path jar, final Constructor<? extends TTTRobot> constructor, final String name,
+            final long warmUpNanos) {
+        this.jar = jar;
+        this.constructor = constructor;
+        this.name = name;
+        this.warmUpNanos = warmUpNanos;
+    }
+
+    /**
+     * Creates a new instance of the robot.
+     *
+     * @return A new robot, never null
+     * @throws IllegalStateException
+     *             If the constructor of the robot fails
+     */
+    @Override
+    public TTTRobot newRobot() {
+        try {
+            return constructor.newInstance();
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create " + this, e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + this, e);
+        }
+    }
+
+    /**
+     * Creates a tournament entrant playing with this robot, each thread
+     * getting an instance of its own.
+     *
+     * @return A new entrant, named after the robot master
+     */
+    public Entrant newEntrant() {
+        return new Entrant(name, this);
+    }
+
+    /**
+     * Gets the jar the robot was loaded from.
+     *
+     * @return The jar, never null
+     */
+    public Path getJar() {
+        return jar;
+    }
+
+    /**
+     * Gets the class of the robot.
+     *
+     * @return The class, never null
+     */
+    public Class<? extends TTTRobot> getRobotClass() {
+        return constructor.getDeclaringClass();
+    }
+
+    /**
+     * Gets the robot master name (as returned by the first robot created).
+     *
+     * @return The name, never null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the time taken by the warm-up of the robot.
+     *
+     * @return The time, in nanoseconds, 0 if it was not warmed up
+     */
+    public long getWarmUpNanos() {
+        return warmUpNanos;
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        return name + " (" + getRobotClass().getName() + " in " + jar.getFileName() + ")";
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.tournament;
+
+import edu.um.cps2004.task1.robot.TTTRobot;
+
+/**
+ * Creates robot instances.
+ *
+ * Used for robots which are not thread safe (most of them, as they usually
+ * keep some state between calls): the tournament asks for a new instance for
+ * every thread which plays with the robot, so no instance is ever shared.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public interface RobotFactory {
+
+    /**
+     * Creates a new instance of the robot.
+     *
+     * @return A new robot, never null
+     */
+    TTTRobot newRobot();
+
+}
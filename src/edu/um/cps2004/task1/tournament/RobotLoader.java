@@ -0,0 +1,609 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.tournament;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import edu.um.cps2004.task1.catalog.Mark;
+import edu.um.cps2004.task1.engine.BatchWarEngine;
+import edu.um.cps2004.task1.engine.GameBoard;
+import edu.um.cps2004.task1.exception.PositionAlreadyOccupiedException;
+import edu.um.cps2004.task1.exception.PositionOutOfRangeException;
+import edu.um.cps2004.task1.robot.TTTRobot;
+
+/**
+ * Loads the robots of a tournament from a directory of jars (compiled against
+ * the <code>tttwar</code> jar in <code>dist</code>).
+ *
+ * Each jar gets a class loader of its own, whose parent is the loader of the
+ * engine: the engine classes (<code>TTTRobot</code>, <code>GameBoard</code>,
+ * ...) are shared by all robots, even if a jar bundles copies of them, but
+ * the robots' own classes are not, so a robot cannot see (or tamper with) the
+ * static state of another, even one with the same class name. This is not a
+ * security sandbox: a robot can still do anything the JVM can.
+ *
+ * The robots of a jar are the classes named by its <code>Robot-Class</code>
+ * manifest attribute (separated by spaces or commas), which is the fastest
+ * way to start, or, without it, all the public, concrete,
+ * <code>TTTRobot</code> classes with a public no argument constructor in the
+ * jar. Classes which cannot be loaded are skipped.
+ *
+ * Each robot is then warmed up: a fresh instance plays a number of moves
+ * against itself, which are thrown away, so the JIT has compiled the robot
+ * before its first timed game (the instance itself is discarded, so no state
+ * of the warm-up is carried into the games). The warm-up runs on a thread of
+ * its own, and may only take so long: a robot which has not finished by
+ * then is interrupted and left out, so that one robot which loops (or
+ * thinks too long) does not hold up the loading of the others.
+ *
+ * The jars loaded are cached, with their robots. Loading the directory again
+ * only loads the jars which are new, or changed since (and forgets those
+ * which are gone), so the others keep their classes, already warmed up. A
+ * robot which fails to load (its constructor throws, it has no name, or it
+ * throws while warming up) is left out, and the reason is kept (see
+ * <code>getProblems()</code>) rather than failing the whole tournament.
+ *
+ * Thread safe. Closing the loader closes the class loaders of all the jars.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class RobotLoader implements Closeable {
+
+    /**
+     * The default number of moves each robot plays to warm up.
+     */
+    public static final int DEFAULT_WARM_UP_MOVES = 1000;
+
+    /**
+     * The default time each robot may take to warm up, in milliseconds.
+     */
+    public static final long DEFAULT_WARM_UP_MILLIS = 10000;
+
+    /**
+     * The manifest attribute naming the robot classes of a jar.
+     */
+    public static final String ROBOT_CLASS_ATTRIBUTE = "Robot-Class";
+
+    /**
+     * The class loader of the engine, the parent of the loaders of the jars.
+     */
+    private final ClassLoader parent;
+
+    /**
+     * The number of rows (and columns) of the warm-up board.
+     */
+    private final int side;
+
+    /**
+     * The number of marks in a row needed to win on the warm-up board.
+     */
+    private final int winLength;
+
+    /**
+     * The number of moves each robot plays to warm up.
+     */
+    private int warmUpMoves = DEFAULT_WARM_UP_MOVES;
+
+    /**
+     * The time each robot may take to warm up, in milliseconds.
+     */
+    private long warmUpMillis = DEFAULT_WARM_UP_MILLIS;
+
+    /**
+     * The jars loaded, by path.
+     */
+    private final Map<Path, LoadedJar> jars = new HashMap<Path, LoadedJar>();
+
+    /**
+     * Why robots were left out of the last load.
+     */
+    private final List<String> problems = new ArrayList<String>();
+
+    /**
+     * Creates a loader warming robots up on the classic 3x3 board.
+     */
+    public RobotLoader() {
+        this(3, 3);
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param side
+     *            The number of rows (and columns) of the board the robots are
+     *            warmed up on (that of the tournament)
+     * @param winLength
+     *            The number of marks in a row needed to win on that board
+     */
+    public RobotLoader(final int side, final int winLength) {
+        new GameBoard(side, winLength); // validates them
+        this.parent = TTTRobot.class.getClassLoader();
+        this.side = side;
+        this.winLength = winLength;
+    }
+
+    /**
+     * Sets the number of moves each robot plays to warm up (<code>
+     * DEFAULT_WARM_UP_MOVES</code> by default). Only robots loaded afterwards
+     * are affected.
+     *
+     * @param warmUpMoves
+     *            The number of moves, 0 for no warm-up
+     */
+    public synchronized void setWarmUpMoves(final int warmUpMoves) {
+        if (warmUpMoves < 0) {
+            throw new IllegalArgumentException("warmUpMoves may not be negative: " + warmUpMoves);
+        }
+        this.warmUpMoves = warmUpMoves;
+    }
+
+    /**
+     * Sets the time each robot may take to warm up (<code>
+     * DEFAULT_WARM_UP_MILLIS</code> by default). Robots which take longer
+     * are left out. Only robots loaded afterwards are affected.
+     *
+     * @param warmUpMillis
+     *            The time in milliseconds, positive
+     */
+    public synchronized void setWarmUpMillis(final long warmUpMillis) {
+        if (warmUpMillis <= 0) {
+            throw new IllegalArgumentException("warmUpMillis must be positive: " + warmUpMillis);
+        }
+        this.warmUpMillis = warmUpMillis;
+    }
+
+    /**
+     * Loads the robots of all the jars in a directory, reusing those of the
+     * jars which are already loaded and have not changed.
+     *
+     * @param directory
+     *            The directory, may not be null
+     * @return The robots, by jar name (then class name), never null
+     * @throws IOException
+     *             If the directory cannot be read, or the thread is
+     *             interrupted (<code>InterruptedIOException</code>)
+     */
+    public synchronized List<LoadedRobot> load(final Path directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory may not be null");
+        }
+        final List<Path> paths = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.jar")) {
+            for (final Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+
+        problems.clear();
+        final List<LoadedRobot> robots = new ArrayList<LoadedRobot>();
+        final Map<Path, LoadedJar> loaded = new HashMap<Path, LoadedJar>();
+        try {
+            for (final Path path : paths) {
+                LoadedJar jar = jars.remove(path);
+                if ((jar != null) && !jar.isCurrent()) {
+                    jar.close();
+                    jar = null;
+                }
+                if (jar == null) {
+                    try {
+                        jar = loadJar(path);
+                    } catch (final IOException e) {
+                        problems.add(path.getFileName() + " cannot be read: " + e);
+                        continue;
+                    }
+                } else {
+                    problems.addAll(jar.problems);
+                }
+                loaded.put(path, jar);
+                robots.addAll(jar.robots);
+            }
+            // the jars left are gone from the directory
+            closeAll();
+        } finally {
+            jars.putAll(loaded);
+        }
+        return robots;
+    }
+
+    /**
+     * Gets why robots were left out of the last load.
+     *
+     * @return The problems, one per robot (or jar), empty if none
+     */
+    public synchronized List<String> getProblems() {
+        return new ArrayList<String>(problems);
+    }
+
+    /**
+     * Closes the class loaders of all the jars loaded. Robots already created
+     * keep working, but may not be able to load classes they have not used
+     * yet.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeAll();
+    }
+
+    /**
+     * Closes, and forgets, all the jars loaded.
+     *
+     * @throws IOException
+     *             If a class loader cannot be closed (the others still are)
+     */
+    private void closeAll() throws IOException {
+        IOException failure = null;
+        for (final Iterator<LoadedJar> i = jars.values().iterator(); i.hasNext();) {
+            try {
+                i.next().close();
+            } catch (final IOException e) {
+                failure = e;
+            }
+            i.remove();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Loads the robots of a jar, in a new class loader.
+     *
+     * @param path
+     *            The jar
+     * @return The jar loaded
+     * @throws IOException
+     *             If the jar cannot be read, or the thread is interrupted
+     */
+    private LoadedJar loadJar(final Path path) throws IOException {
+        final List<String> classNames = new ArrayList<String>();
+        final boolean named;
+        try (JarFile file = new JarFile(path.toFile())) {
+            final Manifest manifest = file.getManifest();
+            final String robotClasses = (manifest == null) ? null
+                    : manifest.getMainAttributes().getValue(new Attributes.Name(ROBOT_CLASS_ATTRIBUTE));
+            named = robotClasses != null;
+            if (named) {
+                for (final String name : robotClasses.trim().split("[\\s,]+")) {
+                    if (!name.isEmpty()) {
+                        classNames.add(name);
+                    }
+                }
+            } else {
+                for (final Enumeration<JarEntry> entries = file.entries(); entries.hasMoreElements();) {
+                    final String entry = entries.nextElement().getName();
+                    if (entry.endsWith(".class") && !entry.endsWith("module-info.class")) {
+                        classNames.add(entry.substring(0, entry.length() - ".class".length()).replace('/', '.'));
+                    }
+                }
+            }
+        }
+        Collections.sort(classNames);
+
+        final LoadedJar jar = new LoadedJar(path);
+        try {
+            loadRobots(path, classNames, named, jar);
+        } catch (final Throwable e) {
+            jar.close();
+            throw e;
+        }
+        if (jar.robots.isEmpty()) {
+            jar.close(); // nothing left to load from it
+        }
+        return jar;
+    }
+
+    /**
+     * Loads the robots of a jar.
+     *
+     * @param path
+     *            The jar
+     * @param classNames
+     *            The classes to load
+     * @param named
+     *            Whether the classes are named by the manifest (so must all
+     *            be robots)
+     * @param jar
+     *            The jar loaded, to add the robots to
+     * @throws InterruptedIOException
+     *             If the thread is interrupted
+     */
+    private void loadRobots(final Path path, final List<String> classNames, final boolean named,
+            final LoadedJar jar) throws InterruptedIOException {
+        for (final String className : classNames) {
+            final Class<?> type;
+            try {
+                type = Class.forName(className, false, jar.loader);
+            } catch (final ClassNotFoundException | LinkageError e) {
+                if (named) {
+                    problem(jar, className + " in " + path.getFileName() + " cannot be loaded: " + e);
+                }
+                continue; // not every class of a jar need load, only the robots
+            }
+            if (type.getClassLoader() != jar.loader) {
+                continue; // an engine class bundled in the jar
+            }
+            if (!isRobotClass(type)) {
+                if (named) {
+                    problem(jar, className + " in " + path.getFileName() + " is not a public robot class");
+                }
+                continue;
+            }
+            final LoadedRobot robot = loadRobot(path, type.asSubclass(TTTRobot.class), jar);
+            if (robot != null) {
+                jar.robots.add(robot);
+            }
+        }
+        if (jar.robots.isEmpty() && jar.problems.isEmpty()) {
+            problem(jar, path.getFileName() + " has no robot");
+        }
+    }
+
+    /**
+     * Checks whether a class is a robot which can be created.
+     *
+     * @param type
+     *            The class
+     * @return True if it is a public, concrete, robot class with a public no
+     *         argument constructor
+     */
+    private static boolean isRobotClass(final Class<?> type) {
+        final int modifiers = type.getModifiers();
+        if (!TTTRobot.class.isAssignableFrom(type) || type.isInterface() || Modifier.isAbstract(modifiers)
+                || !Modifier.isPublic(modifiers)) {
+            return false;
+        }
+        try {
+            type.getConstructor();
+            return true;
+        } catch (final NoSuchMethodException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates the first robot of a class, to get its name, and warms it up.
+     *
+     * @param path
+     *            The jar of the class
+     * @param type
+     *            The class
+     * @param jar
+     *            The jar loaded, to report problems to
+     * @return The robot loaded, null if it cannot be created or warmed up
+     * @throws InterruptedIOException
+     *             If the thread is interrupted
+     */
+    private LoadedRobot loadRobot(final Path path, final Class<? extends TTTRobot> type, final LoadedJar jar)
+            throws InterruptedIOException {
+        final String where = type.getName() + " in " + path.getFileName();
+        final Constructor<? extends TTTRobot> constructor;
+        final TTTRobot robot;
+        final String name;
+        try {
+            constructor = type.getConstructor();
+            robot = constructor.newInstance();
+            name = robot.getRobotMasterName();
+        } catch (final InvocationTargetException e) {
+            problem(jar, where + " cannot be created: " + e.getCause());
+            return null;
+        } catch (final Throwable e) {
+            BatchWarEngine.rethrowIfFatal(e);
+            problem(jar, where + " cannot be created: " + e);
+            return null;
+        }
+        if (name == null) {
+            problem(jar, where + " has no robot master name");
+            return null;
+        }
+        if (warmUpMoves == 0) {
+            return new LoadedRobot(path, constructor, name, 0);
+        }
+        final long start = System.nanoTime();
+        final String failure = warmUpInTime(robot, where);
+        if (failure != null) {
+            problem(jar, where + " " + failure);
+            return null;
+        }
+        return new LoadedRobot(path, constructor, name, System.nanoTime() - start);
+    }
+
+    /**
+     * Warms a robot up on a thread of its own, waiting for it at most the
+     * warm-up time.
+     *
+     * @param robot
+     *            The robot
+     * @param where
+     *            The robot class and jar, to name the thread
+     * @return null if the robot warmed up, otherwise why it is left out
+     * @throws InterruptedIOException
+     *             If the thread is interrupted while waiting
+     */
+    private String warmUpInTime(final TTTRobot robot, final String where) throws InterruptedIOException {
+        final Throwable[] failure = new Throwable[1];
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warmUp(robot);
+                } catch (final Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        }, "tttwar-warm-up " + where);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            thread.join(warmUpMillis);
+        } catch (final InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted warming up " + where);
+        }
+        if (thread.isAlive()) {
+            thread.interrupt(); // Java cannot kill it, if it ignores that it runs on, but is not waited for
+            return "took more than " + warmUpMillis + " ms to warm up";
+        }
+        if (failure[0] != null) {
+            BatchWarEngine.rethrowIfFatal(failure[0]);
+            return "failed to warm up: " + failure[0];
+        }
+        return null;
+    }
+
+    /**
+     * Has a robot play moves against itself, to be thrown away. Illegal moves
+     * are replaced by the first empty position, and the robot gets a board of
+     * its own, so it cannot upset the warm-up by playing on it.
+     *
+     * @param robot
+     *            The robot
+     */
+    private void warmUp(final TTTRobot robot) {
+        GameBoard board = new GameBoard(side, winLength);
+        GameBoard view = new GameBoard(side, winLength);
+        final int[] empty = new int[board.getBoardSize()];
+        Mark turn = Mark.X;
+        for (int move = 0; move < warmUpMoves; move++) {
+            int position = robot.play(view, turn);
+            if (!board.isValidPlay(position)) {
+                board.getEmptyPositions(empty);
+                position = empty[0];
+            }
+            play(board, position, turn);
+            if (board.isWinningPosition() || board.isFull()) {
+                board = new GameBoard(side, winLength);
+                view = new GameBoard(side, winLength);
+                turn = Mark.X;
+                continue;
+            }
+            if (view.getMovesPlayed() == board.getMovesPlayed() - 1) {
+                play(view, position, turn);
+            } else {
+                view = copy(board); // it played on its board
+            }
+            turn = (turn == Mark.X) ? Mark.O : Mark.X;
+        }
+    }
+
+    /**
+     * Copies a board, by replaying its marks.
+     *
+     * @param board
+     *            The board
+     * @return A new board with the same marks
+     */
+    private GameBoard copy(final GameBoard board) {
+        final GameBoard copy = new GameBoard(side, winLength);
+        final Mark[] state = board.getBoardState();
+        for (int position = 0; position < state.length; position++) {
+            if (state[position] != null) {
+                play(copy, position, state[position]);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Plays a move known to be legal.
+     *
+     * @param board
+     *            The board
+     * @param position
+     *            The position, in range and empty
+     * @param mark
+     *            The mark to play
+     */
+    private static void play(final GameBoard board, final int position, final Mark mark) {
+        try {
+            board.playAtPosition(position, mark);
+        } catch (final PositionOutOfRangeException | PositionAlreadyOccupiedException e) {
+            throw new IllegalStateException("Illegal warm-up move " + position, e);
+        }
+    }
+
+    /**
+     * Records why a robot (or a jar) was left out.
+     *
+     * @param jar
+     *            The jar
+     * @param problem
+     *            The reason
+     */
+    private void problem(final LoadedJar jar, final String problem) {
+        jar.problems.add(problem);
+        problems.add(problem);
+    }
+
+    /**
+     * A jar loaded, with its class loader and robots.
+     */
+    private final class LoadedJar implements Closeable {
+
+        private final Path path;
+
+        /**
+         * The size and modification time of the jar when it was loaded.
+         */
+        private final long size, lastModified;
+
+        private final URLClassLoader loader;
+
+        private final List<LoadedRobot> robots = new ArrayList<LoadedRobot>();
+
+        private final List<String> problems = new ArrayList<String>();
+
+        private LoadedJar(final Path path) throws IOException {
+            this.path = path;
+            this.size = Files.size(path);
+            this.lastModified = Files.getLastModifiedTime(path).toMillis();
+            this.loader = new URLClassLoader(new URL[] { path.toUri().toURL() }, parent);
+        }
+
+        /**
+         * Checks whether the jar is unchanged since it was loaded.
+         *
+         * @return True if it has the same size and modification time
+         */
+        private boolean isCurrent() {
+            try {
+                return (Files.size(path) == size) && (Files.getLastModifiedTime(path).toMillis() == lastModified);
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            loader.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.tournament;
+
+/**
+ * One row of the league table: the record of an entrant over a tournament.
+ *
+ * A win is worth 3 points, a draw 1 and a loss nothing (as in football).
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class Standing {
+
+    /**
+     * Points for a win.
+     */
+    public static final int POINTS_PER_WIN = 3;
+
+    /**
+     * Points for a draw.
+     */
+    public static final int POINTS_PER_DRAW = 1;
+
+    /**
+     * The entrant this row is about.
+     */
+    private final Entrant entrant;
+
+    /**
+     * Games won, drawn and lost (disqualifications included).
+     */
+    private long won, drawn, lost;
+
+    /**
+     * Games lost by disqualification.
+     */
+    private long disqualified;
+
+    /**
+     * Creates an empty row.
+     *
+     * @param entrant
+     *            The entrant, may not be null
+     */
+    Standing(final Entrant entrant) {
+        this.entrant = entrant;
+    }
+
+    /**
+     * Adds some results to this row.
+     */
+    void add(final long won, final long drawn, final long lost, final long disqualified) {
+        this.won += won;
+        this.drawn += drawn;
+        this.lost += lost;
+        this.disqualified += disqualified;
+    }
+
+    /**
+     * Gets the entrant.
+     *
+     * @return The entrant, never null
+     */
+    public Entrant getEntrant() {
+        return entrant;
+    }
+
+    /**
+     * Gets the number of games played.
+     *
+     * @return The number of games, never negative
+     */
+    public long getPlayed() {
+        return won + drawn + lost;
+    }
+
+    /**
+     * Gets the number of games won.
+     *
+     * @return The number of wins, never negative
+     */
+    public long getWon() {
+        return won;
+    }
+
+    /**
+     * Gets the number of games drawn.
+     *
+     * @return The number of draws, never negative
+     */
+    public long getDrawn() {
+        return drawn;
+    }
+
+    /**
+     * Gets the number of games lost (disqualifications included).
+     *
+     * @return The number of losses, never negative
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * Gets the number of games lost by disqualification.
+     *
+     * @return The number of disqualifications, never negative
+     */
+    public long getDisqualified() {
+        return disqualified;
+    }
+
+    /**
+     * Gets the points.
+     *
+     * @return The points, never negative
+     */
+    public long getPoints() {
+        return won * POINTS_PER_WIN + drawn * POINTS_PER_DRAW;
+    }
+
+    /**
+     * toString for informational purposes only
+     */
+    @Override
+    public String toString() {
+        return entrant + " P" + getPlayed() + " W" + won + " D" + drawn + " L" + lost + " (DQ " + disqualified
+                + ") Pts " + getPoints();
+    }
+
+}
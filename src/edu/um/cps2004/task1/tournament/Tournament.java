@@ -0,0 +1,286 @@
+/*
+ * CPS2004 - OOP, Department of CS, University of Malta.
+ * (C)2016/7 Jean-Paul Ebejer
+ * All rights reserved.
+ */
+package edu.um.cps2004.task1.tournament;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.um.cps2004.task1.engine.BatchWarEngine;
+import edu.um.cps2004.task1.engine.MatchResult;
+import edu.um.cps2004.task1.engine.TimeControl;
+import edu.um.cps2004.task1.record.GameRecordSink;
+
+/**
+ * A round robin tournament: every entrant plays every other entrant, a
+ * number of games as X and the same number as O.
+ *
+ * The games are cut up into tasks (of at most <code>GAMES_PER_TASK</code>
+ * games between the same two entrants, with the same marks) which are run on
+ * a fork/join pool, so all cores are kept busy and idle threads steal work
+ * from busy ones. Each task plays on an engine (and board) of its own, with
+ * the robots belonging to the thread running it (see <code>Entrant</code>).
+ * Results are only merged into the league table once all tasks are done, so
+ * the threads never contend over it.
+ *
+ * A seeded tournament (see <code>setSeed</code>) seeds the engine of each
+ * task from the tournament's seed and the task's index, which only depend on
+ * the entrants and the number of games, never on which thread ran the task
+ * or when. Running it again with the same seed (and robots drawing their
+ * random numbers from their seeds only) plays the same games.
+ *
+ * @author <a href="mailto:jean.p.ebejer@um.edu.mt">JP</a>
+ * @version 1.0
+ */
+public final class Tournament {
+
+    /**
+     * The most games played by a single task.
+     */
+    static final int GAMES_PER_TASK = 1000;
+
+    /**
+     * The entrants.
+     */
+    private final List<Entrant> entrants;
+
+    /**
+     * The number of games each entrant plays against each other entrant,
+     * with each mark.
+     */
+    private final int gamesPerPairing;
+
+    /**
+     * The number of rows (and columns) of the board.
+     */
+    private final int side;
+
+    /**
+     * The number of marks in a row needed to win.
+     */
+    private final int winLength;
+
+    /**
+     * The time limits of the robots, applied to every game.
+     */
+    private volatile TimeControl timeControl = TimeControl.UNLIMITED;
+
+    /**
+     * Receives the record of every game, null if games are not recorded.
+     */
+    private volatile GameRecordSink recordSink;
+
+    /**
+     * The seed of the tournament, null if it is not seeded.
+     */
+    private volatile Long seed;
+
+    /**
+     * Creates a tournament on the classic 3x3 board.
+     *
+     * @param entrants
+     *            The entrants, may not be null (nor contain nulls)
+     * @param gamesPerPairing
+     *            The number of games each entrant plays against each other
+     *            entrant, with each mark. Not negative.
+     */
+    public Tournament(final List<Entrant> entrants, final int gamesPerPairing) {
+        this(entrants, gamesPerPairing, 3, 3);
+    }
+
+    /**
+     * Creates a tournament on a larger board.
+     *
+     * @param entrants
+     *            The entrants, may not be null (nor contain nulls)
+     * @param gamesPerPairing
+     *            The number of games each entrant plays against each other
+     *            entrant, with each mark. Not negative.
+     * @param side
+     *            The number of rows (and columns) of the board
+     * @param winLength
+     *            The number of marks in a row needed to win
+     */
+    public Tournament(final List<Entrant> entrants, final int gamesPerPairing, final int side, final int winLength) {
+        if (entrants == null) {
+            throw new IllegalArgumentException("entrants may not be null");
+        }
+        if (entrants.contains(null)) {
+            throw new IllegalArgumentException("entrants may not contain null");
+        }
+        if (gamesPerPairing < 0) {
+            throw new IllegalArgumentException("gamesPerPairing may not be negative: " + gamesPerPairing);
+        }
+        this.entrants = new ArrayList<Entrant>(entrants);
+        this.gamesPerPairing = gamesPerPairing;
+        this.side = side;
+        this.winLength = winLength;
+    }
+
+    /**
+     * Sets the time limits of the robots (<code>TimeControl.UNLIMITED</code>
+     * by default). A robot running out of time loses the game.
+     *
+     * @param timeControl
+     *            The time control, may not be null
+     */
+    public void setTimeControl(final TimeControl timeControl) {
+        if (timeControl == null) {
+            throw new IllegalArgumentException("timeControl cannot be null");
+        }
+        this.timeControl = timeControl;
+    }
+
+    /**
+     * Sets where the games are recorded (not recorded by default). The sink
+     * is called from all the threads playing, so it must be thread safe
+     * (a <code>GameRecordWriter</code> is).
+     *
+     * @param recordSink
+     *            The sink, or null to stop recording
+     */
+    public void setRecordSink(final GameRecordSink recordSink) {
+        this.recordSink = recordSink;
+    }
+
+    /**
+     * Seeds the games (not seeded by default): the engine of each task is
+     * seeded with <code>BatchWarEngine.deriveSeed(seed, task)</code>, and
+     * every game with a seed derived from that (see
+     * <code>BatchWarEngine.setSeed</code>), which is kept in its record.
+     *
+     * Only robots which belong to a single thread (i.e. entrants created
+     * from a <code>RobotFactory</code>) are seeded reproducibly; a shared
+     * robot is seeded by all the threads playing it.
+     *
+     * @param seed
+     *            The seed
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Runs the tournament on a new pool with one thread per core.
+     *
+     * @return The league table, never null
+     */
+    public LeagueTable run() {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the tournament on the given pool, waiting for it to finish.
+     *
+     * @param pool
+     *            The pool to play the games on, may not be null
+     * @return The league table, never null
+     */
+    public LeagueTable run(final ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool may not be null");
+        }
+        final Schedule schedule = new Schedule(timeControl, recordSink, seed);
+        pool.invoke(new Games(schedule, 0, schedule.tasks));
+
+        final LeagueTable table = new LeagueTable(entrants);
+        for (int task = 0; task < schedule.tasks; task++) {
+            table.record(entrants.get(schedule.entrantX[task]), entrants.get(schedule.entrantO[task]),
+                    schedule.results[task]);
+        }
+        return table;
+    }
+
+    /**
+     * All the tasks of one run, and their results (each task only writes
+     * its own slot).
+     */
+    private final class Schedule {
+
+        private final int tasks;
+
+        private final int[] entrantX, entrantO, games;
+
+        private final MatchResult[] results;
+
+        private final TimeControl timeControl;
+
+        private final GameRecordSink recordSink;
+
+        private final Long seed;
+
+        private Schedule(final TimeControl timeControl, final GameRecordSink recordSink, final Long seed) {
+            this.timeControl = timeControl;
+            this.recordSink = recordSink;
+            this.seed = seed;
+            final int tasksPerPairing = (gamesPerPairing + GAMES_PER_TASK - 1) / GAMES_PER_TASK;
+            final int n = entrants.size();
+            tasks = n * (n - 1) * tasksPerPairing;
+            entrantX = new int[tasks];
+            entrantO = new int[tasks];
+            games = new int[tasks];
+            results = new MatchResult[tasks];
+
+            int task = 0;
+            for (int x = 0; x < n; x++) {
+                for (int o = 0; o < n; o++) {
+                    if (x == o) {
+                        continue;
+                    }
+                    for (int played = 0; played < gamesPerPairing; played += GAMES_PER_TASK) {
+                        entrantX[task] = x;
+                        entrantO[task] = o;
+                        games[task] = Math.min(GAMES_PER_TASK, gamesPerPairing - played);
+                        task++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays a range of tasks, splitting it in two until a single task is
+     * left.
+     */
+    private final class Games extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Schedule schedule;
+
+        private final int from, to;
+
+        private Games(final Schedule schedule, final int from, final int to) {
+            this.schedule = schedule;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new Games(schedule, from, middle), new Games(schedule, middle, to));
+            } else if (to > from) {
+                final BatchWarEngine engine = new BatchWarEngine(entrants.get(schedule.entrantX[from]).getRobot(),
+                        entrants.get(schedule.entrantO[from]).getRobot(), side, winLength);
+                engine.setTimeControl(schedule.timeControl);
+                engine.setRecordSink(schedule.recordSink);
+                if (schedule.seed != null) {
+                    engine.setSeed(BatchWarEngine.deriveSeed(schedule.seed, from));
+                }
+                schedule.results[from] = engine.playBatch(schedule.games[from]);
+            }
+        }
+    }
+
+}